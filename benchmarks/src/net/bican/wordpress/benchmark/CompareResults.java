@@ -0,0 +1,164 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * 
+ * Compares two benchmark runs saved with <code>-rf json -rff file</code>,
+ * usually those of two releases. For every benchmark in both runs, prints
+ * the scores, the change and whether the difference is bigger than the
+ * error margins of the two scores.
+ * 
+ * Run this as java -cp target/benchmarks.jar
+ * net.bican.wordpress.benchmark.CompareResults &lt;baseline.json&gt;
+ * &lt;current.json&gt;. The exit status is 1 when something got slower.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class CompareResults {
+
+  @SuppressWarnings("nls")
+  private static final String PREFIX = "net.bican.wordpress.benchmark.";
+
+  /**
+   * Score of a benchmark in one run
+   */
+  static class Score {
+    final double  error;
+
+    final boolean higherIsBetter;
+
+    final double  score;
+
+    final String  unit;
+
+    Score(double score, double error, String unit, boolean higherIsBetter) {
+      this.score = score;
+      this.error = Double.isNaN(error) ? 0 : error;
+      this.unit = unit;
+      this.higherIsBetter = higherIsBetter;
+    }
+  }
+
+  /**
+   * @param in JSON results of a run
+   * @return scores by benchmark name and parameters, in the order of the run
+   * @throws JSONException when the results cannot be read
+   */
+  @SuppressWarnings({ "nls", "rawtypes" })
+  static Map<String, Score> read(Reader in) throws JSONException {
+    Map<String, Score> result = new LinkedHashMap<String, Score>();
+    JSONArray runs = new JSONArray(new JSONTokener(in));
+    for (int i = 0; i < runs.length(); i++) {
+      JSONObject run = runs.getJSONObject(i);
+      String benchmark = run.getString("benchmark");
+      if (benchmark.startsWith(PREFIX))
+        benchmark = benchmark.substring(PREFIX.length());
+      StringBuilder name = new StringBuilder(benchmark);
+      JSONObject params = run.optJSONObject("params");
+      if (params != null) {
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (Iterator it = params.keys(); it.hasNext();) {
+          String key = (String) it.next();
+          sorted.put(key, params.getString(key));
+        }
+        name.append(sorted);
+      }
+      JSONObject metric = run.getJSONObject("primaryMetric");
+      result.put(name.toString(), new Score(metric.getDouble("score"),
+          metric.optDouble("scoreError"), metric.getString("scoreUnit"),
+          "thrpt".equals(run.getString("mode"))));
+    }
+    return result;
+  }
+
+  /**
+   * @param baseline score of the earlier run
+   * @param current score of the later run
+   * @return negative if the later run is worse, positive if it is better and
+   *         0 if the difference is within the error margins
+   */
+  static int compare(Score baseline, Score current) {
+    double upper = current.score + current.error;
+    double lower = current.score - current.error;
+    if (upper < baseline.score - baseline.error)
+      return baseline.higherIsBetter ? -1 : 1;
+    if (lower > baseline.score + baseline.error)
+      return baseline.higherIsBetter ? 1 : -1;
+    return 0;
+  }
+
+  private static Map<String, Score> read(String fileName)
+      throws IOException, JSONException {
+    Reader in = new InputStreamReader(new FileInputStream(fileName), "UTF-8");
+    try {
+      return read(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @param args baseline and current results files
+   * @throws IOException when a file cannot be read
+   * @throws JSONException when a file is not a JSON results file
+   */
+  @SuppressWarnings("nls")
+  public static void main(String[] args) throws IOException, JSONException {
+    if (args.length != 2) {
+      System.err
+          .println("usage: CompareResults <baseline.json> <current.json>");
+      System.exit(2);
+    }
+    Map<String, Score> baseline = read(args[0]);
+    Map<String, Score> current = read(args[1]);
+    int worse = 0;
+    String format = "%-60s %14s %14s %8s %s%n";
+    System.out.printf(format, "Benchmark", "Baseline", "Current", "Change",
+        "Unit");
+    for (Map.Entry<String, Score> e : current.entrySet()) {
+      Score b = baseline.get(e.getKey());
+      Score c = e.getValue();
+      if ((b == null) || !b.unit.equals(c.unit)) {
+        System.out.printf(format, e.getKey(), "-",
+            String.format("%.3f", Double.valueOf(c.score)), "new", c.unit);
+        continue;
+      }
+      int cmp = compare(b, c);
+      String verdict = (cmp < 0) ? " worse" : ((cmp > 0) ? " better" : "");
+      if (cmp < 0)
+        worse++;
+      System.out.printf(format, e.getKey(),
+          String.format("%.3f", Double.valueOf(b.score)),
+          String.format("%.3f", Double.valueOf(c.score)),
+          String.format("%+.1f%%", Double.valueOf((c.score - b.score)
+              / b.score * 100)), c.unit + verdict);
+    }
+    if (worse > 0) {
+      System.out.println(worse + " benchmark(s) got worse");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import net.bican.wordpress.XmlRpcDateCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * Compares <code>XmlRpcDateCodec</code> with the ways
+ * <code>SimpleDateFormat</code> can be used for the same format. The shared
+ * instance is only correct single threaded; it is here as the old baseline.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({ "javadoc", "nls" })
+public class DateCodecBenchmark {
+
+  private static final String PATTERN = "yyyyMMdd'T'HH:mm:ss";
+
+  private final XmlRpcDateCodec codec = XmlRpcDateCodec.DEFAULT;
+
+  private final Date date = new Date(1346839872000L);
+
+  private final SimpleDateFormat shared = new SimpleDateFormat(PATTERN);
+
+  private final String text = "20120905T10:11:12";
+
+  private final ThreadLocal<SimpleDateFormat> threadLocal = new ThreadLocal<SimpleDateFormat>() {
+    @Override
+    protected SimpleDateFormat initialValue() {
+      return new SimpleDateFormat(PATTERN);
+    }
+  };
+
+  @Benchmark
+  public Date parseCodec() throws ParseException {
+    return this.codec.parse(this.text);
+  }
+
+  @Benchmark
+  public Date parseSharedSimpleDateFormat() throws ParseException {
+    return this.shared.parse(this.text);
+  }
+
+  @Benchmark
+  public Date parseThreadLocalSimpleDateFormat() throws ParseException {
+    return this.threadLocal.get().parse(this.text);
+  }
+
+  @Benchmark
+  public Date parseNewSimpleDateFormat() throws ParseException {
+    return new SimpleDateFormat(PATTERN).parse(this.text);
+  }
+
+  @Benchmark
+  public String formatCodec() {
+    return this.codec.format(this.date);
+  }
+
+  @Benchmark
+  public String formatSharedSimpleDateFormat() {
+    return this.shared.format(this.date);
+  }
+
+  @Benchmark
+  public String formatThreadLocalSimpleDateFormat() {
+    return this.threadLocal.get().format(this.date);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.bican.wordpress.FileParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Cost of parsing a post file with <code>FileParser.parseFile</code>, with
+ * the body wrapped over many lines like an edited file would have it, up to
+ * a 10 MB body. <code>parseFileByLines</code> is the line by line parser
+ * <code>FileParser</code> had before, for comparison; it takes minutes for the
+ * largest body, so it is run once for each size.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings({ "javadoc", "nls" })
+public class FileParserBenchmark {
+
+  private static final String CUSTOM_FIELDS = "[{\"key\": \"key0\", "
+      + "\"value\": \"value 0\"}, {\"key\": \"key1\", \"value\": \"value 1\"}]";
+
+  @Param({ "2000", "50000", "10000000" })
+  public int     bodySize;
+
+  private String file;
+
+  private File   onDisk;
+
+  @Setup
+  public void setup() throws IOException {
+    this.file = Payloads.postFile(this.bodySize);
+    this.onDisk = File.createTempFile("post", ".txt");
+    Writer w = new OutputStreamWriter(new FileOutputStream(this.onDisk),
+        "UTF-8");
+    try {
+      w.write(this.file);
+    } finally {
+      w.close();
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.onDisk.delete();
+  }
+
+  @Benchmark
+  public XmlRpcStruct parseFile() throws Exception {
+    return FileParser.parseFile(new BufferedReader(new StringReader(
+        this.file)));
+  }
+
+  @Benchmark
+  public XmlRpcStruct putCustomFields() {
+    XmlRpcStruct s = new XmlRpcStruct();
+    FileParser.putVal(s, "custom_fields", CUSTOM_FIELDS);
+    return s;
+  }
+
+  @Benchmark
+  public XmlRpcStruct parseFileFromDisk() throws Exception {
+    return FileParser.parseFile(this.onDisk, Charset.forName("UTF-8"));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @Warmup(iterations = 0)
+  @Measurement(iterations = 1)
+  public XmlRpcStruct parseFileByLines() throws Exception {
+    BufferedReader input = new BufferedReader(new StringReader(this.file));
+    XmlRpcStruct p = new XmlRpcStruct();
+    String line;
+    String prevKey = null;
+    String prevValue = null;
+    Pattern keyPattern = Pattern.compile("^[\\d\\w_]+:",
+        Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    while ((line = input.readLine()) != null) {
+      if ((!"".equals(line)) && (!line.startsWith("#"))) {
+        Matcher m = keyPattern.matcher(line);
+        if (m.find()) {
+          if (prevKey != null) {
+            FileParser.putVal(p, prevKey, prevValue);
+          }
+          String[] vals = line.split(":", 2);
+          prevKey = vals[0];
+          prevValue = vals[1];
+        } else {
+          prevValue += line;
+        }
+      }
+    }
+    if (prevKey != null)
+      FileParser.putVal(p, prevKey, prevValue);
+    return p;
+  }
+}
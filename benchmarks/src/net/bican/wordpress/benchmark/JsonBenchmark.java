@@ -0,0 +1,162 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONReader;
+import org.json.JSONTokener;
+import org.json.JSONWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * Cost of parsing and writing JSON with <code>org.json</code>, for a single
+ * post and for arrays of posts like an export holds, up to a document of
+ * several megabytes.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("javadoc")
+public class JsonBenchmark {
+
+  @Param({ "1", "100", "2000" })
+  public int         posts;
+
+  private JSONArray  array;
+
+  private String     arrayText;
+
+  private JSONObject object;
+
+  private String     objectText;
+
+  @Setup
+  public void setup() throws Exception {
+    this.array = Payloads.postsJson(this.posts, 2000);
+    this.arrayText = this.array.toString();
+    this.object = this.array.getJSONObject(0);
+    this.objectText = this.object.toString();
+  }
+
+  @Benchmark
+  public JSONArray parseArray() throws Exception {
+    return new JSONArray(this.arrayText);
+  }
+
+  @Benchmark
+  public JSONArray parseArrayReader() throws Exception {
+    return new JSONArray(new JSONTokener(new StringReader(this.arrayText)));
+  }
+
+  @Benchmark
+  public int readArray() throws Exception {
+    JSONReader reader = new JSONReader(new StringReader(this.arrayText));
+    int count = 0;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      reader.skipValue();
+      count++;
+    }
+    reader.endArray();
+    return count;
+  }
+
+  @Benchmark
+  public JSONObject parseObject() throws Exception {
+    return new JSONObject(this.objectText);
+  }
+
+  @Benchmark
+  public String arrayToString() {
+    return this.array.toString();
+  }
+
+  @Benchmark
+  public StringWriter writeArray() throws Exception {
+    StringWriter w = new StringWriter();
+    this.array.write(w);
+    return w;
+  }
+
+  @Benchmark
+  public String objectToString() {
+    return this.object.toString();
+  }
+
+  @Benchmark
+  public String prettyArray() throws Exception {
+    return this.array.toString(2);
+  }
+
+  @Benchmark
+  public String quoteBody() throws Exception {
+    return JSONObject.quote(this.object.getString("description"));
+  }
+
+  /**
+   * Writes to a writer that drops the text, so only the cost of producing
+   * it is measured.
+   */
+  @Benchmark
+  public Writer streamArray() throws Exception {
+    Writer w = new Writer() {
+      @Override
+      public void close() throws IOException {
+        // nothing to close
+      }
+
+      @Override
+      public void flush() throws IOException {
+        // nothing to flush
+      }
+
+      @Override
+      public void write(char[] cbuf, int off, int len) throws IOException {
+        // dropped
+      }
+
+      @Override
+      public void write(int c) throws IOException {
+        // dropped
+      }
+
+      @Override
+      public void write(String str, int off, int len) throws IOException {
+        // dropped
+      }
+    };
+    new JSONWriter(w).value(this.array);
+    return w;
+  }
+}
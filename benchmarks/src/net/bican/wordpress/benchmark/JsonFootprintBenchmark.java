@@ -0,0 +1,84 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 
+ * Cost of holding many small <code>org.json</code> objects, like the custom
+ * fields of an export: a document of small objects is parsed and the objects
+ * are looked up. Run with <code>-prof gc</code>; the allocation per operation
+ * is close to the memory the parsed document takes, and the heap is small
+ * enough that a larger footprint shows up as collection time.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+@State(Scope.Thread)
+@SuppressWarnings({ "javadoc", "nls" })
+public class JsonFootprintBenchmark {
+
+  @Param({ "100000" })
+  public int        objects;
+
+  private JSONArray parsed;
+
+  private String    text;
+
+  @Setup
+  public void setup() throws Exception {
+    JSONArray array = new JSONArray();
+    for (int i = 0; i < this.objects; i++) {
+      JSONObject field = new JSONObject();
+      field.put("id", String.valueOf(i));
+      field.put("key", "key" + i % 10);
+      field.put("value", "value " + i);
+      array.put(field);
+    }
+    this.text = array.toString();
+    this.parsed = new JSONArray(this.text);
+  }
+
+  @Benchmark
+  public JSONArray parseSmallObjects() throws Exception {
+    return new JSONArray(this.text);
+  }
+
+  @Benchmark
+  public int lookupSmallObjects() throws Exception {
+    int found = 0;
+    for (int i = 0; i < this.objects; i++) {
+      if (this.parsed.getJSONObject(i).has("value")) {
+        found++;
+      }
+    }
+    return found;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.bican.wordpress.MediaObject;
+import net.bican.wordpress.Wordpress;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 
+ * Upload throughput of <code>Wordpress.newMediaObject</code> against a local
+ * stand-in server that reads and discards the request. Run with
+ * <code>-prof gc</code> to see that the allocation does not grow with the
+ * file size.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx64m")
+@State(Scope.Benchmark)
+@SuppressWarnings({ "javadoc", "nls", "restriction" })
+public class MediaUploadBenchmark {
+
+  private static final byte[] RESPONSE = ("<?xml version=\"1.0\"?>"
+      + "<methodResponse><params><param><value><struct>"
+      + "<member><name>file</name><value>upload.bin</value></member>"
+      + "<member><name>url</name>"
+      + "<value>http://localhost/wp/upload.bin</value></member>"
+      + "<member><name>type</name>"
+      + "<value>application/octet-stream</value></member>"
+      + "</struct></value></param></params></methodResponse>").getBytes();
+
+  @Param({ "1", "16", "128" })
+  public int megabytes;
+
+  private File file;
+
+  private HttpServer server;
+
+  private Wordpress wp;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    this.file = File.createTempFile("upload", ".bin");
+    this.file.deleteOnExit();
+    Random random = new Random(1);
+    byte[] block = new byte[1024 * 1024];
+    try (FileOutputStream out = new FileOutputStream(this.file)) {
+      for (int i = 0; i < this.megabytes; i++) {
+        random.nextBytes(block);
+        out.write(block);
+      }
+    }
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    this.server.createContext("/xmlrpc.php", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = exchange.getRequestBody()) {
+          while (in.read(buffer) >= 0) {
+            // discard
+          }
+        }
+        exchange.sendResponseHeaders(200, RESPONSE.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(RESPONSE);
+        }
+      }
+    });
+    this.server.start();
+    this.wp = new Wordpress("admin", "admin", "http://127.0.0.1:"
+        + this.server.getAddress().getPort() + "/xmlrpc.php");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.server.stop(0);
+    this.file.delete();
+  }
+
+  @Benchmark
+  public MediaObject upload() throws Exception {
+    return this.wp.newMediaObject("application/octet-stream", this.file,
+        Boolean.TRUE);
+  }
+}
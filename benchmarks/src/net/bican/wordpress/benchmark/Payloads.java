@@ -0,0 +1,308 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import net.bican.wordpress.XmlRpcRequestWriter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Realistic xmlrpc payloads, shaped like what a WordPress server returns.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@SuppressWarnings({ "nls", "unchecked", "boxing" })
+public class Payloads {
+
+  private static final Date    DATE = new Date(1346839872000L);
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * @param id post id
+   * @param bodySize approximate size of the post body in characters
+   * @return a post, as returned by metaWeblog.getPost
+   */
+  public static XmlRpcStruct post(int id, int bodySize) {
+    XmlRpcStruct p = new XmlRpcStruct();
+    XmlRpcArray categories = new XmlRpcArray();
+    categories.add("Uncategorized");
+    categories.add("News");
+    XmlRpcArray customFields = new XmlRpcArray();
+    for (int i = 0; i < 3; i++) {
+      XmlRpcStruct cf = new XmlRpcStruct();
+      cf.put("id", String.valueOf(100 + i));
+      cf.put("key", "key" + i);
+      cf.put("value", "value " + i);
+      customFields.add(cf);
+    }
+    p.put("categories", categories);
+    p.put("custom_fields", customFields);
+    p.put("date_created_gmt", DATE);
+    p.put("dateCreated", DATE);
+    p.put("description", text(bodySize));
+    p.put("link", "http://localhost/wp/?p=" + id);
+    p.put("mt_allow_comments", 1);
+    p.put("mt_allow_pings", 1);
+    p.put("mt_excerpt", "");
+    p.put("mt_keywords", "benchmark, wordpress");
+    p.put("mt_text_more", "");
+    p.put("permaLink", "http://localhost/wp/?p=" + id);
+    p.put("post_status", "publish");
+    p.put("postid", String.valueOf(id));
+    p.put("title", "Post number " + id);
+    p.put("userid", "1");
+    p.put("wp_author_display_name", "admin");
+    p.put("wp_author_id", "1");
+    p.put("wp_password", "");
+    p.put("wp_slug", "post-number-" + id);
+    return p;
+  }
+
+  /**
+   * @param id comment id
+   * @return a comment, as returned by wp.getComment
+   */
+  public static XmlRpcStruct comment(int id) {
+    XmlRpcStruct c = new XmlRpcStruct();
+    c.put("date_created_gmt", DATE);
+    c.put("user_id", "0");
+    c.put("comment_id", String.valueOf(id));
+    c.put("parent", "0");
+    c.put("status", "approve");
+    c.put("content", text(400));
+    c.put("link", "http://localhost/wp/?p=1#comment-" + id);
+    c.put("post_id", "1");
+    c.put("post_title", "Hello world!");
+    c.put("author", "Mr WordPress");
+    c.put("author_url", "http://wordpress.org/");
+    c.put("author_email", "");
+    c.put("author_ip", "127.0.0.1");
+    return c;
+  }
+
+  /**
+   * @param size number of characters
+   * @return some text of the given size
+   */
+  public static String text(int size) {
+    StringBuilder b = new StringBuilder(size);
+    String word = "lorem <b>ipsum</b> dolor &amp; sit amet ";
+    while (b.length() < size) {
+      b.append(word);
+    }
+    b.setLength(size);
+    return b.toString();
+  }
+
+  /**
+   * @param type simple name of a model class
+   * @return a struct with all the fields of the class filled in
+   */
+  public static XmlRpcStruct struct(String type) {
+    XmlRpcStruct s = new XmlRpcStruct();
+    switch (type) {
+    case "Attachment":
+      s.put("bits", new byte[4096]);
+      s.put("name", "picture.png");
+      s.put("overwrite", Boolean.TRUE);
+      s.put("type", "image/png");
+      return s;
+    case "Author":
+      s.put("display_name", "admin");
+      s.put("user_id", "1");
+      s.put("user_login", "admin");
+      return s;
+    case "Blog":
+      s.put("isAdmin", Boolean.TRUE);
+      s.put("url", "http://localhost/wp/");
+      s.put("blogid", "1");
+      s.put("blogName", "Benchmark blog");
+      return s;
+    case "Category":
+      s.put("categoryId", "3");
+      s.put("categoryName", "News");
+      s.put("description", "News");
+      s.put("htmlUrl", "http://localhost/wp/?cat=3");
+      s.put("parentId", "0");
+      s.put("rssUrl", "http://localhost/wp/?feed=rss2&cat=3");
+      return s;
+    case "Comment":
+      return comment(1);
+    case "CommentCount":
+      s.put("approved", 12);
+      s.put("awaiting_moderation", 3);
+      s.put("spam", 40);
+      s.put("total_comments", 55);
+      return s;
+    case "CommentStatusList":
+      s.put("hold", "Unapproved");
+      s.put("approve", "Approved");
+      s.put("spam", "Spam");
+      return s;
+    case "CustomField":
+      s.put("id", "100");
+      s.put("key", "key0");
+      s.put("value", "value 0");
+      return s;
+    case "MediaObject":
+      s.put("url", "http://localhost/wp/wp-content/uploads/picture.png");
+      s.put("file", "picture.png");
+      s.put("type", "image/png");
+      return s;
+    case "Page":
+      return post(1, 2000);
+    case "PageDefinition":
+      s.put("page_title", "About");
+      s.put("page_parent_id", "0");
+      s.put("dateCreated", DATE);
+      s.put("date_created_gmt", DATE);
+      return s;
+    case "Ping":
+      s.put("pingTitle", "A reply");
+      s.put("pingURL", "http://example.com/reply");
+      s.put("pingIP", "127.0.0.1");
+      return s;
+    case "PostAndPageStatus":
+      s.put("status", "publish");
+      s.put("description", "Published");
+      return s;
+    case "User":
+      s.put("nickname", "admin");
+      s.put("userid", 1);
+      s.put("url", "http://localhost/wp/");
+      s.put("lastname", "Bican");
+      s.put("firstname", "Can");
+      return s;
+    default:
+      throw new IllegalArgumentException(type);
+    }
+  }
+
+  /**
+   * @param bodySize approximate size of the post body in characters
+   * @return a post file, in the format <code>FileParser</code> reads
+   */
+  public static String postFile(int bodySize) {
+    StringBuilder b = new StringBuilder();
+    b.append("# benchmark post\n");
+    b.append("title: Post number 1\n");
+    b.append("mt_keywords: benchmark, wordpress\n");
+    b.append("categories: [\"Uncategorized\", \"News\"]\n");
+    b.append("custom_fields: [");
+    for (int i = 0; i < 3; i++) {
+      if (i > 0)
+        b.append(", ");
+      b.append("{\"key\": \"key").append(i);
+      b.append("\", \"value\": \"value ").append(i).append("\"}");
+    }
+    b.append("]\n");
+    b.append("post_status: publish\n");
+    b.append("wp_password: null\n");
+    b.append("\n");
+    b.append("description: ");
+    // long bodies are usually wrapped over many lines
+    String body = text(bodySize);
+    for (int i = 0; i < body.length(); i += 72) {
+      b.append(body, i, Math.min(body.length(), i + 72)).append('\n');
+    }
+    return b.toString();
+  }
+
+  /**
+   * @param count number of posts
+   * @param bodySize approximate size of each post body in characters
+   * @return posts as JSON, as an export would contain them
+   * @throws JSONException never, the values are all valid
+   */
+  public static JSONArray postsJson(int count, int bodySize)
+      throws JSONException {
+    JSONArray result = new JSONArray();
+    for (int i = 1; i <= count; i++) {
+      JSONObject p = new JSONObject();
+      JSONArray customFields = new JSONArray();
+      for (int j = 0; j < 3; j++) {
+        JSONObject cf = new JSONObject();
+        cf.put("id", String.valueOf(100 + j));
+        cf.put("key", "key" + j);
+        cf.put("value", "value \"" + j + "\"\n");
+        customFields.put(cf);
+      }
+      p.put("categories", new JSONArray().put("Uncategorized").put("News"));
+      p.put("custom_fields", customFields);
+      p.put("dateCreated", "20120905T10:11:12");
+      p.put("description", text(bodySize));
+      p.put("link", "http://localhost/wp/?p=" + i);
+      p.put("mt_allow_comments", 1);
+      p.put("mt_allow_pings", true);
+      p.put("post_status", "publish");
+      p.put("postid", i);
+      p.put("rating", 4.5);
+      p.put("title", "Post number " + i);
+      p.put("wp_password", JSONObject.NULL);
+      p.put("wp_slug", "post-number-" + i);
+      result.put(p);
+    }
+    return result;
+  }
+
+  /**
+   * @param value value to return
+   * @return a method response with the value, as a server would send it
+   */
+  public static byte[] response(Object value) {
+    StringWriter w = new StringWriter();
+    w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    w.write("<methodResponse><params><param>");
+    try {
+      new XmlRpcRequestWriter(w).writeValue(value);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    w.write("</param></params></methodResponse>");
+    return w.toString().getBytes(UTF8);
+  }
+
+  /**
+   * @param count number of items
+   * @param item creates the items
+   * @return an array of count items
+   */
+  public static XmlRpcArray array(int count, Item item) {
+    XmlRpcArray result = new XmlRpcArray();
+    for (int i = 1; i <= count; i++) {
+      result.add(item.create(i));
+    }
+    return result;
+  }
+
+  /**
+   * Creates the items of {@link Payloads#array(int, Item)}
+   */
+  public interface Item {
+    /**
+     * @param id id of the item
+     * @return the item
+     */
+    XmlRpcStruct create(int id);
+  }
+}
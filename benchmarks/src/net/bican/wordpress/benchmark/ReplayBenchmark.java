@@ -0,0 +1,125 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.bican.wordpress.Category;
+import net.bican.wordpress.Comment;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.RecordingTransport;
+import net.bican.wordpress.ReplayTransport;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.WordpressSimulator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redstone.xmlrpc.XmlRpcFault;
+
+/**
+ * 
+ * Whole client calls, from encoding the request to mapping the response,
+ * answered by a {@link ReplayTransport}. Give a capture recorded from a real
+ * blog (e.g. with the <code>--record</code> option of the command line
+ * interface) with <code>-p capture=file.wpx</code>; without it, a capture
+ * of a simulated blog with 100 posts of 2000 characters and 20 comments each
+ * is recorded at setup.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@SuppressWarnings({ "javadoc", "nls" })
+public class ReplayBenchmark {
+
+  private static final String URL = "http://localhost/wp/xmlrpc.php";
+
+  @Param("")
+  public String               capture;
+
+  private File                recorded;
+
+  private Wordpress           wp;
+
+  private static File record() throws IOException, XmlRpcFault {
+    WordpressSimulator simulator = new WordpressSimulator("admin", "admin", 1);
+    simulator.populate(100, 20, 2000);
+    File file = File.createTempFile("replay", ".wpx");
+    RecordingTransport recording = new RecordingTransport(
+        simulator.getTransport(), file);
+    try {
+      Wordpress wp = new Wordpress("admin", "admin", URL, recording);
+      wp.getRecentPosts(10);
+      wp.getPost(50);
+      wp.getComments(null, 50, 20, 0);
+      wp.getCategories();
+    } finally {
+      recording.close();
+    }
+    return file;
+  }
+
+  @Setup
+  public void setup() throws IOException, XmlRpcFault {
+    File file;
+    if (this.capture.length() == 0) {
+      this.recorded = record();
+      file = this.recorded;
+    } else {
+      file = new File(this.capture);
+    }
+    this.wp = new Wordpress("admin", "admin", URL, new ReplayTransport(file));
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (this.recorded != null)
+      this.recorded.delete();
+  }
+
+  @Benchmark
+  public List<Page> getRecentPosts() throws XmlRpcFault {
+    return this.wp.getRecentPosts(10);
+  }
+
+  @Benchmark
+  public Page getPost() throws XmlRpcFault {
+    return this.wp.getPost(50);
+  }
+
+  @Benchmark
+  public List<Comment> getComments() throws XmlRpcFault {
+    return this.wp.getComments(null, 50, 20, 0);
+  }
+
+  @Benchmark
+  public List<Category> getCategories() throws XmlRpcFault {
+    return this.wp.getCategories();
+  }
+}
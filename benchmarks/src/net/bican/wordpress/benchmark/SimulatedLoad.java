@@ -0,0 +1,62 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.bican.wordpress.LoadGenerator;
+import net.bican.wordpress.WordpressSimulator;
+import net.bican.wordpress.WordpressSimulator.Latency;
+
+/**
+ * 
+ * Runs the {@link LoadGenerator} against a simulated blog in the same JVM,
+ * with posts that have three comments each and a log-normal latency whose
+ * 99th percentile is five times the median.
+ * 
+ * Run this as java -Dsun.net.httpserver.nodelay=true -cp
+ * target/benchmarks.jar net.bican.wordpress.benchmark.SimulatedLoad
+ * &lt;posts&gt; &lt;median latency in ms&gt; [load generator options]. The
+ * url, user and password are those of the simulator.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class SimulatedLoad {
+
+  /**
+   * @param args number of posts, median latency, then the options of
+   *          {@link LoadGenerator#main(String[])}
+   * @throws Exception when the simulator or the load generator fails
+   */
+  @SuppressWarnings("nls")
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("usage: SimulatedLoad <posts> <median latency ms> "
+          + "[load generator options]");
+      System.exit(2);
+    }
+    WordpressSimulator simulator = new WordpressSimulator("admin", "admin");
+    simulator.populate(Integer.parseInt(args[0]), 3, 2000);
+    double median = Double.parseDouble(args[1]);
+    if (median > 0)
+      simulator.setLatency(Latency.logNormal(median, median * 5));
+    try {
+      List<String> options = new ArrayList<String>(Arrays.asList("--url",
+          simulator.start(), "--user", "admin", "--pass", "admin"));
+      options.addAll(Arrays.asList(args).subList(2, args.length));
+      LoadGenerator.main(options.toArray(new String[options.size()]));
+    } finally {
+      simulator.stop();
+    }
+  }
+}
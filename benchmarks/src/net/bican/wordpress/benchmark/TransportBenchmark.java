@@ -0,0 +1,167 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import net.bican.wordpress.HttpURLConnectionTransport;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.PooledHttpTransport;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.XmlRpcRequestWriter;
+import net.bican.wordpress.XmlRpcTransport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redstone.xmlrpc.XmlRpcArray;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 
+ * Calls per second of <code>Wordpress.getRecentPosts</code> against a local
+ * stand-in server, for each transport. The <code>urlconnection</code>
+ * transport stands for the behaviour before the pooled transport: one
+ * <code>HttpURLConnection</code> per call, with the JDK's keep-alive cache.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+@SuppressWarnings({ "javadoc", "nls", "restriction", "unchecked" })
+public class TransportBenchmark {
+
+  @Param({ "false", "true" })
+  public boolean          compression;
+
+  @Param({ "urlconnection", "pooled" })
+  public String           transport;
+
+  private XmlRpcTransport client;
+
+  private ExecutorService executor;
+
+  private byte[]          gzipped;
+
+  private byte[]          plain;
+
+  private HttpServer      server;
+
+  private Wordpress       wp;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    XmlRpcArray posts = new XmlRpcArray();
+    for (int i = 1; i <= 10; i++) {
+      posts.add(Payloads.post(i, 2048));
+    }
+    ByteArrayOutputStream b = new ByteArrayOutputStream();
+    Writer w = new OutputStreamWriter(b, "UTF-8");
+    w.write("<?xml version=\"1.0\"?><methodResponse><params><param>");
+    new XmlRpcRequestWriter(w).writeValue(posts);
+    w.write("</param></params></methodResponse>");
+    w.close();
+    this.plain = b.toByteArray();
+    b.reset();
+    try (GZIPOutputStream gz = new GZIPOutputStream(b)) {
+      gz.write(this.plain);
+    }
+    this.gzipped = b.toByteArray();
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+    this.server.createContext("/xmlrpc.php", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+          while (in.read(buffer) >= 0) {
+            // discard
+          }
+        }
+        String accept = exchange.getRequestHeaders()
+            .getFirst("Accept-Encoding");
+        byte[] body = TransportBenchmark.this.plain;
+        if ((accept != null) && accept.contains("gzip")) {
+          body = TransportBenchmark.this.gzipped;
+          exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(body);
+        }
+      }
+    });
+    this.executor = Executors.newFixedThreadPool(8);
+    this.server.setExecutor(this.executor);
+    this.server.start();
+    if ("pooled".equals(this.transport)) {
+      PooledHttpTransport pooled = new PooledHttpTransport();
+      pooled.setCompression(this.compression);
+      this.client = pooled;
+    } else {
+      HttpURLConnectionTransport jdk = new HttpURLConnectionTransport();
+      jdk.setCompression(this.compression);
+      this.client = jdk;
+    }
+    this.wp = new Wordpress("admin", "admin", "http://127.0.0.1:"
+        + this.server.getAddress().getPort() + "/xmlrpc.php", this.client);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (this.client instanceof PooledHttpTransport)
+      System.out.println("\n" + ((PooledHttpTransport) this.client)
+          .getStatistics());
+    this.client.close();
+    this.server.stop(0);
+    this.executor.shutdown();
+  }
+
+  @Benchmark
+  public List<Page> calls() throws Exception {
+    return this.wp.getRecentPosts(10);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public List<Page> concurrentCalls() throws Exception {
+    return this.wp.getRecentPosts(10);
+  }
+}
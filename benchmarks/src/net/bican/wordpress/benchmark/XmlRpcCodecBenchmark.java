@@ -0,0 +1,167 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.bican.wordpress.Comment;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.XmlRpcRequestWriter;
+import net.bican.wordpress.XmlRpcResponseReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Cost of encoding xmlrpc requests and decoding responses that carry
+ * realistic posts and comments, without any network in between. Requests
+ * are encoded to UTF-8 and discarded, responses are decoded from memory.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings({ "javadoc", "nls" })
+public class XmlRpcCodecBenchmark {
+
+  private static final class NullOutputStream extends OutputStream {
+    long count;
+
+    @Override
+    public void write(int b) {
+      this.count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      this.count += len;
+    }
+  }
+
+  /**
+   * Responses with a number of posts and comments
+   */
+  @State(Scope.Thread)
+  public static class Responses {
+
+    @Param({ "10", "100" })
+    public int items;
+
+    byte[]     comments;
+
+    byte[]     posts;
+
+    @Setup
+    public void setup() {
+      this.posts = Payloads.response(Payloads.array(this.items,
+          new Payloads.Item() {
+            @Override
+            public XmlRpcStruct create(int id) {
+              return Payloads.post(id, 2000);
+            }
+          }));
+      this.comments = Payloads.response(Payloads.array(this.items,
+          new Payloads.Item() {
+            @Override
+            public XmlRpcStruct create(int id) {
+              return Payloads.comment(id);
+            }
+          }));
+    }
+  }
+
+  private Comment comment;
+
+  private Page    page;
+
+  @Setup
+  public void setup() {
+    this.page = new Page();
+    this.page.fromXmlRpcStruct(Payloads.post(1, 2000));
+    this.comment = new Comment();
+    this.comment.fromXmlRpcStruct(Payloads.comment(1));
+  }
+
+  private static long encode(String methodName, Object... args)
+      throws IOException {
+    NullOutputStream out = new NullOutputStream();
+    Writer w = new OutputStreamWriter(out, "UTF-8");
+    new XmlRpcRequestWriter(w).writeRequest(methodName, args);
+    return out.count;
+  }
+
+  @Benchmark
+  public long encodeNewPost() throws IOException {
+    return encode("metaWeblog.newPost", Integer.valueOf(0), "admin", "secret",
+        this.page, Boolean.TRUE);
+  }
+
+  @Benchmark
+  public long encodeNewComment() throws IOException {
+    return encode("wp.newComment", Integer.valueOf(0), "admin", "secret",
+        Integer.valueOf(1), this.comment);
+  }
+
+  @Benchmark
+  public List<Page> decodePosts(Responses r) throws Exception {
+    XmlRpcResponseReader reader = new XmlRpcResponseReader(
+        new ByteArrayInputStream(r.posts));
+    try {
+      return reader.readResponseList(Page.class);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Benchmark
+  public List<Comment> decodeComments(Responses r) throws Exception {
+    XmlRpcResponseReader reader = new XmlRpcResponseReader(
+        new ByteArrayInputStream(r.comments));
+    try {
+      return reader.readResponseList(Comment.class);
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Benchmark
+  public Object decodePostsAsStructs(Responses r) throws Exception {
+    XmlRpcResponseReader reader = new XmlRpcResponseReader(
+        new ByteArrayInputStream(r.posts));
+    try {
+      return reader.readResponse();
+    } finally {
+      reader.close();
+    }
+  }
+}
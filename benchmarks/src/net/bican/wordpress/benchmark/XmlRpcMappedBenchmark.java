@@ -0,0 +1,88 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress.benchmark;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+
+import net.bican.wordpress.XmlRpcMapped;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Per-object cost of mapping each model class to and from
+ * <code>XmlRpcStruct</code>. The objects are created through their
+ * constructor, since some of the classes are not public; that cost is the
+ * same for every class and small next to the mapping itself.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("javadoc")
+public class XmlRpcMappedBenchmark {
+
+  @Param({ "Attachment", "Author", "Blog", "Category", "Comment",
+      "CommentCount", "CommentStatusList", "CustomField", "MediaObject",
+      "Page", "PageDefinition", "Ping", "PostAndPageStatus", "User" })
+  public String                              type;
+
+  private Constructor<? extends XmlRpcMapped> constructor;
+
+  private XmlRpcMapped                        object;
+
+  private XmlRpcStruct                        struct;
+
+  @SuppressWarnings("nls")
+  @Setup
+  public void setup() throws Exception {
+    this.constructor = Class.forName("net.bican.wordpress." + this.type)
+        .asSubclass(XmlRpcMapped.class).getDeclaredConstructor();
+    this.constructor.setAccessible(true);
+    this.struct = Payloads.struct(this.type);
+    this.object = this.constructor.newInstance();
+    this.object.fromXmlRpcStruct(this.struct);
+  }
+
+  @Benchmark
+  public XmlRpcMapped fromXmlRpcStruct() throws Exception {
+    XmlRpcMapped result = this.constructor.newInstance();
+    result.fromXmlRpcStruct(this.struct);
+    return result;
+  }
+
+  @Benchmark
+  public XmlRpcStruct toXmlRpcStruct() {
+    return this.object.toXmlRpcStruct();
+  }
+
+  @Benchmark
+  public String toStringValue() {
+    return this.object.toString();
+  }
+}
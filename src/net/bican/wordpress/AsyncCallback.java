@@ -0,0 +1,35 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+/**
+ * 
+ * Receives the outcome of an asynchronous call.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ * @param <T> type of the result
+ */
+public interface AsyncCallback<T> {
+  /**
+   * Called when the call succeeded.
+   * 
+   * @param result result of the call
+   */
+  public void completed(T result);
+
+  /**
+   * Called when the call failed, or was cancelled.
+   * 
+   * @param error the reason, an <code>XmlRpcFault</code> when the server
+   *          returned a fault
+   */
+  public void failed(Throwable error);
+}
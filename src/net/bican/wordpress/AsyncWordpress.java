@@ -0,0 +1,483 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 
+ * Asynchronous variant of <code>Wordpress</code>. Each method queues the
+ * call on a bounded pool of threads and returns a
+ * <code>WordpressFuture</code> right away, so many calls can be pending
+ * while only a handful of threads do the network work.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class AsyncWordpress {
+
+  private static final AtomicInteger POOLS = new AtomicInteger();
+
+  private final ExecutorService      executor;
+
+  private final boolean              ownExecutor;
+
+  private final Wordpress            wordpress;
+
+  /**
+   * Runs the calls of the given client on the given executor. The executor
+   * is not shut down by {@link #shutdown()}.
+   * 
+   * @param wordpress client to make the calls with
+   * @param executor executor to run the calls on
+   */
+  public AsyncWordpress(Wordpress wordpress, ExecutorService executor) {
+    this(wordpress, executor, false);
+  }
+
+  private AsyncWordpress(Wordpress wordpress, ExecutorService executor,
+      boolean ownExecutor) {
+    this.wordpress = wordpress;
+    this.executor = executor;
+    this.ownExecutor = ownExecutor;
+  }
+
+  /**
+   * @param username User name
+   * @param password Password
+   * @param xmlRpcUrl xmlrpc communication point, usually
+   *          blogurl/xmlrpc.php
+   * @param threads number of calls that run at once, which is also the
+   *          number of connections used
+   * @throws MalformedURLException If the URL is faulty
+   */
+  @SuppressWarnings("nls")
+  public AsyncWordpress(String username, String password, String xmlRpcUrl,
+      int threads) throws MalformedURLException {
+    this(new Wordpress(username, password, xmlRpcUrl,
+        new PooledHttpTransport(threads)), Executors.newFixedThreadPool(
+        threads, new DaemonThreadFactory("wordpress-async-"
+            + POOLS.incrementAndGet())), true);
+  }
+
+  /**
+   * @param post_ID ID of the post to delete
+   * @param publish Publish status
+   * @return result of deletion
+   * @see Wordpress#deletePost(int, String)
+   */
+  public WordpressFuture<Boolean> deletePost(final int post_ID,
+      final String publish) {
+    return submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return AsyncWordpress.this.wordpress.deletePost(post_ID, publish);
+      }
+    });
+  }
+
+  /**
+   * @param post_ID ID of the page to delete
+   * @param publish Publish status
+   * @return result of deletion
+   * @see Wordpress#deletePage(int, String)
+   */
+  public WordpressFuture<Boolean> deletePage(final int post_ID,
+      final String publish) {
+    return submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return AsyncWordpress.this.wordpress.deletePage(post_ID, publish);
+      }
+    });
+  }
+
+  /**
+   * @param commentID comment id to delete
+   * @return result of the operation
+   * @see Wordpress#deleteComment(int)
+   */
+  public WordpressFuture<Boolean> deleteComment(final int commentID) {
+    return submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return Boolean.valueOf(AsyncWordpress.this.wordpress
+            .deleteComment(commentID));
+      }
+    });
+  }
+
+  /**
+   * @param comment comment to edit
+   * @return result of the operation
+   * @see Wordpress#editComment(Comment)
+   */
+  public WordpressFuture<Boolean> editComment(final Comment comment) {
+    return submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return Boolean.valueOf(AsyncWordpress.this.wordpress
+            .editComment(comment));
+      }
+    });
+  }
+
+  /**
+   * @param post_ID ID of the page to edit
+   * @param page Page information
+   * @param publish Publish status
+   * @return result of edit
+   * @see Wordpress#editPage(int, Page, String)
+   */
+  public WordpressFuture<Boolean> editPage(final int post_ID,
+      final Page page, final String publish) {
+    return submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return AsyncWordpress.this.wordpress.editPage(post_ID, page, publish);
+      }
+    });
+  }
+
+  /**
+   * @param post_ID ID of the post to edit
+   * @param page Page information
+   * @param publish Publish status
+   * @return result of edit
+   * @see Wordpress#editPost(int, Page, String)
+   */
+  public WordpressFuture<Boolean> editPost(final int post_ID,
+      final Page page, final String publish) {
+    return submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return AsyncWordpress.this.wordpress.editPost(post_ID, page, publish);
+      }
+    });
+  }
+
+  /**
+   * Executes a batch in the background.
+   * 
+   * @param batch batch created by {@link #getWordpress()}
+   * @return the batch, once its results are filled in
+   * @see XmlRpcBatch#execute()
+   */
+  public WordpressFuture<XmlRpcBatch> execute(final XmlRpcBatch batch) {
+    return submit(new Callable<XmlRpcBatch>() {
+      @Override
+      public XmlRpcBatch call() throws Exception {
+        batch.execute();
+        return batch;
+      }
+    });
+  }
+
+  /**
+   * @return list of authors
+   * @see Wordpress#getAuthors()
+   */
+  public WordpressFuture<List<Author>> getAuthors() {
+    return submit(new Callable<List<Author>>() {
+      @Override
+      public List<Author> call() throws Exception {
+        return AsyncWordpress.this.wordpress.getAuthors();
+      }
+    });
+  }
+
+  /**
+   * @return list of categories
+   * @see Wordpress#getCategories()
+   */
+  public WordpressFuture<List<Category>> getCategories() {
+    return submit(new Callable<List<Category>>() {
+      @Override
+      public List<Category> call() throws Exception {
+        return AsyncWordpress.this.wordpress.getCategories();
+      }
+    });
+  }
+
+  /**
+   * @param comment_id comment_id to fetch
+   * @return a Comment object
+   * @see Wordpress#getComment(Integer)
+   */
+  public WordpressFuture<Comment> getComment(final Integer comment_id) {
+    return submit(new Callable<Comment>() {
+      @Override
+      public Comment call() throws Exception {
+        return AsyncWordpress.this.wordpress.getComment(comment_id);
+      }
+    });
+  }
+
+  /**
+   * @param status status of the comments, <code>null</code> for all
+   * @param post_id post of the comments, <code>null</code> for all
+   * @param number maximum number of comments, <code>null</code> for the
+   *          server default
+   * @param offset number of comments to skip, <code>null</code> for none
+   * @return list of comments
+   * @see Wordpress#getComments(String, Integer, Integer, Integer)
+   */
+  public WordpressFuture<List<Comment>> getComments(final String status,
+      final Integer post_id, final Integer number, final Integer offset) {
+    return submit(new Callable<List<Comment>>() {
+      @Override
+      public List<Comment> call() throws Exception {
+        return AsyncWordpress.this.wordpress.getComments(status, post_id,
+            number, offset);
+      }
+    });
+  }
+
+  /**
+   * @param post_ID post of the comments
+   * @return comment counts of the post
+   * @see Wordpress#getCommentsCount(Integer)
+   */
+  public WordpressFuture<CommentCount> getCommentsCount(final Integer post_ID) {
+    return submit(new Callable<CommentCount>() {
+      @Override
+      public CommentCount call() throws Exception {
+        return AsyncWordpress.this.wordpress.getCommentsCount(post_ID);
+      }
+    });
+  }
+
+  /**
+   * @param pageid Page ID
+   * @return the <code>Page</code> object
+   * @see Wordpress#getPage(int)
+   */
+  public WordpressFuture<Page> getPage(final int pageid) {
+    return submit(new Callable<Page>() {
+      @Override
+      public Page call() throws Exception {
+        return AsyncWordpress.this.wordpress.getPage(pageid);
+      }
+    });
+  }
+
+  /**
+   * @return list of pages, short format
+   * @see Wordpress#getPageList()
+   */
+  public WordpressFuture<List<PageDefinition>> getPageList() {
+    return submit(new Callable<List<PageDefinition>>() {
+      @Override
+      public List<PageDefinition> call() throws Exception {
+        return AsyncWordpress.this.wordpress.getPageList();
+      }
+    });
+  }
+
+  /**
+   * @return list of pages
+   * @see Wordpress#getPages()
+   */
+  public WordpressFuture<List<Page>> getPages() {
+    return submit(new Callable<List<Page>>() {
+      @Override
+      public List<Page> call() throws Exception {
+        return AsyncWordpress.this.wordpress.getPages();
+      }
+    });
+  }
+
+  /**
+   * @param post_ID ID of the post to retrieve
+   * @return Page information
+   * @see Wordpress#getPost(int)
+   */
+  public WordpressFuture<Page> getPost(final int post_ID) {
+    return submit(new Callable<Page>() {
+      @Override
+      public Page call() throws Exception {
+        return AsyncWordpress.this.wordpress.getPost(post_ID);
+      }
+    });
+  }
+
+  /**
+   * @param num_posts Number of posts to be retrieved
+   * @return list of pages
+   * @see Wordpress#getRecentPosts(int)
+   */
+  public WordpressFuture<List<Page>> getRecentPosts(final int num_posts) {
+    return submit(new Callable<List<Page>>() {
+      @Override
+      public List<Page> call() throws Exception {
+        return AsyncWordpress.this.wordpress.getRecentPosts(num_posts);
+      }
+    });
+  }
+
+  /**
+   * @return user information
+   * @see Wordpress#getUserInfo()
+   */
+  public WordpressFuture<User> getUserInfo() {
+    return submit(new Callable<User>() {
+      @Override
+      public User call() throws Exception {
+        return AsyncWordpress.this.wordpress.getUserInfo();
+      }
+    });
+  }
+
+  /**
+   * @return list of blogs the user has
+   * @see Wordpress#getUsersBlogs()
+   */
+  public WordpressFuture<List<Blog>> getUsersBlogs() {
+    return submit(new Callable<List<Blog>>() {
+      @Override
+      public List<Blog> call() throws Exception {
+        return AsyncWordpress.this.wordpress.getUsersBlogs();
+      }
+    });
+  }
+
+  /**
+   * @return the blocking client the calls are made with
+   */
+  public Wordpress getWordpress() {
+    return this.wordpress;
+  }
+
+  /**
+   * @param name Category name
+   * @param slug Category short name
+   * @param parentId Parent ID
+   * @return new category id
+   * @see Wordpress#newCategory(String, String, int)
+   */
+  public WordpressFuture<Integer> newCategory(final String name,
+      final String slug, final int parentId) {
+    return submit(new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        return Integer.valueOf(AsyncWordpress.this.wordpress.newCategory(name,
+            slug, parentId));
+      }
+    });
+  }
+
+  /**
+   * @param post_id Post to attach the comment to.
+   * @param comment_parent Id of the parent comment (for threading)
+   * @param content Content of comment
+   * @param author Author's name
+   * @param author_url Author's URL (can be empty)
+   * @param author_email Author's Email Address
+   * @return the id for the newly created comment
+   * @see Wordpress#newComment(Integer, Integer, String, String, String,
+   *      String)
+   */
+  public WordpressFuture<Integer> newComment(final Integer post_id,
+      final Integer comment_parent, final String content, final String author,
+      final String author_url, final String author_email) {
+    return submit(new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        return AsyncWordpress.this.wordpress.newComment(post_id,
+            comment_parent, content, author, author_url, author_email);
+      }
+    });
+  }
+
+  /**
+   * @param mimeType Mime type of the file
+   * @param file File name
+   * @param overwrite true/false
+   * @return new object location
+   * @see Wordpress#newMediaObject(String, File, Boolean)
+   */
+  public WordpressFuture<MediaObject> newMediaObject(final String mimeType,
+      final File file, final Boolean overwrite) {
+    return submit(new Callable<MediaObject>() {
+      @Override
+      public MediaObject call() throws Exception {
+        return AsyncWordpress.this.wordpress.newMediaObject(mimeType, file,
+            overwrite);
+      }
+    });
+  }
+
+  /**
+   * @param post Page information
+   * @param publish Publish status
+   * @return Post ID
+   * @see Wordpress#newPage(Page, String)
+   */
+  public WordpressFuture<String> newPage(final Page post,
+      final String publish) {
+    return submit(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return AsyncWordpress.this.wordpress.newPage(post, publish);
+      }
+    });
+  }
+
+  /**
+   * @param page Post information
+   * @param publish Publish status
+   * @return Post id
+   * @see Wordpress#newPost(Page, boolean)
+   */
+  public WordpressFuture<String> newPost(final Page page,
+      final boolean publish) {
+    return submit(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return AsyncWordpress.this.wordpress.newPost(page, publish);
+      }
+    });
+  }
+
+  /**
+   * Stops the threads created by this object and closes its connections.
+   * Calls that are already queued are completed first, and this method waits
+   * for them.
+   * 
+   * @throws InterruptedException when interrupted while waiting
+   */
+  public void shutdown() throws InterruptedException {
+    if (!this.ownExecutor)
+      return;
+    this.executor.shutdown();
+    this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    this.wordpress.close();
+  }
+
+  /**
+   * Runs any call in the background, e.g. one that has no asynchronous
+   * variant here.
+   * 
+   * @param call the call to make
+   * @return pending result of the call
+   */
+  public <T> WordpressFuture<T> submit(Callable<T> call) {
+    WordpressFuture<T> future = new WordpressFuture<T>(call);
+    this.executor.execute(future);
+    return future;
+  }
+}
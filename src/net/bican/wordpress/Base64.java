@@ -0,0 +1,137 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 
+ * Base64 encoding and decoding for the <code>base64</code> xmlrpc type.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+final class Base64 {
+
+  @SuppressWarnings("nls")
+  private static final char[] ALPHABET = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                                           + "abcdefghijklmnopqrstuvwxyz"
+                                           + "0123456789+/").toCharArray();
+
+  private static final int[]  VALUES   = new int[128];
+
+  static {
+    for (int i = 0; i < VALUES.length; i++) {
+      VALUES[i] = -1;
+    }
+    for (int i = 0; i < ALPHABET.length; i++) {
+      VALUES[ALPHABET[i]] = i;
+    }
+  }
+
+  /**
+   * @param len number of bytes to encode
+   * @return number of characters the encoded bytes take
+   */
+  static int encodedLength(int len) {
+    return ((len + 2) / 3) * 4;
+  }
+
+  /**
+   * Encodes bytes into a character buffer. Padding is added only when
+   * <code>len</code> is not a multiple of 3, so consecutive chunks whose
+   * length is a multiple of 3 produce one continuous encoding.
+   * 
+   * @param in bytes to encode
+   * @param off where to start in the input
+   * @param len number of bytes to encode
+   * @param out output buffer, needs {@link #encodedLength(int)} characters
+   * @return number of characters written
+   */
+  static int encode(byte[] in, int off, int len, char[] out) {
+    int o = 0;
+    int end = off + len;
+    int i = off;
+    for (; i + 2 < end; i += 3) {
+      int b = ((in[i] & 0xff) << 16) | ((in[i + 1] & 0xff) << 8)
+          | (in[i + 2] & 0xff);
+      out[o++] = ALPHABET[(b >>> 18) & 0x3f];
+      out[o++] = ALPHABET[(b >>> 12) & 0x3f];
+      out[o++] = ALPHABET[(b >>> 6) & 0x3f];
+      out[o++] = ALPHABET[b & 0x3f];
+    }
+    int rest = end - i;
+    if (rest > 0) {
+      int b = (in[i] & 0xff) << 16;
+      if (rest == 2)
+        b |= (in[i + 1] & 0xff) << 8;
+      out[o++] = ALPHABET[(b >>> 18) & 0x3f];
+      out[o++] = ALPHABET[(b >>> 12) & 0x3f];
+      out[o++] = (rest == 2) ? ALPHABET[(b >>> 6) & 0x3f] : '=';
+      out[o++] = '=';
+    }
+    return o;
+  }
+
+  /**
+   * @param in bytes to encode
+   * @return encoded string
+   */
+  static String encode(byte[] in) {
+    char[] out = new char[encodedLength(in.length)];
+    return new String(out, 0, encode(in, 0, in.length, out));
+  }
+
+  /**
+   * Decodes base64 text, skipping whitespace.
+   * 
+   * @param in text to decode
+   * @return decoded bytes
+   * @throws IllegalArgumentException when the text is not valid base64
+   */
+  @SuppressWarnings("nls")
+  static byte[] decode(CharSequence in) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(
+        in.length() * 3 / 4);
+    int b = 0;
+    int n = 0;
+    for (int i = 0; i < in.length(); i++) {
+      char c = in.charAt(i);
+      if (c == '=')
+        break;
+      if (Character.isWhitespace(c))
+        continue;
+      int v = (c < 128) ? VALUES[c] : -1;
+      if (v < 0)
+        throw new IllegalArgumentException("Invalid base64 character: " + c);
+      b = (b << 6) | v;
+      if (++n == 4) {
+        out.write(b >>> 16);
+        out.write(b >>> 8);
+        out.write(b);
+        b = 0;
+        n = 0;
+      }
+    }
+    if (n == 2) {
+      out.write(b >>> 4);
+    } else if (n == 3) {
+      out.write(b >>> 10);
+      out.write(b >>> 2);
+    } else if (n == 1) {
+      throw new IllegalArgumentException("Truncated base64 input");
+    }
+    return out.toByteArray();
+  }
+
+  private Base64() {
+    // static methods only
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Result of an operation queued in an <code>XmlRpcBatch</code>, available
+ * after the batch is executed.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ * @param <T> type of the result
+ */
+public class BatchResult<T> {
+
+  private final Object[]  args;
+
+  private boolean         done    = false;
+
+  private XmlRpcException failure = null;
+
+  private XmlRpcFault     fault   = null;
+
+  private final String    methodName;
+
+  private final Class<T>  type;
+
+  private T               value   = null;
+
+  BatchResult(Class<T> type, String methodName, Object[] args) {
+    this.type = type;
+    this.methodName = methodName;
+    this.args = args;
+  }
+
+  /**
+   * @return the result of the operation
+   * @throws XmlRpcFault when the server returned a fault for the operation
+   * @throws XmlRpcException when the request that carried the operation
+   *           failed, in which case the server may or may not have carried it
+   *           out
+   * @throws IllegalStateException when the batch has not been executed yet
+   */
+  @SuppressWarnings("nls")
+  public T get() throws XmlRpcFault {
+    if (!this.done)
+      throw new IllegalStateException(this.methodName + " is not executed yet");
+    if (this.failure != null)
+      throw this.failure;
+    if (this.fault != null)
+      throw this.fault;
+    return this.value;
+  }
+
+  Object[] getArgs() {
+    return this.args;
+  }
+
+  /**
+   * @return the fault the server returned for the operation, or
+   *         <code>null</code> if it succeeded or is not executed yet
+   */
+  public XmlRpcFault getFault() {
+    return this.fault;
+  }
+
+  /**
+   * @return name of the xmlrpc method of the operation
+   */
+  public String getMethodName() {
+    return this.methodName;
+  }
+
+  /**
+   * @return <code>true</code> if the batch containing the operation has been
+   *         executed
+   */
+  public boolean isDone() {
+    return this.done;
+  }
+
+  void setFailure(XmlRpcException failure) {
+    this.failure = failure;
+    this.done = true;
+  }
+
+  void setFault(XmlRpcFault fault) {
+    this.fault = fault;
+    this.done = true;
+  }
+
+  /**
+   * @param raw the result as read from the response
+   * @throws XmlRpcException when the result has an unexpected type
+   */
+  @SuppressWarnings("nls")
+  void setValue(Object raw) {
+    if (XmlRpcMapped.class.isAssignableFrom(this.type)) {
+      if (!(raw instanceof XmlRpcStruct))
+        throw new XmlRpcException("Unexpected result for " + this.methodName);
+      try {
+        XmlRpcMapped mapped = (XmlRpcMapped) this.type.newInstance();
+        mapped.fromXmlRpcStruct((XmlRpcStruct) raw);
+        this.value = this.type.cast(mapped);
+      } catch (InstantiationException | IllegalAccessException e) {
+        throw new XmlRpcException(e.getLocalizedMessage(), e);
+      }
+    } else {
+      this.value = this.type.cast(XmlRpcBridgeHandler.coerce(raw, this.type,
+          this.methodName));
+    }
+    this.done = true;
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public String toString() {
+    if (!this.done)
+      return this.methodName + ": pending";
+    if (this.failure != null)
+      return this.methodName + ": failed " + this.failure.getMessage();
+    if (this.fault != null)
+      return this.methodName + ": fault " + this.fault.getErrorCode() + " "
+          + this.fault.getMessage();
+    return this.methodName + ": " + this.value;
+  }
+}
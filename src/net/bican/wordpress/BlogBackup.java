@@ -0,0 +1,678 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Backs up a blog into gzipped NDJSON, one record per line, and restores
+ * such a backup into a blog. A record looks like
+ * <code>{"type":"post","data":{...}}</code>, where the data is the xmlrpc
+ * struct of a category, author, post, page or comment as the server returned
+ * it, with dates in xmlrpc format in UTC, followed by a Z, like
+ * <code>20120131T18:30:00Z</code>.
+ * 
+ * Both directions stream in bounded memory. The export fetches the next page
+ * of items in the background while the current one is turned into JSON, and
+ * compresses on a thread of its own. The restore decompresses and parses on
+ * a thread of its own while the records are sent. Comments wait in a
+ * temporary file until they can be written oldest first.
+ * 
+ * Comments are exported oldest first, so that a reply comes after the
+ * comment it replies to. Restored posts, pages and comments get new ids;
+ * categories, parents of pages, posts of comments and parents of comments
+ * are mapped to the new ids, and a page restored before its parent is moved
+ * under it when the parent is restored. Categories with the name of an
+ * existing category are not created again. Authors cannot be created through
+ * xmlrpc, they are exported for reference only, and restored posts belong to
+ * the user that restores them.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class BlogBackup {
+
+  /**
+   * 
+   * Number of records of each type that were written, or restored and
+   * failed.
+   * 
+   */
+  public static final class Summary {
+
+    private final Map<String, int[]> counts = new TreeMap<String, int[]>();
+
+    void count(String type, boolean ok) {
+      int[] c = this.counts.get(type);
+      if (c == null) {
+        c = new int[2];
+        this.counts.put(type, c);
+      }
+      c[ok ? 0 : 1]++;
+    }
+
+    /**
+     * @param type type of the records, like {@link BlogBackup#POST}
+     * @return number of records that were exported or restored
+     */
+    public int getCount(String type) {
+      int[] c = this.counts.get(type);
+      return (c == null) ? 0 : c[0];
+    }
+
+    /**
+     * @param type type of the records, like {@link BlogBackup#POST}
+     * @return number of records that could not be restored
+     */
+    public int getFailed(String type) {
+      int[] c = this.counts.get(type);
+      return (c == null) ? 0 : c[1];
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("nls")
+    @Override
+    public String toString() {
+      StringBuilder result = new StringBuilder();
+      for (Map.Entry<String, int[]> entry : this.counts.entrySet()) {
+        if (result.length() > 0)
+          result.append(", ");
+        result.append(entry.getValue()[0]).append(' ').append(entry.getKey());
+        if (entry.getValue()[1] > 0)
+          result.append(" (").append(entry.getValue()[1]).append(" failed)");
+      }
+      return result.toString();
+    }
+  }
+
+  /**
+   * Type of author records
+   */
+  public static final String        AUTHOR            = "author";
+
+  /**
+   * Type of category records
+   */
+  public static final String        CATEGORY          = "category";
+
+  /**
+   * Type of comment records
+   */
+  public static final String        COMMENT           = "comment";
+
+  /**
+   * Default number of items fetched at once
+   */
+  public static final int           DEFAULT_PAGE_SIZE = 50;
+
+  /**
+   * Type of page records
+   */
+  public static final String        PAGE              = "page";
+
+  /**
+   * Type of post records
+   */
+  public static final String        POST              = "post";
+
+  /**
+   * Type of the records that cannot be read
+   */
+  public static final String        INVALID           = "invalid";
+
+  private static final int          CHUNK_SIZE        = 64 * 1024;
+
+  private static final byte[]       END_OF_CHUNKS     = new byte[0];
+
+  private static final JSONObject   END_OF_RECORDS    = new JSONObject();
+
+  private static final int          QUEUE_SIZE        = 4;
+
+  private int                       pageSize          = DEFAULT_PAGE_SIZE;
+
+  private final Wordpress           wp;
+
+  /**
+   * @param wp client of the blog to back up or restore into
+   */
+  public BlogBackup(Wordpress wp) {
+    this.wp = wp;
+  }
+
+  /**
+   * Converts a value of an xmlrpc struct to JSON.
+   */
+  @SuppressWarnings("rawtypes")
+  static Object toJSON(Object value) throws JSONException {
+    if (value instanceof XmlRpcMapped)
+      return toJSON(((XmlRpcMapped) value).toXmlRpcStruct());
+    if (value instanceof Map) {
+      JSONObject result = new JSONObject();
+      for (Object o : ((Map) value).entrySet()) {
+        Map.Entry entry = (Map.Entry) o;
+        if (entry.getValue() != null)
+          result.put(String.valueOf(entry.getKey()), toJSON(entry.getValue()));
+      }
+      return result;
+    }
+    if (value instanceof List) {
+      JSONArray result = new JSONArray();
+      for (Object o : (List) value) {
+        result.put(toJSON(o));
+      }
+      return result;
+    }
+    if (value instanceof Date)
+      return XmlRpcDateCodec.UTC.format((Date) value) + 'Z';
+    return value;
+  }
+
+  /**
+   * Converts a JSON value back to an xmlrpc value; dates stay strings.
+   */
+  @SuppressWarnings("unchecked")
+  static Object fromJSON(Object value) throws JSONException {
+    if (value instanceof JSONObject) {
+      JSONObject json = (JSONObject) value;
+      XmlRpcStruct result = new XmlRpcStruct();
+      for (Iterator<?> keys = json.keys(); keys.hasNext();) {
+        String key = (String) keys.next();
+        Object o = fromJSON(json.get(key));
+        if (o != null)
+          result.put(key, o);
+      }
+      return result;
+    }
+    if (value instanceof JSONArray) {
+      JSONArray json = (JSONArray) value;
+      XmlRpcArray result = new XmlRpcArray();
+      for (int i = 0; i < json.length(); i++) {
+        result.add(fromJSON(json.get(i)));
+      }
+      return result;
+    }
+    if (value == JSONObject.NULL)
+      return null;
+    if ((value instanceof Long) && (((Long) value).longValue() == ((Long) value)
+        .intValue()))
+      return Integer.valueOf(((Long) value).intValue());
+    return value;
+  }
+
+  private static Integer mapped(Map<Integer, Integer> ids, Object id) {
+    if (id == null)
+      return null;
+    try {
+      return ids.get(Integer.valueOf(String.valueOf(id)));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the whole blog to a stream as gzipped NDJSON. The stream is
+   * finished but not closed.
+   * 
+   * @param out stream to write to
+   * @return number of records written of each type
+   * @throws XmlRpcFault when the blog cannot be read
+   * @throws IOException when the stream cannot be written
+   */
+  @SuppressWarnings("nls")
+  public Summary export(final OutputStream out) throws XmlRpcFault,
+      IOException {
+    final Summary summary = new Summary();
+    final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(
+        QUEUE_SIZE);
+    ExecutorService executor = Executors.newCachedThreadPool(
+        new DaemonThreadFactory("wordpress-backup"));
+    Future<?> compressor = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException, InterruptedException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out, CHUNK_SIZE);
+        byte[] chunk;
+        while ((chunk = chunks.take()) != END_OF_CHUNKS) {
+          gzip.write(chunk);
+        }
+        gzip.finish();
+        return null;
+      }
+    });
+    Writer writer = new Writer(chunks, compressor, summary);
+    try {
+      for (Category category : this.wp.getCategories()) {
+        writer.write(CATEGORY, category);
+      }
+      for (Author author : this.wp.getAuthors()) {
+        writer.write(AUTHOR, author);
+      }
+      writeAll(writer, POST, this.wp.iterateAllPosts(this.pageSize));
+      writeAll(writer, PAGE, this.wp.iterateAllPages(this.pageSize));
+      writeComments(writer, executor);
+      writer.finish();
+      compressor.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Export is interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return summary;
+  }
+
+  /**
+   * Restores a backup written by {@link #export(OutputStream)} into the
+   * blog. Records that fail are counted and skipped.
+   * 
+   * @param in stream of the backup, it is not closed
+   * @return number of records restored and failed of each type
+   * @throws XmlRpcFault when the categories of the blog cannot be read
+   * @throws IOException when the backup cannot be read
+   */
+  @SuppressWarnings("nls")
+  public Summary restore(final InputStream in) throws XmlRpcFault,
+      IOException {
+    final Summary summary = new Summary();
+    // categories that exist already are used instead of created again
+    Map<String, Integer> names = new HashMap<String, Integer>();
+    for (Category category : this.wp.getCategories()) {
+      names.put(category.getCategoryName(),
+          Integer.valueOf(category.getCategoryId()));
+    }
+    final BlockingQueue<JSONObject> records;
+    records = new ArrayBlockingQueue<JSONObject>(this.pageSize);
+    ExecutorService executor = Executors
+        .newSingleThreadExecutor(new DaemonThreadFactory("wordpress-restore"));
+    Future<?> reader = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException, InterruptedException {
+        try {
+          BufferedReader lines = new BufferedReader(new InputStreamReader(
+              new GZIPInputStream(in), "UTF-8"));
+          String line;
+          while ((line = lines.readLine()) != null) {
+            if (line.length() == 0)
+              continue;
+            try {
+              records.put(new JSONObject(line));
+            } catch (JSONException e) {
+              summary.count(INVALID, false);
+            }
+          }
+        } finally {
+          records.put(END_OF_RECORDS);
+        }
+        return null;
+      }
+    });
+    Map<Integer, Integer> categories = new HashMap<Integer, Integer>();
+    Map<Integer, Integer> posts = new HashMap<Integer, Integer>();
+    Map<Integer, Integer> comments = new HashMap<Integer, Integer>();
+    Map<Integer, List<Page>> orphans = new HashMap<Integer, List<Page>>();
+    try {
+      JSONObject record;
+      while ((record = records.take()) != END_OF_RECORDS) {
+        String type = record.optString("type");
+        try {
+          XmlRpcStruct data = (XmlRpcStruct) fromJSON(record
+              .getJSONObject("data"));
+          if (CATEGORY.equals(type)) {
+            restoreCategory(data, names, categories);
+          } else if (POST.equals(type) || PAGE.equals(type)) {
+            restorePost(type, data, posts, orphans);
+          } else if (COMMENT.equals(type)) {
+            restoreComment(data, posts, comments);
+          } else {
+            // authors and unknown records are not restored
+            continue;
+          }
+          summary.count(type, true);
+        } catch (XmlRpcFault | XmlRpcException | JSONException
+            | ClassCastException | NumberFormatException e) {
+          summary.count(type, false);
+        }
+      }
+      reader.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Restore is interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return summary;
+  }
+
+  @SuppressWarnings("nls")
+  private void restoreCategory(XmlRpcStruct data, Map<String, Integer> names,
+      Map<Integer, Integer> categories) throws XmlRpcFault {
+    Category category = new Category();
+    category.fromXmlRpcStruct(data);
+    Integer id = names.get(category.getCategoryName());
+    if (id == null) {
+      Integer parent = mapped(categories, category.getParentId());
+      id = Integer.valueOf(this.wp.newCategory(category.getCategoryName(), "",
+          (parent == null) ? 0 : parent.intValue()));
+      names.put(category.getCategoryName(), id);
+    }
+    categories.put(Integer.valueOf(category.getCategoryId()), id);
+  }
+
+  @SuppressWarnings({ "nls", "unchecked" })
+  private void restoreComment(XmlRpcStruct data, Map<Integer, Integer> posts,
+      Map<Integer, Integer> comments) throws XmlRpcFault {
+    Comment comment = new Comment();
+    comment.fromXmlRpcStruct(data);
+    Integer post = mapped(posts, comment.getPost_id());
+    if (post == null)
+      throw new XmlRpcFault(404, "The post of the comment is not restored");
+    Integer parent = mapped(comments, comment.getParent());
+    Integer id = this.wp.newComment(post, parent, comment.getContent(),
+        comment.getAuthor(), comment.getAuthor_url(),
+        comment.getAuthor_email());
+    comments.put(comment.getComment_id(), id);
+    // a new comment is from the user restoring it, with the current date
+    comment.setComment_id(id);
+    comment.setPost_id(post);
+    comment.setParent(parent);
+    this.wp.editComment(comment);
+  }
+
+  @SuppressWarnings({ "nls", "unchecked" })
+  private void restorePost(String type, XmlRpcStruct data,
+      Map<Integer, Integer> posts, Map<Integer, List<Page>> orphans)
+      throws XmlRpcFault {
+    Object oldId = data.get(POST.equals(type) ? "postid" : "page_id");
+    for (String key : new String[] { "postid", "page_id", "link",
+        "permaLink", "userid", "wp_author", "wp_author_id",
+        "wp_author_display_name", "wp_page_parent_title" }) {
+      data.remove(key);
+    }
+    Object customFields = data.get("custom_fields");
+    if (customFields instanceof List) {
+      // ids of custom fields would change the fields of other posts
+      for (Object field : (List<Object>) customFields) {
+        if (field instanceof Map)
+          ((Map<String, Object>) field).remove("id");
+      }
+    }
+    Object oldParent = data.get("wp_page_parent_id");
+    Integer parent = mapped(posts, oldParent);
+    data.put("wp_page_parent_id", (parent == null) ? Integer.valueOf(0)
+        : parent);
+    Page page = new Page();
+    page.fromXmlRpcStruct(data);
+    String status = String.valueOf(data.get(POST.equals(type) ? "post_status"
+        : "page_status"));
+    boolean publish = "publish".equals(status);
+    Integer id;
+    if (POST.equals(type)) {
+      id = Integer.valueOf(this.wp.newPost(page, publish));
+    } else {
+      id = Integer.valueOf(this.wp.newPage(page, String.valueOf(publish)));
+      if ((parent == null) && (oldParent != null)
+          && !"0".equals(String.valueOf(oldParent))) {
+        // the parent comes later, the page is moved under it then
+        Integer key = Integer.valueOf(String.valueOf(oldParent));
+        List<Page> children = orphans.get(key);
+        if (children == null) {
+          children = new ArrayList<Page>();
+          orphans.put(key, children);
+        }
+        page.setPage_id(id);
+        children.add(page);
+      }
+    }
+    if (oldId == null)
+      return;
+    Integer key = Integer.valueOf(String.valueOf(oldId));
+    posts.put(key, id);
+    List<Page> children = orphans.remove(key);
+    if (children != null) {
+      for (Page child : children) {
+        child.setWp_page_parent_id(id);
+        this.wp.editPage(child.getPage_id().intValue(), child, String
+            .valueOf("publish".equals(child.getPage_status())));
+      }
+    }
+  }
+
+  /**
+   * @param pageSize number of items fetched at once
+   */
+  @SuppressWarnings("nls")
+  public void setPageSize(int pageSize) {
+    if (pageSize < 1)
+      throw new IllegalArgumentException("pageSize must be positive");
+    this.pageSize = pageSize;
+  }
+
+  private static void writeAll(Writer writer, String type,
+      XmlRpcIterator<Page> items) throws XmlRpcFault, IOException,
+      InterruptedException {
+    try {
+      while (items.hasNext()) {
+        writer.write(type, items.next());
+      }
+    } catch (XmlRpcException e) {
+      if (e.getCause() instanceof XmlRpcFault)
+        throw (XmlRpcFault) e.getCause();
+      throw e;
+    } finally {
+      items.close();
+    }
+  }
+
+  /**
+   * Writes the comments oldest first. The newest first list is read page by
+   * page until a short page comes back, fetching the next page in the
+   * background, and the pages wait in a temporary file to be written from
+   * the last one.
+   */
+  @SuppressWarnings("nls")
+  private void writeComments(Writer writer, ExecutorService executor)
+      throws XmlRpcFault, IOException, InterruptedException {
+    File file = File.createTempFile("wordpress-backup", ".ndjson");
+    RandomAccessFile pages = new RandomAccessFile(file, "rw");
+    try {
+      // position, length and number of comments of each page in the file
+      List<long[]> index = new ArrayList<long[]>();
+      ByteArrayOutputStream page = new ByteArrayOutputStream();
+      Set<Integer> seen = new HashSet<Integer>();
+      int offset = 0;
+      Future<List<Comment>> next = fetchComments(executor, offset);
+      while (next != null) {
+        List<Comment> comments;
+        try {
+          comments = next.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof XmlRpcFault)
+            throw (XmlRpcFault) e.getCause();
+          throw new XmlRpcException(e.getCause().getMessage(), e.getCause());
+        }
+        offset += comments.size();
+        next = (comments.size() < this.pageSize) ? null : fetchComments(
+            executor, offset);
+        page.reset();
+        int count = 0;
+        for (int i = comments.size() - 1; i >= 0; i--) {
+          Comment comment = comments.get(i);
+          // comments added during the listing shift the pages
+          if (seen.add(comment.getComment_id())) {
+            page.write(Writer.record(COMMENT, comment));
+            count++;
+          }
+        }
+        if (count == 0)
+          continue;
+        index.add(new long[] { pages.getFilePointer(), page.size(), count });
+        pages.write(page.toByteArray());
+      }
+      for (int i = index.size() - 1; i >= 0; i--) {
+        long[] entry = index.get(i);
+        byte[] records = new byte[(int) entry[1]];
+        pages.seek(entry[0]);
+        pages.readFully(records);
+        writer.write(COMMENT, records, (int) entry[2]);
+      }
+    } finally {
+      pages.close();
+      file.delete();
+    }
+  }
+
+  private Future<List<Comment>> fetchComments(ExecutorService executor,
+      final int offset) {
+    final int number = this.pageSize;
+    return executor.submit(new Callable<List<Comment>>() {
+      @SuppressWarnings("boxing")
+      @Override
+      public List<Comment> call() throws XmlRpcFault {
+        return BlogBackup.this.wp.getComments(null, null, number, offset);
+      }
+    });
+  }
+
+  /**
+   * Turns records into lines of JSON and hands them to the compressing
+   * thread in chunks.
+   */
+  private static final class Writer {
+
+    private final ByteArrayOutputStream buffer;
+
+    private final BlockingQueue<byte[]> chunks;
+
+    private final Future<?>             compressor;
+
+    private final Summary               summary;
+
+    Writer(BlockingQueue<byte[]> chunks, Future<?> compressor,
+        Summary summary) {
+      this.buffer = new ByteArrayOutputStream(CHUNK_SIZE + 4096);
+      this.chunks = chunks;
+      this.compressor = compressor;
+      this.summary = summary;
+    }
+
+    void finish() throws IOException, InterruptedException {
+      if (this.buffer.size() > 0)
+        put(this.buffer.toByteArray());
+      put(END_OF_CHUNKS);
+    }
+
+    /**
+     * Queues a chunk, unless the compressing thread stopped and will not
+     * take it.
+     */
+    private void put(byte[] chunk) throws IOException, InterruptedException {
+      while (!this.chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+        if (this.compressor.isDone())
+          throw failure();
+      }
+    }
+
+    @SuppressWarnings("nls")
+    private IOException failure() throws InterruptedException {
+      try {
+        this.compressor.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException)
+          return (IOException) e.getCause();
+        return new IOException(e.getCause());
+      }
+      return new IOException("The backup cannot be written");
+    }
+
+    /**
+     * @return the line of JSON of an item
+     */
+    @SuppressWarnings("nls")
+    static byte[] record(String type, XmlRpcMapped item) throws IOException {
+      try {
+        JSONObject record = new JSONObject();
+        record.put("type", type);
+        record.put("data", toJSON(item));
+        return (record.toString() + '\n').getBytes("UTF-8");
+      } catch (JSONException e) {
+        throw new IOException(e.getMessage());
+      }
+    }
+
+    void write(String type, XmlRpcMapped item) throws IOException,
+        InterruptedException {
+      write(type, record(type, item), 1);
+    }
+
+    /**
+     * Writes lines made by {@link #record(String, XmlRpcMapped)}.
+     */
+    void write(String type, byte[] records, int count) throws IOException,
+        InterruptedException {
+      if (this.compressor.isDone())
+        throw failure();
+      this.buffer.write(records);
+      for (int i = 0; i < count; i++) {
+        this.summary.count(type, true);
+      }
+      if (this.buffer.size() >= CHUNK_SIZE) {
+        put(this.buffer.toByteArray());
+        this.buffer.reset();
+      }
+    }
+  }
+}
@@ -0,0 +1,508 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import redstone.xmlrpc.XmlRpcFault;
+
+/**
+ * 
+ * Imports a directory tree of post files, in the format of
+ * {@link Page#fromFile(File)}, as new posts. Files are parsed on a pool of
+ * threads and uploaded by a fixed number of threads, each sending several
+ * posts in one multicall request. Parsed posts wait in a bounded queue, so
+ * parsing stops when the uploads fall behind and memory use does not depend
+ * on the number of files.
+ * 
+ * Every file that was handled gets a line in a manifest: its path relative
+ * to the directory, a tab and the id of the new post, or a tab, a dash, a
+ * tab and the reason it failed. The manifest is appended to, and files that
+ * it lists with a post id are skipped, so an interrupted import can be run
+ * again to go on where it stopped.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class BulkImporter {
+
+  /**
+   * 
+   * Counts of an import.
+   * 
+   */
+  public static final class Result {
+
+    private final long elapsed;
+
+    private final int  failed;
+
+    private final int  imported;
+
+    private final int  skipped;
+
+    Result(int imported, int failed, int skipped, long elapsed) {
+      this.imported = imported;
+      this.failed = failed;
+      this.skipped = skipped;
+      this.elapsed = elapsed;
+    }
+
+    /**
+     * @return duration of the import in milliseconds
+     */
+    public long getElapsed() {
+      return this.elapsed;
+    }
+
+    /**
+     * @return number of files that could not be parsed or posted
+     */
+    public int getFailed() {
+      return this.failed;
+    }
+
+    /**
+     * @return number of posts that were created
+     */
+    public int getImported() {
+      return this.imported;
+    }
+
+    /**
+     * @return number of files that were imported by an earlier run
+     */
+    public int getSkipped() {
+      return this.skipped;
+    }
+
+    /**
+     * @return posts created per second
+     */
+    public double getThroughput() {
+      return (this.elapsed == 0) ? 0 : (this.imported * 1000.0)
+          / this.elapsed;
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings({ "nls", "boxing" })
+    @Override
+    public String toString() {
+      return String.format("%d imported, %d failed, %d skipped in %.1fs "
+          + "(%.1f posts/s)", this.imported, this.failed, this.skipped,
+          this.elapsed / 1000.0, getThroughput());
+    }
+  }
+
+  private static final class Item {
+    final String error;
+
+    final Page   page;
+
+    final String path;
+
+    Item(String path, Page page, String error) {
+      this.path = path;
+      this.page = page;
+      this.error = error;
+    }
+  }
+
+  /**
+   * Default number of posts sent in one request
+   */
+  public static final int      DEFAULT_BATCH_SIZE = 10;
+
+  /**
+   * Default number of threads that upload at the same time
+   */
+  public static final int      DEFAULT_UPLOADERS  = 4;
+
+  private static final Item    END                = new Item(null, null, null);
+
+  private int                  batchSize          = DEFAULT_BATCH_SIZE;
+
+  private final AtomicInteger  failed             = new AtomicInteger();
+
+  private final AtomicInteger  imported           = new AtomicInteger();
+
+  private volatile IOException manifestError;
+
+  private int                  parsers;
+
+  private PrintStream          progress           = null;
+
+  private long                 progressInterval   = 5000;
+
+  private boolean              publish            = true;
+
+  private int                  queueSize          = 100;
+
+  private int                  uploaders          = DEFAULT_UPLOADERS;
+
+  private final Wordpress      wp;
+
+  /**
+   * @param wp client to create the posts with, it is shared by all threads
+   */
+  public BulkImporter(Wordpress wp) {
+    this.wp = wp;
+    this.parsers = Runtime.getRuntime().availableProcessors();
+  }
+
+  private static void list(File directory, String prefix, List<String> paths) {
+    File[] files = directory.listFiles();
+    if (files == null)
+      return;
+    Arrays.sort(files);
+    for (File file : files) {
+      if (file.getName().startsWith(".")) //$NON-NLS-1$
+        continue;
+      if (file.isDirectory()) {
+        list(file, prefix + file.getName() + '/', paths);
+      } else if (file.isFile()) {
+        paths.add(prefix + file.getName());
+      }
+    }
+  }
+
+  /**
+   * Reads the paths that an earlier run imported from a manifest.
+   */
+  @SuppressWarnings("nls")
+  private static Set<String> readManifest(File manifest) throws IOException {
+    Set<String> result = new HashSet<String>();
+    if (!manifest.exists())
+      return result;
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        new FileInputStream(manifest), "UTF-8"));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split("\t", 3);
+        if ((fields.length >= 2) && !"-".equals(fields[1]))
+          result.add(fields[0]);
+      }
+    } finally {
+      in.close();
+    }
+    return result;
+  }
+
+  /**
+   * Queues an end for each uploader.
+   */
+  private void end(BlockingQueue<Item> queue) {
+    try {
+      for (int i = 0; i < this.uploaders; i++) {
+        queue.put(END);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private Item parse(File directory, String path) {
+    try {
+      return new Item(path, Page.fromFile(new File(directory, path)), null);
+    } catch (IOException e) {
+      return new Item(path, null, String.valueOf(e.getMessage()));
+    } catch (InvalidPostFormatException e) {
+      return new Item(path, null, "Invalid post format"); //$NON-NLS-1$
+    } catch (RuntimeException e) {
+      return new Item(path, null, e.toString());
+    }
+  }
+
+  @SuppressWarnings({ "nls", "boxing" })
+  private void printProgress(int remaining, long start) {
+    long elapsed = System.nanoTime() - start;
+    this.progress.println(String.format(
+        "%d imported, %d failed, %d to go, %.1f posts/s", this.imported.get(),
+        this.failed.get(), remaining, (this.imported.get() * 1e9) / elapsed));
+  }
+
+  @SuppressWarnings("nls")
+  private void record(Writer manifest, String path, String id, String error) {
+    if (id == null) {
+      this.failed.incrementAndGet();
+    } else {
+      this.imported.incrementAndGet();
+    }
+    StringBuilder line = new StringBuilder(path).append('\t');
+    if (id == null) {
+      line.append("-\t").append(String.valueOf(error).replace('\n', ' '));
+    } else {
+      line.append(id);
+    }
+    line.append('\n');
+    synchronized (manifest) {
+      try {
+        manifest.write(line.toString());
+        manifest.flush();
+      } catch (IOException e) {
+        this.manifestError = e;
+      }
+    }
+  }
+
+  /**
+   * Imports the files under a directory that are not imported yet. Hidden
+   * files and directories are left out.
+   * 
+   * @param directory the directory to import
+   * @param manifest the manifest to append to, it is created if needed
+   * @return counts of the import
+   * @throws IOException when the manifest cannot be read or written
+   * @throws InterruptedException when the thread is interrupted, the files
+   *           that were imported until then are in the manifest
+   */
+  @SuppressWarnings("nls")
+  public Result run(final File directory, File manifest) throws IOException,
+      InterruptedException {
+    long start = System.nanoTime();
+    this.imported.set(0);
+    this.failed.set(0);
+    this.manifestError = null;
+    Set<String> done = readManifest(manifest);
+    List<String> paths = new ArrayList<String>();
+    list(directory, "", paths);
+    int all = paths.size();
+    paths.removeAll(done);
+    int skipped = all - paths.size();
+    final Writer out = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(manifest, true), "UTF-8"));
+    final BlockingQueue<Item> queue = new ArrayBlockingQueue<Item>(
+        this.queueSize);
+    final AtomicInteger remaining = new AtomicInteger(paths.size());
+    ExecutorService parsing = Executors.newFixedThreadPool(this.parsers,
+        new DaemonThreadFactory("wordpress-import-parse"));
+    ExecutorService uploading = Executors.newFixedThreadPool(this.uploaders,
+        new DaemonThreadFactory("wordpress-import-upload"));
+    try {
+      for (int i = 0; i < this.uploaders; i++) {
+        uploading.execute(new Runnable() {
+          @Override
+          public void run() {
+            upload(queue, out);
+          }
+        });
+      }
+      uploading.shutdown();
+      if (paths.isEmpty()) {
+        for (int i = 0; i < this.uploaders; i++) {
+          queue.put(END);
+        }
+      }
+      for (final String path : paths) {
+        parsing.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              queue.put(parse(directory, path));
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } catch (RuntimeException | Error e) {
+              record(out, path, null, e.toString());
+              throw e;
+            } finally {
+              // the uploaders wait for the end even if this task failed
+              if (remaining.decrementAndGet() == 0)
+                end(queue);
+            }
+          }
+        });
+      }
+      parsing.shutdown();
+      while (!uploading.awaitTermination(this.progressInterval,
+          TimeUnit.MILLISECONDS)) {
+        if (this.progress != null)
+          printProgress(remaining.get() + queue.size(), start);
+      }
+    } finally {
+      parsing.shutdownNow();
+      uploading.shutdownNow();
+      synchronized (out) {
+        out.close();
+      }
+    }
+    if (this.manifestError != null)
+      throw this.manifestError;
+    return new Result(this.imported.get(), this.failed.get(), skipped,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  /**
+   * @param batchSize number of posts sent in one multicall request, 1 to
+   *          send them one by one
+   */
+  @SuppressWarnings("nls")
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1)
+      throw new IllegalArgumentException("batchSize must be positive");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @param parsers number of threads that parse the files
+   */
+  @SuppressWarnings("nls")
+  public void setParsers(int parsers) {
+    if (parsers < 1)
+      throw new IllegalArgumentException("parsers must be positive");
+    this.parsers = parsers;
+  }
+
+  /**
+   * @param progress stream to print the progress to while importing, or
+   *          <code>null</code> for none
+   * @param intervalMillis time between two progress lines
+   */
+  public void setProgress(PrintStream progress, long intervalMillis) {
+    this.progress = progress;
+    this.progressInterval = intervalMillis;
+  }
+
+  /**
+   * @param publish <code>true</code> to publish the posts, <code>false</code>
+   *          to save them as drafts
+   */
+  public void setPublish(boolean publish) {
+    this.publish = publish;
+  }
+
+  /**
+   * @param queueSize number of parsed posts that can wait to be uploaded
+   */
+  @SuppressWarnings("nls")
+  public void setQueueSize(int queueSize) {
+    if (queueSize < 1)
+      throw new IllegalArgumentException("queueSize must be positive");
+    this.queueSize = queueSize;
+  }
+
+  /**
+   * @param uploaders number of threads that upload at the same time, which
+   *          is the number of requests the server gets at once
+   */
+  @SuppressWarnings("nls")
+  public void setUploaders(int uploaders) {
+    if (uploaders < 1)
+      throw new IllegalArgumentException("uploaders must be positive");
+    this.uploaders = uploaders;
+  }
+
+  /**
+   * Takes batches of parsed posts from the queue and sends them, until the
+   * end of the queue.
+   */
+  void upload(BlockingQueue<Item> queue, Writer manifest) {
+    List<Item> items = new ArrayList<Item>(this.batchSize);
+    boolean finished = false;
+    try {
+      while (!finished) {
+        items.clear();
+        items.add(queue.take());
+        queue.drainTo(items, this.batchSize - 1);
+        int ends = 0;
+        while (items.remove(END)) {
+          ends++;
+        }
+        if (ends > 0) {
+          finished = true;
+          // the others are for the other uploaders
+          for (int i = 1; i < ends; i++) {
+            queue.put(END);
+          }
+        }
+        upload(items, manifest);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void upload(List<Item> items, Writer manifest) {
+    List<Item> posts = new ArrayList<Item>(items.size());
+    for (Item item : items) {
+      if (item.page == null) {
+        record(manifest, item.path, null, item.error);
+      } else {
+        posts.add(item);
+      }
+    }
+    if (posts.isEmpty())
+      return;
+    if (posts.size() == 1) {
+      Item item = posts.get(0);
+      try {
+        record(manifest, item.path, this.wp.newPost(item.page, this.publish),
+            null);
+      } catch (XmlRpcFault e) {
+        record(manifest, item.path, null, e.getMessage());
+      } catch (RuntimeException e) {
+        record(manifest, item.path, null, e.toString());
+      }
+      return;
+    }
+    XmlRpcBatch batch = this.wp.newBatch();
+    batch.setBatchSize(posts.size());
+    List<BatchResult<String>> results = new ArrayList<BatchResult<String>>();
+    for (Item item : posts) {
+      results.add(batch.newPost(item.page, this.publish));
+    }
+    RuntimeException failure = null;
+    try {
+      batch.execute();
+    } catch (RuntimeException e) {
+      // the posts sent before the failure have their own results
+      failure = e;
+    }
+    for (int i = 0; i < posts.size(); i++) {
+      String path = posts.get(i).path;
+      BatchResult<String> result = results.get(i);
+      if (!result.isDone()) {
+        record(manifest, path, null, failure.toString());
+        continue;
+      }
+      try {
+        record(manifest, path, result.get(), null);
+      } catch (XmlRpcFault e) {
+        record(manifest, path, null, e.getMessage());
+      } catch (RuntimeException e) {
+        record(manifest, path, null, e.toString());
+      }
+    }
+  }
+}
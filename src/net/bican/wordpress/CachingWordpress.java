@@ -0,0 +1,571 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import redstone.xmlrpc.XmlRpcFault;
+
+/**
+ * 
+ * <code>Wordpress</code> client that caches the results of calls whose data
+ * rarely changes: categories, authors, status lists, supported methods and
+ * text filters, and comment counts.
+ * 
+ * Entries expire after a time to live that can be set per method, and the
+ * least recently used entries are evicted when the cache is full. Writes
+ * made through this client, batched or not, invalidate the entries they
+ * affect, e.g. <code>newCategory</code> invalidates
+ * <code>getCategories</code>; changes made by others are seen when the
+ * entries expire, or after {@link #invalidate(String)}.
+ * 
+ * Cached lists are copied for each caller, but the objects in them are
+ * shared, so they should not be modified.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class CachingWordpress extends Wordpress {
+
+  private static final class CachedValue {
+
+    final long   expires;
+
+    final Object value;
+
+    CachedValue(Object value, long expires) {
+      this.value = value;
+      this.expires = expires;
+    }
+  }
+
+  private interface Loader<T> {
+    T load() throws XmlRpcFault;
+  }
+
+  /**
+   * 
+   * Snapshot of the cache usage of a client.
+   * 
+   * @author Can Bican &lt;can@bican.net&gt;
+   * 
+   */
+  public static final class Statistics {
+
+    private final long evictions;
+
+    private final long hits;
+
+    private final long misses;
+
+    private final int  size;
+
+    Statistics(long hits, long misses, long evictions, int size) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.size = size;
+    }
+
+    /**
+     * @return number of entries removed to make room for new ones
+     */
+    public long getEvictions() {
+      return this.evictions;
+    }
+
+    /**
+     * @return number of calls answered from the cache
+     */
+    public long getHits() {
+      return this.hits;
+    }
+
+    /**
+     * @return number of calls sent to the server
+     */
+    public long getMisses() {
+      return this.misses;
+    }
+
+    /**
+     * @return number of entries in the cache
+     */
+    public int getSize() {
+      return this.size;
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    @SuppressWarnings("nls")
+    public String toString() {
+      return "hits=" + this.hits + ", misses=" + this.misses + ", evictions="
+          + this.evictions + ", size=" + this.size;
+    }
+  }
+
+  /**
+   * Default time to live of the entries, in milliseconds
+   */
+  public static final long               DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000;
+
+  /**
+   * Default maximum number of entries
+   */
+  public static final int                DEFAULT_MAX_ENTRIES  = 256;
+
+  private static final List<String>      METHODS              = cachedMethods();
+
+  private final Map<String, CachedValue> entries;
+
+  private long                           evictions            = 0;
+
+  private long                           generation           = 0;
+
+  private long                           hits                 = 0;
+
+  private int                            maxEntries           = DEFAULT_MAX_ENTRIES;
+
+  private long                           misses               = 0;
+
+  private final Map<String, Long>        timeToLive;
+
+  /**
+   * @param username User name
+   * @param password Password
+   * @param xmlRpcUrl xmlrpc communication point, usually blogurl/xmlrpc.php
+   * @throws MalformedURLException If the URL is faulty
+   */
+  public CachingWordpress(String username, String password, String xmlRpcUrl)
+      throws MalformedURLException {
+    this(username, password, xmlRpcUrl, new HttpURLConnectionTransport());
+  }
+
+  /**
+   * @param username User name
+   * @param password Password
+   * @param xmlRpcUrl xmlrpc communication point, usually blogurl/xmlrpc.php
+   * @param transport Transport to send the calls with
+   * @throws MalformedURLException If the URL is faulty
+   */
+  public CachingWordpress(String username, String password, String xmlRpcUrl,
+      XmlRpcTransport transport) throws MalformedURLException {
+    super(username, password, xmlRpcUrl, transport);
+    this.timeToLive = new HashMap<String, Long>();
+    this.entries = new LinkedHashMap<String, CachedValue>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+        if (size() <= CachingWordpress.this.maxEntries)
+          return false;
+        CachingWordpress.this.evictions++;
+        return true;
+      }
+    };
+  }
+
+  @SuppressWarnings("nls")
+  private static List<String> cachedMethods() {
+    return Arrays.asList("getAuthors", "getCategories",
+        "getCommentStatusList", "getCommentsCount", "getPageStatusList",
+        "getPostStatusList", "supportedMethods", "supportedTextFilters");
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T cached(String method, Object arg, Loader<T> loader)
+      throws XmlRpcFault {
+    String key = (arg == null) ? method : method + ':' + arg;
+    long now = System.nanoTime();
+    long loading;
+    synchronized (this) {
+      CachedValue e = this.entries.get(key);
+      if ((e != null) && (now - e.expires < 0)) {
+        this.hits++;
+        return (T) copy(e.value);
+      }
+      this.misses++;
+      loading = this.generation;
+    }
+    // loaded without the lock, so that a slow call doesn't hold up the others
+    T value = loader.load();
+    synchronized (this) {
+      long ttl = ttl(method);
+      // not stored if an invalidation happened meanwhile, it may be stale
+      if ((ttl > 0) && (loading == this.generation))
+        this.entries.put(key, new CachedValue(value, now + ttl));
+    }
+    return (T) copy(value);
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked", "static-method" })
+  private Object copy(Object value) {
+    if (value instanceof List)
+      return new ArrayList((List) value);
+    return value;
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#deleteCategory(int)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public int deleteCategory(int categoryId) throws XmlRpcFault {
+    try {
+      return super.deleteCategory(categoryId);
+    } finally {
+      written("wp.deleteCategory");
+    }
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#deleteComment(int)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public boolean deleteComment(int commentID) throws XmlRpcFault {
+    try {
+      return super.deleteComment(commentID);
+    } finally {
+      written("wp.deleteComment");
+    }
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#deletePage(int, java.lang.String)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public Boolean deletePage(int post_ID, String publish) throws XmlRpcFault {
+    try {
+      return super.deletePage(post_ID, publish);
+    } finally {
+      written("wp.deletePage");
+    }
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#deletePost(int, java.lang.String)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public Boolean deletePost(int post_ID, String publish) throws XmlRpcFault {
+    try {
+      return super.deletePost(post_ID, publish);
+    } finally {
+      written("blogger.deletePost");
+    }
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#editComment(net.bican.wordpress.Comment)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public boolean editComment(Comment comment) throws XmlRpcFault {
+    try {
+      return super.editComment(comment);
+    } finally {
+      written("wp.editComment");
+    }
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#getAuthors()
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public List<Author> getAuthors() throws XmlRpcFault {
+    return cached("getAuthors", null, new Loader<List<Author>>() {
+      @Override
+      public List<Author> load() throws XmlRpcFault {
+        return CachingWordpress.super.getAuthors();
+      }
+    });
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#getCategories()
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public List<Category> getCategories() throws XmlRpcFault {
+    return cached("getCategories", null, new Loader<List<Category>>() {
+      @Override
+      public List<Category> load() throws XmlRpcFault {
+        return CachingWordpress.super.getCategories();
+      }
+    });
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#getCommentsCount(java.lang.Integer)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public CommentCount getCommentsCount(final Integer post_ID)
+      throws XmlRpcFault {
+    return cached("getCommentsCount", post_ID, new Loader<CommentCount>() {
+      @Override
+      public CommentCount load() throws XmlRpcFault {
+        return CachingWordpress.super.getCommentsCount(post_ID);
+      }
+    });
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#getCommentStatusList()
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public CommentStatusList getCommentStatusList() {
+    try {
+      return cached("getCommentStatusList", null,
+          new Loader<CommentStatusList>() {
+            @Override
+            public CommentStatusList load() {
+              return CachingWordpress.super.getCommentStatusList();
+            }
+          });
+    } catch (XmlRpcFault e) {
+      // the loader doesn't throw it
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#getPageStatusList()
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public List<PostAndPageStatus> getPageStatusList() throws XmlRpcFault {
+    return cached("getPageStatusList", null,
+        new Loader<List<PostAndPageStatus>>() {
+          @Override
+          public List<PostAndPageStatus> load() throws XmlRpcFault {
+            return CachingWordpress.super.getPageStatusList();
+          }
+        });
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#getPostStatusList()
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public List<PostAndPageStatus> getPostStatusList() throws XmlRpcFault {
+    return cached("getPostStatusList", null,
+        new Loader<List<PostAndPageStatus>>() {
+          @Override
+          public List<PostAndPageStatus> load() throws XmlRpcFault {
+            return CachingWordpress.super.getPostStatusList();
+          }
+        });
+  }
+
+  /**
+   * @return the cache usage so far
+   */
+  public synchronized Statistics getStatistics() {
+    return new Statistics(this.hits, this.misses, this.evictions,
+        this.entries.size());
+  }
+
+  /**
+   * Removes the cached results of a method, for all arguments.
+   * 
+   * @param method name of the method, like <code>getCategories</code>
+   */
+  public synchronized void invalidate(String method) {
+    checkMethod(method);
+    this.generation++;
+    String prefix = method + ':';
+    for (Iterator<String> i = this.entries.keySet().iterator(); i.hasNext();) {
+      String key = i.next();
+      if (key.equals(method) || key.startsWith(prefix))
+        i.remove();
+    }
+  }
+
+  /**
+   * Removes all cached results.
+   */
+  public synchronized void invalidateAll() {
+    this.generation++;
+    this.entries.clear();
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#newCategory(java.lang.String,
+   *      java.lang.String, int)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public int newCategory(String name, String slug, int parentId)
+      throws XmlRpcFault {
+    try {
+      return super.newCategory(name, slug, parentId);
+    } finally {
+      written("wp.newCategory");
+    }
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#newComment(java.lang.Integer,
+   *      java.lang.Integer, java.lang.String, java.lang.String,
+   *      java.lang.String, java.lang.String)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public Integer newComment(Integer post_id, Integer comment_parent,
+      String content, String author, String author_url, String author_email)
+      throws XmlRpcFault {
+    try {
+      return super.newComment(post_id, comment_parent, content, author,
+          author_url, author_email);
+    } finally {
+      written("wp.newComment");
+    }
+  }
+
+  /**
+   * @param maxEntries maximum number of entries, the least recently used
+   *          ones are evicted beyond it
+   */
+  @SuppressWarnings("nls")
+  public synchronized void setMaxEntries(int maxEntries) {
+    if (maxEntries < 1)
+      throw new IllegalArgumentException("maxEntries must be positive");
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Sets how long the results of a method are cached. The results already
+   * cached for the method are invalidated.
+   * 
+   * @param method name of the method, like <code>getCategories</code>
+   * @param duration time to live, 0 to stop caching the method
+   * @param unit unit of the duration
+   */
+  public synchronized void setTimeToLive(String method, long duration,
+      TimeUnit unit) {
+    checkMethod(method);
+    this.timeToLive.put(method, Long.valueOf(unit.toNanos(duration)));
+    invalidate(method);
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#supportedMethods()
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public List<String> supportedMethods() throws XmlRpcFault {
+    return cached("supportedMethods", null, new Loader<List<String>>() {
+      @Override
+      public List<String> load() throws XmlRpcFault {
+        return CachingWordpress.super.supportedMethods();
+      }
+    });
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.Wordpress#supportedTextFilters()
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public List<String> supportedTextFilters() throws XmlRpcFault {
+    return cached("supportedTextFilters", null, new Loader<List<String>>() {
+      @Override
+      public List<String> load() throws XmlRpcFault {
+        return CachingWordpress.super.supportedTextFilters();
+      }
+    });
+  }
+
+  private synchronized long ttl(String method) {
+    Long ttl = this.timeToLive.get(method);
+    return (ttl == null) ? TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIME_TO_LIVE)
+        : ttl.longValue();
+  }
+
+  @SuppressWarnings({ "nls", "static-method" })
+  private void checkMethod(String method) {
+    if (!METHODS.contains(method))
+      throw new IllegalArgumentException(method + " is not cached, cached "
+          + "methods are " + METHODS);
+  }
+
+  /**
+   * Invalidates the results a write may have changed; the writes sent in
+   * batches come here as well. Editing a comment may change its status, so
+   * it changes the comment counts too.
+   */
+  @Override
+  @SuppressWarnings("nls")
+  void written(String methodName) {
+    switch (methodName) {
+    case "wp.deleteCategory":
+    case "wp.newCategory":
+      invalidate("getCategories");
+      break;
+    case "blogger.deletePost":
+    case "wp.deleteComment":
+    case "wp.deletePage":
+    case "wp.editComment":
+    case "wp.newComment":
+      invalidate("getCommentsCount");
+      break;
+    default:
+      break;
+    }
+  }
+}
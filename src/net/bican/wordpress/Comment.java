@@ -9,11 +9,10 @@
  */
 package net.bican.wordpress;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Date;
 
 import redstone.xmlrpc.XmlRpcStruct;
@@ -251,7 +250,7 @@ public class Comment extends XmlRpcMapped implements StringHeader {
 
   /**
    * 
-   * Creates a comment object from file
+   * Creates a comment object from file, which is in UTF-8
    * 
    * @param file input file
    * @return new Comment object
@@ -261,8 +260,25 @@ public class Comment extends XmlRpcMapped implements StringHeader {
    */
   public static Comment fromFile(File file) throws FileNotFoundException,
       IOException, InvalidPostFormatException {
-    XmlRpcStruct c = FileParser.parseFile(new BufferedReader(new FileReader(
-        file)));
+    return fromFile(file, Charset.forName("UTF-8")); //$NON-NLS-1$
+  }
+
+  /**
+   * 
+   * Creates a comment object from file. Arrays of objects, like custom
+   * fields, are read with the types of
+   * {@link JSONConvertableRegistry#getDefault()}.
+   * 
+   * @param file input file
+   * @param charset encoding of the file
+   * @return new Comment object
+   * @throws FileNotFoundException
+   * @throws IOException
+   * @throws InvalidPostFormatException
+   */
+  public static Comment fromFile(File file, Charset charset)
+      throws FileNotFoundException, IOException, InvalidPostFormatException {
+    XmlRpcStruct c = FileParser.parseFile(file, charset);
     Comment result = new Comment();
     result.fromXmlRpcStruct(c);
     return result;
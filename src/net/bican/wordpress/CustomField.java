@@ -11,6 +11,7 @@ package net.bican.wordpress;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONReader;
 
 /**
  * This class represents custom fields in wordpress.
@@ -19,7 +20,7 @@ import org.json.JSONObject;
  * 
  */
 public class CustomField extends XmlRpcMapped implements StringHeader,
-    JSONConvertable {
+    JSONStreamConvertable {
   String id = null;
 
   String key = null;
@@ -127,4 +128,37 @@ public class CustomField extends XmlRpcMapped implements StringHeader,
     }
   }
 
+  /**
+   * 
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.JSONStreamConvertable#fromJSONReader(org.json.JSONReader)
+   * 
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public void fromJSONReader(JSONReader reader) throws JSONException {
+    String newId = null;
+    String newKey = null;
+    String newValue = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      // values are taken as their texts, like getString does
+      if ("id".equals(name)) {
+        newId = reader.nextValue().toString();
+      } else if ("key".equals(name)) {
+        newKey = reader.nextValue().toString();
+      } else if ("value".equals(name)) {
+        newValue = reader.nextValue().toString();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    this.setId(newId);
+    this.setKey(newKey);
+    this.setValue(newValue);
+  }
+
 }
@@ -0,0 +1,48 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 
+ * Creates named daemon threads, so that background work of the library does
+ * not keep the JVM alive.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+final class DaemonThreadFactory implements ThreadFactory {
+
+  private final String        prefix;
+
+  private final AtomicInteger threads = new AtomicInteger();
+
+  /**
+   * @param prefix prefix of the thread names
+   */
+  DaemonThreadFactory(String prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public Thread newThread(Runnable r) {
+    Thread t = new Thread(r, this.prefix + "-" + this.threads.incrementAndGet());
+    t.setDaemon(true);
+    return t;
+  }
+}
@@ -0,0 +1,559 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Finds the posts and comments of a blog that changed since the last sync,
+ * without downloading the whole blog each time. The state of the last sync
+ * is a watermark: the id, modification date and content hash of each post,
+ * the newest modification date seen and the newest comment id. It is kept
+ * in memory and can be saved to a file between runs, one file per blog.
+ * 
+ * Posts are listed with <code>wp.getPosts</code>, most recently modified
+ * first, with only their ids and modification dates. Only new posts and
+ * posts with another modification date are downloaded. Modification dates
+ * have a resolution of a second, so when the last sync ran in the same
+ * second as the newest modification it saw, give or take the difference of
+ * the clocks, the posts modified in that second are downloaded again as well
+ * and reported only if their content hash changed. When the server gives no
+ * modification dates, the listing carries the contents of the posts instead
+ * and their hashes are compared.
+ * 
+ * Deletions are found by comparing the listed ids with the known ones, which
+ * needs the ids of all posts; the listing is small, but with
+ * {@link #setDetectDeletions(boolean)} turned off it stops at the first page
+ * of unchanged posts, so that the cost of a sync depends only on the number
+ * of changes. New comments are listed newest first until a known one is
+ * reached; edited and deleted comments are not reported.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class DeltaSync {
+
+  /**
+   * 
+   * Changes found by a sync.
+   * 
+   */
+  public static final class Changes {
+
+    private final List<Page>    added    = new ArrayList<Page>();
+
+    private final List<Page>    changed  = new ArrayList<Page>();
+
+    private final List<Comment> comments = new ArrayList<Comment>();
+
+    private final List<Integer> deleted  = new ArrayList<Integer>();
+
+    private boolean             deletionsChecked;
+
+    private int                 downloaded;
+
+    private int                 listed;
+
+    /**
+     * @return posts that are new since the last sync
+     */
+    public List<Page> getAdded() {
+      return this.added;
+    }
+
+    /**
+     * @return posts that changed since the last sync
+     */
+    public List<Page> getChanged() {
+      return this.changed;
+    }
+
+    /**
+     * @return comments that are new since the last sync, newest first
+     */
+    public List<Comment> getComments() {
+      return this.comments;
+    }
+
+    /**
+     * @return ids of the posts that were deleted since the last sync
+     */
+    public List<Integer> getDeleted() {
+      return this.deleted;
+    }
+
+    /**
+     * @return number of posts that were downloaded
+     */
+    public int getDownloaded() {
+      return this.downloaded;
+    }
+
+    /**
+     * @return number of posts in the listings
+     */
+    public int getListed() {
+      return this.listed;
+    }
+
+    /**
+     * @return whether deleted posts were looked for
+     */
+    public boolean isDeletionsChecked() {
+      return this.deletionsChecked;
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @SuppressWarnings("nls")
+    @Override
+    public String toString() {
+      return this.added.size() + " added, " + this.changed.size()
+          + " changed, "
+          + (this.deletionsChecked ? this.deleted.size() + " deleted, " : "")
+          + this.comments.size() + " new comments (" + this.listed
+          + " listed, " + this.downloaded + " downloaded)";
+    }
+  }
+
+  /**
+   * What is known of a post: its modification date, or -1, and the hash of
+   * its content.
+   */
+  private static final class Stamp {
+
+    final String hash;
+
+    final long   modified;
+
+    Stamp(long modified, String hash) {
+      this.modified = modified;
+      this.hash = hash;
+    }
+  }
+
+  /**
+   * Default bound of the difference between the clocks of the client and the
+   * server, in milliseconds
+   */
+  public static final long          DEFAULT_CLOCK_SKEW = 60000;
+
+  /**
+   * Default number of posts listed or downloaded at once
+   */
+  public static final int           DEFAULT_PAGE_SIZE = 100;
+
+  private static final String[]     CONTENT_FIELDS;
+
+  private static final String[]     MODIFIED_FIELDS;
+
+  static {
+    CONTENT_FIELDS = new String[] { "post_title", "post_content",
+        "post_excerpt", "post_status", "post_name", "post_password",
+        "post_parent", "post_date_gmt" };
+    MODIFIED_FIELDS = new String[] { "post_modified_gmt", "post_modified" };
+  }
+
+  private long                      clockSkew         = DEFAULT_CLOCK_SKEW;
+
+  private boolean                   detectDeletions   = true;
+
+  private int                       lastComment;
+
+  private int                       pageSize          = DEFAULT_PAGE_SIZE;
+
+  private Map<Integer, Stamp>       posts;
+
+  private long                      synced            = -1;
+
+  private long                      watermark         = -1;
+
+  private final Wordpress           wp;
+
+  /**
+   * @param wp client of the blog to sync, with no state: the first sync
+   *          reports all posts and comments as new
+   */
+  public DeltaSync(Wordpress wp) {
+    this.wp = wp;
+    this.posts = new HashMap<Integer, Stamp>();
+  }
+
+  @SuppressWarnings("nls")
+  private static String hash(Object value) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] bytes = digest.digest(String.valueOf(value).getBytes("UTF-8"));
+      return String.format("%040x", new BigInteger(1, bytes));
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      // both are required of every java platform
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Hash of a downloaded post; the members are sorted so that the hash does
+   * not depend on the order they came in.
+   */
+  @SuppressWarnings("unchecked")
+  private static String hash(Page post) {
+    return hash(new TreeMap<String, Object>(post.toXmlRpcStruct()));
+  }
+
+  @SuppressWarnings({ "nls", "unchecked" })
+  private static String listedHash(XmlRpcStruct entry) {
+    Map<String, Object> content = new TreeMap<String, Object>(entry);
+    content.remove("post_id");
+    return hash(content);
+  }
+
+  @SuppressWarnings("nls")
+  private static long modified(XmlRpcStruct entry) {
+    for (String field : MODIFIED_FIELDS) {
+      Object date = entry.get(field);
+      if (date instanceof Date)
+        return ((Date) date).getTime();
+      if (date instanceof String) {
+        try {
+          return XmlRpcDateCodec.DEFAULT.parseMillis((String) date);
+        } catch (ParseException e) {
+          return -1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  @SuppressWarnings("nls")
+  private static int postId(XmlRpcStruct entry) {
+    return Integer.parseInt(String.valueOf(entry.get("post_id")));
+  }
+
+  /**
+   * Downloads posts and sorts them into added and changed ones, comparing
+   * the hashes of those known already.
+   * 
+   * @param ids posts to download, with the stamps they get; a stamp without
+   *          a hash takes the hash of the downloaded post
+   */
+  private void download(Map<Integer, Stamp> ids, Map<Integer, Stamp> state,
+      Changes changes) throws XmlRpcFault {
+    if (ids.isEmpty())
+      return;
+    XmlRpcBatch batch = this.wp.newBatch();
+    batch.setBatchSize(this.pageSize);
+    Map<Integer, BatchResult<Page>> results;
+    results = new TreeMap<Integer, BatchResult<Page>>();
+    for (Integer id : ids.keySet()) {
+      results.put(id, batch.getPost(id.intValue()));
+    }
+    batch.execute();
+    for (Map.Entry<Integer, BatchResult<Page>> result : results.entrySet()) {
+      Integer id = result.getKey();
+      Stamp known = this.posts.get(id);
+      Page post;
+      try {
+        post = result.getValue().get();
+      } catch (XmlRpcFault e) {
+        if (e.getErrorCode() != 404)
+          throw e;
+        // deleted since it was listed
+        state.remove(id);
+        if ((known != null) && changes.deletionsChecked)
+          changes.deleted.add(id);
+        continue;
+      }
+      changes.downloaded++;
+      Stamp stamp = ids.get(id);
+      String hash = (stamp.hash == null) ? hash(post) : stamp.hash;
+      state.put(id, new Stamp(stamp.modified, hash));
+      if (known == null)
+        changes.added.add(post);
+      else if (!hash.equals(known.hash))
+        changes.changed.add(post);
+    }
+    ids.clear();
+  }
+
+  /**
+   * Reads the state of an earlier sync from a file written by
+   * {@link #save(File)}, replacing the current one.
+   * 
+   * @param file the file to read
+   * @throws IOException when the file cannot be read or is not a sync state
+   */
+  @SuppressWarnings("nls")
+  public void load(File file) throws IOException {
+    Map<Integer, Stamp> loaded = new HashMap<Integer, Stamp>();
+    long mark = -1;
+    long time = -1;
+    int comment = 0;
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split("\t");
+        if ((fields.length == 2) && "watermark".equals(fields[0])) {
+          mark = Long.parseLong(fields[1]);
+        } else if ((fields.length == 2) && "synced".equals(fields[0])) {
+          time = Long.parseLong(fields[1]);
+        } else if ((fields.length == 2) && "comment".equals(fields[0])) {
+          comment = Integer.parseInt(fields[1]);
+        } else if ((fields.length == 4) && "post".equals(fields[0])) {
+          loaded.put(Integer.valueOf(fields[1]), new Stamp(
+              Long.parseLong(fields[2]), fields[3]));
+        } else if (line.length() > 0) {
+          throw new IOException(file + " is not a sync state: " + line);
+        }
+      }
+    } catch (NumberFormatException e) {
+      throw new IOException(file + " is not a sync state: "
+          + e.getMessage());
+    } finally {
+      in.close();
+    }
+    this.posts = loaded;
+    this.watermark = mark;
+    this.synced = time;
+    this.lastComment = comment;
+  }
+
+  /**
+   * Writes the state of the last sync to a file, replacing it only when it
+   * is completely written.
+   * 
+   * @param file the file to write
+   * @throws IOException when the file cannot be written
+   */
+  @SuppressWarnings("nls")
+  public void save(File file) throws IOException {
+    File temporary = new File(file.getPath() + ".tmp");
+    Writer out = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(temporary), "UTF-8"));
+    try {
+      out.write("watermark\t" + this.watermark + "\n");
+      out.write("synced\t" + this.synced + "\n");
+      out.write("comment\t" + this.lastComment + "\n");
+      for (Map.Entry<Integer, Stamp> post : new TreeMap<Integer, Stamp>(
+          this.posts).entrySet()) {
+        out.write("post\t" + post.getKey() + "\t"
+            + post.getValue().modified + "\t" + post.getValue().hash + "\n");
+      }
+    } finally {
+      out.close();
+    }
+    if (!temporary.renameTo(file)) {
+      // renaming over an existing file fails on some platforms
+      file.delete();
+      if (!temporary.renameTo(file))
+        throw new IOException("Cannot replace " + file);
+    }
+  }
+
+  /**
+   * @param clockSkew bound of the difference between the clocks of the client
+   *          and the server, in milliseconds
+   */
+  @SuppressWarnings("nls")
+  public void setClockSkew(long clockSkew) {
+    if (clockSkew < 0)
+      throw new IllegalArgumentException("clockSkew must not be negative");
+    this.clockSkew = clockSkew;
+  }
+
+  /**
+   * @param detectDeletions whether to list the ids of all posts to find the
+   *          deleted ones, <code>true</code> by default
+   */
+  public void setDetectDeletions(boolean detectDeletions) {
+    this.detectDeletions = detectDeletions;
+  }
+
+  /**
+   * @param pageSize number of posts listed or downloaded at once
+   */
+  @SuppressWarnings("nls")
+  public void setPageSize(int pageSize) {
+    if (pageSize < 1)
+      throw new IllegalArgumentException("pageSize must be positive");
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * @return number of posts known from the syncs so far
+   */
+  public int size() {
+    return this.posts.size();
+  }
+
+  /**
+   * Finds the changes since the last sync, and makes them the state for the
+   * next one. When the sync fails, the state is left as it was.
+   * 
+   * @return posts and comments that changed
+   * @throws XmlRpcFault when the blog cannot be read
+   */
+  public Changes sync() throws XmlRpcFault {
+    Changes changes = new Changes();
+    long time = System.currentTimeMillis();
+    Map<Integer, Stamp> state = new HashMap<Integer, Stamp>(this.posts);
+    long mark = syncPosts(state, changes);
+    int comment = syncComments(changes);
+    this.posts = state;
+    this.watermark = mark;
+    this.synced = time;
+    this.lastComment = comment;
+    return changes;
+  }
+
+  /**
+   * Lists the newest comments until the last known one.
+   * 
+   * @return id of the newest comment
+   */
+  @SuppressWarnings("boxing")
+  private int syncComments(Changes changes) throws XmlRpcFault {
+    int newest = this.lastComment;
+    Set<Integer> seen = new HashSet<Integer>();
+    int offset = 0;
+    boolean done = false;
+    while (!done) {
+      List<Comment> page = this.wp.getComments(null, null, this.pageSize,
+          offset);
+      done = page.size() < this.pageSize;
+      for (Comment comment : page) {
+        int id = comment.getComment_id();
+        if (id <= this.lastComment) {
+          done = true;
+          break;
+        }
+        // comments added during the listing shift the pages
+        if (seen.add(id)) {
+          changes.comments.add(comment);
+          newest = Math.max(newest, id);
+        }
+      }
+      offset += page.size();
+    }
+    return newest;
+  }
+
+  /**
+   * Lists the posts, most recently modified first, and downloads the new and
+   * changed ones.
+   * 
+   * @return the newest modification date seen
+   */
+  @SuppressWarnings("nls")
+  private long syncPosts(Map<Integer, Stamp> state, Changes changes)
+      throws XmlRpcFault {
+    String[] fields = MODIFIED_FIELDS;
+    long mark = this.watermark;
+    Set<Integer> listed = new HashSet<Integer>();
+    Map<Integer, Stamp> pending = new HashMap<Integer, Stamp>();
+    // whether a post may have been modified in the second of the watermark
+    // after the last sync listed the posts
+    boolean racy = this.synced < this.watermark + 1000 + this.clockSkew;
+    changes.deletionsChecked = this.detectDeletions;
+    int offset = 0;
+    boolean done = false;
+    while (!done) {
+      XmlRpcArray page = this.wp.listPosts(offset, this.pageSize, "modified",
+          fields);
+      if ((fields == MODIFIED_FIELDS) && !page.isEmpty()
+          && (modified((XmlRpcStruct) page.get(0)) < 0)) {
+        // no modification dates, compare the contents of all posts
+        fields = CONTENT_FIELDS;
+        changes.deletionsChecked = true;
+        continue;
+      }
+      done = page.size() < this.pageSize;
+      long oldest = Long.MAX_VALUE;
+      for (Object o : page) {
+        XmlRpcStruct entry = (XmlRpcStruct) o;
+        Integer id = Integer.valueOf(postId(entry));
+        if (!listed.add(id))
+          continue;
+        changes.listed++;
+        Stamp known = this.posts.get(id);
+        if (fields == CONTENT_FIELDS) {
+          String hash = listedHash(entry);
+          if ((known == null) || !hash.equals(known.hash))
+            pending.put(id, new Stamp(-1, hash));
+          continue;
+        }
+        long modified = modified(entry);
+        oldest = Math.min(oldest, modified);
+        mark = Math.max(mark, modified);
+        if ((known == null) || (known.modified != modified)
+            || (racy && (modified >= this.watermark)))
+          pending.put(id, new Stamp(modified, null));
+      }
+      if (pending.size() >= this.pageSize)
+        download(pending, state, changes);
+      offset += page.size();
+      boolean settled = racy ? (oldest < this.watermark)
+          : (oldest <= this.watermark);
+      if (!changes.deletionsChecked && settled)
+        done = true;
+    }
+    download(pending, state, changes);
+    if (changes.deletionsChecked)
+      syncDeletions(listed, state, changes);
+    return mark;
+  }
+
+  /**
+   * Posts that were not listed were deleted, or skipped because the listing
+   * shifted while it was read, which is told apart by downloading them.
+   */
+  private void syncDeletions(Set<Integer> listed, Map<Integer, Stamp> state,
+      Changes changes) throws XmlRpcFault {
+    Map<Integer, Stamp> missing = new HashMap<Integer, Stamp>();
+    for (Map.Entry<Integer, Stamp> post : this.posts.entrySet()) {
+      if (!listed.contains(post.getKey()))
+        // the modification date is not known, the post is checked again
+        missing.put(post.getKey(), new Stamp(-1, null));
+    }
+    download(missing, state, changes);
+    Collections.sort(changes.deleted);
+  }
+}
@@ -10,12 +10,18 @@
 package net.bican.wordpress;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
-import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONReader;
 
 import redstone.xmlrpc.XmlRpcArray;
 import redstone.xmlrpc.XmlRpcStruct;
@@ -29,6 +35,35 @@ import redstone.xmlrpc.XmlRpcStruct;
  */
 public class FileParser {
 
+  /**
+   * 
+   * Parses a file to create an xmlrpc compliant object
+   * 
+   * @param file
+   *          the file
+   * @param charset
+   *          encoding of the file
+   * @return New xmlrpc object
+   * @throws IOException
+   * @throws InvalidPostFormatException
+   */
+  public static XmlRpcStruct parseFile(File file, Charset charset)
+      throws IOException, InvalidPostFormatException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+      while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+        // read the whole file
+      }
+      bytes.flip();
+      CharBuffer text = charset.decode(bytes);
+      return parse(text.array(), text.limit());
+    } finally {
+      in.close();
+    }
+  }
+
   /**
    * 
    * Parses a file to create an xmlrpc compliant object
@@ -39,43 +74,87 @@ public class FileParser {
    * @throws IOException
    * @throws InvalidPostFormatException
    */
-  @SuppressWarnings("nls")
   public static XmlRpcStruct parseFile(BufferedReader input)
       throws IOException, InvalidPostFormatException {
+    char[] text = new char[8192];
+    int length = 0;
+    int n;
+    while ((n = input.read(text, length, text.length - length)) >= 0) {
+      length += n;
+      if (length == text.length)
+        text = Arrays.copyOf(text, text.length * 2);
+    }
+    return parse(text, length);
+  }
+
+  /**
+   * Scans the text once. A line that starts with a key, made of letters,
+   * digits and underscores, and a colon starts a value; the following lines
+   * are appended to it as they are, without the line breaks. Empty lines and
+   * lines that start with <code>#</code> are skipped.
+   */
+  private static XmlRpcStruct parse(char[] text, int length)
+      throws InvalidPostFormatException {
     XmlRpcStruct p = new XmlRpcStruct();
-    String line;
-    String prevKey = null;
-    String prevValue = null;
-    Pattern keyPattern;
-    keyPattern = Pattern.compile("^[\\d\\w_]+:", Pattern.CASE_INSENSITIVE
-        | Pattern.UNICODE_CASE);
-    while ((line = input.readLine()) != null) {
-      if ((!"".equals(line)) && (!line.startsWith("#"))) {
-        Matcher m = keyPattern.matcher(line);
-        if (m.find()) {
-          if (prevKey != null) {
-            FileParser.putVal(p, prevKey, prevValue);
-          }
-          String[] vals = line.split(":", 2);
-          prevKey = vals[0];
-          prevValue = vals[1];
-        } else {
-          if (prevValue != null) {
-            prevValue += line;
-          } else {
-            throw new InvalidPostFormatException();
-          }
+    String key = null;
+    // start and end of the lines of the value of the key
+    int[] lines = new int[16];
+    int count = 0;
+    int valueLength = 0;
+    int start = 0;
+    while (start < length) {
+      int end = start;
+      while (end < length && text[end] != '\n' && text[end] != '\r')
+        end++;
+      // the empty line between \r and \n is skipped like the others
+      if (end > start && text[start] != '#') {
+        int colon = start;
+        while (colon < end && isKeyChar(text[colon]))
+          colon++;
+        if (colon > start && colon < end && text[colon] == ':') {
+          if (key != null)
+            FileParser.putVal(p, key, value(text, lines, count, valueLength));
+          key = new String(text, start, colon - start);
+          count = 0;
+          valueLength = 0;
+          start = colon + 1;
+        } else if (key == null) {
+          throw new InvalidPostFormatException();
         }
+        if (count == lines.length)
+          lines = Arrays.copyOf(lines, count * 2);
+        lines[count++] = start;
+        lines[count++] = end;
+        valueLength += end - start;
       }
+      start = end + 1;
     }
-    if (prevKey != null)
-      FileParser.putVal(p, prevKey, prevValue);
+    if (key != null)
+      FileParser.putVal(p, key, value(text, lines, count, valueLength));
     return p;
   }
 
+  private static boolean isKeyChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+        || (c >= '0' && c <= '9') || c == '_';
+  }
+
+  private static String value(char[] text, int[] lines, int count,
+      int length) {
+    if (count == 2)
+      return new String(text, lines[0], length);
+    StringBuilder b = new StringBuilder(length);
+    for (int i = 0; i < count; i += 2) {
+      b.append(text, lines[i], lines[i + 1] - lines[i]);
+    }
+    return b.toString();
+  }
+
   /**
    * 
-   * Fills values for an xmlrpc object
+   * Fills values for an xmlrpc object. The elements of an array of objects
+   * are made by the factory that {@link JSONConvertableRegistry#getDefault()}
+   * has for the field.
    * 
    * @param s
    *          xmlrpc object itself
@@ -89,20 +168,33 @@ public class FileParser {
     String value = v.trim();
     if (value.startsWith("[")) {
       try {
-        JSONArray jArr = new JSONArray(value);
-        if (jArr.length() > 0) {
-          Class cType = jArr.get(0).getClass();
+        // the values are read straight from the text, without a JSONArray
+        JSONReader reader = new JSONReader(value);
+        reader.beginArray();
+        if (reader.hasNext()) {
           XmlRpcArray vals = new XmlRpcArray();
-          if (cType == String.class) {
-            for (int i = 0; i < jArr.length(); i++) {
-              vals.add(jArr.getString(i));
+          if (reader.peek() == JSONReader.Token.STRING) {
+            while (reader.hasNext()) {
+              Object element = reader.nextValue();
+              if (element == null) {
+                throw new JSONException("JSONArray[" + vals.size()
+                    + "] not found.");
+              }
+              vals.add(element.toString());
             }
           } else {
-            String className = FileParser.getClassName(key);
-            Class<?> cl = Class.forName(className);
-            for (int i = 0; i < jArr.length(); i++) {
-              JSONConvertable o = (JSONConvertable) cl.newInstance();
-              o.fromJSONObject(jArr.getJSONObject(i));
+            JSONConvertableRegistry.Factory factory = JSONConvertableRegistry
+                .getDefault().forField(key);
+            while (reader.hasNext()) {
+              if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+                throw new JSONException("JSONArray[" + vals.size()
+                    + "] is not a JSONObject.");
+              }
+              JSONConvertable o = factory.newInstance();
+              if (o instanceof JSONStreamConvertable)
+                ((JSONStreamConvertable) o).fromJSONReader(reader);
+              else
+                o.fromJSONObject((JSONObject) reader.nextValue());
               vals.add(o);
             }
           }
@@ -114,12 +206,6 @@ public class FileParser {
       } catch (ClassNotFoundException e) {
         // TODO Auto-generated catch block
         e.printStackTrace();
-      } catch (InstantiationException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-      } catch (IllegalAccessException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
       }
     } else {
       if (!"null".equalsIgnoreCase(value)) {
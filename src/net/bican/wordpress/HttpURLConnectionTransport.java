@@ -0,0 +1,123 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 
+ * Transport over <code>HttpURLConnection</code>. Connection reuse is left to
+ * the JDK, which also means system proxy settings are honored.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class HttpURLConnectionTransport implements XmlRpcTransport {
+
+  private static final int CHUNK_LENGTH   = 64 * 1024;
+
+  private boolean          compression    = true;
+
+  private int              connectTimeout = 0;
+
+  private int              readTimeout    = 0;
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.XmlRpcTransport#close()
+   */
+  @Override
+  public void close() {
+    // connections are managed by the JDK
+  }
+
+  /**
+   * @return connect timeout in milliseconds, 0 for none
+   */
+  public int getConnectTimeout() {
+    return this.connectTimeout;
+  }
+
+  /**
+   * @return read timeout in milliseconds, 0 for none
+   */
+  public int getReadTimeout() {
+    return this.readTimeout;
+  }
+
+  /**
+   * @return whether gzip compressed responses are requested
+   */
+  public boolean isCompression() {
+    return this.compression;
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.XmlRpcTransport#send(java.net.URL,
+   *      net.bican.wordpress.XmlRpcRequest)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public InputStream send(URL url, XmlRpcRequest request) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    if (request.isStreamed())
+      connection.setChunkedStreamingMode(CHUNK_LENGTH);
+    connection.setConnectTimeout(this.connectTimeout);
+    connection.setReadTimeout(this.readTimeout);
+    connection.setDoOutput(true);
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+    if (this.compression)
+      connection.setRequestProperty("Accept-Encoding", "gzip");
+    OutputStream out = connection.getOutputStream();
+    request.writeTo(out);
+    out.close();
+    int code = connection.getResponseCode();
+    if (code != HttpURLConnection.HTTP_OK) {
+      connection.disconnect();
+      throw new IOException("HTTP error " + code + " for "
+          + request.getMethodName());
+    }
+    InputStream in = new BufferedInputStream(connection.getInputStream());
+    if ("gzip".equalsIgnoreCase(connection.getContentEncoding()))
+      in = new GZIPInputStream(in);
+    return in;
+  }
+
+  /**
+   * @param compression whether gzip compressed responses are requested
+   */
+  public void setCompression(boolean compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * @param connectTimeout connect timeout in milliseconds, 0 for none
+   */
+  public void setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  /**
+   * @param readTimeout read timeout in milliseconds, 0 for none
+   */
+  public void setReadTimeout(int readTimeout) {
+    this.readTimeout = readTimeout;
+  }
+}
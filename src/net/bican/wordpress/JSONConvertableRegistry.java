@@ -0,0 +1,159 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 
+ * Maps the names of the array fields of post and comment files to the
+ * {@link JSONConvertable} types of their elements, for {@link FileParser}.
+ * A field that is not registered is resolved once from its name, so that
+ * <code>custom_fields</code> would be <code>CustomField</code>, and the
+ * result is kept, whether a type was found or not.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public final class JSONConvertableRegistry {
+
+  /**
+   * Creates the elements of a field.
+   */
+  public interface Factory {
+    /**
+     * @return a new empty element
+     */
+    JSONConvertable newInstance();
+  }
+
+  /**
+   * Creates instances with the public constructor of a class that was
+   * resolved from a field name.
+   */
+  private static final class ConstructorFactory implements Factory {
+    private final MethodHandle constructor;
+
+    ConstructorFactory(MethodHandle constructor) {
+      this.constructor = constructor;
+    }
+
+    @Override
+    public JSONConvertable newInstance() {
+      try {
+        return (JSONConvertable) this.constructor.invokeExact();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Remembers that no type was found for a field.
+   */
+  private static final class Missing implements Factory {
+    private final String reason;
+
+    Missing(String reason) {
+      this.reason = reason;
+    }
+
+    @Override
+    public JSONConvertable newInstance() {
+      throw new IllegalStateException(this.reason);
+    }
+  }
+
+  private static final JSONConvertableRegistry DEFAULT;
+
+  static {
+    DEFAULT = new JSONConvertableRegistry();
+    DEFAULT.register("custom_fields", new Factory() { //$NON-NLS-1$
+      @Override
+      public JSONConvertable newInstance() {
+        return new CustomField();
+      }
+    });
+  }
+
+  /**
+   * @return the registry that {@link FileParser} uses
+   */
+  public static JSONConvertableRegistry getDefault() {
+    return DEFAULT;
+  }
+
+  private final ConcurrentMap<String, Factory> factories;
+
+  private JSONConvertableRegistry() {
+    this.factories = new ConcurrentHashMap<String, Factory>();
+  }
+
+  /**
+   * @param field name of the field
+   * @return the factory of the elements of the field
+   * @throws ClassNotFoundException when no <code>JSONConvertable</code> type
+   *           with a public constructor without arguments is registered or
+   *           named after the field
+   */
+  public Factory forField(String field) throws ClassNotFoundException {
+    Factory factory = this.factories.get(field);
+    if (factory == null) {
+      factory = resolve(field);
+      Factory existing = this.factories.putIfAbsent(field, factory);
+      if (existing != null)
+        factory = existing;
+    }
+    if (factory instanceof Missing)
+      throw new ClassNotFoundException(((Missing) factory).reason);
+    return factory;
+  }
+
+  /**
+   * Sets the type of the elements of a field, replacing the one that was
+   * registered or resolved before.
+   * 
+   * @param field name of the field
+   * @param factory creates the elements of the field
+   */
+  public void register(String field, Factory factory) {
+    if (factory == null)
+      throw new NullPointerException();
+    this.factories.put(field, factory);
+  }
+
+  @SuppressWarnings("nls")
+  private static Factory resolve(String field) {
+    String className = FileParser.getClassName(field);
+    try {
+      Class<?> cl = Class.forName(className);
+      if (!JSONConvertable.class.isAssignableFrom(cl))
+        return new Missing(className + " is not JSONConvertable");
+      MethodHandle constructor = MethodHandles.publicLookup().findConstructor(
+          cl, MethodType.methodType(void.class)).asType(
+          MethodType.methodType(JSONConvertable.class));
+      return new ConstructorFactory(constructor);
+    } catch (ClassNotFoundException e) {
+      return new Missing(className);
+    } catch (NoSuchMethodException e) {
+      return new Missing(className + " has no public constructor");
+    } catch (IllegalAccessException e) {
+      return new Missing(className + " is not public");
+    }
+  }
+}
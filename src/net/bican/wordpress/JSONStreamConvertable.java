@@ -0,0 +1,34 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import org.json.JSONException;
+import org.json.JSONReader;
+
+/**
+ * 
+ * Interface for JSON convertable objects that can also read their values
+ * straight from a JSON text. {@link FileParser} uses it when an object
+ * implements it, and builds a JSON object for the others.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public interface JSONStreamConvertable extends JSONConvertable {
+  /**
+   * Reads the values from the object that comes next in a JSON text, the same
+   * way {@link #fromJSONObject(org.json.JSONObject)} gets them, without
+   * building the object.
+   * 
+   * @param reader JSON reader positioned before the object
+   * @throws JSONException if the next value is not an object or is malformed
+   */
+  public void fromJSONReader(JSONReader reader) throws JSONException;
+}
@@ -0,0 +1,147 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.util.Arrays;
+
+/**
+ * 
+ * Records latencies in nanoseconds into log-linear buckets: every power of
+ * two is split into 64 linear buckets, so percentiles are within about 1.6%
+ * of the recorded values at any magnitude, and recording is a few
+ * arithmetic operations with no allocation.
+ * 
+ * A histogram is not thread safe. Keep one per thread and {@link #add} them
+ * when the measurement is over.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BITS    = 6;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+  private static final int BUCKETS     = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+  private final long[]     counts      = new long[BUCKETS];
+
+  private long             count       = 0;
+
+  private long             max         = 0;
+
+  private long             min         = Long.MAX_VALUE;
+
+  private long             total       = 0;
+
+  private static int index(long value) {
+    if (value < (SUB_BUCKETS << 1))
+      return (int) value;
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    return (shift * SUB_BUCKETS) + (int) (value >>> shift);
+  }
+
+  private static long highestValue(int index) {
+    if (index < (SUB_BUCKETS << 1))
+      return index;
+    int shift = (index / SUB_BUCKETS) - 1;
+    long sub = (index % SUB_BUCKETS) + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  /**
+   * Adds the values recorded in another histogram to this one.
+   * 
+   * @param other histogram to add
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      this.counts[i] += other.counts[i];
+    }
+    this.count += other.count;
+    this.total += other.total;
+    this.max = Math.max(this.max, other.max);
+    this.min = Math.min(this.min, other.min);
+  }
+
+  /**
+   * @return number of recorded values
+   */
+  public long getCount() {
+    return this.count;
+  }
+
+  /**
+   * @return largest recorded value, 0 if there is none
+   */
+  public long getMax() {
+    return this.max;
+  }
+
+  /**
+   * @return mean of the recorded values, 0 if there is none
+   */
+  public double getMean() {
+    return (this.count == 0) ? 0 : (double) this.total / this.count;
+  }
+
+  /**
+   * @return smallest recorded value, 0 if there is none
+   */
+  public long getMin() {
+    return (this.count == 0) ? 0 : this.min;
+  }
+
+  /**
+   * Returns the value that the given percentage of the recorded values are
+   * less than or equal to, rounded up to the end of its bucket.
+   * 
+   * @param percentile percentile between 0 and 100, e.g. 99.9
+   * @return value at the percentile, 0 if nothing is recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (this.count == 0)
+      return 0;
+    long rank = (long) Math.ceil((percentile / 100) * this.count);
+    if (rank < 1)
+      rank = 1;
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += this.counts[i];
+      if (seen >= rank)
+        return Math.min(highestValue(i), this.max);
+    }
+    return this.max;
+  }
+
+  /**
+   * @param nanos latency to record, negative values are recorded as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    this.counts[index(value)]++;
+    this.count++;
+    this.total += value;
+    this.max = Math.max(this.max, value);
+    this.min = Math.min(this.min, value);
+  }
+
+  /**
+   * Forgets all recorded values.
+   */
+  public void reset() {
+    Arrays.fill(this.counts, 0);
+    this.count = 0;
+    this.total = 0;
+    this.max = 0;
+    this.min = Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,698 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.bican.wordpress.configuration.WpCliConfiguration;
+
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import redstone.xmlrpc.XmlRpcFault;
+
+/**
+ * 
+ * Drives a mix of reads, writes and uploads through a {@link Wordpress}
+ * client from several threads and reports the throughput and the latency
+ * percentiles of each operation.
+ * 
+ * Without a rate the threads run closed loop, each one issuing the next call
+ * as soon as the previous one returns. With a rate the calls are scheduled at
+ * fixed intervals, and latencies are measured from the time a call was due,
+ * so a server that falls behind shows up in the percentiles instead of
+ * slowing the load down.
+ * 
+ * Writes only edit and comment on the posts that the generator created
+ * itself, and those posts are deleted after the run unless they are kept.
+ * Still, do not point it at a production blog.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@SuppressWarnings("nls")
+public class LoadGenerator {
+
+  /**
+   * 
+   * Throughput and latencies of a run.
+   * 
+   */
+  public static final class Report {
+
+    private final long               elapsed;
+
+    private final long[]             errors;
+
+    private final String[]           failures;
+
+    private final LatencyHistogram[] histograms;
+
+    Report(long elapsed) {
+      this.elapsed = elapsed;
+      this.errors = new long[OPERATIONS.size()];
+      this.failures = new String[OPERATIONS.size()];
+      this.histograms = new LatencyHistogram[OPERATIONS.size()];
+      for (int i = 0; i < this.histograms.length; i++) {
+        this.histograms[i] = new LatencyHistogram();
+      }
+    }
+
+    void add(Worker worker) {
+      for (int i = 0; i < this.histograms.length; i++) {
+        this.histograms[i].add(worker.histograms[i]);
+        this.errors[i] += worker.errors[i];
+        if (worker.failures[i] != null)
+          this.failures[i] = worker.failures[i];
+      }
+    }
+
+    /**
+     * @param operation name of the operation
+     * @return number of successful calls in the measured period
+     */
+    public long getCount(String operation) {
+      return getHistogram(operation).getCount();
+    }
+
+    /**
+     * @return length of the measured period in milliseconds
+     */
+    public long getElapsed() {
+      return TimeUnit.NANOSECONDS.toMillis(this.elapsed);
+    }
+
+    /**
+     * @param operation name of the operation
+     * @return number of failed calls in the measured period
+     */
+    public long getErrors(String operation) {
+      return this.errors[operation(operation)];
+    }
+
+    /**
+     * @param operation name of the operation
+     * @return latencies of the successful calls in nanoseconds
+     */
+    public LatencyHistogram getHistogram(String operation) {
+      return this.histograms[operation(operation)];
+    }
+
+    /**
+     * @return successful calls of all operations per second
+     */
+    public double getThroughput() {
+      return throughput(getTotal().getCount());
+    }
+
+    /**
+     * @param operation name of the operation
+     * @return successful calls of the operation per second
+     */
+    public double getThroughput(String operation) {
+      return throughput(getCount(operation));
+    }
+
+    /**
+     * @return latencies of the successful calls of all operations
+     */
+    public LatencyHistogram getTotal() {
+      LatencyHistogram result = new LatencyHistogram();
+      for (LatencyHistogram histogram : this.histograms) {
+        result.add(histogram);
+      }
+      return result;
+    }
+
+    /**
+     * Prints a table of the operations, with latencies in milliseconds.
+     * 
+     * @param out stream to print to
+     */
+    @SuppressWarnings("boxing")
+    public void print(PrintStream out) {
+      String format = "%-16s %8s %7s %9s %9s %9s %9s %9s%n";
+      out.printf(format, "operation", "count", "errors", "ops/s", "p50",
+          "p99", "p999", "max");
+      long totalErrors = 0;
+      for (int i = 0; i < this.histograms.length; i++) {
+        if ((this.histograms[i].getCount() > 0) || (this.errors[i] > 0))
+          print(out, format, OPERATIONS.get(i), this.histograms[i],
+              this.errors[i]);
+        totalErrors += this.errors[i];
+      }
+      print(out, format, "total", getTotal(), totalErrors);
+      for (int i = 0; i < this.failures.length; i++) {
+        if (this.failures[i] != null)
+          out.println(OPERATIONS.get(i) + " failed with: " + this.failures[i]);
+      }
+    }
+
+    @SuppressWarnings("boxing")
+    private void print(PrintStream out, String format, String name,
+        LatencyHistogram histogram, long errorCount) {
+      out.printf(format, name, histogram.getCount(), errorCount,
+          String.format("%.1f", throughput(histogram.getCount())),
+          millis(histogram.getValueAtPercentile(50)),
+          millis(histogram.getValueAtPercentile(99)),
+          millis(histogram.getValueAtPercentile(99.9)),
+          millis(histogram.getMax()));
+    }
+
+    @SuppressWarnings("boxing")
+    private static String millis(long nanos) {
+      return String.format("%.2f", nanos / 1e6);
+    }
+
+    private double throughput(long count) {
+      return (this.elapsed == 0) ? 0 : (count * 1e9) / this.elapsed;
+    }
+  }
+
+  final class Worker implements Runnable {
+
+    final long[]             errors;
+
+    final String[]           failures;
+
+    final LatencyHistogram[] histograms;
+
+    private final File       media;
+
+    private final long       offset;
+
+    private final Random     random;
+
+    Worker(long seed, long offset, File media) {
+      this.errors = new long[OPERATIONS.size()];
+      this.failures = new String[OPERATIONS.size()];
+      this.histograms = new LatencyHistogram[OPERATIONS.size()];
+      for (int i = 0; i < this.histograms.length; i++) {
+        this.histograms[i] = new LatencyHistogram();
+      }
+      this.media = media;
+      this.offset = offset;
+      this.random = new Random(seed);
+    }
+
+    private void execute(int operation) throws XmlRpcFault {
+      switch (operation) {
+      case GET_POST:
+        LoadGenerator.this.wp.getPost(pick(LoadGenerator.this.posts));
+        break;
+      case GET_RECENT_POSTS:
+        LoadGenerator.this.wp.getRecentPosts(RECENT_POSTS);
+        break;
+      case GET_COMMENTS:
+        LoadGenerator.this.wp.getComments(null,
+            Integer.valueOf(pick(LoadGenerator.this.posts)),
+            Integer.valueOf(RECENT_POSTS), Integer.valueOf(0));
+        break;
+      case NEW_POST:
+        Integer id = Integer.valueOf(LoadGenerator.this.wp.newPost(newPage(),
+            true));
+        add(id);
+        break;
+      case EDIT_POST:
+        LoadGenerator.this.wp.editPost(pick(LoadGenerator.this.created),
+            newPage(), "publish");
+        break;
+      case NEW_COMMENT:
+        LoadGenerator.this.wp.newComment(
+            Integer.valueOf(pick(LoadGenerator.this.created)), null,
+            "Load test comment " + this.random.nextInt(), "loadgenerator",
+            null, null);
+        break;
+      default:
+        LoadGenerator.this.wp.newMediaObject("application/octet-stream",
+            this.media, Boolean.TRUE);
+        break;
+      }
+    }
+
+    private int next() {
+      int value = this.random.nextInt(LoadGenerator.this.totalWeight);
+      int operation = 0;
+      while (value >= LoadGenerator.this.weights[operation]) {
+        value -= LoadGenerator.this.weights[operation];
+        operation++;
+      }
+      return operation;
+    }
+
+    private int pick(List<Integer> ids) {
+      synchronized (ids) {
+        return ids.get(this.random.nextInt(ids.size())).intValue();
+      }
+    }
+
+    @Override
+    public void run() {
+      long interval = LoadGenerator.this.interval;
+      long due = LoadGenerator.this.start + this.offset;
+      try {
+        while (true) {
+          long now = System.nanoTime();
+          long begin;
+          if (interval > 0) {
+            if (due >= LoadGenerator.this.end)
+              break;
+            if (due > now)
+              TimeUnit.NANOSECONDS.sleep(due - now);
+            begin = due;
+            due += interval;
+          } else {
+            if (now >= LoadGenerator.this.end)
+              break;
+            begin = now;
+          }
+          int operation = next();
+          String failure = null;
+          try {
+            execute(operation);
+          } catch (XmlRpcFault e) {
+            failure = e.getErrorCode() + " " + e.getMessage();
+          } catch (RuntimeException e) {
+            // e.g. an XmlRpcException, counted so that the worker goes on
+            failure = e.toString();
+          }
+          long finished = System.nanoTime();
+          if (begin >= LoadGenerator.this.measured) {
+            if (failure == null)
+              this.histograms[operation].record(finished - begin);
+            else {
+              this.errors[operation]++;
+              this.failures[operation] = failure;
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Names of the operations that can be part of the mix
+   */
+  public static final List<String> OPERATIONS;
+
+  /**
+   * Mix that is used unless another one is set
+   */
+  public static final String       DEFAULT_MIX;
+
+  private static final int         EDIT_POST        = 4;
+
+  private static final int         GET_COMMENTS     = 2;
+
+  private static final int         GET_POST         = 0;
+
+  private static final int         GET_RECENT_POSTS = 1;
+
+  private static final int         NEW_COMMENT      = 5;
+
+  private static final int         NEW_MEDIA_OBJECT = 6;
+
+  private static final int         NEW_POST         = 3;
+
+  private static final int         RECENT_POSTS     = 10;
+
+  static {
+    OPERATIONS = Collections.unmodifiableList(Arrays.asList("getPost",
+        "getRecentPosts", "getComments", "newPost", "editPost", "newComment",
+        "newMediaObject"));
+    DEFAULT_MIX = "getPost=40,getRecentPosts=20,getComments=20,newPost=5,"
+        + "editPost=5,newComment=9,newMediaObject=1";
+  }
+
+  private String                   body;
+
+  private int                      bodySize         = 2000;
+
+  private final List<Integer>      created          = new ArrayList<Integer>();
+
+  private long                     duration;
+
+  private long                     end;
+
+  private long                     interval;
+
+  private boolean                  keepPosts        = false;
+
+  private long                     measured;
+
+  private int                      mediaSize        = 50000;
+
+  private final List<Integer>      posts            = new ArrayList<Integer>();
+
+  private double                   rate             = 0;
+
+  private long                     seed             = System.nanoTime();
+
+  private long                     start;
+
+  private int                      threads          = 4;
+
+  private int                      totalWeight;
+
+  private long                     warmup;
+
+  private final int[]              weights;
+
+  private final Wordpress          wp;
+
+  /**
+   * @param wp client to drive the load through, it is shared by all threads
+   */
+  public LoadGenerator(Wordpress wp) {
+    this.wp = wp;
+    this.duration = TimeUnit.SECONDS.toNanos(30);
+    this.warmup = TimeUnit.SECONDS.toNanos(5);
+    this.weights = new int[OPERATIONS.size()];
+    setMix(DEFAULT_MIX);
+  }
+
+  private static int operation(String name) {
+    int result = OPERATIONS.indexOf(name);
+    if (result < 0)
+      throw new IllegalArgumentException("Unknown operation: " + name);
+    return result;
+  }
+
+  void add(Integer id) {
+    synchronized (this.created) {
+      this.created.add(id);
+    }
+    synchronized (this.posts) {
+      this.posts.add(id);
+    }
+  }
+
+  private File createMedia(Random random) throws IOException {
+    File file = File.createTempFile("loadgenerator", ".bin");
+    file.deleteOnExit();
+    byte[] content = new byte[this.mediaSize];
+    random.nextBytes(content);
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  Page newPage() {
+    Page page = new Page();
+    page.setTitle("Load test post");
+    page.setDescription(this.body);
+    return page;
+  }
+
+  private void prepare() throws XmlRpcFault {
+    StringBuilder text = new StringBuilder(this.bodySize);
+    while (text.length() < this.bodySize) {
+      text.append("Lorem <b>ipsum</b> dolor sit amet, consectetur. ");
+    }
+    text.setLength(this.bodySize);
+    this.body = text.toString();
+    this.posts.clear();
+    this.created.clear();
+    for (Page page : this.wp.getRecentPosts(RECENT_POSTS)) {
+      this.posts.add(page.getPostid());
+    }
+    if (this.posts.isEmpty() || (this.weights[EDIT_POST] > 0)
+        || (this.weights[NEW_COMMENT] > 0)) {
+      add(Integer.valueOf(this.wp.newPost(newPage(), true)));
+    }
+  }
+
+  /**
+   * Runs the load for the warmup and the measured period and returns what
+   * was measured. Posts that were created are deleted afterwards, unless
+   * they are kept.
+   * 
+   * @return throughput and latencies in the measured period
+   * @throws XmlRpcFault when the posts to work with cannot be read or created
+   * @throws IOException when the file to upload cannot be created
+   * @throws InterruptedException when the thread is interrupted
+   */
+  @SuppressWarnings("boxing")
+  public Report run() throws XmlRpcFault, IOException, InterruptedException {
+    prepare();
+    Random random = new Random(this.seed);
+    List<Worker> workers = new ArrayList<Worker>();
+    List<File> files = new ArrayList<File>();
+    this.interval = (this.rate > 0) ? (long) ((this.threads * 1e9) / this.rate)
+        : 0;
+    try {
+      for (int i = 0; i < this.threads; i++) {
+        File media = null;
+        if (this.weights[NEW_MEDIA_OBJECT] > 0) {
+          media = createMedia(random);
+          files.add(media);
+        }
+        workers.add(new Worker(random.nextLong(), (this.interval * i)
+            / this.threads, media));
+      }
+      this.start = System.nanoTime();
+      this.measured = this.start + this.warmup;
+      this.end = this.measured + this.duration;
+      List<Thread> running = new ArrayList<Thread>();
+      for (int i = 0; i < workers.size(); i++) {
+        Thread thread = new Thread(workers.get(i), "load-generator-" + i);
+        thread.setDaemon(true);
+        thread.start();
+        running.add(thread);
+      }
+      try {
+        for (Thread thread : running) {
+          thread.join();
+        }
+      } finally {
+        for (Thread thread : running) {
+          thread.interrupt();
+        }
+      }
+    } finally {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    Report result = new Report(this.duration);
+    for (Worker worker : workers) {
+      result.add(worker);
+    }
+    if (!this.keepPosts) {
+      for (Integer id : this.created) {
+        try {
+          this.wp.deletePost(id, "false");
+        } catch (XmlRpcFault e) {
+          // already gone
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param bodySize length of the bodies of new and edited posts in
+   *          characters
+   */
+  public void setBodySize(int bodySize) {
+    this.bodySize = bodySize;
+  }
+
+  /**
+   * @param millis length of the measured period
+   */
+  public void setDuration(long millis) {
+    this.duration = TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  /**
+   * @param keepPosts <code>true</code> to keep the posts that were created,
+   *          instead of deleting them after the run
+   */
+  public void setKeepPosts(boolean keepPosts) {
+    this.keepPosts = keepPosts;
+  }
+
+  /**
+   * @param mediaSize size of the uploaded file in bytes
+   */
+  public void setMediaSize(int mediaSize) {
+    this.mediaSize = mediaSize;
+  }
+
+  /**
+   * Sets the weights of the operations from a list such as
+   * <code>getPost=8,newPost=2</code>. Operations that are not in the list
+   * are not run.
+   * 
+   * @param mix comma separated list of operation=weight
+   */
+  public void setMix(String mix) {
+    int[] values = new int[OPERATIONS.size()];
+    int total = 0;
+    for (String item : mix.split(",")) {
+      String[] pair = item.trim().split("=");
+      if (pair.length != 2)
+        throw new IllegalArgumentException("Invalid mix item: " + item);
+      int weight;
+      try {
+        weight = Integer.parseInt(pair[1].trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid weight: " + item);
+      }
+      if (weight < 0)
+        throw new IllegalArgumentException("Invalid weight: " + item);
+      values[operation(pair[0].trim())] = weight;
+      total += weight;
+    }
+    if (total == 0)
+      throw new IllegalArgumentException("Mix has no operations: " + mix);
+    System.arraycopy(values, 0, this.weights, 0, values.length);
+    this.totalWeight = total;
+  }
+
+  /**
+   * @param rate calls per second of all threads together, 0 to run closed
+   *          loop
+   */
+  public void setRate(double rate) {
+    this.rate = rate;
+  }
+
+  /**
+   * @param seed seed of the operation mix and the uploaded content, so that
+   *          runs can be repeated
+   */
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * @param threads number of threads that issue calls
+   */
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  /**
+   * @param millis length of the period before the measurement, to let the
+   *          connections and the server warm up
+   */
+  public void setWarmup(long millis) {
+    this.warmup = TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  /**
+   * @param args
+   *          execute with "-?" for an explanation of args
+   * @throws ParseException
+   *           When the command line options cannot be parsed
+   */
+  public static void main(String[] args) throws ParseException {
+    Options options = new Options();
+    options.addOption("?", "help", false, "Print usage information");
+    options.addOption("h", "url", true, "Specify the url to xmlrpc.php");
+    options.addOption("u", "user", true, "User name");
+    options.addOption("p", "pass", true, "Password");
+    options.addOption("t", "threads", true, "Number of threads (4)");
+    options.addOption("d", "duration", true, "Measured period in seconds (30)");
+    options.addOption("w", "warmup", true, "Warmup period in seconds (5)");
+    options.addOption("r", "rate", true,
+        "Calls per second, closed loop if not set");
+    options.addOption("m", "mix", true, "Operation weights (" + DEFAULT_MIX
+        + ")");
+    options.addOption("b", "bodysize", true,
+        "Body size of new posts in characters (2000)");
+    options.addOption("ms", "mediasize", true,
+        "Size of uploaded files in bytes (50000)");
+    options.addOption("k", "keep", false, "Keep the posts that were created");
+    options.addOption("sd", "seed", true, "Random seed");
+    try {
+      WpCliConfiguration config = new WpCliConfiguration(args, options,
+          LoadGenerator.class);
+      if (config.hasOption("help")) {
+        new HelpFormatter().printHelp(" ", options);
+      } else if ((!config.hasOption("url")) || (!config.hasOption("user"))
+          || (!config.hasOption("pass"))) {
+        System.err.println("Specify --user, --pass and --url");
+      } else {
+        run(config);
+      }
+    } catch (ParseException e) {
+      System.err.println("Can't process command line arguments, reason is: "
+          + e.getLocalizedMessage());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Invalid option, reason is: "
+          + e.getLocalizedMessage());
+    } catch (IOException e) {
+      System.err.println("Operation failed, reason is: "
+          + e.getLocalizedMessage());
+    } catch (XmlRpcFault e) {
+      System.err.println("Operation failed, reason is: "
+          + e.getLocalizedMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void run(WpCliConfiguration config) throws IOException,
+      XmlRpcFault, InterruptedException {
+    Wordpress wp = new Wordpress(config.getOptionValue("user"),
+        config.getOptionValue("pass"), config.getOptionValue("url"),
+        new PooledHttpTransport());
+    try {
+      LoadGenerator generator = new LoadGenerator(wp);
+      if (config.hasOption("threads"))
+        generator.setThreads(Integer.parseInt(config
+            .getOptionValue("threads")));
+      if (config.hasOption("duration"))
+        generator.setDuration(seconds(config.getOptionValue("duration")));
+      if (config.hasOption("warmup"))
+        generator.setWarmup(seconds(config.getOptionValue("warmup")));
+      if (config.hasOption("rate"))
+        generator.setRate(Double.parseDouble(config.getOptionValue("rate")));
+      if (config.hasOption("mix"))
+        generator.setMix(config.getOptionValue("mix"));
+      if (config.hasOption("bodysize"))
+        generator.setBodySize(Integer.parseInt(config
+            .getOptionValue("bodysize")));
+      if (config.hasOption("mediasize"))
+        generator.setMediaSize(Integer.parseInt(config
+            .getOptionValue("mediasize")));
+      if (config.hasOption("seed"))
+        generator.setSeed(Long.parseLong(config.getOptionValue("seed")));
+      generator.setKeepPosts(config.hasOption("keep"));
+      generator.run().print(System.out);
+    } finally {
+      wp.close();
+    }
+  }
+
+  private static long seconds(String value) {
+    return (long) (Double.parseDouble(value) * 1000);
+  }
+}
@@ -9,9 +9,15 @@
  */
 package net.bican.wordpress;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.List;
 
@@ -101,6 +107,23 @@ public class Main {
           "Comment offset # (for --getcomments)");
       options.addOption("cm", "commentnumber", true,
           "Comment # (for --getcomments)");
+      options.addOption("im", "import", true,
+          "Import the post files under directory <arg> (needs --publish)");
+      options.addOption("mf", "manifest", true,
+          "Manifest of the import (for --import, <directory>.manifest)");
+      options.addOption("it", "importthreads", true,
+          "Number of uploads at the same time (for --import)");
+      options.addOption("ib", "importbatch", true,
+          "Number of posts in one request (for --import)");
+      options.addOption("ex", "export", true,
+          "Back up posts, pages, comments and categories into file <arg>");
+      options.addOption("rs", "restore", true,
+          "Restore the backup in file <arg> (from --export)");
+      options.addOption("sy", "sync", true,
+          "List the posts and comments changed since the sync state in file "
+              + "<arg>, and update it");
+      options.addOption("rc", "record", true,
+          "Record the responses into capture file <arg>");
       try {
         WpCliConfiguration config = new WpCliConfiguration(args, options,
             Main.class);
@@ -110,9 +133,15 @@ public class Main {
             || (!config.hasOption("pass"))) {
           System.err.println("Specify --user, --pass and --url");
         } else {
+          XmlRpcTransport transport = new HttpURLConnectionTransport();
           try {
+            if (config.hasOption("record")) {
+              transport = new RecordingTransport(transport, new File(
+                  config.getOptionValue("record")));
+            }
             Wordpress wp = new Wordpress(config.getOptionValue("user"),
-                config.getOptionValue("pass"), config.getOptionValue("url"));
+                config.getOptionValue("pass"), config.getOptionValue("url"),
+                transport);
             if (config.hasOption("authors")) {
               printList(wp.getAuthors(), Author.class, true);
             } else if (config.hasOption("categories")) {
@@ -172,6 +201,18 @@ public class Main {
                     Page.fromFile(new File(config.getOptionValue("newpost"))),
                     Boolean.valueOf(config.getOptionValue("publish"))));
               }
+            } else if (config.hasOption("import")) {
+              if (!config.hasOption("publish")) {
+                showHelp(options);
+              } else {
+                bulkImport(config, wp);
+              }
+            } else if (config.hasOption("export")) {
+              backup(config, wp, true);
+            } else if (config.hasOption("restore")) {
+              backup(config, wp, false);
+            } else if (config.hasOption("sync")) {
+              sync(config, wp);
             } else if (config.hasOption("newmedia")) {
               String fileName = config.getOptionValue("newmedia");
               File file = new File(fileName);
@@ -236,6 +277,8 @@ public class Main {
                 + e.getLocalizedMessage());
           } catch (InvalidPostFormatException e) {
             System.err.println("Input format is invalid.");
+          } finally {
+            transport.close();
           }
         }
       } catch (ParseException e) {
@@ -248,6 +291,78 @@ public class Main {
     }
   }
 
+  @SuppressWarnings("nls")
+  private static void bulkImport(WpCliConfiguration config, Wordpress wp)
+      throws IOException {
+    File directory = new File(config.getOptionValue("import"));
+    File manifest = new File(directory.getPath() + ".manifest");
+    if (config.hasOption("manifest"))
+      manifest = new File(config.getOptionValue("manifest"));
+    BulkImporter importer = new BulkImporter(wp);
+    importer.setPublish(Boolean.parseBoolean(config.getOptionValue("publish")));
+    Integer threads = getInteger("importthreads", config);
+    if (threads != null)
+      importer.setUploaders(threads.intValue());
+    Integer batch = getInteger("importbatch", config);
+    if (batch != null)
+      importer.setBatchSize(batch.intValue());
+    importer.setProgress(System.err, 10000);
+    try {
+      System.out.println(importer.run(directory, manifest));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private static void backup(WpCliConfiguration config, Wordpress wp,
+      boolean export) throws IOException, XmlRpcFault {
+    BlogBackup backup = new BlogBackup(wp);
+    if (export) {
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(
+          config.getOptionValue("export")));
+      try {
+        System.out.println(backup.export(out));
+      } finally {
+        out.close();
+      }
+    } else {
+      InputStream in = new BufferedInputStream(new FileInputStream(
+          config.getOptionValue("restore")));
+      try {
+        System.out.println(backup.restore(in));
+      } finally {
+        in.close();
+      }
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private static void sync(WpCliConfiguration config, Wordpress wp)
+      throws IOException, XmlRpcFault {
+    File state = new File(config.getOptionValue("sync"));
+    DeltaSync sync = new DeltaSync(wp);
+    if (state.exists())
+      sync.load(state);
+    DeltaSync.Changes changes = sync.sync();
+    for (Page post : changes.getAdded()) {
+      System.out.println("added\t" + post.getPostid() + "\t" + post.getTitle());
+    }
+    for (Page post : changes.getChanged()) {
+      System.out.println("changed\t" + post.getPostid() + "\t"
+          + post.getTitle());
+    }
+    for (Integer id : changes.getDeleted()) {
+      System.out.println("deleted\t" + id);
+    }
+    for (Comment comment : changes.getComments()) {
+      System.out.println("comment\t" + comment.getComment_id() + "\t"
+          + comment.getPost_id());
+    }
+    System.err.println(changes);
+    sync.save(state);
+  }
+
   @SuppressWarnings("nls")
   private static void printComments(Wordpress wp, Integer postID,
       String commentStatus, Integer commentOffset, Integer commentNumber)
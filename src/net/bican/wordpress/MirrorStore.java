@@ -0,0 +1,696 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import net.bican.wordpress.MirrorStoreCodec.Output;
+
+/**
+ * 
+ * Local store for mirrored <code>XmlRpcMapped</code> objects, like posts
+ * and comments, by class and id. Records are appended to segment files in a
+ * compact binary encoding, and a memory-mapped hash index points to the
+ * latest record of each object. Reads decode straight from the mapped
+ * segments, so the data stays in the page cache of the operating system
+ * instead of the heap.
+ * 
+ * One process opens a directory for writing; any number of processes on the
+ * same machine can open it read-only at the same time and see the writes
+ * through the mappings. Segments that are mostly replaced or deleted records
+ * are compacted in the background: their live records are copied to the
+ * current segment and the file is deleted. If the writer does not close the
+ * store, the index is rebuilt from the segments when it is opened again.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class MirrorStore implements Closeable {
+
+  /**
+   * A segment file and its mapping. The end and the live bytes are known by
+   * the writer only.
+   */
+  private static final class Segment {
+
+    int                    end;
+
+    final File             file;
+
+    long                   live;
+
+    final MappedByteBuffer map;
+
+    final int              number;
+
+    Segment(int number, File file, MappedByteBuffer map) {
+      this.number = number;
+      this.file = file;
+      this.map = map;
+    }
+  }
+
+  /**
+   * Default size of a segment file
+   */
+  public static final int                      DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+  private static final int                     INDEX_CAPACITY       = 1024;
+
+  @SuppressWarnings("nls")
+  private static final String                  INDEX_FILE           = "index";
+
+  @SuppressWarnings("nls")
+  private static final String                  LOCK_FILE            = "lock";
+
+  private static final int                     MAGIC;
+
+  private static final int                     RECORD_HEADER        = 8;
+
+  private static final int                     RETRIES              = 3;
+
+  private static final int                     SEGMENT_HEADER       = 8;
+
+  private Segment                              active;
+
+  private volatile boolean                     closing;
+
+  private final AtomicBoolean                  compacting;
+
+  private volatile double                      compactionThreshold  = 0.5;
+
+  private final ExecutorService                compactor;
+
+  private final File                           directory;
+
+  private volatile MirrorStoreIndex            index;
+
+  private final FileLock                       lock;
+
+  private final RandomAccessFile               lockFile;
+
+  private final Output                         output;
+
+  private int                                  segmentSize;
+
+  private final NavigableMap<Integer, Segment> segments;
+
+  static {
+    MAGIC = 0x57505347;
+  }
+
+  /**
+   * Opens a store for writing, creating it if needed.
+   * 
+   * @param directory directory of the store
+   * @throws IOException when the store cannot be opened, or another process
+   *           has it open for writing
+   */
+  public MirrorStore(File directory) throws IOException {
+    this(directory, false);
+  }
+
+  /**
+   * @param directory directory of the store
+   * @param readOnly whether to open the store for reading only, which other
+   *          processes can do while one writes
+   * @throws IOException when the store cannot be opened, or is opened for
+   *           writing while another process writes it
+   */
+  @SuppressWarnings("nls")
+  public MirrorStore(File directory, boolean readOnly) throws IOException {
+    this.directory = directory;
+    this.segments = new ConcurrentSkipListMap<Integer, Segment>();
+    this.compacting = new AtomicBoolean();
+    this.output = new Output();
+    this.segmentSize = DEFAULT_SEGMENT_SIZE;
+    if (readOnly) {
+      this.lockFile = null;
+      this.lock = null;
+      this.compactor = null;
+      this.index = MirrorStoreIndex.open(new File(directory, INDEX_FILE),
+          false);
+      return;
+    }
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException("Cannot create " + directory);
+    this.lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+    FileLock l;
+    try {
+      l = this.lockFile.getChannel().tryLock();
+    } catch (OverlappingFileLockException e) {
+      l = null;
+    }
+    if (l == null) {
+      this.lockFile.close();
+      throw new IOException(directory + " is open for writing already");
+    }
+    this.lock = l;
+    try {
+      openForWriting();
+    } catch (IOException e) {
+      this.lock.release();
+      this.lockFile.close();
+      throw e;
+    }
+    this.compactor = Executors.newSingleThreadExecutor(
+        new DaemonThreadFactory("wordpress-store-compaction"));
+  }
+
+  private static long key(Class<?> type, int id) {
+    return ((long) MirrorStoreCodec.kind(type) << 32) | (id & 0xffffffffL);
+  }
+
+  private static int offset(long location) {
+    return (int) location;
+  }
+
+  private static int segmentNumber(long location) {
+    return (int) (location >>> 32);
+  }
+
+  /**
+   * Appends a record to the current segment, starting a new one when it is
+   * full.
+   * 
+   * @return location of the record
+   */
+  private long append(byte[] body, int length) throws IOException {
+    int size = RECORD_HEADER + length;
+    if ((this.active == null) || (this.active.end + size > this.active.map
+        .capacity()))
+      roll(size);
+    CRC32 crc = new CRC32();
+    crc.update(body, 0, length);
+    ByteBuffer out = this.active.map.duplicate();
+    out.position(this.active.end);
+    out.putInt(length);
+    out.putInt((int) crc.getValue());
+    out.put(body, 0, length);
+    long location = ((long) this.active.number << 32) | this.active.end;
+    this.active.end += size;
+    return location;
+  }
+
+  /**
+   * Stops the compaction in progress after the record it is copying, and
+   * writes everything to the disk.
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.readOnly())
+      return;
+    this.closing = true;
+    this.compactor.shutdown();
+    // the lock is released only when no compaction writes any more
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (this.compactor.awaitTermination(1, TimeUnit.MINUTES))
+          break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+    synchronized (this) {
+      if (this.active != null)
+        this.active.map.force();
+      this.index.setClean(true);
+      this.lock.release();
+      this.lockFile.close();
+    }
+  }
+
+  /**
+   * Compacts the segments, other than the current one, in which less than
+   * the compaction threshold of the bytes are live records.
+   * 
+   * @return number of segments compacted
+   * @throws IOException when the records cannot be copied, or the store is
+   *           closed meanwhile
+   */
+  public int compact() throws IOException {
+    int result = 0;
+    for (Segment segment : this.segments.values()) {
+      if (this.closing)
+        break;
+      boolean sparse;
+      synchronized (this) {
+        sparse = (segment != this.active)
+            && this.segments.containsKey(Integer.valueOf(segment.number))
+            && (segment.live < (segment.end - SEGMENT_HEADER)
+                * this.compactionThreshold);
+      }
+      if (sparse) {
+        compact(segment);
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Copies the live records of a segment to the current one and deletes it.
+   * Tombstones are copied too, unless no older segment can hold the record
+   * they delete.
+   */
+  private void compact(Segment segment) throws IOException {
+    int offset = SEGMENT_HEADER;
+    byte[] body = new byte[0];
+    while (offset < segment.end) {
+      synchronized (this) {
+        // the records copied so far stay, the segment is compacted later
+        if (this.closing)
+          throw new IOException("The store is closed"); //$NON-NLS-1$
+        ByteBuffer in = segment.map.duplicate();
+        in.position(offset);
+        int length = in.getInt();
+        in.getInt();
+        int kind = in.getInt();
+        int id = in.getInt();
+        boolean deleted = in.get() != 0;
+        long key = ((long) kind << 32) | (id & 0xffffffffL);
+        long location = ((long) segment.number << 32) | offset;
+        long current = this.index.get(key);
+        boolean copy = deleted ? ((current == 0) && (this.segments
+            .firstKey().intValue() < segment.number)) : (current == location);
+        if (copy) {
+          if (body.length < length)
+            body = new byte[length];
+          in.position(offset + RECORD_HEADER);
+          in.get(body, 0, length);
+          long moved = append(body, length);
+          if (!deleted) {
+            this.index.put(key, moved);
+            this.active.live += RECORD_HEADER + length;
+          }
+        }
+        offset += RECORD_HEADER + length;
+      }
+    }
+    synchronized (this) {
+      this.active.map.force();
+      this.index.force();
+      this.segments.remove(Integer.valueOf(segment.number));
+      if (!segment.file.delete())
+        throw new IOException("Cannot delete " + segment.file); //$NON-NLS-1$
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private static String corrupt(Class<?> type, int id) {
+    return "Record of " + type.getSimpleName() + " " + id + " is corrupt";
+  }
+
+  /**
+   * Removes an object.
+   * 
+   * @param type class of the object
+   * @param id id of the object
+   * @return whether the object was in the store
+   * @throws IOException when the store cannot be written
+   */
+  public synchronized boolean delete(Class<? extends XmlRpcMapped> type,
+      int id) throws IOException {
+    checkWritable();
+    long key = key(type, id);
+    if (this.index.get(key) == 0)
+      return false;
+    this.output.reset();
+    this.output.writeInt(MirrorStoreCodec.kind(type));
+    this.output.writeInt(id);
+    this.output.write(1);
+    append(this.output.array(), this.output.size());
+    release(this.index.put(key, 0));
+    maybeCompact();
+    return true;
+  }
+
+  /**
+   * @param type class of the object
+   * @param id id of the object
+   * @return the object, or <code>null</code> when it is not in the store or
+   *         was stored by another version of its class
+   * @throws IOException when the store cannot be read
+   */
+  public <T extends XmlRpcMapped> T get(Class<T> type, int id)
+      throws IOException {
+    long key = key(type, id);
+    for (int attempt = 0; attempt < RETRIES; attempt++) {
+      long location = index().get(key);
+      if (location == 0)
+        return null;
+      Segment segment = segment(segmentNumber(location));
+      if (segment == null)
+        // compacted since the index was read
+        continue;
+      ByteBuffer in = segment.map.duplicate();
+      in.position(offset(location) + RECORD_HEADER);
+      if ((in.getInt() != MirrorStoreCodec.kind(type)) || (in.getInt() != id))
+        continue;
+      if (in.get() != 0)
+        return null;
+      try {
+        return MirrorStoreCodec.decode(type, in);
+      } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+        throw new IOException(corrupt(type, id), e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param type class of the objects
+   * @return ids of the objects of the class in the store
+   * @throws IOException when the index cannot be read
+   */
+  public List<Integer> ids(Class<? extends XmlRpcMapped> type)
+      throws IOException {
+    final int kind = MirrorStoreCodec.kind(type);
+    final List<Integer> result = new ArrayList<Integer>();
+    index().visit(new MirrorStoreIndex.Visitor() {
+      @Override
+      public void visit(long key, long location) {
+        if ((int) (key >>> 32) == kind)
+          result.add(Integer.valueOf((int) key));
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @return the current index, mapped again when the writer replaced it
+   */
+  private MirrorStoreIndex index() throws IOException {
+    MirrorStoreIndex result = this.index;
+    // the writer replaces its own index
+    if (!readOnly())
+      return result;
+    if (result.isStale()) {
+      synchronized (this) {
+        result = this.index;
+        while (result.isStale()) {
+          result = MirrorStoreIndex.open(new File(this.directory, INDEX_FILE),
+              false);
+        }
+        this.index = result;
+      }
+    }
+    return result;
+  }
+
+  @SuppressWarnings("nls")
+  private void checkWritable() {
+    if (readOnly())
+      throw new IllegalStateException("The store is open for reading only");
+  }
+
+  /**
+   * Starts a compaction in the background when a segment became sparse and
+   * none is running.
+   */
+  private void maybeCompact() {
+    boolean sparse = false;
+    for (Segment segment : this.segments.values()) {
+      if ((segment != this.active)
+          && (segment.live < (segment.end - SEGMENT_HEADER)
+              * this.compactionThreshold)) {
+        sparse = true;
+        break;
+      }
+    }
+    if (!sparse || !this.compacting.compareAndSet(false, true))
+      return;
+    this.compactor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          compact();
+        } catch (IOException e) {
+          // the segment stays, it is tried again after the next write
+        } finally {
+          MirrorStore.this.compacting.set(false);
+        }
+      }
+    });
+  }
+
+  @SuppressWarnings("nls")
+  private File segmentFile(int number) {
+    return new File(this.directory, String.format("%08d.seg",
+        Integer.valueOf(number)));
+  }
+
+  /**
+   * Maps the segment files and finds the end of their records. The index is
+   * rebuilt from the records if the writer did not close it.
+   */
+  @SuppressWarnings("nls")
+  private void openForWriting() throws IOException {
+    File indexFile = new File(this.directory, INDEX_FILE);
+    boolean rebuild = true;
+    if (indexFile.exists()) {
+      try {
+        this.index = MirrorStoreIndex.open(indexFile, true);
+        rebuild = !this.index.isClean();
+      } catch (IOException e) {
+        // rebuilt below
+      }
+    }
+    if (rebuild)
+      this.index = MirrorStoreIndex.create(indexFile, INDEX_CAPACITY);
+    File[] files = this.directory.listFiles();
+    List<Integer> numbers = new ArrayList<Integer>();
+    for (File file : (files == null) ? new File[0] : files) {
+      if (file.getName().matches("[0-9]{8}\\.seg"))
+        numbers.add(Integer.valueOf(file.getName().substring(0, 8)));
+    }
+    Collections.sort(numbers);
+    for (Integer number : numbers) {
+      Segment segment = openSegment(number.intValue(), true);
+      this.segments.put(number, segment);
+      segment.end = scan(segment, rebuild);
+      this.active = segment;
+    }
+    this.index.visit(new MirrorStoreIndex.Visitor() {
+      @Override
+      public void visit(long key, long location) {
+        Segment segment = MirrorStore.this.segments.get(Integer
+            .valueOf(segmentNumber(location)));
+        if (segment != null)
+          segment.live += RECORD_HEADER
+              + segment.map.getInt(offset(location));
+      }
+    });
+    this.index.setClean(false);
+  }
+
+  /**
+   * Maps a segment file, all of it.
+   * 
+   * @return the segment, or <code>null</code> when the file does not exist
+   */
+  @SuppressWarnings("nls")
+  private Segment openSegment(int number, boolean writable)
+      throws IOException {
+    File file = segmentFile(number);
+    RandomAccessFile raf;
+    try {
+      raf = new RandomAccessFile(file, writable ? "rw" : "r");
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    try {
+      MappedByteBuffer map = raf.getChannel().map(
+          writable ? MapMode.READ_WRITE : MapMode.READ_ONLY, 0, raf.length());
+      if ((map.capacity() < SEGMENT_HEADER)
+          || (map.getInt(0) != MAGIC))
+        throw new IOException(file + " is not a segment");
+      return new Segment(number, file, map);
+    } finally {
+      // the mapping stays valid without the file
+      raf.close();
+    }
+  }
+
+  /**
+   * Stores an object, replacing the one with the same class and id.
+   * 
+   * @param id id of the object
+   * @param item the object
+   * @throws IOException when the store cannot be written
+   */
+  public synchronized void put(int id, XmlRpcMapped item) throws IOException {
+    checkWritable();
+    this.output.reset();
+    this.output.writeInt(MirrorStoreCodec.kind(item.getClass()));
+    this.output.writeInt(id);
+    this.output.write(0);
+    MirrorStoreCodec.encode(item, this.output);
+    long location = append(this.output.array(), this.output.size());
+    this.active.live += RECORD_HEADER + this.output.size();
+    release(this.index.put(key(item.getClass(), id), location));
+    this.index = this.index.ensureCapacity();
+    maybeCompact();
+  }
+
+  private boolean readOnly() {
+    return this.lock == null;
+  }
+
+  /**
+   * Counts a record that the index no longer points to as garbage.
+   */
+  private void release(long location) {
+    if (location == 0)
+      return;
+    Segment segment = this.segments.get(Integer
+        .valueOf(segmentNumber(location)));
+    if (segment != null)
+      segment.live -= RECORD_HEADER + segment.map.getInt(offset(location));
+  }
+
+  /**
+   * Closes the current segment, cutting the file at its end, and starts a
+   * new one that can hold at least the given number of bytes.
+   */
+  @SuppressWarnings("nls")
+  private void roll(int size) throws IOException {
+    int number = 1;
+    if (this.active != null) {
+      this.active.map.force();
+      RandomAccessFile raf = new RandomAccessFile(this.active.file, "rw");
+      try {
+        raf.setLength(this.active.end);
+      } finally {
+        raf.close();
+      }
+      number = this.active.number + 1;
+    }
+    File file = segmentFile(number);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      // the file is sparse until it is written
+      raf.setLength(Math.max(this.segmentSize, SEGMENT_HEADER + size));
+      raf.writeInt(MAGIC);
+    } finally {
+      raf.close();
+    }
+    Segment segment = openSegment(number, true);
+    segment.end = SEGMENT_HEADER;
+    this.segments.put(Integer.valueOf(number), segment);
+    this.active = segment;
+  }
+
+  /**
+   * Reads the records of a segment, checking their checksums, and puts them
+   * into the index if it is being rebuilt.
+   * 
+   * @return the end of the valid records
+   */
+  private int scan(Segment segment, boolean rebuild) throws IOException {
+    ByteBuffer in = segment.map.duplicate();
+    int offset = SEGMENT_HEADER;
+    byte[] body = new byte[0];
+    CRC32 crc = new CRC32();
+    while (offset + RECORD_HEADER <= in.capacity()) {
+      in.position(offset);
+      int length = in.getInt();
+      int checksum = in.getInt();
+      if ((length < 9) || (length > in.remaining()))
+        break;
+      if (body.length < length)
+        body = new byte[length];
+      in.get(body, 0, length);
+      crc.reset();
+      crc.update(body, 0, length);
+      if ((int) crc.getValue() != checksum)
+        break;
+      if (rebuild) {
+        ByteBuffer b = ByteBuffer.wrap(body);
+        long key = ((long) b.getInt() << 32) | (b.getInt() & 0xffffffffL);
+        long location = ((long) segment.number << 32) | offset;
+        this.index.put(key, (b.get() != 0) ? 0 : location);
+        this.index = this.index.ensureCapacity();
+      }
+      offset += RECORD_HEADER + length;
+    }
+    return offset;
+  }
+
+  /**
+   * @param number number of the segment
+   * @return the segment, mapped on first use, or <code>null</code> if it was
+   *         deleted
+   */
+  private Segment segment(int number) throws IOException {
+    Integer key = Integer.valueOf(number);
+    Segment result = this.segments.get(key);
+    if ((result == null) && readOnly()) {
+      result = openSegment(number, false);
+      if (result != null)
+        this.segments.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * @param compactionThreshold fraction of live bytes under which a segment
+   *          is compacted, 0.5 by default
+   */
+  @SuppressWarnings("nls")
+  public void setCompactionThreshold(double compactionThreshold) {
+    if ((compactionThreshold < 0) || (compactionThreshold > 1))
+      throw new IllegalArgumentException(
+          "compactionThreshold must be between 0 and 1");
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * @param segmentSize size of the segment files started from now on
+   */
+  @SuppressWarnings("nls")
+  public synchronized void setSegmentSize(int segmentSize) {
+    if (segmentSize < 4096)
+      throw new IllegalArgumentException("segmentSize must be at least 4096");
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * @return number of objects in the store
+   * @throws IOException when the index cannot be read
+   */
+  public int size() throws IOException {
+    return index().getSize();
+  }
+}
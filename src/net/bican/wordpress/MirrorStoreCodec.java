@@ -0,0 +1,338 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import net.bican.wordpress.XmlRpcMapping.MappedField;
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Binary encoding of <code>XmlRpcMapped</code> objects for the
+ * {@link MirrorStore}. The fields of a class are written in the order of
+ * their names, each as a tag byte followed by the value, so field names are
+ * not repeated in every record; integers and dates are variable length.
+ * Every record starts with a fingerprint of the field names, and a record
+ * written by another version of the class is not decoded. Structs inside
+ * fields, like custom fields, keep their keys.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+final class MirrorStoreCodec {
+
+  /**
+   * Growable buffer that records are encoded into.
+   */
+  static final class Output {
+
+    private byte[] buffer = new byte[1024];
+
+    private int    size;
+
+    byte[] array() {
+      return this.buffer;
+    }
+
+    private void ensure(int n) {
+      if (this.size + n > this.buffer.length)
+        this.buffer = Arrays.copyOf(this.buffer, Math.max(
+            this.buffer.length * 2, this.size + n));
+    }
+
+    void reset() {
+      this.size = 0;
+    }
+
+    int size() {
+      return this.size;
+    }
+
+    void write(byte[] b) {
+      ensure(b.length);
+      System.arraycopy(b, 0, this.buffer, this.size, b.length);
+      this.size += b.length;
+    }
+
+    void write(int b) {
+      ensure(1);
+      this.buffer[this.size++] = (byte) b;
+    }
+
+    void writeInt(int v) {
+      ensure(4);
+      this.buffer[this.size++] = (byte) (v >>> 24);
+      this.buffer[this.size++] = (byte) (v >>> 16);
+      this.buffer[this.size++] = (byte) (v >>> 8);
+      this.buffer[this.size++] = (byte) v;
+    }
+
+    void writeVarLong(long v) {
+      ensure(10);
+      while ((v & ~0x7fL) != 0) {
+        this.buffer[this.size++] = (byte) ((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      this.buffer[this.size++] = (byte) v;
+    }
+  }
+
+  /**
+   * Fields of a class in the order they are encoded, and their fingerprint.
+   */
+  private static final class Schema {
+
+    final MappedField[] fields;
+
+    final int           fingerprint;
+
+    Schema(Class<?> type) {
+      this.fields = XmlRpcMapping.of(type).getFields().clone();
+      Arrays.sort(this.fields, new Comparator<MappedField>() {
+        @Override
+        public int compare(MappedField a, MappedField b) {
+          return a.getName().compareTo(b.getName());
+        }
+      });
+      int h = 17;
+      for (MappedField field : this.fields) {
+        h = 31 * h + field.getName().hashCode();
+      }
+      this.fingerprint = h;
+    }
+  }
+
+  private static final int                TAG_NULL   = 0;
+
+  private static final int                TAG_INT    = 1;
+
+  private static final int                TAG_STRING = 2;
+
+  private static final int                TAG_TRUE   = 3;
+
+  private static final int                TAG_FALSE  = 4;
+
+  private static final int                TAG_DATE   = 5;
+
+  private static final int                TAG_DOUBLE = 6;
+
+  private static final int                TAG_STRUCT = 7;
+
+  private static final int                TAG_ARRAY  = 8;
+
+  private static final int                TAG_BYTES  = 9;
+
+  private static final int                TAG_LONG   = 10;
+
+  private static final ClassValue<Schema> SCHEMAS;
+
+  private static final Charset            UTF8;
+
+  static {
+    SCHEMAS = new ClassValue<Schema>() {
+      @Override
+      protected Schema computeValue(Class<?> type) {
+        return new Schema(type);
+      }
+    };
+    UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+  }
+
+  private MirrorStoreCodec() {
+    // only static methods
+  }
+
+  /**
+   * Decodes a record.
+   * 
+   * @param type class of the record
+   * @param in buffer positioned at the start of the record
+   * @return the decoded object, or <code>null</code> when it was written by
+   *         another version of the class
+   * @throws IllegalArgumentException when the record is corrupt
+   */
+  static <T extends XmlRpcMapped> T decode(Class<T> type, ByteBuffer in) {
+    Schema schema = SCHEMAS.get(type);
+    if (in.getInt() != schema.fingerprint)
+      return null;
+    T result;
+    try {
+      result = type.newInstance();
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new IllegalArgumentException(e);
+    }
+    for (MappedField field : schema.fields) {
+      Object value = readValue(in);
+      if (value != null)
+        result.setMappedValue(field, value);
+    }
+    return result;
+  }
+
+  /**
+   * Encodes an object at the end of the output.
+   * 
+   * @param item object to encode
+   * @param out buffer to encode into
+   */
+  static void encode(XmlRpcMapped item, Output out) {
+    Schema schema = SCHEMAS.get(item.getClass());
+    out.writeInt(schema.fingerprint);
+    for (MappedField field : schema.fields) {
+      writeValue(field.get(item), out);
+    }
+  }
+
+  /**
+   * @param type a mapped class
+   * @return a code of the class for the keys of the store, never 0
+   */
+  static int kind(Class<?> type) {
+    int h = type.getName().hashCode();
+    return (h == 0) ? 1 : h;
+  }
+
+  private static String readString(ByteBuffer in) {
+    int n = (int) readVarLong(in);
+    if (in.hasArray()) {
+      String s = new String(in.array(), in.arrayOffset() + in.position(), n,
+          UTF8);
+      in.position(in.position() + n);
+      return s;
+    }
+    byte[] b = new byte[n];
+    in.get(b);
+    return new String(b, UTF8);
+  }
+
+  @SuppressWarnings({ "unchecked", "nls" })
+  private static Object readValue(ByteBuffer in) {
+    int tag = in.get();
+    switch (tag) {
+    case TAG_NULL:
+      return null;
+    case TAG_INT:
+      return Integer.valueOf((int) unzigzag(readVarLong(in)));
+    case TAG_LONG:
+      return Long.valueOf(unzigzag(readVarLong(in)));
+    case TAG_STRING:
+      return readString(in);
+    case TAG_TRUE:
+      return Boolean.TRUE;
+    case TAG_FALSE:
+      return Boolean.FALSE;
+    case TAG_DATE:
+      return new Date(unzigzag(readVarLong(in)));
+    case TAG_DOUBLE:
+      return Double.valueOf(in.getDouble());
+    case TAG_BYTES:
+      byte[] b = new byte[(int) readVarLong(in)];
+      in.get(b);
+      return b;
+    case TAG_STRUCT:
+      XmlRpcStruct struct = new XmlRpcStruct();
+      for (long n = readVarLong(in); n > 0; n--) {
+        String key = readString(in);
+        struct.put(key, readValue(in));
+      }
+      return struct;
+    case TAG_ARRAY:
+      XmlRpcArray array = new XmlRpcArray();
+      for (long n = readVarLong(in); n > 0; n--) {
+        array.add(readValue(in));
+      }
+      return array;
+    default:
+      throw new IllegalArgumentException("Unknown tag " + tag);
+    }
+  }
+
+  private static long readVarLong(ByteBuffer in) {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = in.get();
+      result |= (long) (b & 0x7f) << shift;
+      if (b >= 0)
+        return result;
+    }
+    throw new IllegalArgumentException("Malformed number"); //$NON-NLS-1$
+  }
+
+  private static long unzigzag(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  private static void writeString(String s, Output out) {
+    byte[] b = s.getBytes(UTF8);
+    out.writeVarLong(b.length);
+    out.write(b);
+  }
+
+  @SuppressWarnings({ "rawtypes", "nls" })
+  private static void writeValue(Object value, Output out) {
+    if (value == null) {
+      out.write(TAG_NULL);
+    } else if (value instanceof Integer) {
+      out.write(TAG_INT);
+      out.writeVarLong(zigzag(((Integer) value).intValue()));
+    } else if (value instanceof Long) {
+      out.write(TAG_LONG);
+      out.writeVarLong(zigzag(((Long) value).longValue()));
+    } else if (value instanceof String) {
+      out.write(TAG_STRING);
+      writeString((String) value, out);
+    } else if (value instanceof Boolean) {
+      out.write(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+    } else if (value instanceof Date) {
+      out.write(TAG_DATE);
+      out.writeVarLong(zigzag(((Date) value).getTime()));
+    } else if (value instanceof Double) {
+      out.write(TAG_DOUBLE);
+      long bits = Double.doubleToLongBits(((Double) value).doubleValue());
+      out.writeInt((int) (bits >>> 32));
+      out.writeInt((int) bits);
+    } else if (value instanceof byte[]) {
+      out.write(TAG_BYTES);
+      out.writeVarLong(((byte[]) value).length);
+      out.write((byte[]) value);
+    } else if (value instanceof Map) {
+      out.write(TAG_STRUCT);
+      out.writeVarLong(((Map) value).size());
+      for (Object o : ((Map) value).entrySet()) {
+        Map.Entry entry = (Map.Entry) o;
+        writeString(String.valueOf(entry.getKey()), out);
+        writeValue(entry.getValue(), out);
+      }
+    } else if (value instanceof List) {
+      out.write(TAG_ARRAY);
+      out.writeVarLong(((List) value).size());
+      for (Object o : (List) value) {
+        writeValue(o, out);
+      }
+    } else if (value instanceof XmlRpcMapped) {
+      writeValue(((XmlRpcMapped) value).toXmlRpcStruct(), out);
+    } else {
+      throw new IllegalArgumentException("Cannot store a "
+          + value.getClass().getName());
+    }
+  }
+
+  private static long zigzag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 
+ * Memory-mapped hash index of a {@link MirrorStore}, from keys to the
+ * locations of their latest records. It is an open addressing table of
+ * 16-byte slots, a key and a location, after a 64-byte header. A key is
+ * never 0, a location of 0 marks a deleted key.
+ * 
+ * Only the writer changes the table, readers in other processes see the
+ * changes through the mapping. A new key gets its location before its key,
+ * so a reader that finds the key finds its location too. When the table
+ * fills up, the writer writes a larger one to a new file, renames it over
+ * the old one and marks the old one stale, so readers map the file again.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+final class MirrorStoreIndex {
+
+  private static final int    CAPACITY = 8;
+
+  private static final int    CLEAN    = 24;
+
+  private static final int    HEADER   = 64;
+
+  private static final int    MAGIC    = 0x57504958;
+
+  private static final double MAX_LOAD = 0.6;
+
+  private static final int    SIZE     = 12;
+
+  private static final int    SLOT     = 16;
+
+  private static final int    STALE    = 20;
+
+  private static final int    USED     = 16;
+
+  private static final int    VERSION  = 1;
+
+  private final int           capacity;
+
+  private final File          file;
+
+  private final MappedByteBuffer map;
+
+  private MirrorStoreIndex(File file, MappedByteBuffer map) throws IOException {
+    this.file = file;
+    this.map = map;
+    if ((map.capacity() < HEADER) || (map.getInt(0) != MAGIC)
+        || (map.getInt(4) != VERSION))
+      throw new IOException(file + " is not an index"); //$NON-NLS-1$
+    this.capacity = map.getInt(CAPACITY);
+    if ((Integer.bitCount(this.capacity) != 1)
+        || (map.capacity() < HEADER + (long) this.capacity * SLOT))
+      throw new IOException(file + " is truncated"); //$NON-NLS-1$
+  }
+
+  /**
+   * Creates an empty index, replacing the file if it exists. The index in
+   * the file is marked stale, so readers map the file again.
+   * 
+   * @param file the file of the index
+   * @param capacity number of slots, a power of 2
+   * @return the new index
+   * @throws IOException when the file cannot be written
+   */
+  static MirrorStoreIndex create(File file, int capacity) throws IOException {
+    MirrorStoreIndex previous = null;
+    if (file.exists()) {
+      try {
+        previous = open(file, true);
+      } catch (IOException e) {
+        // not an index, so no reader uses it
+      }
+    }
+    File temporary = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+    MirrorStoreIndex index = map(temporary, capacity, true);
+    index.map.force();
+    Files.move(temporary.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    if (previous != null)
+      previous.map.putInt(STALE, 1);
+    return new MirrorStoreIndex(file, index.map);
+  }
+
+  private static long hash(long key) {
+    // finalizer of murmur3, so that ids next to each other spread out
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static MirrorStoreIndex map(File file, int capacity, boolean create)
+      throws IOException {
+    @SuppressWarnings("nls")
+    String mode = create ? "rw" : "r";
+    RandomAccessFile raf = new RandomAccessFile(file, mode);
+    try {
+      FileChannel channel = raf.getChannel();
+      if (create) {
+        raf.setLength(0);
+        raf.setLength(HEADER + (long) capacity * SLOT);
+        MappedByteBuffer map = channel.map(MapMode.READ_WRITE, 0,
+            raf.length());
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putInt(CAPACITY, capacity);
+        map.putInt(CLEAN, 1);
+        return new MirrorStoreIndex(file, map);
+      }
+      return new MirrorStoreIndex(file, channel.map(MapMode.READ_ONLY, 0,
+          raf.length()));
+    } finally {
+      // the mapping stays valid without the file
+      raf.close();
+    }
+  }
+
+  /**
+   * @param file the file of the index
+   * @param writable whether the index is opened by the writer
+   * @return the index in the file
+   * @throws IOException when the file cannot be read or is not an index
+   */
+  static MirrorStoreIndex open(File file, boolean writable)
+      throws IOException {
+    if (!writable)
+      return map(file, 0, false);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+    try {
+      return new MirrorStoreIndex(file, raf.getChannel().map(
+          MapMode.READ_WRITE, 0, raf.length()));
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Copies the live keys to a new index twice as large when this one is
+   * too full, and marks this one stale.
+   * 
+   * @return the index to use from now on, which may be this one
+   * @throws IOException when the new index cannot be written
+   */
+  MirrorStoreIndex ensureCapacity() throws IOException {
+    if (getUsed() < this.capacity * MAX_LOAD)
+      return this;
+    int newCapacity = this.capacity;
+    while (getSize() >= newCapacity * MAX_LOAD / 2) {
+      newCapacity *= 2;
+    }
+    return rebuild(newCapacity);
+  }
+
+  void force() {
+    this.map.force();
+  }
+
+  /**
+   * @param key key to look up
+   * @return location of the latest record of the key, or 0
+   */
+  long get(long key) {
+    int mask = this.capacity - 1;
+    for (int i = (int) hash(key) & mask;; i = (i + 1) & mask) {
+      int slot = HEADER + i * SLOT;
+      long k = this.map.getLong(slot);
+      if (k == 0)
+        return 0;
+      if (k == key)
+        return this.map.getLong(slot + 8);
+    }
+  }
+
+  /**
+   * @return number of keys with a location
+   */
+  int getSize() {
+    return this.map.getInt(SIZE);
+  }
+
+  private int getUsed() {
+    return this.map.getInt(USED);
+  }
+
+  /**
+   * @return whether the writer closed the index properly
+   */
+  boolean isClean() {
+    return this.map.getInt(CLEAN) != 0;
+  }
+
+  /**
+   * @return whether the index was replaced by a new file
+   */
+  boolean isStale() {
+    return this.map.getInt(STALE) != 0;
+  }
+
+  /**
+   * Sets the location of a key.
+   * 
+   * @param key key to change
+   * @param location location of the latest record, or 0 to delete the key
+   * @return the previous location, or 0
+   */
+  long put(long key, long location) {
+    int mask = this.capacity - 1;
+    for (int i = (int) hash(key) & mask;; i = (i + 1) & mask) {
+      int slot = HEADER + i * SLOT;
+      long k = this.map.getLong(slot);
+      if (k == 0) {
+        if (location == 0)
+          return 0;
+        this.map.putLong(slot + 8, location);
+        this.map.putLong(slot, key);
+        this.map.putInt(USED, getUsed() + 1);
+        this.map.putInt(SIZE, getSize() + 1);
+        return 0;
+      }
+      if (k == key) {
+        long previous = this.map.getLong(slot + 8);
+        this.map.putLong(slot + 8, location);
+        if ((previous == 0) != (location == 0))
+          this.map.putInt(SIZE, getSize() + ((location == 0) ? -1 : 1));
+        return previous;
+      }
+    }
+  }
+
+  /**
+   * Writes the live keys to a new file of the given capacity, which replaces
+   * this one.
+   */
+  private MirrorStoreIndex rebuild(int newCapacity) throws IOException {
+    File temporary = new File(this.file.getPath() + ".tmp"); //$NON-NLS-1$
+    MirrorStoreIndex result = map(temporary, newCapacity, true);
+    result.map.putInt(CLEAN, 0);
+    for (int i = 0; i < this.capacity; i++) {
+      int slot = HEADER + i * SLOT;
+      long key = this.map.getLong(slot);
+      long location = this.map.getLong(slot + 8);
+      if ((key != 0) && (location != 0))
+        result.put(key, location);
+    }
+    result.map.force();
+    Files.move(temporary.toPath(), this.file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    this.map.putInt(STALE, 1);
+    return new MirrorStoreIndex(this.file, result.map);
+  }
+
+  /**
+   * @param clean whether the index matches the segments, which is set when
+   *          the writer closes it
+   */
+  void setClean(boolean clean) {
+    this.map.putInt(CLEAN, clean ? 1 : 0);
+    this.map.force();
+  }
+
+  /**
+   * Calls the visitor with every live key.
+   */
+  void visit(Visitor visitor) throws IOException {
+    for (int i = 0; i < this.capacity; i++) {
+      int slot = HEADER + i * SLOT;
+      long key = this.map.getLong(slot);
+      long location = this.map.getLong(slot + 8);
+      if ((key != 0) && (location != 0))
+        visitor.visit(key, location);
+    }
+  }
+
+  /**
+   * Receives the live keys of an index.
+   */
+  interface Visitor {
+    void visit(long key, long location) throws IOException;
+  }
+}
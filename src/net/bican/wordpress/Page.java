@@ -9,10 +9,9 @@
  */
 package net.bican.wordpress;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Date;
 
 import redstone.xmlrpc.XmlRpcArray;
@@ -28,7 +27,7 @@ import redstone.xmlrpc.XmlRpcStruct;
 public class Page extends XmlRpcMapped implements StringHeader {
   /**
    * 
-   * Generates a new page class from the given file
+   * Generates a new page class from the given file, which is in UTF-8
    * 
    * @param file file that contains the page information
    * @return new Page object
@@ -37,8 +36,24 @@ public class Page extends XmlRpcMapped implements StringHeader {
    */
   public static Page fromFile(File file) throws IOException,
       InvalidPostFormatException {
-    BufferedReader input = new BufferedReader(new FileReader(file));
-    XmlRpcStruct page = FileParser.parseFile(input);
+    return fromFile(file, Charset.forName("UTF-8")); //$NON-NLS-1$
+  }
+
+  /**
+   * 
+   * Generates a new page class from the given file. Arrays of objects, like
+   * custom fields, are read with the types of
+   * {@link JSONConvertableRegistry#getDefault()}.
+   * 
+   * @param file file that contains the page information
+   * @param charset encoding of the file
+   * @return new Page object
+   * @throws IOException when the file cannot be read
+   * @throws InvalidPostFormatException when the file format is not recognized
+   */
+  public static Page fromFile(File file, Charset charset) throws IOException,
+      InvalidPostFormatException {
+    XmlRpcStruct page = FileParser.parseFile(file, charset);
     Page result = new Page();
     result.fromXmlRpcStruct(page);
     return result;
@@ -0,0 +1,198 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+
+/**
+ * 
+ * Iterates over a result that the server returns in pages selected by
+ * offset and number. Only the current page is held in memory; optionally the
+ * next page is fetched in the background while the current one is consumed.
+ * Closing the iterator drops the page being fetched.
+ * 
+ * Faults are thrown as <code>XmlRpcException</code> with the
+ * <code>XmlRpcFault</code> as the cause, since iterators cannot throw
+ * checked exceptions.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ * @param <T> type of the items
+ */
+abstract class PagedIterator<T> implements XmlRpcIterator<T> {
+
+  private static final class Chunk<T> {
+
+    final List<T> items;
+
+    final boolean last;
+
+    Chunk(List<T> items, boolean last) {
+      this.items = items;
+      this.last = last;
+    }
+  }
+
+  private static final ExecutorService READ_AHEAD;
+
+  @SuppressWarnings("nls")
+  private static final String          THREAD_NAME = "wordpress-read-ahead";
+
+  static {
+    READ_AHEAD = Executors.newCachedThreadPool(new DaemonThreadFactory(
+        THREAD_NAME));
+  }
+
+  private boolean                      closed      = false;
+
+  private Iterator<T>                  current;
+
+  private boolean                      last        = false;
+
+  private Future<Chunk<T>>              next        = null;
+
+  private int                          offset      = 0;
+
+  private final int                    pageSize;
+
+  private final boolean                readAhead;
+
+  /**
+   * @param pageSize number of items fetched at once
+   * @param readAhead whether to fetch the next page in the background
+   */
+  @SuppressWarnings("nls")
+  PagedIterator(int pageSize, boolean readAhead) {
+    if (pageSize < 1)
+      throw new IllegalArgumentException("pageSize must be positive");
+    this.pageSize = pageSize;
+    this.readAhead = readAhead;
+    this.current = Collections.<T> emptyList().iterator();
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.XmlRpcIterator#close()
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    this.current = Collections.<T> emptyList().iterator();
+    if (this.next != null) {
+      this.next.cancel(true);
+      this.next = null;
+    }
+  }
+
+  /**
+   * Fetches a page.
+   * 
+   * @param offset number of items to skip
+   * @param number number of items to fetch
+   * @param page list to add the items to
+   * @return number of items the server returned, fewer than
+   *         <code>number</code> only on the last page; may be more than the
+   *         items added, e.g. when some disappeared in the meantime
+   * @throws XmlRpcFault when the server returned a fault
+   */
+  abstract int fetch(int offset, int number, List<T> page) throws XmlRpcFault;
+
+  Chunk<T> fetchChunk(int from) throws XmlRpcFault {
+    List<T> items = new ArrayList<T>(this.pageSize);
+    boolean end = fetch(from, this.pageSize, items) < this.pageSize;
+    return new Chunk<T>(items, end);
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see java.util.Iterator#hasNext()
+   */
+  @Override
+  public boolean hasNext() {
+    while (!this.current.hasNext()) {
+      if (this.last || this.closed)
+        return false;
+      Chunk<T> chunk = take();
+      this.last = chunk.last;
+      this.current = chunk.items.iterator();
+      if (!this.last && this.readAhead) {
+        final int from = this.offset;
+        this.next = READ_AHEAD.submit(new Callable<Chunk<T>>() {
+          @Override
+          public Chunk<T> call() throws Exception {
+            return fetchChunk(from);
+          }
+        });
+      }
+    }
+    return true;
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see java.util.Iterator#next()
+   */
+  @Override
+  public T next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    return this.current.next();
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see java.util.Iterator#remove()
+   */
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  @SuppressWarnings("nls")
+  private Chunk<T> take() {
+    int from = this.offset;
+    this.offset += this.pageSize;
+    try {
+      if (this.next == null)
+        return fetchChunk(from);
+      Future<Chunk<T>> f = this.next;
+      this.next = null;
+      return f.get();
+    } catch (XmlRpcFault e) {
+      throw new XmlRpcException(e.getLocalizedMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new XmlRpcException("Interrupted waiting for the next page", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new XmlRpcException(cause.getLocalizedMessage(), cause);
+    }
+  }
+}
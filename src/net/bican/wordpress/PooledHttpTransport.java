@@ -0,0 +1,819 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 
+ * HTTP/1.1 transport with its own pool of keep-alive connections. The number
+ * of connections per transport is bounded; callers wait for a free one when
+ * all of them are in use. Responses are requested gzip compressed.
+ * 
+ * A connection goes back to the pool when the response stream is closed
+ * after being read, so callers must always close it. Idle connections are
+ * dropped after the keep-alive timeout, which should be below the server's
+ * (5 seconds for a default Apache). A connection that has been idle for a
+ * while is checked for a close from the server before it is reused. A
+ * request is sent once more on a new connection only when writing it to a
+ * reused one fails; once it has been sent, the server may already have run
+ * it, so the error is passed on.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class PooledHttpTransport implements XmlRpcTransport {
+
+  /**
+   * 
+   * Snapshot of the connection usage of a transport.
+   * 
+   * @author Can Bican &lt;can@bican.net&gt;
+   * 
+   */
+  public static final class Statistics {
+
+    private final long              closed;
+
+    private final Map<Integer, Long> connections;
+
+    private final int               idle;
+
+    private final long              opened;
+
+    private final long              requests;
+
+    private final long              reused;
+
+    Statistics(long opened, long closed, long requests, long reused, int idle,
+        Map<Integer, Long> connections) {
+      this.opened = opened;
+      this.closed = closed;
+      this.requests = requests;
+      this.reused = reused;
+      this.idle = idle;
+      this.connections = Collections.unmodifiableMap(connections);
+    }
+
+    /**
+     * @return number of connections closed so far
+     */
+    public long getClosed() {
+      return this.closed;
+    }
+
+    /**
+     * @return number of requests served by each open connection, by
+     *         connection id
+     */
+    public Map<Integer, Long> getConnections() {
+      return this.connections;
+    }
+
+    /**
+     * @return number of open connections waiting in the pool
+     */
+    public int getIdle() {
+      return this.idle;
+    }
+
+    /**
+     * @return number of connections opened so far
+     */
+    public long getOpened() {
+      return this.opened;
+    }
+
+    /**
+     * @return number of requests sent so far
+     */
+    public long getRequests() {
+      return this.requests;
+    }
+
+    /**
+     * @return number of requests sent on a connection that was used before
+     */
+    public long getReused() {
+      return this.reused;
+    }
+
+    /**
+     * @return average number of requests per connection
+     */
+    public double getRequestsPerConnection() {
+      return (this.opened == 0) ? 0 : (double) this.requests / this.opened;
+    }
+
+    /**
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    @SuppressWarnings("nls")
+    public String toString() {
+      return "opened=" + this.opened + ", closed=" + this.closed
+          + ", requests=" + this.requests + ", reused=" + this.reused
+          + ", idle=" + this.idle + ", connections=" + this.connections;
+    }
+  }
+
+  private static final class ChunkedOutputStream extends FilterOutputStream {
+
+    ChunkedOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    void finish() throws IOException {
+      this.out.write(ascii("0\r\n\r\n"));
+      this.out.flush();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return;
+      this.out.write(ascii(Integer.toHexString(len) + "\r\n"));
+      this.out.write(b, off, len);
+      this.out.write(CRLF);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+  }
+
+  private static final class Connection {
+
+    final int          id;
+
+    final InputStream  in;
+
+    long               lastUsed;
+
+    final OutputStream out;
+
+    final AtomicLong   requests = new AtomicLong();
+
+    boolean            requestSent;
+
+    final Socket       socket;
+
+    Connection(int id, Socket socket) throws IOException {
+      this.id = id;
+      this.socket = socket;
+      this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+      this.out = new BufferedOutputStream(socket.getOutputStream(),
+          BUFFER_SIZE);
+    }
+  }
+
+  private final class ResponseBody extends InputStream {
+
+    private boolean          closed     = false;
+
+    final int                code;
+
+    private final Connection connection;
+
+    private boolean          eof        = false;
+
+    private boolean          firstChunk = true;
+
+    final boolean            gzip;
+
+    private final String     key;
+
+    private final boolean    keepAlive;
+
+    private final int        mode;
+
+    private long             remaining;
+
+    ResponseBody(String key, Connection connection, int code,
+        Map<String, String> headers, boolean http11) throws IOException {
+      this.key = key;
+      this.connection = connection;
+      this.code = code;
+      String conn = headers.get("connection");
+      this.gzip = "gzip".equalsIgnoreCase(headers.get("content-encoding"));
+      String length = headers.get("content-length");
+      boolean keep = http11 ? !"close".equalsIgnoreCase(conn)
+          : "keep-alive".equalsIgnoreCase(conn);
+      if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+        this.mode = MODE_CHUNKED;
+      } else if (length != null) {
+        this.mode = MODE_FIXED;
+        try {
+          this.remaining = Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid Content-Length: " + length);
+        }
+      } else {
+        this.mode = MODE_UNTIL_CLOSE;
+        keep = false;
+      }
+      this.keepAlive = keep;
+    }
+
+    void abort() {
+      if (!this.closed) {
+        this.closed = true;
+        release(this.key, this.connection, false);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (this.closed)
+        return;
+      boolean reusable = this.keepAlive && drain();
+      this.closed = true;
+      release(this.key, this.connection, reusable);
+    }
+
+    private boolean drain() {
+      byte[] buf = new byte[BUFFER_SIZE];
+      long total = 0;
+      try {
+        while (total < MAX_DRAIN) {
+          int n = read(buf, 0, buf.length);
+          if (n < 0)
+            return true;
+          total += n;
+        }
+      } catch (IOException e) {
+        // not reusable
+      }
+      return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (this.closed)
+        throw new IOException("Stream closed");
+      if (this.eof)
+        return -1;
+      if (len == 0)
+        return 0;
+      InputStream in = this.connection.in;
+      if (this.mode == MODE_UNTIL_CLOSE) {
+        int n = in.read(b, off, len);
+        if (n < 0)
+          this.eof = true;
+        return n;
+      }
+      if (this.remaining == 0) {
+        if (this.mode == MODE_FIXED) {
+          this.eof = true;
+          return -1;
+        }
+        if (!this.firstChunk)
+          readLine(in);
+        this.firstChunk = false;
+        String line = readLine(in);
+        if (line == null)
+          throw new EOFException("Unexpected end of chunked response");
+        int semicolon = line.indexOf(';');
+        if (semicolon >= 0)
+          line = line.substring(0, semicolon);
+        try {
+          this.remaining = Long.parseLong(line.trim(), 16);
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid chunk size: " + line);
+        }
+        if (this.remaining == 0) {
+          // trailers
+          String trailer;
+          do {
+            trailer = readLine(in);
+          } while ((trailer != null) && (trailer.length() > 0));
+          this.eof = true;
+          return -1;
+        }
+      }
+      int n = in.read(b, off, (int) Math.min(len, this.remaining));
+      if (n < 0)
+        throw new EOFException("Unexpected end of response");
+      this.remaining -= n;
+      return n;
+    }
+  }
+
+  private static final int    BUFFER_SIZE                = 16 * 1024;
+
+  private static final byte[] CRLF                       = { '\r', '\n' };
+
+  /**
+   * Default connect timeout in milliseconds
+   */
+  public static final int     DEFAULT_CONNECT_TIMEOUT    = 30000;
+
+  /**
+   * Default keep-alive timeout in milliseconds
+   */
+  public static final int     DEFAULT_KEEP_ALIVE_TIMEOUT = 4000;
+
+  /**
+   * Default number of connections
+   */
+  public static final int     DEFAULT_MAX_CONNECTIONS    = 8;
+
+  /**
+   * Default read timeout in milliseconds
+   */
+  public static final int     DEFAULT_READ_TIMEOUT       = 120000;
+
+  private static final int    MAX_DRAIN                  = 64 * 1024;
+
+  private static final int    MAX_LINE                   = 8 * 1024;
+
+  private static final int    MODE_CHUNKED               = 1;
+
+  private static final int    MODE_FIXED                 = 0;
+
+  private static final int    MODE_UNTIL_CLOSE           = 2;
+
+  private static final int    STALE_CHECK                = 50;
+
+  @SuppressWarnings("nls")
+  private static byte[] ascii(String s) {
+    try {
+      return s.getBytes("ISO-8859-1");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return a line without its terminator, or <code>null</code> at the end of
+   *         the stream
+   */
+  @SuppressWarnings("nls")
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c;
+    while ((c = in.read()) >= 0) {
+      if (c == '\n') {
+        int len = sb.length();
+        if ((len > 0) && (sb.charAt(len - 1) == '\r'))
+          sb.setLength(len - 1);
+        return sb.toString();
+      }
+      if (sb.length() >= MAX_LINE)
+        throw new IOException("Line too long in HTTP response");
+      sb.append((char) c);
+    }
+    if (sb.length() == 0)
+      return null;
+    throw new EOFException("Unexpected end of HTTP response");
+  }
+
+  private final AtomicLong                     closedCount      = new AtomicLong();
+
+  private volatile boolean                     compression      = true;
+
+  private volatile int                         connectTimeout   = DEFAULT_CONNECT_TIMEOUT;
+
+  private final Map<String, Deque<Connection>> idle;
+
+  private int                                  idleCount        = 0;
+
+  private volatile int                         keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
+
+  private final Map<Integer, Connection>       live;
+
+  private final int                            maxConnections;
+
+  private final AtomicInteger                  nextId           = new AtomicInteger();
+
+  private final AtomicLong                     openedCount      = new AtomicLong();
+
+  private final Semaphore                      permits;
+
+  private volatile int                         readTimeout      = DEFAULT_READ_TIMEOUT;
+
+  private final AtomicLong                     requestCount     = new AtomicLong();
+
+  private final AtomicLong                     reusedCount      = new AtomicLong();
+
+  private volatile boolean                     shutdown         = false;
+
+  /**
+   * Transport with {@link #DEFAULT_MAX_CONNECTIONS} connections
+   */
+  public PooledHttpTransport() {
+    this(DEFAULT_MAX_CONNECTIONS);
+  }
+
+  /**
+   * @param maxConnections maximum number of connections open at once
+   */
+  @SuppressWarnings("nls")
+  public PooledHttpTransport(int maxConnections) {
+    if (maxConnections < 1)
+      throw new IllegalArgumentException("maxConnections must be positive");
+    this.maxConnections = maxConnections;
+    this.permits = new Semaphore(maxConnections, true);
+    this.idle = new HashMap<String, Deque<Connection>>();
+    this.live = new ConcurrentHashMap<Integer, Connection>();
+  }
+
+  /**
+   * Closes the idle connections. Connections in use are closed when their
+   * responses are closed.
+   * 
+   * @see net.bican.wordpress.XmlRpcTransport#close()
+   */
+  @Override
+  public void close() {
+    this.shutdown = true;
+    synchronized (this.idle) {
+      for (Deque<Connection> d : this.idle.values()) {
+        for (Connection c : d) {
+          discard(c);
+        }
+      }
+      this.idle.clear();
+      this.idleCount = 0;
+    }
+  }
+
+  private void discard(Connection c) {
+    if (this.live.remove(Integer.valueOf(c.id)) != null)
+      this.closedCount.incrementAndGet();
+    try {
+      c.socket.close();
+    } catch (IOException e) {
+      // closing anyway
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private ResponseBody exchange(String key, URL url, XmlRpcRequest request)
+      throws IOException {
+    for (int attempt = 0;; attempt++) {
+      Connection c = null;
+      if (attempt == 0)
+        while (((c = takeIdle(key)) != null) && isStale(c))
+          discard(c);
+      boolean fresh = (c == null);
+      if (fresh)
+        c = open(url);
+      else
+        this.reusedCount.incrementAndGet();
+      this.requestCount.incrementAndGet();
+      c.requests.incrementAndGet();
+      c.requestSent = false;
+      boolean ok = false;
+      try {
+        ResponseBody body = exchange(key, c, url, request);
+        ok = true;
+        return body;
+      } catch (SocketTimeoutException e) {
+        throw e;
+      } catch (IOException e) {
+        // the server may have run a request it received, so do not resend
+        if (fresh || c.requestSent)
+          throw e;
+        // stale keep-alive connection, try again on a new one
+      } finally {
+        if (!ok)
+          discard(c);
+      }
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private ResponseBody exchange(String key, Connection c, URL url,
+      XmlRpcRequest request) throws IOException {
+    String path = url.getFile();
+    if (path.length() == 0)
+      path = "/";
+    String host = url.getHost();
+    if ((url.getPort() >= 0) && (url.getPort() != url.getDefaultPort()))
+      host = host + ":" + url.getPort();
+    StringBuilder head = new StringBuilder(256);
+    head.append("POST ").append(path).append(" HTTP/1.1\r\n");
+    head.append("Host: ").append(host).append("\r\n");
+    head.append("User-Agent: wordpress-java\r\n");
+    head.append("Content-Type: text/xml; charset=UTF-8\r\n");
+    if (this.compression)
+      head.append("Accept-Encoding: gzip\r\n");
+    c.socket.setSoTimeout(this.readTimeout);
+    OutputStream out = c.out;
+    if (request.isStreamed()) {
+      head.append("Transfer-Encoding: chunked\r\n\r\n");
+      out.write(ascii(head.toString()));
+      ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+      OutputStream body = new BufferedOutputStream(chunked, BUFFER_SIZE);
+      request.writeTo(body);
+      body.flush();
+      chunked.finish();
+      c.requestSent = true;
+    } else {
+      ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+      request.writeTo(body);
+      head.append("Content-Length: ").append(body.size()).append("\r\n\r\n");
+      out.write(ascii(head.toString()));
+      body.writeTo(out);
+      out.flush();
+      c.requestSent = true;
+    }
+    InputStream in = c.in;
+    while (true) {
+      String status = readLine(in);
+      if (status == null)
+        throw new EOFException("Connection closed before the response");
+      if (!status.startsWith("HTTP/") || (status.length() < 12))
+        throw new IOException("Invalid HTTP status line: " + status);
+      int code;
+      try {
+        code = Integer.parseInt(status.substring(9, 12));
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid HTTP status line: " + status);
+      }
+      Map<String, String> headers = new HashMap<String, String>();
+      String line;
+      while (((line = readLine(in)) != null) && (line.length() > 0)) {
+        int colon = line.indexOf(':');
+        if (colon > 0)
+          headers.put(line.substring(0, colon).trim().toLowerCase(),
+              line.substring(colon + 1).trim());
+      }
+      if (line == null)
+        throw new EOFException("Unexpected end of HTTP headers");
+      if ((code >= 100) && (code < 200))
+        continue;
+      return new ResponseBody(key, c, code, headers,
+          status.startsWith("HTTP/1.1"));
+    }
+  }
+
+  /**
+   * @return connect timeout in milliseconds, 0 for none
+   */
+  public int getConnectTimeout() {
+    return this.connectTimeout;
+  }
+
+  /**
+   * @return time in milliseconds an idle connection is kept in the pool
+   */
+  public int getKeepAliveTimeout() {
+    return this.keepAliveTimeout;
+  }
+
+  /**
+   * @return maximum number of connections open at once
+   */
+  public int getMaxConnections() {
+    return this.maxConnections;
+  }
+
+  /**
+   * @return read timeout in milliseconds, 0 for none
+   */
+  public int getReadTimeout() {
+    return this.readTimeout;
+  }
+
+  /**
+   * @return the connection usage so far
+   */
+  public Statistics getStatistics() {
+    Map<Integer, Long> connections = new TreeMap<Integer, Long>();
+    for (Connection c : this.live.values()) {
+      connections.put(Integer.valueOf(c.id), Long.valueOf(c.requests.get()));
+    }
+    int idleNow;
+    synchronized (this.idle) {
+      idleNow = this.idleCount;
+    }
+    return new Statistics(this.openedCount.get(), this.closedCount.get(),
+        this.requestCount.get(), this.reusedCount.get(), idleNow, connections);
+  }
+
+  /**
+   * @return whether gzip compressed responses are requested
+   */
+  public boolean isCompression() {
+    return this.compression;
+  }
+
+  private boolean isStale(Connection c) {
+    if (System.nanoTime() - c.lastUsed < TimeUnit.MILLISECONDS
+        .toNanos(STALE_CHECK))
+      return false;
+    // a live connection has nothing to read, anything else means it is unusable
+    try {
+      c.socket.setSoTimeout(1);
+      c.in.read();
+      return true;
+    } catch (SocketTimeoutException e) {
+      return false;
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private Connection open(URL url) throws IOException {
+    String host = url.getHost();
+    int port = (url.getPort() < 0) ? url.getDefaultPort() : url.getPort();
+    Socket socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.connect(new InetSocketAddress(host, port), this.connectTimeout);
+      socket.setSoTimeout(this.readTimeout);
+      if ("https".equalsIgnoreCase(url.getProtocol())) {
+        SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory
+            .getDefault()).createSocket(socket, host, port, true);
+        SSLParameters params = ssl.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        ssl.setSSLParameters(params);
+        ssl.startHandshake();
+        socket = ssl;
+      }
+      Connection c = new Connection(this.nextId.incrementAndGet(), socket);
+      this.live.put(Integer.valueOf(c.id), c);
+      this.openedCount.incrementAndGet();
+      return c;
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  private void release(String key, Connection c, boolean reusable) {
+    try {
+      if (!reusable || this.shutdown) {
+        discard(c);
+        return;
+      }
+      c.lastUsed = System.nanoTime();
+      synchronized (this.idle) {
+        Deque<Connection> d = this.idle.get(key);
+        if (d == null) {
+          d = new ArrayDeque<Connection>();
+          this.idle.put(key, d);
+        }
+        d.addFirst(c);
+        this.idleCount++;
+        if (this.idleCount > this.maxConnections) {
+          // keep the most recently used ones
+          Connection oldest = d.pollLast();
+          this.idleCount--;
+          discard(oldest);
+        }
+      }
+    } finally {
+      this.permits.release();
+    }
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.XmlRpcTransport#send(java.net.URL,
+   *      net.bican.wordpress.XmlRpcRequest)
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public InputStream send(URL url, XmlRpcRequest request) throws IOException {
+    String protocol = url.getProtocol().toLowerCase();
+    if (!"http".equals(protocol) && !"https".equals(protocol))
+      throw new IOException("Unsupported protocol: " + protocol);
+    if (this.shutdown)
+      throw new IOException("Transport is closed");
+    String key = protocol + "://" + url.getHost() + ":"
+        + ((url.getPort() < 0) ? url.getDefaultPort() : url.getPort());
+    try {
+      this.permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a connection");
+    }
+    ResponseBody body = null;
+    try {
+      body = exchange(key, url, request);
+    } finally {
+      if (body == null)
+        this.permits.release();
+    }
+    // from here on the permit belongs to the response
+    if (body.code != 200) {
+      body.close();
+      throw new IOException("HTTP error " + body.code + " for "
+          + request.getMethodName());
+    }
+    if (!body.gzip)
+      return body;
+    boolean ok = false;
+    try {
+      InputStream result = new GZIPInputStream(body, BUFFER_SIZE);
+      ok = true;
+      return result;
+    } finally {
+      if (!ok)
+        body.abort();
+    }
+  }
+
+  /**
+   * @param compression whether gzip compressed responses are requested
+   */
+  public void setCompression(boolean compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * @param connectTimeout connect timeout in milliseconds, 0 for none
+   */
+  public void setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  /**
+   * @param keepAliveTimeout time in milliseconds an idle connection is kept
+   *          in the pool
+   */
+  public void setKeepAliveTimeout(int keepAliveTimeout) {
+    this.keepAliveTimeout = keepAliveTimeout;
+  }
+
+  /**
+   * @param readTimeout read timeout in milliseconds, 0 for none
+   */
+  public void setReadTimeout(int readTimeout) {
+    this.readTimeout = readTimeout;
+  }
+
+  private Connection takeIdle(String key) {
+    long now = System.nanoTime();
+    long limit = TimeUnit.MILLISECONDS.toNanos(this.keepAliveTimeout);
+    synchronized (this.idle) {
+      Deque<Connection> d = this.idle.get(key);
+      if (d == null)
+        return null;
+      // drop the connections that the server has probably closed by now
+      for (Iterator<Connection> i = d.descendingIterator(); i.hasNext();) {
+        Connection c = i.next();
+        if (now - c.lastUsed < limit)
+          break;
+        i.remove();
+        this.idleCount--;
+        discard(c);
+      }
+      Connection c = d.pollFirst();
+      if (c != null)
+        this.idleCount--;
+      return c;
+    }
+  }
+}
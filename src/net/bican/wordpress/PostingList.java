@@ -0,0 +1,169 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.util.Arrays;
+
+/**
+ * 
+ * Compressed list of the documents a term occurs in, for the
+ * {@link SearchIndex}. Documents are added in increasing order; each entry
+ * is the distance to the previous document, the number of occurrences and
+ * the distances between the positions of the occurrences, all as variable
+ * length integers, so most entries take a few bytes.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+final class PostingList {
+
+  /**
+   * Reads the entries of a list in order.
+   */
+  static final class Cursor {
+
+    private final byte[] data;
+
+    private int          doc       = -1;
+
+    private int          frequency;
+
+    private int          offset;
+
+    private int[]        positions = new int[8];
+
+    private final int    size;
+
+    Cursor(byte[] data, int size) {
+      this.data = data;
+      this.size = size;
+    }
+
+    /**
+     * Moves to the first document that is not before the target.
+     * 
+     * @return whether there is such a document
+     */
+    boolean advance(int target) {
+      while (this.doc < target) {
+        if (!next())
+          return false;
+      }
+      return true;
+    }
+
+    int doc() {
+      return this.doc;
+    }
+
+    int frequency() {
+      return this.frequency;
+    }
+
+    /**
+     * Moves to the next document.
+     * 
+     * @return whether there was one
+     */
+    boolean next() {
+      if (this.offset >= this.size) {
+        this.doc = Integer.MAX_VALUE;
+        return false;
+      }
+      this.doc += readVarInt();
+      this.frequency = readVarInt();
+      if (this.positions.length < this.frequency)
+        this.positions = new int[Math.max(this.frequency,
+            this.positions.length * 2)];
+      int position = 0;
+      for (int i = 0; i < this.frequency; i++) {
+        position += readVarInt();
+        this.positions[i] = position;
+      }
+      return true;
+    }
+
+    /**
+     * @return positions of the occurrences in the current document, in
+     *         increasing order; only the first {@link #frequency()} are valid
+     */
+    int[] positions() {
+      return this.positions;
+    }
+
+    private int readVarInt() {
+      int result = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = this.data[this.offset++];
+        result |= (b & 0x7f) << shift;
+        if (b >= 0)
+          return result;
+      }
+    }
+  }
+
+  private byte[] data = new byte[16];
+
+  private int    documents;
+
+  private int    last = -1;
+
+  private int    size;
+
+  /**
+   * Adds a document after the ones in the list.
+   * 
+   * @param doc the document, larger than the last one
+   * @param positions positions of the occurrences, in increasing order
+   * @param count number of positions
+   */
+  @SuppressWarnings("nls")
+  void add(int doc, int[] positions, int count) {
+    if (doc <= this.last)
+      throw new IllegalArgumentException("Documents out of order");
+    writeVarInt(doc - this.last);
+    writeVarInt(count);
+    int previous = 0;
+    for (int i = 0; i < count; i++) {
+      writeVarInt(positions[i] - previous);
+      previous = positions[i];
+    }
+    this.last = doc;
+    this.documents++;
+  }
+
+  Cursor cursor() {
+    return new Cursor(this.data, this.size);
+  }
+
+  /**
+   * @return number of documents in the list
+   */
+  int getDocuments() {
+    return this.documents;
+  }
+
+  /**
+   * @return number of bytes of the entries
+   */
+  int getSize() {
+    return this.size;
+  }
+
+  private void writeVarInt(int v) {
+    if (this.size + 5 > this.data.length)
+      this.data = Arrays.copyOf(this.data, this.data.length * 2);
+    while ((v & ~0x7f) != 0) {
+      this.data[this.size++] = (byte) ((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    this.data[this.size++] = (byte) v;
+  }
+}
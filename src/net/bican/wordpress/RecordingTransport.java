@@ -0,0 +1,147 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 
+ * A transport that passes the requests to another transport and writes the
+ * responses into a capture file, to be played back by
+ * {@link ReplayTransport} without a server.
+ * 
+ * The capture file is gzipped and holds, for each call, the method name, the
+ * numeric and boolean parameters, the time the call took and the response
+ * body. Strings and structs are left out, so the credentials of the blog are
+ * never written.
+ * 
+ * Responses are read completely before they are handed to the client, so
+ * the client does not stream while recording.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class RecordingTransport implements XmlRpcTransport {
+
+  static final int               MAGIC   = 0x57505843;
+
+  static final int               VERSION = 1;
+
+  private final XmlRpcTransport  delegate;
+
+  private final DataOutputStream out;
+
+  private int                    size    = 0;
+
+  /**
+   * @param delegate transport to send the requests with
+   * @param capture file to write, it is overwritten
+   * @throws IOException when the file cannot be created
+   */
+  public RecordingTransport(XmlRpcTransport delegate, File capture)
+      throws IOException {
+    this.delegate = delegate;
+    this.out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(new FileOutputStream(capture))));
+    this.out.writeInt(MAGIC);
+    this.out.writeInt(VERSION);
+  }
+
+  /**
+   * Returns the key a call is recorded under: the method name with the
+   * parameters that are numbers or booleans.
+   * 
+   * @param request the call
+   * @return the key of the call
+   */
+  static String key(XmlRpcRequest request) {
+    StringBuilder result = new StringBuilder(request.getMethodName());
+    result.append('(');
+    boolean first = true;
+    for (Object arg : request.getArgs()) {
+      if ((arg instanceof Number) || (arg instanceof Boolean)) {
+        if (!first)
+          result.append(',');
+        result.append(arg);
+        first = false;
+      }
+    }
+    return result.append(')').toString();
+  }
+
+  /**
+   * Finishes the capture file and closes the transport the requests are
+   * sent with.
+   * 
+   * @see net.bican.wordpress.XmlRpcTransport#close()
+   */
+  @Override
+  public void close() {
+    try {
+      synchronized (this.out) {
+        this.out.close();
+      }
+    } catch (IOException e) {
+      // nothing more can be written anyway
+    } finally {
+      this.delegate.close();
+    }
+  }
+
+  /**
+   * @return number of calls recorded so far
+   */
+  public int getSize() {
+    synchronized (this.out) {
+      return this.size;
+    }
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.XmlRpcTransport#send(java.net.URL,
+   *      net.bican.wordpress.XmlRpcRequest)
+   */
+  @Override
+  public InputStream send(URL url, XmlRpcRequest request) throws IOException {
+    long start = System.nanoTime();
+    ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+    InputStream in = this.delegate.send(url, request);
+    try {
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        body.write(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    long elapsed = System.nanoTime() - start;
+    byte[] response = body.toByteArray();
+    synchronized (this.out) {
+      this.out.writeUTF(key(request));
+      this.out.writeLong(elapsed);
+      this.out.writeInt(response.length);
+      this.out.write(response);
+      this.size++;
+    }
+    return new ByteArrayInputStream(response);
+  }
+}
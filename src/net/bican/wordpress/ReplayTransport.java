@@ -0,0 +1,189 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 
+ * A transport that answers the requests with the responses in a capture
+ * file written by {@link RecordingTransport}, so that the client can be
+ * measured end to end on real payloads without a server.
+ * 
+ * A call is answered with a response recorded for the same method and the
+ * same numeric and boolean parameters; if there is none, with any response
+ * recorded for the method. The responses of a key are used in the recorded
+ * order and then from the start again.
+ * 
+ * Requests are still encoded, and discarded, so the encoding cost stays in
+ * the measured path. By default the responses are returned at once; with
+ * recorded timing every call takes as long as it took when recorded.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class ReplayTransport implements XmlRpcTransport {
+
+  private static final class Calls {
+    final List<Long>   durations = new ArrayList<Long>();
+
+    final List<byte[]> responses = new ArrayList<byte[]>();
+
+    private int        next      = 0;
+
+    void add(long duration, byte[] response) {
+      this.durations.add(Long.valueOf(duration));
+      this.responses.add(response);
+    }
+
+    synchronized int next() {
+      int result = this.next;
+      this.next = (this.next + 1) % this.responses.size();
+      return result;
+    }
+  }
+
+  private static final class NullOutputStream extends OutputStream {
+    @Override
+    public void write(int b) {
+      // discarded
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      // discarded
+    }
+  }
+
+  private static final OutputStream DISCARD = new NullOutputStream();
+
+  private final Map<String, Calls>  keys    = new HashMap<String, Calls>();
+
+  private final Map<String, Calls>  methods = new HashMap<String, Calls>();
+
+  private volatile boolean          recordedTiming;
+
+  private int                       size    = 0;
+
+  /**
+   * @param capture file written by {@link RecordingTransport}
+   * @throws IOException when the file cannot be read or is not a capture
+   */
+  @SuppressWarnings("nls")
+  public ReplayTransport(File capture) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(new FileInputStream(capture))));
+    try {
+      if ((in.readInt() != RecordingTransport.MAGIC)
+          || (in.readInt() != RecordingTransport.VERSION))
+        throw new IOException("Not a capture file: " + capture);
+      while (true) {
+        String key;
+        long duration;
+        byte[] response;
+        try {
+          key = in.readUTF();
+          duration = in.readLong();
+          response = new byte[in.readInt()];
+          in.readFully(response);
+        } catch (EOFException e) {
+          // the end, or a recording that was cut off
+          break;
+        }
+        add(this.keys, key, duration, response);
+        add(this.methods, key.substring(0, key.indexOf('(')), duration,
+            response);
+        this.size++;
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void add(Map<String, Calls> map, String key, long duration,
+      byte[] response) {
+    Calls calls = map.get(key);
+    if (calls == null) {
+      calls = new Calls();
+      map.put(key, calls);
+    }
+    calls.add(duration, response);
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.XmlRpcTransport#close()
+   */
+  @Override
+  public void close() {
+    // nothing to release
+  }
+
+  /**
+   * @return number of calls in the capture file
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see net.bican.wordpress.XmlRpcTransport#send(java.net.URL,
+   *      net.bican.wordpress.XmlRpcRequest)
+   */
+  @SuppressWarnings("nls")
+  @Override
+  public InputStream send(URL url, XmlRpcRequest request) throws IOException {
+    request.writeTo(DISCARD);
+    String key = RecordingTransport.key(request);
+    Calls calls = this.keys.get(key);
+    if (calls == null)
+      calls = this.methods.get(request.getMethodName());
+    if (calls == null)
+      throw new IOException("No recorded response for " + key);
+    int call = calls.next();
+    if (this.recordedTiming) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(calls.durations.get(call).longValue());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+    return new ByteArrayInputStream(calls.responses.get(call));
+  }
+
+  /**
+   * @param recordedTiming <code>true</code> to make every call take as long
+   *          as it took when it was recorded, <code>false</code> to answer
+   *          at once
+   */
+  public void setRecordedTiming(boolean recordedTiming) {
+    this.recordedTiming = recordedTiming;
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+/**
+ * 
+ * Receives the items of a list response one by one, as they are read from the
+ * connection.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ * @param <T> type of the items
+ */
+public interface ResultHandler<T> {
+  /**
+   * @param item next item of the response
+   * @return <code>true</code> to continue, <code>false</code> to stop reading
+   *         the response
+   */
+  public boolean handle(T item);
+}
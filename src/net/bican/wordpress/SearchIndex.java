@@ -0,0 +1,790 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 
+ * Full-text index of posts and their comments, kept in memory, so that posts
+ * can be searched without downloading them. The title, keywords, excerpt and
+ * body of a post and the contents of its comments are split into lower case
+ * words, leaving out HTML tags and entities, and each word has a compressed
+ * {@link PostingList} of the posts it occurs in with its positions.
+ * 
+ * A query is a list of words and "quoted phrases" that all have to occur in
+ * a post; a word or phrase starting with a minus sign must not occur, and
+ * <code>OR</code> between two such lists matches the posts of either. Posts
+ * are ranked with BM25, where an occurrence in the title counts more than
+ * one in the body, and one in the body more than one in a comment.
+ * 
+ * A post and each of its comments are documents of their own, and a post
+ * matches a word when one of its documents does. Changing a post or a
+ * comment indexes it again under a new document number, and the old one is
+ * skipped by queries; when more than half of the documents are old, they
+ * are dropped from the posting lists. No text is kept. Queries can run in
+ * parallel, changes wait for them.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class SearchIndex {
+
+  /**
+   * A word or a phrase of a query.
+   */
+  private static final class Clause {
+
+    final boolean  negated;
+
+    final String[] words;
+
+    Clause(String[] words, boolean negated) {
+      this.words = words;
+      this.negated = negated;
+    }
+  }
+
+  /**
+   * Documents or posts matching a part of a query and their scores, ordered
+   * by document number or post id.
+   */
+  private static final class Matches {
+
+    int[]   ids    = new int[16];
+
+    float[] scores = new float[16];
+
+    int     size;
+
+    void add(int id, float score) {
+      if (this.size == this.ids.length) {
+        this.ids = Arrays.copyOf(this.ids, this.size * 2);
+        this.scores = Arrays.copyOf(this.scores, this.size * 2);
+      }
+      this.ids[this.size] = id;
+      this.scores[this.size++] = score;
+    }
+  }
+
+  /**
+   * Positions of a word in the document being indexed.
+   */
+  private static final class Positions {
+
+    int   size;
+
+    int[] values = new int[4];
+
+    void add(int position) {
+      if (this.size == this.values.length)
+        this.values = Arrays.copyOf(this.values, this.size * 2);
+      this.values[this.size++] = position;
+    }
+  }
+
+  private static final float               B           = 0.75f;
+
+  private static final float[]             BOOSTS      = { 3f, 2f, 1.5f,
+      1f, 0.5f };
+
+  private static final int                 FIELDS      = 4;
+
+  private static final int                 GAP         = 8;
+
+  private static final float               K1          = 1.2f;
+
+  private static final int                 MAX_WORD    = 64;
+
+  private static final int                 MIN_REBUILD = 1024;
+
+  private final Map<Integer, Integer>      commentDocs;
+
+  private final Map<Integer, Integer>      commentPosts;
+
+  private final Map<Integer, Set<Integer>> comments;
+
+  private final Map<Integer, Integer>      current;
+
+  private final BitSet                     deleted;
+
+  private int                              documents;
+
+  private int[]                            lengths;
+
+  private final ReadWriteLock              lock;
+
+  private int[]                            posts;
+
+  private int[]                            starts;
+
+  private Map<String, PostingList>         terms;
+
+  private long                             totalLength;
+
+  /**
+   * Creates an empty index.
+   */
+  public SearchIndex() {
+    this.commentDocs = new HashMap<Integer, Integer>();
+    this.commentPosts = new HashMap<Integer, Integer>();
+    this.comments = new HashMap<Integer, Set<Integer>>();
+    this.current = new HashMap<Integer, Integer>();
+    this.deleted = new BitSet();
+    this.lock = new ReentrantReadWriteLock();
+    this.terms = new HashMap<String, PostingList>();
+    this.lengths = new int[64];
+    this.posts = new int[64];
+    this.starts = new int[64 * FIELDS];
+  }
+
+  private static void addWord(String text, int start, int end,
+      List<String> words) {
+    if (end - start > MAX_WORD)
+      end = start + MAX_WORD;
+    char[] word = new char[end - start];
+    for (int i = start; i < end; i++) {
+      word[i - start] = Character.toLowerCase(text.charAt(i));
+    }
+    words.add(new String(word));
+  }
+
+  /**
+   * Intersects the matches, adding their scores, or removes the second ones
+   * from the first.
+   */
+  private static Matches intersect(Matches a, Matches b, boolean subtract) {
+    Matches result = new Matches();
+    int j = 0;
+    for (int i = 0; i < a.size; i++) {
+      int doc = a.ids[i];
+      while ((j < b.size) && (b.ids[j] < doc)) {
+        j++;
+      }
+      boolean found = (j < b.size) && (b.ids[j] == doc);
+      if (subtract && !found)
+        result.add(doc, a.scores[i]);
+      else if (!subtract && found)
+        result.add(doc, a.scores[i] + b.scores[j]);
+    }
+    return result;
+  }
+
+  /**
+   * Parses a query into lists of clauses that are joined with OR.
+   */
+  @SuppressWarnings("nls")
+  private static List<List<Clause>> parse(String query) {
+    List<List<Clause>> result = new ArrayList<List<Clause>>();
+    List<Clause> group = new ArrayList<Clause>();
+    int i = 0;
+    int n = query.length();
+    while (i < n) {
+      if (Character.isWhitespace(query.charAt(i))) {
+        i++;
+        continue;
+      }
+      boolean negated = false;
+      if ((query.charAt(i) == '-') && (i + 1 < n)) {
+        negated = true;
+        i++;
+      }
+      int start;
+      int end;
+      if (query.charAt(i) == '"') {
+        start = i + 1;
+        end = query.indexOf('"', start);
+        if (end < 0)
+          end = n;
+        i = end + 1;
+      } else {
+        start = i;
+        while ((i < n) && !Character.isWhitespace(query.charAt(i))) {
+          i++;
+        }
+        end = i;
+      }
+      String text = query.substring(start, end);
+      if (!negated && text.equals("OR")) {
+        if (!group.isEmpty())
+          result.add(group);
+        group = new ArrayList<Clause>();
+        continue;
+      }
+      List<String> words = new ArrayList<String>();
+      tokenize(text, words);
+      if (!words.isEmpty())
+        group.add(new Clause(words.toArray(new String[words.size()]),
+            negated));
+    }
+    if (!group.isEmpty())
+      result.add(group);
+    return result;
+  }
+
+  /**
+   * Splits a text into lower case words of letters and digits, leaving out
+   * HTML tags and entities.
+   * 
+   * @param text the text
+   * @param words list to add the words to
+   */
+  static void tokenize(String text, List<String> words) {
+    if (text == null)
+      return;
+    int n = text.length();
+    int start = -1;
+    for (int i = 0; i < n; i++) {
+      char c = text.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        if (start < 0)
+          start = i;
+        continue;
+      }
+      if (start >= 0) {
+        addWord(text, start, i, words);
+        start = -1;
+      }
+      if ((c == '<') && (i + 1 < n)) {
+        char d = text.charAt(i + 1);
+        if (Character.isLetter(d) || (d == '/') || (d == '!')) {
+          int close = text.indexOf('>', i);
+          if (close > 0)
+            i = close;
+        }
+      } else if (c == '&') {
+        int j = i + 1;
+        while ((j < n) && (j - i < 10)
+            && (Character.isLetterOrDigit(text.charAt(j))
+            || (text.charAt(j) == '#'))) {
+          j++;
+        }
+        if ((j < n) && (j > i + 1) && (text.charAt(j) == ';'))
+          i = j;
+      }
+    }
+    if (start >= 0)
+      addWord(text, start, n, words);
+  }
+
+  /**
+   * @return documents in either of the matches, adding their scores
+   */
+  private static Matches union(Matches a, Matches b) {
+    Matches result = new Matches();
+    int i = 0;
+    int j = 0;
+    while ((i < a.size) || (j < b.size)) {
+      int da = (i < a.size) ? a.ids[i] : Integer.MAX_VALUE;
+      int db = (j < b.size) ? b.ids[j] : Integer.MAX_VALUE;
+      if (da < db) {
+        result.add(da, a.scores[i++]);
+      } else if (db < da) {
+        result.add(db, b.scores[j++]);
+      } else {
+        result.add(da, a.scores[i++] + b.scores[j++]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Indexes a comment with its post, replacing the comment with the same
+   * id.
+   * 
+   * @param comment the comment
+   */
+  public void add(Comment comment) {
+    Integer id = comment.getComment_id();
+    Integer postId = comment.getPost_id();
+    if ((id == null) || (postId == null))
+      throw new IllegalArgumentException(
+          "The comment has no id or post id"); //$NON-NLS-1$
+    this.lock.writeLock().lock();
+    try {
+      Integer previous = this.commentPosts.put(id, postId);
+      if ((previous != null) && !previous.equals(postId))
+        this.comments.get(previous).remove(id);
+      commentsOf(postId).add(id);
+      forget(this.commentDocs.remove(id));
+      maybeCompact();
+      this.commentDocs.put(id, write(postId, new String[] { null, null,
+          null, null, comment.getContent() }));
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Indexes a post, replacing the post with the same id. Its comments stay.
+   * 
+   * @param post the post
+   */
+  public void add(Page post) {
+    Integer id = post.getPostid();
+    if (id == null)
+      throw new IllegalArgumentException("The post has no id"); //$NON-NLS-1$
+    add(id.intValue(), post);
+  }
+
+  private void add(int id, Page post) {
+    this.lock.writeLock().lock();
+    try {
+      Integer postId = Integer.valueOf(id);
+      commentsOf(postId);
+      forget(this.current.remove(postId));
+      maybeCompact();
+      this.current.put(postId, write(postId, new String[] { post.getTitle(),
+          post.getMt_keywords(), post.getExcerpt(), post.getDescription(),
+          null }));
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Indexes all the posts and comments of a mirror.
+   * 
+   * @param store the mirror
+   * @throws IOException when the mirror cannot be read
+   */
+  public void addAll(MirrorStore store) throws IOException {
+    for (Integer id : store.ids(Page.class)) {
+      Page post = store.get(Page.class, id.intValue());
+      if (post != null)
+        add(id.intValue(), post);
+    }
+    for (Integer id : store.ids(Comment.class)) {
+      Comment comment = store.get(Comment.class, id.intValue());
+      if ((comment != null) && (comment.getPost_id() != null)) {
+        comment.setComment_id(id);
+        add(comment);
+      }
+    }
+  }
+
+  /**
+   * @return weight of an occurrence at the given position of a document
+   */
+  private float boost(int doc, int position) {
+    int base = doc * FIELDS;
+    for (int field = 0; field < FIELDS; field++) {
+      if (position < this.starts[base + field])
+        return BOOSTS[field];
+    }
+    return BOOSTS[FIELDS];
+  }
+
+  /**
+   * @return ids of the indexed comments of a post, which is indexed from
+   *         now on
+   */
+  private Set<Integer> commentsOf(Integer postId) {
+    Set<Integer> result = this.comments.get(postId);
+    if (result == null) {
+      result = new HashSet<Integer>();
+      this.comments.put(postId, result);
+    }
+    return result;
+  }
+
+  /**
+   * Drops the old documents from the posting lists, numbering the others
+   * from 0 in the same order.
+   */
+  private void compact() {
+    int[] renumbered = new int[this.documents];
+    int n = 0;
+    for (int doc = 0; doc < this.documents; doc++) {
+      if (this.deleted.get(doc)) {
+        renumbered[doc] = -1;
+        continue;
+      }
+      renumbered[doc] = n;
+      this.posts[n] = this.posts[doc];
+      this.lengths[n] = this.lengths[doc];
+      System.arraycopy(this.starts, doc * FIELDS, this.starts, n * FIELDS,
+          FIELDS);
+      n++;
+    }
+    Map<String, PostingList> result = new HashMap<String, PostingList>();
+    for (Map.Entry<String, PostingList> entry : this.terms.entrySet()) {
+      PostingList list = null;
+      PostingList.Cursor cursor = entry.getValue().cursor();
+      while (cursor.next()) {
+        int doc = renumbered[cursor.doc()];
+        if (doc < 0)
+          continue;
+        if (list == null)
+          list = new PostingList();
+        list.add(doc, cursor.positions(), cursor.frequency());
+      }
+      if (list != null)
+        result.put(entry.getKey(), list);
+    }
+    this.terms = result;
+    for (Map<Integer, Integer> docs : Arrays.asList(this.current,
+        this.commentDocs)) {
+      for (Map.Entry<Integer, Integer> entry : docs.entrySet()) {
+        entry.setValue(Integer.valueOf(renumbered[entry.getValue()
+            .intValue()]));
+      }
+    }
+    this.deleted.clear();
+    this.documents = n;
+  }
+
+  /**
+   * Forgets a document, which queries skip from now on.
+   */
+  private void forget(Integer doc) {
+    if (doc != null) {
+      this.deleted.set(doc.intValue());
+      this.totalLength -= this.lengths[doc.intValue()];
+    }
+  }
+
+  /**
+   * @return inverse document frequency of a word
+   */
+  private float idf(PostingList list) {
+    int live = live();
+    // the old documents are counted too, until they are dropped
+    int n = Math.min(list.getDocuments(), live);
+    return (float) Math.log(1 + (live - n + 0.5) / (n + 0.5));
+  }
+
+  /**
+   * @return number of documents that are not old
+   */
+  private int live() {
+    return this.current.size() + this.commentDocs.size();
+  }
+
+  /**
+   * Drops the old documents when they are more than half.
+   */
+  private void maybeCompact() {
+    int live = live();
+    if (this.documents - live >= Math.max(MIN_REBUILD, live))
+      compact();
+  }
+
+  /**
+   * Removes a comment.
+   * 
+   * @param commentId id of the comment
+   * @return whether the comment was in the index
+   */
+  public boolean removeComment(int commentId) {
+    this.lock.writeLock().lock();
+    try {
+      Integer id = Integer.valueOf(commentId);
+      Integer postId = this.commentPosts.remove(id);
+      if (postId == null)
+        return false;
+      this.comments.get(postId).remove(id);
+      forget(this.commentDocs.remove(id));
+      maybeCompact();
+      return true;
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes a post and its comments.
+   * 
+   * @param postId id of the post
+   * @return whether the post was in the index
+   */
+  public boolean remove(int postId) {
+    this.lock.writeLock().lock();
+    try {
+      Integer id = Integer.valueOf(postId);
+      Set<Integer> commentIds = this.comments.remove(id);
+      if (commentIds == null)
+        return false;
+      for (Integer commentId : commentIds) {
+        this.commentPosts.remove(commentId);
+        forget(this.commentDocs.remove(commentId));
+      }
+      forget(this.current.remove(id));
+      maybeCompact();
+      return true;
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the posts matching a query.
+   * 
+   * @param query the query
+   * @param limit largest number of posts to return
+   * @return ids of the matching posts, the best match first
+   */
+  public List<Integer> search(String query, int limit) {
+    List<List<Clause>> groups = parse(query);
+    this.lock.readLock().lock();
+    try {
+      Matches all = null;
+      for (List<Clause> group : groups) {
+        Matches matches = search(group);
+        all = (all == null) ? matches : union(all, matches);
+      }
+      if ((all == null) || (limit <= 0))
+        return Collections.emptyList();
+      return top(all, limit);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return documents matching all the clauses of a group
+   */
+  private Matches search(List<Clause> group) {
+    List<Matches> required = new ArrayList<Matches>();
+    List<Matches> excluded = new ArrayList<Matches>();
+    for (Clause clause : group) {
+      Matches matches = search(clause);
+      (clause.negated ? excluded : required).add(matches);
+    }
+    if (required.isEmpty())
+      return new Matches();
+    Collections.sort(required, new Comparator<Matches>() {
+      @Override
+      public int compare(Matches a, Matches b) {
+        return Integer.compare(a.size, b.size);
+      }
+    });
+    Matches result = required.get(0);
+    for (int i = 1; (i < required.size()) && (result.size > 0); i++) {
+      result = intersect(result, required.get(i), false);
+    }
+    for (Matches matches : excluded) {
+      result = intersect(result, matches, true);
+    }
+    return result;
+  }
+
+  /**
+   * @return posts containing a word or a phrase, with the best score of
+   *         their documents
+   */
+  private Matches search(Clause clause) {
+    Matches matches = scan(clause);
+    // the document numbers and the matches, ordered by post
+    long[] order = new long[matches.size];
+    for (int i = 0; i < matches.size; i++) {
+      order[i] = ((long) this.posts[matches.ids[i]] << 32) | i;
+    }
+    Arrays.sort(order);
+    Matches result = new Matches();
+    for (long o : order) {
+      int post = (int) (o >>> 32);
+      float score = matches.scores[(int) o];
+      int last = result.size - 1;
+      if ((last >= 0) && (result.ids[last] == post))
+        result.scores[last] = Math.max(result.scores[last], score);
+      else
+        result.add(post, score);
+    }
+    return result;
+  }
+
+  /**
+   * @return documents containing a word or a phrase, with their scores
+   */
+  private Matches scan(Clause clause) {
+    Matches result = new Matches();
+    int n = clause.words.length;
+    PostingList.Cursor[] cursors = new PostingList.Cursor[n];
+    float idf = 0;
+    for (int i = 0; i < n; i++) {
+      PostingList list = this.terms.get(clause.words[i]);
+      if (list == null)
+        return result;
+      cursors[i] = list.cursor();
+      idf += idf(list);
+    }
+    float average = (live() == 0) ? 1 : (float) this.totalLength / live();
+    int doc = 0;
+    while (true) {
+      // leapfrog until all the words are in the same document
+      boolean aligned = false;
+      while (!aligned) {
+        aligned = true;
+        for (PostingList.Cursor cursor : cursors) {
+          if (!cursor.advance(doc))
+            return result;
+          if (cursor.doc() > doc) {
+            doc = cursor.doc();
+            aligned = false;
+          }
+        }
+      }
+      if (!this.deleted.get(doc)) {
+        float frequency = frequency(doc, cursors);
+        if (frequency > 0) {
+          float norm = K1 * (1 - B + B * this.lengths[doc] / average);
+          result.add(doc, idf * frequency * (K1 + 1) / (frequency + norm));
+        }
+      }
+      doc++;
+    }
+  }
+
+  /**
+   * @return weighted number of occurrences of the phrase of the cursors in
+   *         their current document
+   */
+  private float frequency(int doc, PostingList.Cursor[] cursors) {
+    PostingList.Cursor first = cursors[0];
+    int[] positions = first.positions();
+    float result = 0;
+    for (int i = 0; i < first.frequency(); i++) {
+      int position = positions[i];
+      boolean found = true;
+      for (int j = 1; (j < cursors.length) && found; j++) {
+        found = Arrays.binarySearch(cursors[j].positions(), 0,
+            cursors[j].frequency(), position + j) >= 0;
+      }
+      if (found)
+        result += boost(doc, position);
+    }
+    return result;
+  }
+
+  /**
+   * @return number of posts in the index
+   */
+  public int size() {
+    this.lock.readLock().lock();
+    try {
+      return this.comments.size();
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the best matches, by score and then by post id
+   */
+  private List<Integer> top(Matches matches, int limit) {
+    final int[] ids = matches.ids;
+    final float[] scores = matches.scores;
+    // the heap holds the best matches seen, the worst one on top
+    Comparator<Integer> worstFirst = new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        int c = Float.compare(scores[a.intValue()], scores[b.intValue()]);
+        return (c != 0) ? c : Integer.compare(ids[b.intValue()],
+            ids[a.intValue()]);
+      }
+    };
+    PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.min(limit,
+        matches.size) + 1, worstFirst);
+    for (int i = 0; i < matches.size; i++) {
+      heap.add(Integer.valueOf(i));
+      if (heap.size() > limit)
+        heap.poll();
+    }
+    Integer[] best = new Integer[heap.size()];
+    for (int i = best.length - 1; i >= 0; i--) {
+      best[i] = Integer.valueOf(ids[heap.poll().intValue()]);
+    }
+    return Arrays.asList(best);
+  }
+
+  /**
+   * Applies the changes of a sync.
+   * 
+   * @param changes changes found by {@link DeltaSync#sync()}
+   */
+  public void update(DeltaSync.Changes changes) {
+    for (Page post : changes.getAdded()) {
+      add(post);
+    }
+    for (Page post : changes.getChanged()) {
+      add(post);
+    }
+    for (Integer postId : changes.getDeleted()) {
+      remove(postId.intValue());
+    }
+    for (Comment comment : changes.getComments()) {
+      add(comment);
+    }
+  }
+
+  /**
+   * Adds a document to the posting lists under the next document number.
+   * 
+   * @param postId the post of the document
+   * @param texts title, keywords, excerpt, body and comment, which are
+   *          <code>null</code> when the document has none
+   * @return the document number
+   */
+  private Integer write(Integer postId, String[] texts) {
+    int doc = this.documents++;
+    if (doc == this.posts.length) {
+      this.posts = Arrays.copyOf(this.posts, doc * 2);
+      this.lengths = Arrays.copyOf(this.lengths, doc * 2);
+      this.starts = Arrays.copyOf(this.starts, doc * 2 * FIELDS);
+    }
+    Map<String, Positions> words = new HashMap<String, Positions>();
+    List<String> tokens = new ArrayList<String>();
+    int position = 0;
+    int length = 0;
+    for (int field = 0; field <= FIELDS; field++) {
+      if (field > 0)
+        this.starts[doc * FIELDS + field - 1] = position;
+      tokens.clear();
+      tokenize(texts[field], tokens);
+      for (String token : tokens) {
+        Positions p = words.get(token);
+        if (p == null) {
+          p = new Positions();
+          words.put(token, p);
+        }
+        p.add(position++);
+      }
+      length += tokens.size();
+      // phrases do not match across fields
+      position += GAP;
+    }
+    for (Map.Entry<String, Positions> entry : words.entrySet()) {
+      PostingList list = this.terms.get(entry.getKey());
+      if (list == null) {
+        list = new PostingList();
+        this.terms.put(entry.getKey(), list);
+      }
+      list.add(doc, entry.getValue().values, entry.getValue().size);
+    }
+    this.posts[doc] = postId.intValue();
+    this.lengths[doc] = length;
+    this.totalLength += length;
+    return Integer.valueOf(doc);
+  }
+}
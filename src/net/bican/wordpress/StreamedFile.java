@@ -0,0 +1,78 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 
+ * A file that is sent as an xmlrpc <code>base64</code> value. The contents are
+ * read and encoded chunk by chunk while the request is written, so the file
+ * is never held in memory as a whole.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+final class StreamedFile {
+
+  /**
+   * Bytes encoded at a time. A multiple of 3, so that consecutive chunks
+   * encode without padding.
+   */
+  static final int CHUNK_SIZE = 3 * 16 * 1024;
+
+  private final File file;
+
+  /**
+   * @param file file to send
+   */
+  StreamedFile(File file) {
+    this.file = file;
+  }
+
+  /**
+   * @return the file to send
+   */
+  File getFile() {
+    return this.file;
+  }
+
+  /**
+   * Writes the contents of the file in base64.
+   * 
+   * @param out stream to write to
+   * @throws IOException when the file cannot be read or the stream cannot be
+   *           written
+   */
+  void writeBase64(Writer out) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+    char[] chars = new char[Base64.encodedLength(CHUNK_SIZE)];
+    try (FileInputStream in = new FileInputStream(this.file);
+        FileChannel channel = in.getChannel()) {
+      boolean eof = false;
+      while (!eof) {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer) < 0) {
+            eof = true;
+            break;
+          }
+        }
+        int len = Base64.encode(buffer.array(), 0, buffer.position(), chars);
+        out.write(chars, 0, len);
+      }
+    }
+  }
+}
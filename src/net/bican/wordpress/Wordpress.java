@@ -10,18 +10,16 @@
 package net.bican.wordpress;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import redstone.xmlrpc.XmlRpcArray;
 import redstone.xmlrpc.XmlRpcFault;
-import redstone.xmlrpc.XmlRpcProxy;
 import redstone.xmlrpc.XmlRpcStruct;
 
 interface BloggerBridge {
@@ -255,61 +253,14 @@ interface PingbackExtensionsBridge {
  */
 public class Wordpress {
 
-  private static byte[] getBytesFromFile(File file) {
-    byte[] result = null;
-    InputStream is = null;
-    try {
-      is = new FileInputStream(file);
-
-      // Get the size of the file
-      long length = file.length();
-
-      // You cannot create an array using a long type.
-      // It needs to be an int type.
-      // Before converting to an int type, check
-      // to ensure that file is not larger than Integer.MAX_VALUE.
-      if (length > Integer.MAX_VALUE) {
-        // File is too large
-      }
-
-      // Create the byte array to hold the data
-      byte[] bytes = new byte[(int) length];
-
-      // Read in the bytes
-      int offset = 0;
-      int numRead = 0;
-      while (offset < bytes.length
-          && (numRead = is.read(bytes, offset, bytes.length - offset)) >= 0) {
-        offset += numRead;
-      }
-
-      // Ensure all the bytes have been read in
-      if (offset < bytes.length) {
-        throw new IOException(
-            "Could not completely read file " + file.getName()); //$NON-NLS-1$
-      }
-      result = bytes;
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } finally {
-      if (is != null)
-        try {
-          is.close();
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-    }
-    return result;
-  }
-
   private BloggerBridge            blogger;
 
   private DemoBridge               demo        = null;
 
   private MovableTypeBridge        mt          = null;
 
+  private Boolean                  multicall   = null;
+
   private MetaWebLogBridge         mw          = null;
 
   private String                   password    = null;
@@ -318,6 +269,8 @@ public class Wordpress {
 
   private PingbackExtensionsBridge pingbackExt = null;
 
+  private XmlRpcStreamingClient    streaming   = null;
+
   private String                   username    = null;
 
   private WordpressBridge          wp          = null;
@@ -341,10 +294,191 @@ public class Wordpress {
    */
   public Wordpress(String username, String password, String xmlRpcUrl)
       throws MalformedURLException {
+    this(username, password, xmlRpcUrl, new HttpURLConnectionTransport());
+  }
+
+  /**
+   * @param username
+   *          User name
+   * @param password
+   *          Password
+   * @param xmlRpcUrl
+   *          xmlrpc communication point, usually blogurl/xmlrpc.php
+   * @param transport
+   *          Transport to send the calls with, e.g. a
+   *          {@link PooledHttpTransport} to keep connections open between
+   *          calls
+   * @throws MalformedURLException
+   *           If the URL is faulty
+   */
+  public Wordpress(String username, String password, String xmlRpcUrl,
+      XmlRpcTransport transport) throws MalformedURLException {
     this.username = username;
     this.password = password;
     this.xmlRpcUrl = xmlRpcUrl;
-    initMetaWebLog();
+    initMetaWebLog(transport);
+  }
+
+  @SuppressWarnings({ "unchecked", "nls", "boxing" })
+  static XmlRpcStruct categoryStruct(String name, String slug, int parentId) {
+    XmlRpcStruct h = new XmlRpcStruct();
+    h.put("name", name);
+    h.put("slug", slug);
+    h.put("parent_id", parentId);
+    return h;
+  }
+
+  @SuppressWarnings({ "unchecked", "nls" })
+  static XmlRpcStruct commentStruct(Integer comment_parent, String content,
+      String author, String author_url, String author_email) {
+    XmlRpcStruct comment = new XmlRpcStruct();
+    if (comment_parent != null)
+      comment.put("comment_parent", comment_parent);
+    comment.put("content", content);
+    if (author != null)
+      comment.put("author", author);
+    if (author_url != null)
+      comment.put("author_url", author_url);
+    if (author_email != null)
+      comment.put("author_email", author_email);
+    return comment;
+  }
+
+  /**
+   * Maps a post listed by <code>wp.getPosts</code> into the members
+   * <code>metaWeblog.getPost</code> and <code>wp.getPage</code> return.
+   */
+  @SuppressWarnings({ "unchecked", "nls" })
+  static XmlRpcStruct postStruct(XmlRpcStruct post) {
+    XmlRpcStruct r = new XmlRpcStruct();
+    Object id = post.get("post_id");
+    r.put("postid", id);
+    r.put("title", post.get("post_title"));
+    String content = (post.get("post_content") == null) ? "" : String
+        .valueOf(post.get("post_content"));
+    int more = content.indexOf("<!--more");
+    int end = (more < 0) ? -1 : content.indexOf("-->", more);
+    if (end < 0) {
+      r.put("description", content);
+      r.put("mt_text_more", "");
+    } else {
+      r.put("description", content.substring(0, more));
+      r.put("mt_text_more", content.substring(end + 3));
+    }
+    r.put("mt_excerpt", post.get("post_excerpt"));
+    r.put("dateCreated", post.get("post_date"));
+    r.put("date_created_gmt", post.get("post_date_gmt"));
+    r.put("post_type", post.get("post_type"));
+    r.put("post_status", post.get("post_status"));
+    r.put("wp_slug", post.get("post_name"));
+    r.put("wp_password", post.get("post_password"));
+    r.put("userid", post.get("post_author"));
+    r.put("wp_author_id", post.get("post_author"));
+    r.put("link", post.get("link"));
+    r.put("permaLink", post.get("link"));
+    r.put("wp_page_parent_id", post.get("post_parent"));
+    r.put("wp_page_order", post.get("menu_order"));
+    if (post.containsKey("comment_status"))
+      r.put("mt_allow_comments",
+          Integer.valueOf("open".equals(post.get("comment_status")) ? 1 : 0));
+    if (post.containsKey("ping_status"))
+      r.put("mt_allow_pings",
+          Integer.valueOf("open".equals(post.get("ping_status")) ? 1 : 0));
+    if ("page".equals(post.get("post_type"))) {
+      r.put("page_id", id);
+      r.put("page_status", post.get("post_status"));
+    }
+    Object terms = post.get("terms");
+    if (terms instanceof List) {
+      XmlRpcArray categories = new XmlRpcArray();
+      StringBuilder keywords = new StringBuilder();
+      for (Object o : (List<Object>) terms) {
+        if (!(o instanceof XmlRpcStruct))
+          continue;
+        XmlRpcStruct term = (XmlRpcStruct) o;
+        if ("category".equals(term.get("taxonomy"))) {
+          categories.add(term.get("name"));
+        } else if ("post_tag".equals(term.get("taxonomy"))) {
+          if (keywords.length() > 0)
+            keywords.append(", ");
+          keywords.append(term.get("name"));
+        }
+      }
+      r.put("categories", categories);
+      r.put("mt_keywords", keywords.toString());
+    }
+    if (post.get("custom_fields") instanceof List)
+      r.put("custom_fields", post.get("custom_fields"));
+    r.values().removeAll(Collections.singleton(null));
+    return r;
+  }
+
+  String getPassword() {
+    return this.password;
+  }
+
+  XmlRpcStreamingClient getStreamingClient() {
+    return this.streaming;
+  }
+
+  String getUsername() {
+    return this.username;
+  }
+
+  /**
+   * The answer is looked up once, with {@link #supportedMethods()}.
+   * 
+   * @return <code>true</code> if the server supports
+   *         <code>system.multicall</code>
+   */
+  @SuppressWarnings("nls")
+  synchronized boolean isMulticallSupported() {
+    if (this.multicall == null) {
+      try {
+        this.multicall = Boolean.valueOf(supportedMethods().contains(
+            "system.multicall"));
+      } catch (XmlRpcFault e) {
+        this.multicall = Boolean.FALSE;
+      }
+    }
+    return this.multicall.booleanValue();
+  }
+
+  /**
+   * @return a new batch for queueing operations to send together
+   */
+  public XmlRpcBatch newBatch() {
+    return new XmlRpcBatch(this);
+  }
+
+  /**
+   * Called once a call that may change the blog has been sent in a batch,
+   * whatever its outcome, so that subclasses can drop what they keep of the
+   * data it changes.
+   * 
+   * @param methodName name of the xmlrpc method
+   */
+  void written(String methodName) {
+    // nothing is kept here
+  }
+
+  synchronized void setMulticallSupported(boolean supported) {
+    this.multicall = Boolean.valueOf(supported);
+  }
+
+  /**
+   * Closes the transport the calls are sent with, along with the
+   * connections it keeps open.
+   */
+  public void close() {
+    this.streaming.getTransport().close();
+  }
+
+  /**
+   * @return Transport the calls are sent with
+   */
+  public XmlRpcTransport getTransport() {
+    return this.streaming.getTransport();
   }
 
   /**
@@ -515,10 +649,10 @@ public class Wordpress {
    * @throws XmlRpcFault
    *           Generic exception for xml-rpc operations
    */
-  @SuppressWarnings({ "unchecked", "boxing" })
+  @SuppressWarnings({ "nls", "boxing" })
   public List<Page> getPages() throws XmlRpcFault {
-    XmlRpcArray r = this.wp.getPages(0, this.username, this.password);
-    return fillFromXmlRpcArray(r, Page.class);
+    return this.streaming.callForList(Page.class, "wp.getPages", 0,
+        this.username, this.password);
   }
 
   /**
@@ -577,11 +711,166 @@ public class Wordpress {
    * @throws XmlRpcFault
    *           Generic exception for xml-rpc operations
    */
-  @SuppressWarnings({ "unchecked", "boxing" })
+  @SuppressWarnings({ "nls", "boxing" })
   public List<Page> getRecentPosts(int num_posts) throws XmlRpcFault {
-    XmlRpcArray r = this.mw.getRecentPosts(0, this.username, this.password,
+    return this.streaming.callForList(Page.class,
+        "metaWeblog.getRecentPosts", 0, this.username, this.password,
+        num_posts);
+  }
+
+  /**
+   * Iterates over all posts, newest first, fetching them in pages of the
+   * given size, so that the posts of large blogs can be walked in bounded
+   * memory. The next page is fetched in the background while the current one
+   * is consumed. Posts added or deleted during the walk can shift the pages,
+   * so a post may be skipped or seen twice.
+   * 
+   * @param pageSize
+   *          Number of posts fetched at once
+   * @return Iterator over the posts, which should be closed when not read to
+   *         the end
+   */
+  public XmlRpcIterator<Page> iterateAllPosts(int pageSize) {
+    return new PagedIterator<Page>(pageSize, true) {
+      @Override
+      int fetch(int offset, int number, List<Page> page) throws XmlRpcFault {
+        return fetchPosts(offset, number, page);
+      }
+    };
+  }
+
+  /**
+   * @param pageSize
+   *          Number of posts fetched at once
+   * @return All posts, fetched lazily in pages for each iteration
+   * @see #iterateAllPosts(int)
+   */
+  public Iterable<Page> allPosts(final int pageSize) {
+    return new Iterable<Page>() {
+      @Override
+      public Iterator<Page> iterator() {
+        return iterateAllPosts(pageSize);
+      }
+    };
+  }
+
+  /**
+   * Iterates over all pages, newest first, fetching them in pages of the
+   * given size, like {@link #iterateAllPosts(int)} does for posts.
+   * 
+   * @param pageSize
+   *          Number of pages fetched at once
+   * @return Iterator over the pages, which should be closed when not read to
+   *         the end
+   */
+  public XmlRpcIterator<Page> iterateAllPages(int pageSize) {
+    return new PagedIterator<Page>(pageSize, true) {
+      @SuppressWarnings("nls")
+      @Override
+      int fetch(int offset, int number, List<Page> page) throws XmlRpcFault {
+        return fetchPosts("page", offset, number, page);
+      }
+    };
+  }
+
+  /**
+   * @param pageSize
+   *          Number of pages fetched at once
+   * @return All pages, fetched lazily in pages for each iteration
+   * @see #iterateAllPages(int)
+   */
+  public Iterable<Page> allPages(final int pageSize) {
+    return new Iterable<Page>() {
+      @Override
+      public Iterator<Page> iterator() {
+        return iterateAllPages(pageSize);
+      }
+    };
+  }
+
+  @SuppressWarnings("nls")
+  int fetchPosts(int offset, int number, List<Page> page) throws XmlRpcFault {
+    return fetchPosts("post", offset, number, page);
+  }
+
+  /**
+   * The posts come whole in the list, with their terms and custom fields,
+   * and are mapped into the format of <code>getRecentPosts</code> (or
+   * <code>getPage</code>).
+   */
+  @SuppressWarnings({ "unchecked", "nls", "boxing" })
+  private int fetchPosts(String postType, int offset, int number,
+      List<Page> page) throws XmlRpcFault {
+    XmlRpcStruct filter = new XmlRpcStruct();
+    filter.put("post_type", postType);
+    filter.put("number", number);
+    filter.put("offset", offset);
+    XmlRpcArray fields = new XmlRpcArray();
+    fields.add("post");
+    fields.add("terms");
+    fields.add("custom_fields");
+    XmlRpcArray posts = this.wp.getPosts(0, this.username, this.password,
+        filter, fields);
+    for (Object o : posts) {
+      Page p = new Page();
+      p.fromXmlRpcStruct(postStruct((XmlRpcStruct) o));
+      page.add(p);
+    }
+    return posts.size();
+  }
+
+  /**
+   * Lists posts with <code>wp.getPosts</code>, with only the given fields
+   * besides the id.
+   */
+  @SuppressWarnings({ "unchecked", "nls", "boxing" })
+  XmlRpcArray listPosts(int offset, int number, String orderby,
+      String... fields) throws XmlRpcFault {
+    XmlRpcStruct filter = new XmlRpcStruct();
+    filter.put("post_type", "post");
+    filter.put("number", number);
+    filter.put("offset", offset);
+    filter.put("orderby", orderby);
+    filter.put("order", "DESC");
+    XmlRpcArray names = new XmlRpcArray();
+    names.add("post_id");
+    names.addAll(Arrays.asList(fields));
+    return this.wp.getPosts(0, this.username, this.password, filter, names);
+  }
+
+  /**
+   * Delivers the recent posts to a handler while the response is being read,
+   * so they don't have to be held in memory together.
+   * 
+   * @param num_posts
+   *          Number of posts to be retrieved.
+   * @param handler
+   *          Receives the posts one by one
+   * @throws XmlRpcFault
+   *           Generic exception for xml-rpc operations
+   */
+  @SuppressWarnings({ "nls", "boxing" })
+  public void getRecentPosts(int num_posts, ResultHandler<? super Page> handler)
+      throws XmlRpcFault {
+    this.streaming.callForEach(Page.class, handler,
+        "metaWeblog.getRecentPosts", 0, this.username, this.password,
+        num_posts);
+  }
+
+  /**
+   * @param num_posts
+   *          Number of posts to be retrieved.
+   * @return Iterator that reads the posts as they are requested, it has to be
+   *         closed if it is not read to the end
+   * @throws XmlRpcFault
+   *           Generic exception for xml-rpc operations
+   */
+  @SuppressWarnings({ "nls", "boxing" })
+  public XmlRpcIterator<Page> iterateRecentPosts(int num_posts)
+      throws XmlRpcFault {
+    return this.streaming.callForIterator(Page.class,
+        "metaWeblog.getRecentPosts", 0, this.username, this.password,
         num_posts);
-    return fillFromXmlRpcArray(r, Page.class);
   }
 
   /**
@@ -619,23 +908,24 @@ public class Wordpress {
   }
 
   @SuppressWarnings("nls")
-  private void initMetaWebLog() throws MalformedURLException {
+  private void initMetaWebLog(XmlRpcTransport transport)
+      throws MalformedURLException {
     final URL url = new URL(this.xmlRpcUrl);
-    this.wp = (WordpressBridge) XmlRpcProxy.createProxy(url, "wp",
-        new Class[] { WordpressBridge.class }, true);
-    this.mw = (MetaWebLogBridge) XmlRpcProxy.createProxy(url, "metaWeblog",
-        new Class[] { MetaWebLogBridge.class }, true);
-    this.mt = (MovableTypeBridge) XmlRpcProxy.createProxy(url, "mt",
-        new Class[] { MovableTypeBridge.class }, true);
-    this.demo = (DemoBridge) XmlRpcProxy.createProxy(url, "demo",
-        new Class[] { DemoBridge.class }, true);
-    this.pingback = (PingbackBridge) XmlRpcProxy.createProxy(url, "pingback",
-        new Class[] { PingbackBridge.class }, true);
-    this.blogger = (BloggerBridge) XmlRpcProxy.createProxy(url, "blogger",
-        new Class[] { BloggerBridge.class }, true);
-    this.pingbackExt = (PingbackExtensionsBridge) XmlRpcProxy.createProxy(url,
-        "pingback.extensions", new Class[] { PingbackExtensionsBridge.class },
-        true);
+    this.streaming = new XmlRpcStreamingClient(url, transport);
+    this.wp = XmlRpcBridgeHandler.create(WordpressBridge.class, "wp",
+        this.streaming);
+    this.mw = XmlRpcBridgeHandler.create(MetaWebLogBridge.class, "metaWeblog",
+        this.streaming);
+    this.mt = XmlRpcBridgeHandler.create(MovableTypeBridge.class, "mt",
+        this.streaming);
+    this.demo = XmlRpcBridgeHandler.create(DemoBridge.class, "demo",
+        this.streaming);
+    this.pingback = XmlRpcBridgeHandler.create(PingbackBridge.class,
+        "pingback", this.streaming);
+    this.blogger = XmlRpcBridgeHandler.create(BloggerBridge.class, "blogger",
+        this.streaming);
+    this.pingbackExt = XmlRpcBridgeHandler.create(
+        PingbackExtensionsBridge.class, "pingback.extensions", this.streaming);
   }
 
   /**
@@ -649,14 +939,11 @@ public class Wordpress {
    * @throws XmlRpcFault
    *           Generic exception for xml-rpc operations
    */
-  @SuppressWarnings({ "unchecked", "nls", "boxing" })
+  @SuppressWarnings("boxing")
   public int newCategory(String name, String slug, int parentId)
       throws XmlRpcFault {
-    XmlRpcStruct h = new XmlRpcStruct();
-    h.put("name", name);
-    h.put("slug", slug);
-    h.put("parent_id", parentId);
-    return this.wp.newCategory(0, this.username, this.password, h);
+    return this.wp.newCategory(0, this.username, this.password,
+        categoryStruct(name, slug, parentId));
   }
 
   /**
@@ -670,19 +957,23 @@ public class Wordpress {
    * @throws XmlRpcFault
    *           Generic exception for xml-rpc operations
    */
-  @SuppressWarnings("boxing")
+  @SuppressWarnings({ "boxing", "unchecked", "nls" })
   public MediaObject newMediaObject(String mimeType, File file,
       Boolean overwrite) throws XmlRpcFault {
     Attachment att = new Attachment();
     att.setType(mimeType);
     att.setOverwrite(overwrite);
     att.setName(file.getName());
-    att.setBits(getBytesFromFile(file));
     XmlRpcStruct d = att.toXmlRpcStruct();
-    XmlRpcStruct r = this.mw.newMediaObject(0, this.username, this.password, d);
-    MediaObject result = new MediaObject();
-    result.fromXmlRpcStruct(r);
-    return result;
+    // the contents are encoded while the request is sent
+    d.put("bits", new StreamedFile(file));
+    XmlRpcResponseReader r = this.streaming.call(true,
+        "metaWeblog.newMediaObject", 0, this.username, this.password, d);
+    try {
+      return r.readResponse(MediaObject.class);
+    } finally {
+      r.close();
+    }
   }
 
   /**
@@ -857,10 +1148,99 @@ public class Wordpress {
    * @throws XmlRpcFault
    *           Generic exception for xml-rpc operations
    */
-  @SuppressWarnings({ "unchecked", "nls", "boxing" })
+  @SuppressWarnings({ "nls", "boxing" })
   public List<Comment> getComments(String status, Integer post_id,
       Integer number, Integer offset) throws XmlRpcFault {
+    return this.streaming.callForList(Comment.class, "wp.getComments", 0,
+        this.username, this.password,
+        commentFilter(status, post_id, number, offset));
+  }
 
+  /**
+   * Delivers the comments to a handler while the response is being read, so
+   * they don't have to be held in memory together.
+   * 
+   * @param status
+   *          One of "approve", "hold", or "spam". Or, null to show all.
+   * @param post_id
+   *          Filter comments by post_id, or null to not filter.
+   * @param number
+   *          The number of comments to return, or null for the default (of 10)
+   * @param offset
+   *          The offset into the set of comments to return, or null for 0
+   * @param handler
+   *          Receives the comments one by one
+   * @throws XmlRpcFault
+   *           Generic exception for xml-rpc operations
+   */
+  @SuppressWarnings({ "nls", "boxing" })
+  public void getComments(String status, Integer post_id, Integer number,
+      Integer offset, ResultHandler<? super Comment> handler)
+      throws XmlRpcFault {
+    this.streaming.callForEach(Comment.class, handler, "wp.getComments", 0,
+        this.username, this.password,
+        commentFilter(status, post_id, number, offset));
+  }
+
+  /**
+   * Iterates over the matching comments, fetching them in pages of the given
+   * size with the same filter as
+   * {@link #getComments(String, Integer, Integer, Integer)}. The next page is
+   * fetched in the background while the current one is consumed; nothing
+   * more is fetched once the iterator is closed.
+   * 
+   * @param status
+   *          One of "approve", "hold", or "spam". Or, null to show all.
+   * @param post_id
+   *          Filter comments by post_id, or null to not filter.
+   * @param pageSize
+   *          Number of comments fetched at once
+   * @return Iterator over the comments, which should be closed when not read
+   *         to the end
+   */
+  public XmlRpcIterator<Comment> iterateComments(final String status,
+      final Integer post_id, int pageSize) {
+    return new PagedIterator<Comment>(pageSize, true) {
+      @Override
+      int fetch(int offset, int number, final List<Comment> page)
+          throws XmlRpcFault {
+        getComments(status, post_id, Integer.valueOf(number),
+            Integer.valueOf(offset), new ResultHandler<Comment>() {
+              @Override
+              public boolean handle(Comment item) {
+                page.add(item);
+                return true;
+              }
+            });
+        return page.size();
+      }
+    };
+  }
+
+  /**
+   * @param status
+   *          One of "approve", "hold", or "spam". Or, null to show all.
+   * @param post_id
+   *          Filter comments by post_id, or null to not filter.
+   * @param pageSize
+   *          Number of comments fetched at once
+   * @return The matching comments, fetched lazily in pages for each
+   *         iteration
+   * @see #iterateComments(String, Integer, int)
+   */
+  public Iterable<Comment> allComments(final String status,
+      final Integer post_id, final int pageSize) {
+    return new Iterable<Comment>() {
+      @Override
+      public Iterator<Comment> iterator() {
+        return iterateComments(status, post_id, pageSize);
+      }
+    };
+  }
+
+  @SuppressWarnings({ "unchecked", "nls", "static-method" })
+  private XmlRpcStruct commentFilter(String status, Integer post_id,
+      Integer number, Integer offset) {
     XmlRpcStruct filter = new XmlRpcStruct();
 
     if (status != null) {
@@ -878,10 +1258,7 @@ public class Wordpress {
     if (offset != null) {
       filter.put("offset", offset);
     }
-
-    XmlRpcArray r = this.wp
-        .getComments(0, this.username, this.password, filter);
-    return fillFromXmlRpcArray(r, Comment.class);
+    return filter;
   }
 
   /**
@@ -919,24 +1296,13 @@ public class Wordpress {
    * @throws XmlRpcFault
    *           Generic exception for xml-rpc operations
    */
-  @SuppressWarnings({ "unchecked", "nls", "boxing" })
+  @SuppressWarnings("boxing")
   public Integer newComment(Integer post_id, Integer comment_parent,
       String content, String author, String author_url, String author_email)
       throws XmlRpcFault {
 
-    XmlRpcStruct comment = new XmlRpcStruct();
-
-    if (comment_parent != null) {
-      comment.put("comment_parent", comment_parent);
-    }
-
-    comment.put("content", content);
-    if (author != null)
-      comment.put("author", author);
-    if (author_url != null)
-      comment.put("author_url", author_url);
-    if (author_email != null)
-      comment.put("author_email", author_email);
+    XmlRpcStruct comment = commentStruct(comment_parent, content, author,
+        author_url, author_email);
 
     Integer comment_id = this.wp.newComment(0, this.username, this.password,
         post_id, comment);
@@ -995,6 +1361,9 @@ public class Wordpress {
 
 interface WordpressBridge {
 
+  XmlRpcArray getPosts(Integer blogid, String username, String password,
+      XmlRpcStruct filter, XmlRpcArray fields) throws XmlRpcFault;
+
   Boolean editComment(Integer blogid, String username, String password,
       Integer comment_id, Comment comment) throws XmlRpcFault;
 
@@ -0,0 +1,123 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+
+/**
+ * 
+ * Pending result of an <code>AsyncWordpress</code> call, to which callbacks
+ * can be attached.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ * @param <T> type of the result
+ */
+public class WordpressFuture<T> extends FutureTask<T> {
+
+  private final List<AsyncCallback<? super T>> callbacks;
+
+  WordpressFuture(Callable<T> call) {
+    super(call);
+    this.callbacks = new ArrayList<AsyncCallback<? super T>>();
+  }
+
+  /**
+   * Registers a callback for the outcome of the call. If the call is already
+   * over, the callback is run immediately on the calling thread, otherwise
+   * on the thread that completes the call.
+   * 
+   * @param callback callback to run
+   * @return this future
+   */
+  public WordpressFuture<T> addCallback(AsyncCallback<? super T> callback) {
+    synchronized (this.callbacks) {
+      if (!isDone()) {
+        this.callbacks.add(callback);
+        return this;
+      }
+    }
+    notify(callback);
+    return this;
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see java.util.concurrent.FutureTask#done()
+   */
+  @Override
+  protected void done() {
+    List<AsyncCallback<? super T>> pending;
+    synchronized (this.callbacks) {
+      pending = new ArrayList<AsyncCallback<? super T>>(this.callbacks);
+      this.callbacks.clear();
+    }
+    for (AsyncCallback<? super T> callback : pending) {
+      notify(callback);
+    }
+  }
+
+  /**
+   * Waits for the call and returns its result, like the blocking
+   * <code>Wordpress</code> method would.
+   * 
+   * @return result of the call
+   * @throws XmlRpcFault when the server returned a fault
+   * @throws XmlRpcException when the call failed otherwise, or the wait was
+   *           interrupted or cancelled
+   */
+  @SuppressWarnings("nls")
+  public T getResult() throws XmlRpcFault {
+    try {
+      return get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new XmlRpcException("Interrupted waiting for the result", e);
+    } catch (CancellationException e) {
+      throw new XmlRpcException("Call was cancelled", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof XmlRpcFault)
+        throw (XmlRpcFault) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new XmlRpcException(cause.getLocalizedMessage(), cause);
+    }
+  }
+
+  private void notify(AsyncCallback<? super T> callback) {
+    T result;
+    try {
+      result = get();
+    } catch (ExecutionException e) {
+      callback.failed(e.getCause());
+      return;
+    } catch (CancellationException e) {
+      callback.failed(e);
+      return;
+    } catch (InterruptedException e) {
+      // cannot happen once the task is done
+      Thread.currentThread().interrupt();
+      return;
+    }
+    callback.completed(result);
+  }
+}
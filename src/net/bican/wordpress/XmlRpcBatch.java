@@ -0,0 +1,403 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Queues operations and sends them together with
+ * <code>system.multicall</code>, so that bulk jobs don't pay a round trip
+ * per operation. Each queued operation returns a <code>BatchResult</code>
+ * that holds its value or fault once {@link #execute()} has run.
+ * 
+ * If the server does not list <code>system.multicall</code> among its
+ * supported methods, the operations are sent one at a time instead.
+ * 
+ * An operation leaves the queue once its request is sent. If the request
+ * fails, the server may have carried the operation out, so it is not sent
+ * again and its result throws the failure.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class XmlRpcBatch {
+
+  /**
+   * Default number of operations sent in one request
+   */
+  public static final int             DEFAULT_BATCH_SIZE = 50;
+
+  @SuppressWarnings("nls")
+  static final String                 MULTICALL          = "system.multicall";
+
+  private int                         batchSize          = DEFAULT_BATCH_SIZE;
+
+  private final Deque<BatchResult<?>> queue;
+
+  private final Wordpress             wordpress;
+
+  /**
+   * @param wordpress the client to send the operations with
+   */
+  XmlRpcBatch(Wordpress wordpress) {
+    this.wordpress = wordpress;
+    this.queue = new ArrayDeque<BatchResult<?>>();
+  }
+
+  private <T> BatchResult<T> add(Class<T> type, String methodName,
+      Object... args) {
+    BatchResult<T> result = new BatchResult<T>(type, methodName, args);
+    this.queue.add(result);
+    return result;
+  }
+
+  private Object[] auth(Object... args) {
+    Object[] result = new Object[args.length + 3];
+    result[0] = Integer.valueOf(0);
+    result[1] = this.wordpress.getUsername();
+    result[2] = this.wordpress.getPassword();
+    System.arraycopy(args, 0, result, 3, args.length);
+    return result;
+  }
+
+  /**
+   * @param commentID comment id to delete
+   * @return result of the operation
+   * @see Wordpress#deleteComment(int)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Boolean> deleteComment(int commentID) {
+    return add(Boolean.class, "wp.deleteComment",
+        auth(Integer.valueOf(commentID)));
+  }
+
+  /**
+   * @param post_ID ID of the page to delete
+   * @param publish Publish status
+   * @return result of deletion
+   * @see Wordpress#deletePage(int, String)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Boolean> deletePage(int post_ID, String publish) {
+    return add(Boolean.class, "wp.deletePage",
+        auth(Integer.valueOf(post_ID), publish));
+  }
+
+  /**
+   * @param post_ID ID of the post to delete
+   * @param publish Publish status
+   * @return result of deletion
+   * @see Wordpress#deletePost(int, String)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Boolean> deletePost(int post_ID, String publish) {
+    return add(Boolean.class, "blogger.deletePost", Integer.valueOf(0),
+        Integer.valueOf(post_ID), this.wordpress.getUsername(),
+        this.wordpress.getPassword(), publish);
+  }
+
+  /**
+   * @param comment comment to edit
+   * @return result of the operation
+   * @see Wordpress#editComment(Comment)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Boolean> editComment(Comment comment) {
+    return add(Boolean.class, "wp.editComment",
+        auth(comment.getComment_id(), comment.toXmlRpcStruct()));
+  }
+
+  /**
+   * @param post_ID ID of the page to edit
+   * @param page Page information
+   * @param publish Publish status
+   * @return result of edit
+   * @see Wordpress#editPage(int, Page, String)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Boolean> editPage(int post_ID, Page page, String publish) {
+    return add(Boolean.class, "wp.editPage", Integer.valueOf(0),
+        Integer.valueOf(post_ID), this.wordpress.getUsername(),
+        this.wordpress.getPassword(), page.toXmlRpcStruct(), publish);
+  }
+
+  /**
+   * @param post_ID ID of the post to edit
+   * @param page Page information
+   * @param publish Publish status
+   * @return result of edit
+   * @see Wordpress#editPost(int, Page, String)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Boolean> editPost(int post_ID, Page page, String publish) {
+    return add(Boolean.class, "metaWeblog.editPost", Integer.valueOf(post_ID),
+        this.wordpress.getUsername(), this.wordpress.getPassword(),
+        page.toXmlRpcStruct(), publish);
+  }
+
+  /**
+   * Sends the queued operations and fills in their results. The queue is
+   * empty afterwards, so the batch can be reused.
+   * 
+   * @throws XmlRpcException when a request fails; the results of the
+   *           operations it carried throw the failure, and the operations
+   *           that were not sent yet stay in the queue
+   */
+  public void execute() {
+    if (this.queue.isEmpty())
+      return;
+    boolean multicall = this.wordpress.isMulticallSupported();
+    while (!this.queue.isEmpty()) {
+      if (multicall && (this.queue.size() > 1)) {
+        List<BatchResult<?>> chunk = new ArrayList<BatchResult<?>>(
+            Math.min(this.batchSize, this.queue.size()));
+        Iterator<BatchResult<?>> it = this.queue.iterator();
+        while ((chunk.size() < this.batchSize) && it.hasNext()) {
+          chunk.add(it.next());
+        }
+        multicall = sendMulticall(chunk);
+      } else {
+        send(this.queue.peek());
+      }
+    }
+  }
+
+  /**
+   * @return number of operations sent in one request
+   */
+  public int getBatchSize() {
+    return this.batchSize;
+  }
+
+  /**
+   * @param comment_id comment_id to fetch
+   * @return a Comment object
+   * @see Wordpress#getComment(Integer)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Comment> getComment(Integer comment_id) {
+    return add(Comment.class, "wp.getComment", auth(comment_id));
+  }
+
+  /**
+   * @param pageid Page ID
+   * @return the <code>Page</code> object
+   * @see Wordpress#getPage(int)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Page> getPage(int pageid) {
+    return add(Page.class, "wp.getPage", Integer.valueOf(0),
+        Integer.valueOf(pageid), this.wordpress.getUsername(),
+        this.wordpress.getPassword());
+  }
+
+  /**
+   * @param post_ID ID of the post to retrieve
+   * @return Page information
+   * @see Wordpress#getPost(int)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Page> getPost(int post_ID) {
+    return add(Page.class, "metaWeblog.getPost", Integer.valueOf(post_ID),
+        this.wordpress.getUsername(), this.wordpress.getPassword());
+  }
+
+  /**
+   * @param name Category name
+   * @param slug Category short name
+   * @param parentId Parent ID
+   * @return new category id
+   * @see Wordpress#newCategory(String, String, int)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Integer> newCategory(String name, String slug,
+      int parentId) {
+    return add(Integer.class, "wp.newCategory",
+        auth(Wordpress.categoryStruct(name, slug, parentId)));
+  }
+
+  /**
+   * @param post_id Post to attach the comment to.
+   * @param comment_parent Id of the parent comment (for threading)
+   * @param content Content of comment
+   * @param author Author's name
+   * @param author_url Author's URL (can be empty)
+   * @param author_email Author's Email Address
+   * @return the id for the newly created comment
+   * @see Wordpress#newComment(Integer, Integer, String, String, String,
+   *      String)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<Integer> newComment(Integer post_id,
+      Integer comment_parent, String content, String author,
+      String author_url, String author_email) {
+    return add(Integer.class, "wp.newComment", auth(post_id, Wordpress
+        .commentStruct(comment_parent, content, author, author_url,
+            author_email)));
+  }
+
+  /**
+   * @param post Page information
+   * @param publish Publish status
+   * @return Post ID
+   * @see Wordpress#newPage(Page, String)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<String> newPage(Page post, String publish) {
+    return add(String.class, "wp.newPage",
+        auth(post.toXmlRpcStruct(), publish));
+  }
+
+  /**
+   * @param page Post information
+   * @param publish Publish status
+   * @return Post id
+   * @see Wordpress#newPost(Page, boolean)
+   */
+  @SuppressWarnings("nls")
+  public BatchResult<String> newPost(Page page, boolean publish) {
+    return add(String.class, "metaWeblog.newPost",
+        auth(page.toXmlRpcStruct(), Boolean.valueOf(publish)));
+  }
+
+  /**
+   * Takes an operation off the head of the queue once it was sent.
+   */
+  private void sent(BatchResult<?> r) {
+    this.queue.remove();
+    this.wordpress.written(r.getMethodName());
+  }
+
+  /**
+   * Sends the operation at the head of the queue on its own.
+   */
+  private void send(BatchResult<?> r) {
+    Object value;
+    try {
+      value = this.wordpress.getStreamingClient().callForValue(
+          r.getMethodName(), r.getArgs());
+    } catch (XmlRpcFault e) {
+      sent(r);
+      r.setFault(e);
+      return;
+    } catch (XmlRpcException e) {
+      sent(r);
+      r.setFailure(e);
+      throw e;
+    }
+    sent(r);
+    try {
+      r.setValue(value);
+    } catch (XmlRpcException e) {
+      r.setFailure(e);
+    }
+  }
+
+  /**
+   * Sends the operations at the head of the queue in one request.
+   * 
+   * @return <code>false</code> if the server turned out not to support
+   *         multicall, in which case nothing was done
+   */
+  @SuppressWarnings({ "nls", "unchecked" })
+  private boolean sendMulticall(List<BatchResult<?>> chunk) {
+    XmlRpcArray calls = new XmlRpcArray();
+    for (BatchResult<?> r : chunk) {
+      XmlRpcStruct call = new XmlRpcStruct();
+      call.put("methodName", r.getMethodName());
+      call.put("params", r.getArgs());
+      calls.add(call);
+    }
+    Object response;
+    try {
+      response = this.wordpress.getStreamingClient().callForValue(MULTICALL,
+          calls);
+    } catch (XmlRpcFault e) {
+      if (e.getErrorCode() == -32601) {
+        // method not found
+        this.wordpress.setMulticallSupported(false);
+        return false;
+      }
+      for (BatchResult<?> r : chunk) {
+        sent(r);
+        r.setFault(e);
+      }
+      return true;
+    } catch (XmlRpcException e) {
+      // the calls may have been carried out before the response was lost
+      for (BatchResult<?> r : chunk) {
+        sent(r);
+        r.setFailure(e);
+      }
+      throw e;
+    }
+    for (BatchResult<?> r : chunk) {
+      sent(r);
+    }
+    if (!(response instanceof XmlRpcArray)
+        || (((XmlRpcArray) response).size() != chunk.size())) {
+      XmlRpcException e = new XmlRpcException("Unexpected response for "
+          + MULTICALL);
+      for (BatchResult<?> r : chunk) {
+        r.setFailure(e);
+      }
+      throw e;
+    }
+    XmlRpcArray results = (XmlRpcArray) response;
+    for (int i = 0; i < chunk.size(); i++) {
+      BatchResult<?> r = chunk.get(i);
+      Object o = results.get(i);
+      if ((o instanceof XmlRpcArray) && (((XmlRpcArray) o).size() == 1)) {
+        try {
+          r.setValue(((XmlRpcArray) o).get(0));
+        } catch (XmlRpcException e) {
+          r.setFailure(e);
+        }
+      } else if ((o instanceof XmlRpcStruct)
+          && ((XmlRpcStruct) o).containsKey("faultCode")) {
+        XmlRpcStruct fault = (XmlRpcStruct) o;
+        Object code = fault.get("faultCode");
+        r.setFault(new XmlRpcFault((code instanceof Integer) ? ((Integer) code)
+            .intValue() : 0, String.valueOf(fault.get("faultString"))));
+      } else {
+        r.setFailure(new XmlRpcException("Unexpected response for "
+            + r.getMethodName() + " in " + MULTICALL));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param batchSize number of operations sent in one request
+   */
+  @SuppressWarnings("nls")
+  public void setBatchSize(int batchSize) {
+    if (batchSize < 1)
+      throw new IllegalArgumentException("batchSize must be positive");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @return number of operations waiting to be sent
+   */
+  public int size() {
+    return this.queue.size();
+  }
+}
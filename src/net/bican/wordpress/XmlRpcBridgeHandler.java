@@ -0,0 +1,115 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import redstone.xmlrpc.XmlRpcException;
+
+/**
+ * 
+ * Implements a bridge interface by sending each of its methods as an xmlrpc
+ * call named <code>prefix.methodName</code>, through an
+ * <code>XmlRpcStreamingClient</code>.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+final class XmlRpcBridgeHandler implements InvocationHandler {
+
+  /**
+   * @param type the bridge interface
+   * @param prefix prefix of the method names, like <code>wp</code>
+   * @param client client to make the calls with
+   * @return implementation of the bridge interface
+   */
+  static <T> T create(Class<T> type, String prefix,
+      XmlRpcStreamingClient client) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+        new Class<?>[] { type }, new XmlRpcBridgeHandler(prefix, client)));
+  }
+
+  private final XmlRpcStreamingClient client;
+
+  private final String                prefix;
+
+  private XmlRpcBridgeHandler(String prefix, XmlRpcStreamingClient client) {
+    this.prefix = prefix;
+    this.client = client;
+  }
+
+  /**
+   * Servers are not always consistent in the types of simple results, e.g.
+   * an id may come as a string or an integer.
+   * 
+   * @param value result as read from the response
+   * @param type expected type of the result
+   * @param methodName name of the method, for the error message
+   * @return the result converted to the expected type
+   * @throws XmlRpcException when the result cannot be converted
+   */
+  @SuppressWarnings("nls")
+  static Object coerce(Object value, Class<?> type, String methodName) {
+    if ((value == null) || type.isInstance(value) || (type == Object.class)
+        || (type == void.class))
+      return value;
+    try {
+      if (type == String.class)
+        return value.toString();
+      if (type == Integer.class) {
+        if (value instanceof Number)
+          return Integer.valueOf(((Number) value).intValue());
+        return Integer.valueOf(value.toString().trim());
+      }
+      if (type == Double.class) {
+        if (value instanceof Number)
+          return Double.valueOf(((Number) value).doubleValue());
+        return Double.valueOf(value.toString().trim());
+      }
+      if (type == Boolean.class) {
+        if (value instanceof Number)
+          return Boolean.valueOf(((Number) value).intValue() != 0);
+        String s = value.toString().trim();
+        return Boolean.valueOf("1".equals(s) || "true".equalsIgnoreCase(s));
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new XmlRpcException("Unexpected result for " + methodName + ": "
+        + value.getClass().getName() + " instead of " + type.getName());
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+   *      java.lang.reflect.Method, java.lang.Object[])
+   */
+  @Override
+  @SuppressWarnings("nls")
+  public Object invoke(Object proxy, Method method, Object[] args)
+      throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      switch (method.getName()) {
+      case "equals":
+        return Boolean.valueOf(proxy == args[0]);
+      case "hashCode":
+        return Integer.valueOf(System.identityHashCode(proxy));
+      default:
+        return this.prefix + " bridge to " + this.client.getUrl();
+      }
+    }
+    String methodName = this.prefix + "." + method.getName();
+    Object result = this.client.callForValue(methodName, args);
+    return coerce(result, method.getReturnType(), methodName);
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * 
+ * Parser and formatter for the ISO-8601 basic format xmlrpc uses for dates,
+ * <code>yyyyMMdd'T'HH:mm:ss</code>. Unlike <code>SimpleDateFormat</code>, an
+ * instance holds no mutable state, so it can be shared between threads.
+ * 
+ * Dates are interpreted in the time zone given at construction, using the
+ * proleptic Gregorian calendar. Fields out of their range roll over into the
+ * next larger field, like they do with a lenient <code>SimpleDateFormat</code>,
+ * so <code>20120230T10:00:00</code> is the first of March and the zero date
+ * <code>00000000T00:00:00</code> that WordPress sends for unset dates, like
+ * those of drafts, is read too.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public final class XmlRpcDateCodec {
+
+  /**
+   * Codec for the default time zone of the JVM
+   */
+  public static final XmlRpcDateCodec DEFAULT = new XmlRpcDateCodec(
+      TimeZone.getDefault());
+
+  /**
+   * Codec for UTC
+   */
+  public static final XmlRpcDateCodec UTC = new XmlRpcDateCodec(
+      TimeZone.getTimeZone("UTC")); //$NON-NLS-1$
+
+  /**
+   * Length of a formatted date
+   */
+  public static final int LENGTH = 17;
+
+  private static final long MILLIS_PER_DAY = 86400000L;
+
+  private static final int SECONDS_PER_DAY = 86400;
+
+  private static int digit(CharSequence s, int pos) throws ParseException {
+    int d = s.charAt(pos) - '0';
+    if ((d < 0) || (d > 9))
+      throw new ParseException(s.toString(), pos);
+    return d;
+  }
+
+  private static int number(CharSequence s, int pos, int len)
+      throws ParseException {
+    int result = 0;
+    for (int i = pos; i < pos + len; i++) {
+      result = result * 10 + digit(s, i);
+    }
+    return result;
+  }
+
+  private static void expect(CharSequence s, int pos, char c)
+      throws ParseException {
+    if (s.charAt(pos) != c)
+      throw new ParseException(s.toString(), pos);
+  }
+
+  /**
+   * Days since 1970-01-01 for the given civil date (H. Hinnant's algorithm).
+   */
+  private static long daysFromCivil(int year, int month, int day) {
+    int y = (month <= 2) ? year - 1 : year;
+    int era = ((y >= 0) ? y : y - 399) / 400;
+    int yoe = y - era * 400;
+    int doy = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+    int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097L + doe - 719468;
+  }
+
+  private static void put(char[] buf, int pos, int value, int len) {
+    for (int i = pos + len - 1; i >= pos; i--) {
+      buf[i] = (char) ('0' + (value % 10));
+      value /= 10;
+    }
+  }
+
+  private final TimeZone timeZone;
+
+  /**
+   * @param timeZone Time zone the dates are interpreted in
+   */
+  public XmlRpcDateCodec(TimeZone timeZone) {
+    // cloned so that later changes to the caller's object don't leak in
+    this.timeZone = (TimeZone) timeZone.clone();
+  }
+
+  /**
+   * @param date date to format
+   * @return the date in <code>yyyyMMdd'T'HH:mm:ss</code> format
+   */
+  public String format(Date date) {
+    char[] buf = new char[LENGTH];
+    format(date, buf, 0);
+    return new String(buf);
+  }
+
+  /**
+   * @param date date to format
+   * @param buf buffer to write to, needs {@link #LENGTH} characters from pos
+   * @param pos where to start writing in the buffer
+   */
+  public void format(Date date, char[] buf, int pos) {
+    long millis = date.getTime();
+    long local = millis + this.timeZone.getOffset(millis);
+    long days = local / MILLIS_PER_DAY;
+    long rest = local % MILLIS_PER_DAY;
+    if (rest < 0) {
+      days--;
+      rest += MILLIS_PER_DAY;
+    }
+    int secs = (int) (rest / 1000);
+    // civil from days, inverse of daysFromCivil
+    long z = days + 719468;
+    long era = ((z >= 0) ? z : z - 146096) / 146097;
+    int doe = (int) (z - era * 146097);
+    int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+    int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+    int mp = (5 * doy + 2) / 153;
+    int day = doy - (153 * mp + 2) / 5 + 1;
+    int month = (mp < 10) ? mp + 3 : mp - 9;
+    int year = (int) (yoe + era * 400) + ((month <= 2) ? 1 : 0);
+    put(buf, pos, year, 4);
+    put(buf, pos + 4, month, 2);
+    put(buf, pos + 6, day, 2);
+    buf[pos + 8] = 'T';
+    put(buf, pos + 9, secs / 3600, 2);
+    buf[pos + 11] = ':';
+    put(buf, pos + 12, (secs / 60) % 60, 2);
+    buf[pos + 14] = ':';
+    put(buf, pos + 15, secs % 60, 2);
+  }
+
+  /**
+   * @return the time zone dates are interpreted in
+   */
+  public TimeZone getTimeZone() {
+    return (TimeZone) this.timeZone.clone();
+  }
+
+  /**
+   * Parses a date from the start of the given characters. Anything after the
+   * first {@link #LENGTH} characters is ignored, like
+   * <code>DateFormat.parse(String)</code> does.
+   * 
+   * @param s characters to parse
+   * @return parsed date
+   * @throws ParseException when the input is not a valid date
+   */
+  public Date parse(CharSequence s) throws ParseException {
+    return new Date(parseMillis(s));
+  }
+
+  /**
+   * @param s characters to parse
+   * @return parsed date as milliseconds since the epoch
+   * @throws ParseException when the input is not a date in the format
+   * @see #parse(CharSequence)
+   */
+  public long parseMillis(CharSequence s) throws ParseException {
+    if (s.length() < LENGTH)
+      throw new ParseException(s.toString(), s.length());
+    int year = number(s, 0, 4);
+    int month = number(s, 4, 2);
+    int day = number(s, 6, 2);
+    expect(s, 8, 'T');
+    int hour = number(s, 9, 2);
+    expect(s, 11, ':');
+    int minute = number(s, 12, 2);
+    expect(s, 14, ':');
+    int second = number(s, 15, 2);
+    // months out of range move the year, days and times move the day
+    int m = month - 1;
+    int y = year;
+    if (m < 0) {
+      y--;
+      m += 12;
+    }
+    y += m / 12;
+    m %= 12;
+    long days = daysFromCivil(y, m + 1, 1) + day - 1;
+    long local = (days * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second)
+        * 1000L;
+    // the offset depends on the instant itself, look at the offsets in effect
+    // a day before and after to see if there is a transition around it
+    int early = this.timeZone.getOffset(local - MILLIS_PER_DAY);
+    int late = this.timeZone.getOffset(local + MILLIS_PER_DAY);
+    if (early == late)
+      return local - early;
+    boolean earlyValid = this.timeZone.getOffset(local - early) == early;
+    boolean lateValid = this.timeZone.getOffset(local - late) == late;
+    if (earlyValid && lateValid) {
+      // repeated wall time: use the later instant, like GregorianCalendar
+      return Math.max(local - early, local - late);
+    }
+    if (lateValid)
+      return local - late;
+    // valid before the transition, or skipped by it: use the earlier offset
+    return local - early;
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 
+ * Iterator over the items of a list response, reading them from the
+ * connection as they are requested. It has to be closed if it is not read to
+ * the end, so that the connection is released.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ * @param <T> type of the items
+ */
+public interface XmlRpcIterator<T> extends Iterator<T>, Closeable {
+  /**
+   * Releases the connection, skipping the items that are not read yet.
+   */
+  @Override
+  public void close();
+}
@@ -9,11 +9,7 @@
  */
 package net.bican.wordpress;
 
-import java.lang.reflect.Field;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-
+import net.bican.wordpress.XmlRpcMapping.MappedField;
 import redstone.xmlrpc.XmlRpcStruct;
 
 /**
@@ -26,10 +22,6 @@ import redstone.xmlrpc.XmlRpcStruct;
  */
 public abstract class XmlRpcMapped {
 
-  @SuppressWarnings("nls")
-  private static final SimpleDateFormat sdf = new SimpleDateFormat(
-      "yyyyMMdd'T'HH:mm:ss");
-
   /**
    * (non-Javadoc)
    * 
@@ -39,28 +31,16 @@ public abstract class XmlRpcMapped {
    * 
    * @see java.lang.Object#toString()
    */
-  @SuppressWarnings("nls")
   private String toGenericString(String recordDelimiter, String fieldDelimiter,
       boolean showFieldName) {
-    String result = null;
-    try {
-      result = "";
-      Field[] f = this.getClass().getDeclaredFields();
-      for (Field field : f) {
-        Class<?> fType = field.getType();
-        if (showFieldName)
-          result += field.getName() + fieldDelimiter;
-        if (fType == Date.class) {
-          result += sdf.format(field.get(this));
-        } else {
-          result += field.get(this);
-        }
-        result += recordDelimiter;
-      }
-    } catch (IllegalAccessException e) {
-      // ignore and skip output
+    StringBuilder result = new StringBuilder();
+    for (MappedField field : XmlRpcMapping.of(this.getClass()).getFields()) {
+      if (showFieldName)
+        result.append(field.getName()).append(fieldDelimiter);
+      result.append(field.format(field.get(this)));
+      result.append(recordDelimiter);
     }
-    return result;
+    return result.toString();
   }
 
   /**
@@ -85,72 +65,43 @@ public abstract class XmlRpcMapped {
   /**
    * @param x XmlRpcStruct to create the object from
    */
-  @SuppressWarnings("nls")
   public void fromXmlRpcStruct(XmlRpcStruct x) {
-    Field[] f = this.getClass().getDeclaredFields();
-    String k = null;
-    Object v = null;
-    for (Field field : f) {
-      try {
-        k = field.getName();
-        v = x.get(k);
-        Class<?> kType = field.getType();
-        if (v != null) {
-          if (kType == Integer.class) {
-            if (v.getClass() != Integer.class) {
-              Integer vInt = Integer.valueOf((String) v);
-              field.set(this, vInt);
-            } else {
-              field.set(this, v);
-            }
-          } else if (kType == Date.class) {
-            try {
-              if (v.getClass() != Date.class) {
-                Date vDate = sdf.parse((String) v);
-                field.set(this, vDate);
-              } else {
-                field.set(this, v);
-              }
-            } catch (ParseException e) {
-              throw new IllegalArgumentException(e);
-            }
-          } else {
-            field.set(this, v);
-          }
-        }
-      } catch (IllegalArgumentException e) {
-        try {
-          System.err.println("Warning: value \"" + v + "\" is invalid for \""
-              + k + "\", setting it to \"null\"");
-          field.set(this, null);
-        } catch (IllegalAccessException e1) {
-          System.err.println(field.getName() + ":" + field.getType() + ":"
-              + x.get(field.getName()));
-          e1.printStackTrace();
-        }
-      } catch (IllegalAccessException e) {
-        e.printStackTrace();
+    for (MappedField field : XmlRpcMapping.of(this.getClass()).getFields()) {
+      Object v = x.get(field.getName());
+      if (v != null) {
+        setMappedValue(field, v);
       }
     }
   }
 
+  /**
+   * Sets a field from a value received over xmlrpc, converting it to the
+   * field type when needed.
+   * 
+   * @param field field to set
+   * @param v value to set, not <code>null</code>
+   */
+  @SuppressWarnings("nls")
+  void setMappedValue(MappedField field, Object v) {
+    try {
+      field.set(this, field.convert(v));
+    } catch (IllegalArgumentException | ClassCastException e) {
+      System.err.println("Warning: value \"" + v + "\" is invalid for \""
+          + field.getName() + "\", setting it to \"null\"");
+      field.set(this, null);
+    }
+  }
+
   /**
    * @return An XmlRpcStruct that represents the object.
    */
   @SuppressWarnings("unchecked")
   public XmlRpcStruct toXmlRpcStruct() {
     XmlRpcStruct result = new XmlRpcStruct();
-    Field[] f = this.getClass().getDeclaredFields();
-    for (Field field : f) {
-      try {
-        Object o = field.get(this);
-        if (o != null) {
-          result.put(field.getName(), o);
-        }
-      } catch (IllegalArgumentException e) {
-        e.printStackTrace();
-      } catch (IllegalAccessException e) {
-        e.printStackTrace();
+    for (MappedField field : XmlRpcMapping.of(this.getClass()).getFields()) {
+      Object o = field.get(this);
+      if (o != null) {
+        result.put(field.getName(), o);
       }
     }
     return result;
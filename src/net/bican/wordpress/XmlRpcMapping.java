@@ -0,0 +1,229 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * Mapping plan of an <code>XmlRpcMapped</code> class: the list of its fields
+ * with precomputed accessors and value converters. Plans are built once per
+ * class and shared by every instance of that class.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+final class XmlRpcMapping {
+
+  /**
+   * A single mapped field.
+   */
+  static final class MappedField {
+    private final ValueConverter converter;
+
+    private final MethodHandle   getter;
+
+    private final String         name;
+
+    private final MethodHandle   setter;
+
+    MappedField(Field field, MethodHandles.Lookup lookup)
+        throws IllegalAccessException {
+      field.setAccessible(true);
+      this.name = field.getName();
+      this.converter = ValueConverter.forType(field.getType());
+      this.getter = lookup.unreflectGetter(field).asType(
+          MethodType.methodType(Object.class, Object.class));
+      this.setter = lookup.unreflectSetter(field).asType(
+          MethodType.methodType(void.class, Object.class, Object.class));
+    }
+
+    /**
+     * @param value value received from the xmlrpc response
+     * @return value converted to the type of the field
+     * @throws IllegalArgumentException when the value cannot be converted
+     */
+    Object convert(Object value) {
+      return this.converter.convert(value);
+    }
+
+    /**
+     * @param value value of the field
+     * @return printable form of the value
+     */
+    String format(Object value) {
+      return this.converter.format(value);
+    }
+
+    /**
+     * @param target object to read from
+     * @return current value of the field
+     */
+    Object get(Object target) {
+      try {
+        return this.getter.invokeExact(target);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    /**
+     * @return name of the field, which is also the xmlrpc key
+     */
+    String getName() {
+      return this.name;
+    }
+
+    /**
+     * @param target object to modify
+     * @param value new value of the field
+     * @throws ClassCastException when the value has the wrong type
+     */
+    void set(Object target, Object value) {
+      try {
+        this.setter.invokeExact(target, value);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Conversions between xmlrpc values and field values.
+   */
+  enum ValueConverter {
+    /**
+     * Dates, which can arrive as strings, in UTC when they end with a Z
+     */
+    DATE {
+      @Override
+      Object convert(Object value) {
+        if (value.getClass() == Date.class)
+          return value;
+        String s = (String) value;
+        boolean utc = (s.length() == XmlRpcDateCodec.LENGTH + 1)
+            && (s.charAt(XmlRpcDateCodec.LENGTH) == 'Z');
+        try {
+          return (utc ? XmlRpcDateCodec.UTC : XmlRpcDateCodec.DEFAULT).parse(s);
+        } catch (ParseException e) {
+          throw new IllegalArgumentException(e);
+        }
+      }
+
+      @Override
+      String format(Object value) {
+        return (value == null) ? String.valueOf(value)
+            : XmlRpcDateCodec.DEFAULT.format((Date) value);
+      }
+    },
+    /**
+     * Integers, which can arrive as strings
+     */
+    INTEGER {
+      @Override
+      Object convert(Object value) {
+        if (value.getClass() == Integer.class)
+          return value;
+        return Integer.valueOf((String) value);
+      }
+    },
+    /**
+     * Everything else is assigned as it is
+     */
+    PLAIN;
+
+    static ValueConverter forType(Class<?> type) {
+      if (type == Integer.class)
+        return INTEGER;
+      if (type == Date.class)
+        return DATE;
+      return PLAIN;
+    }
+
+    Object convert(Object value) {
+      return value;
+    }
+
+    String format(Object value) {
+      return String.valueOf(value);
+    }
+  }
+
+  private static final ClassValue<XmlRpcMapping> MAPPINGS = new ClassValue<XmlRpcMapping>() {
+    @Override
+    protected XmlRpcMapping computeValue(Class<?> type) {
+      return new XmlRpcMapping(type);
+    }
+  };
+
+  /**
+   * @param cl class to get the plan for
+   * @return the mapping plan of the class, built on first use
+   */
+  static XmlRpcMapping of(Class<?> cl) {
+    return MAPPINGS.get(cl);
+  }
+
+  private final Map<String, MappedField> byName;
+
+  private final MappedField[] fields;
+
+  private XmlRpcMapping(Class<?> cl) {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    List<MappedField> result = new ArrayList<MappedField>();
+    for (Field field : cl.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic())
+        continue;
+      try {
+        result.add(new MappedField(field, lookup));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    this.fields = result.toArray(new MappedField[result.size()]);
+    this.byName = new HashMap<String, MappedField>();
+    for (MappedField field : this.fields) {
+      this.byName.put(field.getName(), field);
+    }
+  }
+
+  /**
+   * @param name xmlrpc key
+   * @return the field for the key, or <code>null</code> if there is none
+   */
+  MappedField getField(String name) {
+    return this.byName.get(name);
+  }
+
+  /**
+   * @return mapped fields, in declaration order
+   */
+  MappedField[] getFields() {
+    return this.fields;
+  }
+}
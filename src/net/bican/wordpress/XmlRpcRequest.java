@@ -0,0 +1,92 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * 
+ * An xmlrpc method call, as given to an <code>XmlRpcTransport</code>. The
+ * request body is written on demand, so a transport can send it more than
+ * once, e.g. to retry on a fresh connection.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class XmlRpcRequest {
+
+  private final Object[] args;
+
+  private final String   methodName;
+
+  private final boolean  streamed;
+
+  /**
+   * @param methodName name of the method, like <code>wp.getPage</code>
+   * @param args parameters of the method
+   * @param streamed <code>true</code> if the body can be large and should be
+   *          sent while it is written, instead of being buffered first
+   */
+  public XmlRpcRequest(String methodName, Object[] args, boolean streamed) {
+    this.methodName = methodName;
+    this.args = (args == null) ? new Object[0] : args;
+    this.streamed = streamed;
+  }
+
+  /**
+   * @return parameters of the method
+   */
+  public Object[] getArgs() {
+    return this.args;
+  }
+
+  /**
+   * @return name of the method
+   */
+  public String getMethodName() {
+    return this.methodName;
+  }
+
+  /**
+   * @return <code>true</code> if the body should be sent while it is written
+   */
+  public boolean isStreamed() {
+    return this.streamed;
+  }
+
+  /**
+   * Writes the request body, encoded in UTF-8. The stream is flushed but not
+   * closed.
+   * 
+   * @param out stream to write to
+   * @throws IOException when the stream cannot be written
+   */
+  @SuppressWarnings("nls")
+  public void writeTo(OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+    new XmlRpcRequestWriter(writer).writeRequest(this.methodName, this.args);
+    writer.flush();
+  }
+
+  /**
+   * (non-Javadoc)
+   * 
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return this.methodName + Arrays.toString(this.args);
+  }
+}
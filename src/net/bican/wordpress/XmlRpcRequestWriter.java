@@ -0,0 +1,230 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import redstone.xmlrpc.XmlRpcException;
+
+/**
+ * 
+ * Writes xmlrpc method calls to a character stream, without building the
+ * request document in memory first.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class XmlRpcRequestWriter {
+
+  private final char[] dateBuffer = new char[XmlRpcDateCodec.LENGTH];
+
+  private final Writer out;
+
+  /**
+   * @param out stream to write to, which should encode as UTF-8
+   */
+  public XmlRpcRequestWriter(Writer out) {
+    this.out = out;
+  }
+
+  /**
+   * Writes a complete method call.
+   * 
+   * @param methodName name of the method, like <code>wp.getPage</code>
+   * @param args parameters of the call
+   * @throws IOException when the stream cannot be written
+   * @throws XmlRpcException when an argument has an unsupported type
+   */
+  public void writeRequest(String methodName, Object[] args)
+      throws IOException {
+    writeRequestStart(methodName);
+    if (args != null) {
+      for (Object arg : args) {
+        writeParam(arg);
+      }
+    }
+    writeRequestEnd();
+  }
+
+  /**
+   * Writes the beginning of a method call, up to the first parameter.
+   * 
+   * @param methodName name of the method
+   * @throws IOException when the stream cannot be written
+   */
+  @SuppressWarnings("nls")
+  public void writeRequestStart(String methodName) throws IOException {
+    this.out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+    this.out.write("<methodCall><methodName>");
+    writeEscaped(methodName);
+    this.out.write("</methodName><params>");
+  }
+
+  /**
+   * @param value a parameter of the method call
+   * @throws IOException when the stream cannot be written
+   */
+  @SuppressWarnings("nls")
+  public void writeParam(Object value) throws IOException {
+    this.out.write("<param>");
+    writeValue(value);
+    this.out.write("</param>");
+  }
+
+  /**
+   * Writes the end of a method call, after the last parameter.
+   * 
+   * @throws IOException when the stream cannot be written
+   */
+  @SuppressWarnings("nls")
+  public void writeRequestEnd() throws IOException {
+    this.out.write("</params></methodCall>");
+    this.out.flush();
+  }
+
+  /**
+   * Writes a value with its <code>&lt;value&gt;</code> element.
+   * 
+   * @param value value to write
+   * @throws IOException when the stream cannot be written
+   * @throws XmlRpcException when the value has an unsupported type
+   */
+  @SuppressWarnings({ "nls", "rawtypes" })
+  public void writeValue(Object value) throws IOException {
+    Writer w = this.out;
+    w.write("<value>");
+    if (value == null) {
+      w.write("<nil/>");
+    } else if (value instanceof String) {
+      w.write("<string>");
+      writeEscaped((String) value);
+      w.write("</string>");
+    } else if ((value instanceof Integer) || (value instanceof Short)
+        || (value instanceof Byte)) {
+      w.write("<i4>");
+      w.write(value.toString());
+      w.write("</i4>");
+    } else if (value instanceof Long) {
+      long l = ((Long) value).longValue();
+      // a double would round the values that don't fit an i4
+      String type = ((l >= Integer.MIN_VALUE) && (l <= Integer.MAX_VALUE))
+          ? "i4" : "i8";
+      w.write('<');
+      w.write(type);
+      w.write('>');
+      w.write(value.toString());
+      w.write("</");
+      w.write(type);
+      w.write('>');
+    } else if (value instanceof Boolean) {
+      w.write(((Boolean) value).booleanValue() ? "<boolean>1</boolean>"
+          : "<boolean>0</boolean>");
+    } else if ((value instanceof Double) || (value instanceof Float)) {
+      w.write("<double>");
+      w.write(value.toString());
+      w.write("</double>");
+    } else if (value instanceof Date) {
+      w.write("<dateTime.iso8601>");
+      XmlRpcDateCodec.DEFAULT.format((Date) value, this.dateBuffer, 0);
+      w.write(this.dateBuffer);
+      w.write("</dateTime.iso8601>");
+    } else if (value instanceof byte[]) {
+      w.write("<base64>");
+      w.write(Base64.encode((byte[]) value));
+      w.write("</base64>");
+    } else if (value instanceof StreamedFile) {
+      w.write("<base64>");
+      ((StreamedFile) value).writeBase64(w);
+      w.write("</base64>");
+    } else if (value instanceof XmlRpcMapped) {
+      writeStruct(((XmlRpcMapped) value).toXmlRpcStruct());
+    } else if (value instanceof Map) {
+      writeStruct((Map) value);
+    } else if (value instanceof Collection) {
+      w.write("<array><data>");
+      for (Object o : (Collection) value) {
+        writeValue(o);
+      }
+      w.write("</data></array>");
+    } else if (value instanceof Object[]) {
+      w.write("<array><data>");
+      for (Object o : (Object[]) value) {
+        writeValue(o);
+      }
+      w.write("</data></array>");
+    } else {
+      throw new XmlRpcException("Unsupported type for xmlrpc: "
+          + value.getClass().getName());
+    }
+    w.write("</value>");
+  }
+
+  @SuppressWarnings({ "nls", "rawtypes" })
+  private void writeStruct(Map struct) throws IOException {
+    Writer w = this.out;
+    w.write("<struct>");
+    for (Object o : struct.entrySet()) {
+      Map.Entry e = (Map.Entry) o;
+      w.write("<member><name>");
+      writeEscaped(String.valueOf(e.getKey()));
+      w.write("</name>");
+      writeValue(e.getValue());
+      w.write("</member>");
+    }
+    w.write("</struct>");
+  }
+
+  /**
+   * Writes text, escaping the characters that are special in XML.
+   * 
+   * @param s text to write
+   * @throws IOException when the stream cannot be written
+   */
+  @SuppressWarnings("nls")
+  void writeEscaped(String s) throws IOException {
+    Writer w = this.out;
+    int start = 0;
+    int len = s.length();
+    for (int i = 0; i < len; i++) {
+      String replacement;
+      switch (s.charAt(i)) {
+      case '<':
+        replacement = "&lt;";
+        break;
+      case '>':
+        replacement = "&gt;";
+        break;
+      case '&':
+        replacement = "&amp;";
+        break;
+      case '\r':
+        replacement = "&#13;";
+        break;
+      default:
+        continue;
+      }
+      w.write(s, start, i - start);
+      w.write(replacement);
+      start = i + 1;
+    }
+    w.write(s, start, len - start);
+  }
+
+  /**
+   * @return the stream this writer writes to
+   */
+  Writer getWriter() {
+    return this.out;
+  }
+}
@@ -0,0 +1,469 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.bican.wordpress.XmlRpcMapping.MappedField;
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * Reads an xmlrpc <code>methodResponse</code> with a pull parser. Structs can
+ * be mapped directly into <code>XmlRpcMapped</code> objects and arrays can be
+ * delivered item by item, so a response never has to be held in memory as a
+ * whole.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public class XmlRpcResponseReader implements Closeable {
+
+  private class ArrayIterator<T extends XmlRpcMapped> implements
+      XmlRpcIterator<T> {
+    private T              next;
+
+    private final Class<T> type;
+
+    ArrayIterator(Class<T> type) {
+      this.type = type;
+    }
+
+    @Override
+    public void close() {
+      XmlRpcResponseReader.this.close();
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (this.next == null) {
+        try {
+          this.next = nextArrayItem(this.type);
+        } catch (RuntimeException e) {
+          close();
+          throw e;
+        }
+        if (this.next == null)
+          close();
+      }
+      return this.next != null;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      T result = this.next;
+      this.next = null;
+      return result;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+  static {
+    FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+        Boolean.FALSE);
+  }
+
+  private static XmlRpcException wrap(XMLStreamException e) {
+    return new XmlRpcException(e.getLocalizedMessage(), e);
+  }
+
+  private boolean              closed = false;
+
+  private final InputStream    in;
+
+  private final XMLStreamReader xml;
+
+  /**
+   * @param in stream that contains the response
+   * @throws XmlRpcException when the stream cannot be parsed
+   */
+  public XmlRpcResponseReader(InputStream in) {
+    this.in = in;
+    try {
+      synchronized (FACTORY) {
+        this.xml = FACTORY.createXMLStreamReader(in);
+      }
+    } catch (XMLStreamException e) {
+      throw wrap(e);
+    }
+  }
+
+  /**
+   * Closes the parser and the underlying stream.
+   */
+  @Override
+  public void close() {
+    if (this.closed)
+      return;
+    this.closed = true;
+    try {
+      this.xml.close();
+    } catch (XMLStreamException e) {
+      // nothing else to release
+    }
+    try {
+      this.in.close();
+    } catch (IOException e) {
+      // nothing else to release
+    }
+  }
+
+  /**
+   * Delivers the items of an array response to a handler, as they are read.
+   * 
+   * @param type type to map the items into
+   * @param handler handler to receive the items
+   * @return <code>false</code> if the handler stopped the reading
+   * @throws XmlRpcFault when the server returned a fault
+   * @throws XmlRpcException when the response cannot be parsed
+   */
+  public <T extends XmlRpcMapped> boolean readResponseArray(Class<T> type,
+      ResultHandler<? super T> handler) throws XmlRpcFault {
+    startArrayResponse();
+    T item;
+    while ((item = nextArrayItem(type)) != null) {
+      if (!handler.handle(item))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * @param type type to map the items into
+   * @return an iterator that reads the items of an array response as they are
+   *         requested; closing it closes this reader
+   * @throws XmlRpcFault when the server returned a fault
+   * @throws XmlRpcException when the response cannot be parsed
+   */
+  public <T extends XmlRpcMapped> XmlRpcIterator<T> iterateResponse(
+      Class<T> type) throws XmlRpcFault {
+    startArrayResponse();
+    return new ArrayIterator<T>(type);
+  }
+
+  /**
+   * @return the response as redstone xmlrpc values
+   * @throws XmlRpcFault when the server returned a fault
+   * @throws XmlRpcException when the response cannot be parsed
+   */
+  public Object readResponse() throws XmlRpcFault {
+    readResponseStart();
+    try {
+      return readValue();
+    } catch (XMLStreamException e) {
+      throw wrap(e);
+    }
+  }
+
+  /**
+   * @param type type to map the response struct into
+   * @return the mapped response
+   * @throws XmlRpcFault when the server returned a fault
+   * @throws XmlRpcException when the response cannot be parsed
+   */
+  public <T extends XmlRpcMapped> T readResponse(Class<T> type)
+      throws XmlRpcFault {
+    readResponseStart();
+    try {
+      T result = newInstance(type);
+      readStruct(result);
+      return result;
+    } catch (XMLStreamException e) {
+      throw wrap(e);
+    }
+  }
+
+  /**
+   * @param type type to map the items into
+   * @return all items of an array response
+   * @throws XmlRpcFault when the server returned a fault
+   * @throws XmlRpcException when the response cannot be parsed
+   */
+  public <T extends XmlRpcMapped> List<T> readResponseList(Class<T> type)
+      throws XmlRpcFault {
+    final List<T> result = new ArrayList<T>();
+    readResponseArray(type, new ResultHandler<T>() {
+      @Override
+      public boolean handle(T item) {
+        result.add(item);
+        return true;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Reads a <code>methodCall</code> instead of a response, for the server end
+   * of a connection.
+   * 
+   * @param params receives the parameters of the call
+   * @return name of the called method
+   * @throws XmlRpcException when the request cannot be parsed
+   */
+  @SuppressWarnings("nls")
+  String readMethodCall(List<Object> params) {
+    try {
+      expectStart(this.xml.nextTag(), "methodCall");
+      expectStart(this.xml.nextTag(), "methodName");
+      String methodName = this.xml.getElementText().trim();
+      int event = this.xml.nextTag();
+      if ((event == XMLStreamConstants.START_ELEMENT)
+          && "params".equals(this.xml.getLocalName())) {
+        while (this.xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+          expectStart(this.xml.nextTag(), "value");
+          params.add(readValue());
+          this.xml.nextTag(); // </param>
+        }
+      }
+      return methodName;
+    } catch (XMLStreamException e) {
+      throw wrap(e);
+    }
+  }
+
+  /**
+   * Moves to the start of the response value, or throws the fault the server
+   * returned.
+   */
+  @SuppressWarnings("nls")
+  private void readResponseStart() throws XmlRpcFault {
+    try {
+      expectStart(this.xml.nextTag(), "methodResponse");
+      int event = this.xml.nextTag();
+      if ((event == XMLStreamConstants.START_ELEMENT)
+          && "fault".equals(this.xml.getLocalName())) {
+        expectStart(this.xml.nextTag(), "value");
+        Object fault = readValue();
+        int code = 0;
+        String message = String.valueOf(fault);
+        if (fault instanceof XmlRpcStruct) {
+          Object c = ((XmlRpcStruct) fault).get("faultCode");
+          if (c instanceof Number)
+            code = ((Number) c).intValue();
+          message = String.valueOf(((XmlRpcStruct) fault).get("faultString"));
+        }
+        throw new XmlRpcFault(code, message);
+      }
+      expectStart(event, "params");
+      expectStart(this.xml.nextTag(), "param");
+      expectStart(this.xml.nextTag(), "value");
+    } catch (XMLStreamException e) {
+      throw wrap(e);
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private void startArrayResponse() throws XmlRpcFault {
+    readResponseStart();
+    try {
+      expectStart(nextContent(), "array");
+      expectStart(this.xml.nextTag(), "data");
+    } catch (XMLStreamException e) {
+      throw wrap(e);
+    }
+  }
+
+  /**
+   * @return the next item of the array being read, <code>null</code> at the
+   *         end of the array
+   */
+  @SuppressWarnings("nls")
+  <T extends XmlRpcMapped> T nextArrayItem(Class<T> type) {
+    if (this.closed)
+      return null;
+    try {
+      int event = this.xml.nextTag();
+      if (event == XMLStreamConstants.END_ELEMENT)
+        return null;
+      expectStart(event, "value");
+      T item = newInstance(type);
+      readStruct(item);
+      return item;
+    } catch (XMLStreamException e) {
+      throw wrap(e);
+    }
+  }
+
+  /**
+   * Reads a struct into an object. The reader has to be on the start of the
+   * <code>value</code> element, and is left on its end.
+   */
+  @SuppressWarnings("nls")
+  private void readStruct(XmlRpcMapped target) throws XMLStreamException {
+    XmlRpcMapping mapping = XmlRpcMapping.of(target.getClass());
+    expectStart(nextContent(), "struct");
+    while (this.xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      expectStart(this.xml.nextTag(), "name");
+      String name = this.xml.getElementText();
+      expectStart(this.xml.nextTag(), "value");
+      MappedField field = mapping.getField(name);
+      if (field == null) {
+        skipElement();
+      } else {
+        Object v = readValue();
+        if (v != null)
+          target.setMappedValue(field, v);
+      }
+      this.xml.nextTag(); // </member>
+    }
+    this.xml.nextTag(); // </value>
+  }
+
+  /**
+   * Reads a value as redstone xmlrpc objects. The reader has to be on the
+   * start of the <code>value</code> element, and is left on its end.
+   */
+  private Object readValue() throws XMLStreamException {
+    StringBuilder text = null;
+    while (true) {
+      int event = this.xml.next();
+      switch (event) {
+      case XMLStreamConstants.START_ELEMENT:
+        Object result = readTypedValue();
+        this.xml.nextTag(); // </value>
+        return result;
+      case XMLStreamConstants.END_ELEMENT:
+        // no type element, the value is a string
+        return (text == null) ? "" : text.toString();
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.CDATA:
+      case XMLStreamConstants.SPACE:
+        if (text == null)
+          text = new StringBuilder();
+        text.append(this.xml.getTextCharacters(), this.xml.getTextStart(),
+            this.xml.getTextLength());
+        break;
+      default:
+        // comments and processing instructions
+      }
+    }
+  }
+
+  @SuppressWarnings({ "nls", "unchecked" })
+  private Object readTypedValue() throws XMLStreamException {
+    String type = this.xml.getLocalName();
+    switch (type) {
+    case "string":
+      return this.xml.getElementText();
+    case "i4":
+    case "int":
+      return Integer.valueOf(this.xml.getElementText().trim());
+    case "i8":
+      return Long.valueOf(this.xml.getElementText().trim());
+    case "boolean":
+      return Boolean.valueOf("1".equals(this.xml.getElementText().trim()));
+    case "double":
+      return Double.valueOf(this.xml.getElementText().trim());
+    case "dateTime.iso8601":
+      String date = this.xml.getElementText().trim();
+      try {
+        return XmlRpcDateCodec.DEFAULT.parse(date);
+      } catch (ParseException e) {
+        // a mapped field logs it and is left null, like other bad values
+        return date;
+      }
+    case "base64":
+      return Base64.decode(this.xml.getElementText());
+    case "nil":
+      skipElement();
+      return null;
+    case "struct":
+      XmlRpcStruct struct = new XmlRpcStruct();
+      while (this.xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+        expectStart(this.xml.nextTag(), "name");
+        String name = this.xml.getElementText();
+        expectStart(this.xml.nextTag(), "value");
+        struct.put(name, readValue());
+        this.xml.nextTag(); // </member>
+      }
+      return struct;
+    case "array":
+      XmlRpcArray array = new XmlRpcArray();
+      expectStart(this.xml.nextTag(), "data");
+      while (this.xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+        array.add(readValue());
+      }
+      this.xml.nextTag(); // </array>
+      return array;
+    default:
+      throw new XmlRpcException("Unknown xmlrpc type: " + type);
+    }
+  }
+
+  /**
+   * Moves to the next element of a value, treating non-whitespace text as an
+   * error since a struct or array is expected.
+   */
+  @SuppressWarnings("nls")
+  private int nextContent() throws XMLStreamException {
+    int event = this.xml.nextTag();
+    if (event != XMLStreamConstants.START_ELEMENT)
+      throw new XmlRpcException("Unexpected end of value");
+    return event;
+  }
+
+  @SuppressWarnings("nls")
+  private void expectStart(int event, String name) {
+    if ((event != XMLStreamConstants.START_ELEMENT)
+        || !name.equals(this.xml.getLocalName()))
+      throw new XmlRpcException("Expected <" + name + "> in response, found "
+          + ((event == XMLStreamConstants.START_ELEMENT) ? "<"
+              + this.xml.getLocalName() + ">" : "end of element"));
+  }
+
+  /**
+   * Skips the current element with everything in it.
+   */
+  private void skipElement() throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = this.xml.next();
+      if (event == XMLStreamConstants.START_ELEMENT)
+        depth++;
+      else if (event == XMLStreamConstants.END_ELEMENT)
+        depth--;
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private static <T> T newInstance(Class<T> type) {
+    try {
+      return type.newInstance();
+    } catch (InstantiationException e) {
+      throw new XmlRpcException("Cannot create " + type.getName(), e);
+    } catch (IllegalAccessException e) {
+      throw new XmlRpcException("Cannot create " + type.getName(), e);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+
+/**
+ * 
+ * Makes xmlrpc calls whose responses are read with an
+ * <code>XmlRpcResponseReader</code>, mapping them into model objects while
+ * they are received.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+class XmlRpcStreamingClient {
+
+  private final XmlRpcTransport transport;
+
+  private final URL             url;
+
+  /**
+   * @param url xmlrpc communication point
+   * @param transport transport to send the calls with
+   */
+  XmlRpcStreamingClient(URL url, XmlRpcTransport transport) {
+    this.url = url;
+    this.transport = transport;
+  }
+
+  /**
+   * Sends a call and opens its response. The caller has to close the reader.
+   * 
+   * @param methodName name of the method
+   * @param args parameters of the method
+   * @return reader for the response
+   * @throws XmlRpcException when the call cannot be made
+   */
+  XmlRpcResponseReader call(String methodName, Object... args) {
+    return call(false, methodName, args);
+  }
+
+  /**
+   * Sends a call and opens its response. The caller has to close the reader.
+   * 
+   * @param streamed whether to send the request while it is written, instead
+   *          of buffering it to find its length first
+   * @param methodName name of the method
+   * @param args parameters of the method
+   * @return reader for the response
+   * @throws XmlRpcException when the call cannot be made
+   */
+  XmlRpcResponseReader call(boolean streamed, String methodName,
+      Object... args) {
+    InputStream in;
+    try {
+      in = this.transport.send(this.url, new XmlRpcRequest(methodName, args,
+          streamed));
+    } catch (IOException e) {
+      throw new XmlRpcException(e.getLocalizedMessage(), e);
+    }
+    boolean ok = false;
+    try {
+      XmlRpcResponseReader result = new XmlRpcResponseReader(in);
+      ok = true;
+      return result;
+    } finally {
+      if (!ok)
+        close(in);
+    }
+  }
+
+  /**
+   * Makes a call and reads its response as xmlrpc values.
+   * 
+   * @param methodName name of the method
+   * @param args parameters of the method
+   * @return the response
+   * @throws XmlRpcFault when the server returned a fault
+   */
+  Object callForValue(String methodName, Object... args) throws XmlRpcFault {
+    XmlRpcResponseReader reader = call(methodName, args);
+    try {
+      return reader.readResponse();
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static void close(InputStream in) {
+    try {
+      in.close();
+    } catch (IOException e) {
+      // failed already
+    }
+  }
+
+  /**
+   * @return the transport calls are sent with
+   */
+  XmlRpcTransport getTransport() {
+    return this.transport;
+  }
+
+  /**
+   * @return xmlrpc communication point
+   */
+  URL getUrl() {
+    return this.url;
+  }
+
+  /**
+   * @param type type of the items
+   * @param methodName name of the method
+   * @param args parameters of the method
+   * @return items of the array response
+   * @throws XmlRpcFault when the server returned a fault
+   */
+  <T extends XmlRpcMapped> List<T> callForList(Class<T> type,
+      String methodName, Object... args) throws XmlRpcFault {
+    XmlRpcResponseReader reader = call(methodName, args);
+    try {
+      return reader.readResponseList(type);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * @param type type of the items
+   * @param handler receives the items of the array response
+   * @param methodName name of the method
+   * @param args parameters of the method
+   * @throws XmlRpcFault when the server returned a fault
+   */
+  <T extends XmlRpcMapped> void callForEach(Class<T> type,
+      ResultHandler<? super T> handler, String methodName, Object... args)
+      throws XmlRpcFault {
+    XmlRpcResponseReader reader = call(methodName, args);
+    try {
+      reader.readResponseArray(type, handler);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * @param type type of the items
+   * @param methodName name of the method
+   * @param args parameters of the method
+   * @return iterator over the items of the array response
+   * @throws XmlRpcFault when the server returned a fault
+   */
+  <T extends XmlRpcMapped> XmlRpcIterator<T> callForIterator(Class<T> type,
+      String methodName, Object... args) throws XmlRpcFault {
+    XmlRpcResponseReader reader = call(methodName, args);
+    boolean ok = false;
+    try {
+      XmlRpcIterator<T> result = reader.iterateResponse(type);
+      ok = true;
+      return result;
+    } finally {
+      if (!ok)
+        reader.close();
+    }
+  }
+}
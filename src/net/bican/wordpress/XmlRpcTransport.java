@@ -0,0 +1,40 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * 
+ * The layer that carries xmlrpc requests to the server. All calls of a
+ * <code>Wordpress</code> object go through its transport.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+public interface XmlRpcTransport {
+  /**
+   * Sends a request and opens its response.
+   * 
+   * @param url xmlrpc communication point
+   * @param request the method call
+   * @return the body of the response, decompressed if needed; closing it
+   *         releases the connection
+   * @throws IOException when the request fails, including HTTP errors
+   */
+  public InputStream send(URL url, XmlRpcRequest request) throws IOException;
+
+  /**
+   * Releases the resources of the transport, like idle connections.
+   */
+  public void close();
+}
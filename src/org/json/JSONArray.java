@@ -337,13 +337,18 @@ public class JSONArray {
    */
   public String join(String separator) throws JSONException {
     int len = length();
-    StringBuffer sb = new StringBuffer();
+    StringBuilder sb = new StringBuilder();
+    JSONWriter writer = new JSONWriter(sb);
 
-    for (int i = 0; i < len; i += 1) {
-      if (i > 0) {
-        sb.append(separator);
+    try {
+      for (int i = 0; i < len; i += 1) {
+        if (i > 0) {
+          sb.append(separator);
+        }
+        writer.write(this.myArrayList.get(i));
       }
-      sb.append(JSONObject.valueToString(this.myArrayList.get(i)));
+    } catch (IOException e) {
+      throw new JSONException(e);
     }
     return sb.toString();
   }
@@ -783,7 +788,9 @@ public class JSONArray {
   @Override
   public String toString() {
     try {
-      return '[' + join(",") + ']';
+      StringBuilder sb = new StringBuilder();
+      new JSONWriter(sb).write(this);
+      return sb.toString();
     } catch (Exception e) {
       return null;
     }
@@ -817,35 +824,7 @@ public class JSONArray {
    * @throws JSONException
    */
   String toString(int indentFactor, int indent) throws JSONException {
-    int len = length();
-    if (len == 0) {
-      return "[]";
-    }
-    int i;
-    StringBuffer sb = new StringBuffer("[");
-    if (len == 1) {
-      sb.append(JSONObject.valueToString(this.myArrayList.get(0), indentFactor,
-          indent));
-    } else {
-      int newindent = indent + indentFactor;
-      sb.append('\n');
-      for (i = 0; i < len; i += 1) {
-        if (i > 0) {
-          sb.append(",\n");
-        }
-        for (int j = 0; j < newindent; j += 1) {
-          sb.append(' ');
-        }
-        sb.append(JSONObject.valueToString(this.myArrayList.get(i),
-            indentFactor, newindent));
-      }
-      sb.append('\n');
-      for (i = 0; i < indent; i += 1) {
-        sb.append(' ');
-      }
-    }
-    sb.append(']');
-    return sb.toString();
+    return JSONObject.valueToString(this, indentFactor, indent);
   }
 
   /**
@@ -854,36 +833,14 @@ public class JSONArray {
    * <p>
    * Warning: This method assumes that the data structure is acyclical.
    * 
-   * @param writer TODO
+   * @param writer The writer, which is not flushed.
    * 
    * @return The writer.
-   * @throws JSONException
+   * @throws JSONException If the writer fails or a value is an invalid
+   *           number.
    */
   public Writer write(Writer writer) throws JSONException {
-    try {
-      boolean b = false;
-      int len = length();
-
-      writer.write('[');
-
-      for (int i = 0; i < len; i += 1) {
-        if (b) {
-          writer.write(',');
-        }
-        Object v = this.myArrayList.get(i);
-        if (v instanceof JSONObject) {
-          ((JSONObject) v).write(writer);
-        } else if (v instanceof JSONArray) {
-          ((JSONArray) v).write(writer);
-        } else {
-          writer.write(JSONObject.valueToString(v));
-        }
-        b = true;
-      }
-      writer.write(']');
-      return writer;
-    } catch (IOException e) {
-      throw new JSONException(e);
-    }
+    new JSONWriter(writer).value(this);
+    return writer;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,243 @@
+package org.json;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The map where a JSONObject keeps its properties. Most objects have a few
+ * properties, so the keys and the values are kept side by side in one array,
+ * in the order they were put, and found by looking at each key in turn. Above
+ * a few properties, an open addressing table of the positions in the array is
+ * added to find the keys by their hash codes. Either way, the keys are
+ * iterated in the order they were put.
+ *
+ * @author JSON.org
+ * @version 2012-06-14
+ */
+@SuppressWarnings("rawtypes")
+final class JSONMap {
+
+  /**
+   * The keys of the map, in order.
+   */
+  private final class KeySet extends AbstractSet {
+
+    @Override
+    public Iterator iterator() {
+      return new Iterator() {
+
+        private int expected  = JSONMap.this.modifications;
+
+        private int next;
+
+        private int removable = -1;
+
+        public boolean hasNext() {
+          return this.next < JSONMap.this.size;
+        }
+
+        public Object next() {
+          if (this.expected != JSONMap.this.modifications) {
+            throw new ConcurrentModificationException();
+          }
+          if (this.next >= JSONMap.this.size) {
+            throw new NoSuchElementException();
+          }
+          this.removable = this.next;
+          this.next += 1;
+          return JSONMap.this.entries[this.removable << 1];
+        }
+
+        public void remove() {
+          if (this.removable < 0) {
+            throw new IllegalStateException();
+          }
+          if (this.expected != JSONMap.this.modifications) {
+            throw new ConcurrentModificationException();
+          }
+          removeAt(this.removable);
+          this.next = this.removable;
+          this.removable = -1;
+          this.expected = JSONMap.this.modifications;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return JSONMap.this.size;
+    }
+  }
+
+  private static final Object[] EMPTY    = new Object[0];
+
+  /**
+   * The number of properties that are found without the table.
+   */
+  private static final int      LINEAR   = 8;
+
+  /**
+   * Keys at even and values at odd positions.
+   */
+  private Object[]              entries  = EMPTY;
+
+  private int                   modifications;
+
+  private int                   size;
+
+  /**
+   * Positions of the keys in the entries plus one, or 0 for free slots; null
+   * while there are few keys.
+   */
+  private int[]                 table;
+
+  /**
+   * Tell whether there is a value for a key.
+   *
+   * @param key A key string.
+   * @return true if there is a value.
+   */
+  boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  /**
+   * Get the value for a key.
+   *
+   * @param key A key string.
+   * @return The value, or null if there is none.
+   */
+  Object get(Object key) {
+    int i = indexOf(key);
+    return i < 0 ? null : this.entries[(i << 1) + 1];
+  }
+
+  /**
+   * @return The keys, in the order they were put. Removing from the set
+   *         removes from the map.
+   */
+  Set keySet() {
+    return new KeySet();
+  }
+
+  /**
+   * Put a value for a key, after the other keys if it is a new one.
+   *
+   * @param key A key string.
+   * @param value The value.
+   * @return The previous value of the key, or null.
+   */
+  Object put(Object key, Object value) {
+    int i = indexOf(key);
+    if (i >= 0) {
+      Object previous = this.entries[(i << 1) + 1];
+      this.entries[(i << 1) + 1] = value;
+      return previous;
+    }
+    if (this.size << 1 == this.entries.length) {
+      this.entries = Arrays.copyOf(this.entries, Math.max(8,
+          this.entries.length * 2));
+    }
+    i = this.size;
+    this.entries[i << 1] = key;
+    this.entries[(i << 1) + 1] = value;
+    this.size += 1;
+    this.modifications += 1;
+    if (this.table != null && this.size * 2 <= this.table.length) {
+      insert(this.table, i);
+    } else if (this.size > LINEAR) {
+      rehash();
+    }
+    return null;
+  }
+
+  /**
+   * Remove a key and its value.
+   *
+   * @param key A key string.
+   * @return The value of the key, or null if there was none.
+   */
+  Object remove(Object key) {
+    int i = indexOf(key);
+    return i < 0 ? null : removeAt(i);
+  }
+
+  /**
+   * @return The number of keys.
+   */
+  int size() {
+    return this.size;
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private int indexOf(Object key) {
+    if (key == null) {
+      return -1;
+    }
+    if (this.table == null) {
+      for (int i = 0; i < this.size; i += 1) {
+        if (key.equals(this.entries[i << 1])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    int mask = this.table.length - 1;
+    for (int h = hash(key) & mask;; h = (h + 1) & mask) {
+      int slot = this.table[h];
+      if (slot == 0) {
+        return -1;
+      }
+      if (key.equals(this.entries[(slot - 1) << 1])) {
+        return slot - 1;
+      }
+    }
+  }
+
+  private void insert(int[] t, int i) {
+    int mask = t.length - 1;
+    int h = hash(this.entries[i << 1]) & mask;
+    while (t[h] != 0) {
+      h = (h + 1) & mask;
+    }
+    t[h] = i + 1;
+  }
+
+  /**
+   * Build the table again for the keys, or drop it when there are few.
+   */
+  private void rehash() {
+    if (this.size <= LINEAR) {
+      this.table = null;
+      return;
+    }
+    int length = Integer.highestOneBit(this.size) << 2;
+    int[] t = new int[length];
+    for (int i = 0; i < this.size; i += 1) {
+      insert(t, i);
+    }
+    this.table = t;
+  }
+
+  private Object removeAt(int i) {
+    Object value = this.entries[(i << 1) + 1];
+    System.arraycopy(this.entries, (i + 1) << 1, this.entries, i << 1,
+        (this.size - i - 1) << 1);
+    this.size -= 1;
+    this.entries[this.size << 1] = null;
+    this.entries[(this.size << 1) + 1] = null;
+    this.modifications += 1;
+    if (this.table != null) {
+      rehash();
+    }
+    return value;
+  }
+}
@@ -30,27 +30,27 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Method;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeSet;
 
 /**
- * A JSONObject is an unordered collection of name/value pairs. Its external
- * form is a string wrapped in curly braces with colons between the names and
- * values, and commas between the values and names. The internal form is an
- * object having <code>get</code> and <code>opt</code> methods for accessing the
- * values by name, and <code>put</code> methods for adding or replacing values
- * by name. The values can be any of these types: <code>Boolean</code>,
- * <code>JSONArray</code>, <code>JSONObject</code>, <code>Number</code>,
- * <code>String</code>, or the <code>JSONObject.NULL</code> object. A JSONObject
- * constructor can be used to convert an external form JSON text into an
- * internal form whose values can be retrieved with the <code>get</code> and
- * <code>opt</code> methods, or to convert values into a JSON text using the
- * <code>put</code> and <code>toString</code> methods. A <code>get</code> method
- * returns a value if one can be found, and throws an exception if one cannot be
- * found. An <code>opt</code> method returns a default value instead of throwing
- * an exception, and so is useful for obtaining optional values.
+ * A JSONObject is a collection of name/value pairs, kept in the order the names
+ * were first put. Its external form is a string wrapped in curly braces with
+ * colons between the names and values, and commas between the values and names.
+ * The internal form is an object having <code>get</code> and <code>opt</code>
+ * methods for accessing the values by name, and <code>put</code> methods for
+ * adding or replacing values by name. The values can be any of these types:
+ * <code>Boolean</code>, <code>JSONArray</code>, <code>JSONObject</code>,
+ * <code>Number</code>, <code>String</code>, or the <code>JSONObject.NULL</code>
+ * object. A JSONObject constructor can be used to convert an external form JSON
+ * text into an internal form whose values can be retrieved with the
+ * <code>get</code> and <code>opt</code> methods, or to convert values into a
+ * JSON text using the <code>put</code> and <code>toString</code> methods. A
+ * <code>get</code> method returns a value if one can be found, and throws an
+ * exception if one cannot be found. An <code>opt</code> method returns a
+ * default value instead of throwing an exception, and so is useful for
+ * obtaining optional values.
  * <p>
  * The generic <code>get()</code> and <code>opt()</code> methods return an
  * object, which you can cast or query for type. There are also typed
@@ -141,7 +141,7 @@ public class JSONObject {
   /**
    * The map where the JSONObject's properties are kept.
    */
-  private Map map;
+  private JSONMap map;
 
   /**
    * It is sometimes more convenient and less ambiguous to have a
@@ -155,7 +155,7 @@ public class JSONObject {
    * Construct an empty JSONObject.
    */
   public JSONObject() {
-    this.map = new HashMap();
+    this.map = new JSONMap();
   }
 
   /**
@@ -245,7 +245,7 @@ public class JSONObject {
    *          JSONObject.
    */
   public JSONObject(Map map) {
-    this.map = new HashMap();
+    this.map = new JSONMap();
     if (map != null) {
       Iterator i = map.entrySet().iterator();
       while (i.hasNext()) {
@@ -628,7 +628,8 @@ public class JSONObject {
   }
 
   /**
-   * Get an enumeration of the keys of the JSONObject.
+   * Get an enumeration of the keys of the JSONObject, in the order they were
+   * first put.
    * 
    * @return An iterator of the keys.
    */
@@ -1060,59 +1061,14 @@ public class JSONObject {
    * @return A String correctly formatted for insertion in a JSON text.
    */
   public static String quote(String string) {
-    if (string == null || string.length() == 0) {
-      return "\"\"";
-    }
-
-    char b;
-    char c = 0;
-    int i;
-    int len = string.length();
-    StringBuffer sb = new StringBuffer(len + 4);
-    String t;
-
-    sb.append('"');
-    for (i = 0; i < len; i += 1) {
-      b = c;
-      c = string.charAt(i);
-      switch (c) {
-        case '\\':
-        case '"':
-          sb.append('\\');
-          sb.append(c);
-          break;
-        case '/':
-          if (b == '<') {
-            sb.append('\\');
-          }
-          sb.append(c);
-          break;
-        case '\b':
-          sb.append("\\b");
-          break;
-        case '\t':
-          sb.append("\\t");
-          break;
-        case '\n':
-          sb.append("\\n");
-          break;
-        case '\f':
-          sb.append("\\f");
-          break;
-        case '\r':
-          sb.append("\\r");
-          break;
-        default:
-          if (c < ' ' || (c >= '\u0080' && c < '\u00a0')
-              || (c >= '\u2000' && c < '\u2100')) {
-            t = "000" + Integer.toHexString(c);
-            sb.append("\\u" + t.substring(t.length() - 4));
-          } else {
-            sb.append(c);
-          }
-      }
+    StringBuilder sb = new StringBuilder(
+        (string == null) ? 2 : string.length() + 4);
+    try {
+      JSONWriter.quote(string, sb);
+    } catch (IOException e) {
+      // a StringBuilder does not throw
+      throw new IllegalStateException(e);
     }
-    sb.append('"');
     return sb.toString();
   }
 
@@ -1176,22 +1132,107 @@ public class JSONObject {
           // ??
         }
       }
-      try {
-        if (s.indexOf('.') > -1 || s.indexOf('e') > -1 || s.indexOf('E') > -1) {
+      /*
+       * Check the form of the text before parsing it, so that the strings
+       * that only start like numbers, like dates, do not cost an exception.
+       */
+      if (s.indexOf('.') > -1 || s.indexOf('e') > -1 || s.indexOf('E') > -1) {
+        int form = decimalForm(s);
+        if (form > 0) {
           return Double.valueOf(s);
         }
-        Long myLong = new Long(s);
-        if (myLong.longValue() == myLong.intValue()) {
-          return new Integer(myLong.intValue());
+        if (form < 0) {
+          try {
+            return Double.valueOf(s);
+          } catch (Exception ignore) {
+            // ??
+          }
+        }
+      } else if (isInteger(s)) {
+        try {
+          long myLong = Long.parseLong(s);
+          if (myLong == (int) myLong) {
+            return Integer.valueOf((int) myLong);
+          }
+          return Long.valueOf(myLong);
+        } catch (NumberFormatException ignore) {
+          // too large for a long
         }
-        return myLong;
-      } catch (Exception ignore) {
-        // ??
       }
     }
     return s;
   }
 
+  /**
+   * Check whether a text is a decimal number in the form that
+   * <code>Double.valueOf</code> accepts.
+   * 
+   * @param s A String.
+   * @return 1 if it is, 0 if it is not but only has the characters of one, or
+   *         -1 if it has other characters, which other forms may use.
+   */
+  private static int decimalForm(String s) {
+    int len = s.length();
+    int i = 0;
+    for (int j = 0; j < len; j += 1) {
+      char c = s.charAt(j);
+      if ((c < '0' || c > '9') && c != '.' && c != 'e' && c != 'E'
+          && c != '-' && c != '+') {
+        return -1;
+      }
+    }
+    if (s.charAt(i) == '-' || s.charAt(i) == '+') {
+      i += 1;
+    }
+    int digits = 0;
+    while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+      i += 1;
+      digits += 1;
+    }
+    if (i < len && s.charAt(i) == '.') {
+      i += 1;
+      while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+        i += 1;
+        digits += 1;
+      }
+    }
+    if (digits == 0) {
+      return 0;
+    }
+    if (i < len && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+      i += 1;
+      if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+        i += 1;
+      }
+      int exponent = i;
+      while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+        i += 1;
+      }
+      if (i == exponent) {
+        return 0;
+      }
+    }
+    return i == len ? 1 : 0;
+  }
+
+  /**
+   * Check whether a text is a decimal integer in the form that
+   * <code>Long.parseLong</code> accepts, leaving the range aside.
+   */
+  private static boolean isInteger(String s) {
+    int len = s.length();
+    int i = (s.charAt(0) == '-' || s.charAt(0) == '+') ? 1 : 0;
+    if (i == len) {
+      return false;
+    }
+    for (; i < len; i += 1) {
+      if (Character.digit(s.charAt(i), 10) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Throw an exception if the object is an NaN or infinite number.
    * 
@@ -1247,19 +1288,8 @@ public class JSONObject {
   @Override
   public String toString() {
     try {
-      Iterator keys = keys();
-      StringBuffer sb = new StringBuffer("{");
-
-      while (keys.hasNext()) {
-        if (sb.length() > 1) {
-          sb.append(',');
-        }
-        Object o = keys.next();
-        sb.append(quote(o.toString()));
-        sb.append(':');
-        sb.append(valueToString(this.map.get(o)));
-      }
-      sb.append('}');
+      StringBuilder sb = new StringBuilder();
+      new JSONWriter(sb).write(this);
       return sb.toString();
     } catch (Exception e) {
       return null;
@@ -1298,44 +1328,7 @@ public class JSONObject {
    * @throws JSONException If the object contains an invalid number.
    */
   String toString(int indentFactor, int indent) throws JSONException {
-    int j;
-    int n = length();
-    if (n == 0) {
-      return "{}";
-    }
-    Iterator keys = sortedKeys();
-    StringBuffer sb = new StringBuffer("{");
-    int newindent = indent + indentFactor;
-    Object o;
-    if (n == 1) {
-      o = keys.next();
-      sb.append(quote(o.toString()));
-      sb.append(": ");
-      sb.append(valueToString(this.map.get(o), indentFactor, indent));
-    } else {
-      while (keys.hasNext()) {
-        o = keys.next();
-        if (sb.length() > 1) {
-          sb.append(",\n");
-        } else {
-          sb.append('\n');
-        }
-        for (j = 0; j < newindent; j += 1) {
-          sb.append(' ');
-        }
-        sb.append(quote(o.toString()));
-        sb.append(": ");
-        sb.append(valueToString(this.map.get(o), indentFactor, newindent));
-      }
-      if (sb.length() > 1) {
-        sb.append('\n');
-        for (j = 0; j < indent; j += 1) {
-          sb.append(' ');
-        }
-      }
-    }
-    sb.append('}');
-    return sb.toString();
+    return valueToString(this, indentFactor, indent);
   }
 
   /**
@@ -1361,38 +1354,13 @@ public class JSONObject {
    * @throws JSONException If the value is or contains an invalid number.
    */
   static String valueToString(Object value) throws JSONException {
-    if (value == null || value.equals(null)) {
-      return "null";
-    }
-    if (value instanceof JSONString) {
-      Object o;
-      try {
-        o = ((JSONString) value).toJSONString();
-      } catch (Exception e) {
-        throw new JSONException(e);
-      }
-      if (o instanceof String) {
-        return (String) o;
-      }
-      throw new JSONException("Bad value from toJSONString: " + o);
-    }
-    if (value instanceof Number) {
-      return numberToString((Number) value);
-    }
-    if (value instanceof Boolean || value instanceof JSONObject
-        || value instanceof JSONArray) {
-      return value.toString();
-    }
-    if (value instanceof Map) {
-      return new JSONObject((Map) value).toString();
-    }
-    if (value instanceof Collection) {
-      return new JSONArray((Collection) value).toString();
-    }
-    if (value.getClass().isArray()) {
-      return new JSONArray(value).toString();
+    StringBuilder sb = new StringBuilder();
+    try {
+      new JSONWriter(sb).write(value);
+    } catch (IOException e) {
+      throw new JSONException(e);
     }
-    return quote(value.toString());
+    return sb.toString();
   }
 
   /**
@@ -1412,41 +1380,13 @@ public class JSONObject {
    */
   static String valueToString(Object value, int indentFactor, int indent)
       throws JSONException {
-    if (value == null || value.equals(null)) {
-      return "null";
-    }
+    StringBuilder sb = new StringBuilder();
     try {
-      if (value instanceof JSONString) {
-        Object o = ((JSONString) value).toJSONString();
-        if (o instanceof String) {
-          return (String) o;
-        }
-      }
-    } catch (Exception ignore) {
-      // ??
-    }
-    if (value instanceof Number) {
-      return numberToString((Number) value);
-    }
-    if (value instanceof Boolean) {
-      return value.toString();
-    }
-    if (value instanceof JSONObject) {
-      return ((JSONObject) value).toString(indentFactor, indent);
-    }
-    if (value instanceof JSONArray) {
-      return ((JSONArray) value).toString(indentFactor, indent);
+      new JSONWriter(sb).write(value, indentFactor, indent);
+    } catch (IOException e) {
+      throw new JSONException(e);
     }
-    if (value instanceof Map) {
-      return new JSONObject((Map) value).toString(indentFactor, indent);
-    }
-    if (value instanceof Collection) {
-      return new JSONArray((Collection) value).toString(indentFactor, indent);
-    }
-    if (value.getClass().isArray()) {
-      return new JSONArray(value).toString(indentFactor, indent);
-    }
-    return quote(value.toString());
+    return sb.toString();
   }
 
   /**
@@ -1503,38 +1443,14 @@ public class JSONObject {
    * <p>
    * Warning: This method assumes that the data structure is acyclical.
    * 
-   * @param writer TODO
+   * @param writer The writer, which is not flushed.
    * 
    * @return The writer.
-   * @throws JSONException
+   * @throws JSONException If the writer fails or a value is an invalid
+   *           number.
    */
   public Writer write(Writer writer) throws JSONException {
-    try {
-      boolean b = false;
-      Iterator keys = keys();
-      writer.write('{');
-
-      while (keys.hasNext()) {
-        if (b) {
-          writer.write(',');
-        }
-        Object k = keys.next();
-        writer.write(quote(k.toString()));
-        writer.write(':');
-        Object v = this.map.get(k);
-        if (v instanceof JSONObject) {
-          ((JSONObject) v).write(writer);
-        } else if (v instanceof JSONArray) {
-          ((JSONArray) v).write(writer);
-        } else {
-          writer.write(valueToString(v));
-        }
-        b = true;
-      }
-      writer.write('}');
-      return writer;
-    } catch (IOException exception) {
-      throw new JSONException(exception);
-    }
+    new JSONWriter(writer).value(this);
+    return writer;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,541 @@
+package org.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * JSONReader reads a JSON text one token at a time, so that a large text can
+ * be read in constant memory and turned straight into other objects, without
+ * making a JSONObject or a JSONArray of it first. The <code>begin</code> and
+ * <code>end</code> methods enter and leave arrays and objects, the
+ * <code>next</code> methods read names and values, and <code>peek</code> and
+ * <code>hasNext</code> tell what comes next. For example:
+ *
+ * <pre>
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *   String name = reader.nextName();
+ *   if (name.equals(&quot;key&quot;)) {
+ *     key = reader.nextString();
+ *   } else {
+ *     reader.skipValue();
+ *   }
+ * }
+ * reader.endObject();
+ * </pre>
+ * <p>
+ * The text is read with the rules of JSONObject and JSONArray: names may be
+ * unquoted, names may be followed by <code>=</code> or <code>=&gt;</code>,
+ * values may be separated by <code>;</code>, and the values are converted
+ * with {@link JSONObject#stringToValue(String)}. A value left out of an array,
+ * like the second one in <code>[1,,3]</code>, is read as a NULL token whose
+ * value is <code>null</code>, as JSONArray keeps it. Unlike a JSONObject, the
+ * reader does not check that the names of an object are different.
+ *
+ * @author JSON.org
+ * @version 2012-06-14
+ */
+@SuppressWarnings("nls")
+public class JSONReader {
+
+  /**
+   * The kinds of tokens a JSON text is made of.
+   */
+  public enum Token {
+    /** The start of an array. */
+    BEGIN_ARRAY,
+    /** The start of an object. */
+    BEGIN_OBJECT,
+    /** A value that is true or false. */
+    BOOLEAN,
+    /** The end of an array. */
+    END_ARRAY,
+    /** The end of the text. */
+    END_DOCUMENT,
+    /** The end of an object. */
+    END_OBJECT,
+    /** A name in an object. */
+    NAME,
+    /** The null value. */
+    NULL,
+    /** A number value. */
+    NUMBER,
+    /** A string value, quoted or not. */
+    STRING
+  }
+
+  private static final int EMPTY_ARRAY       = 1;
+
+  private static final int EMPTY_DOCUMENT    = 2;
+
+  private static final int EMPTY_OBJECT      = 3;
+
+  private static final int NAME              = 4;
+
+  private static final int NONEMPTY_ARRAY    = 5;
+
+  private static final int NONEMPTY_DOCUMENT = 6;
+
+  private static final int NONEMPTY_OBJECT   = 7;
+
+  /**
+   * The characters that close the arrays that are open.
+   */
+  private char[]           closers           = new char[8];
+
+  private int              depth;
+
+  /**
+   * The token read by peek, or null if it was consumed.
+   */
+  private Token            peeked;
+
+  private final Reader     reader;
+
+  /**
+   * What is open at each level, with the document at level 0.
+   */
+  private int[]            scopes            = new int[8];
+
+  /**
+   * The name or the value read by peek.
+   */
+  private Object           value;
+
+  private final JSONTokener x;
+
+  /**
+   * Construct a JSONReader from a Reader.
+   *
+   * @param reader A reader.
+   */
+  public JSONReader(Reader reader) {
+    this.reader = reader;
+    this.x = new JSONTokener(reader);
+    this.scopes[0] = EMPTY_DOCUMENT;
+  }
+
+  /**
+   * Construct a JSONReader from a string.
+   *
+   * @param s A source string.
+   */
+  public JSONReader(String s) {
+    this(new StringReader(s));
+  }
+
+  /**
+   * Enter the array that comes next.
+   *
+   * @throws JSONException If the next token is not the start of an array.
+   */
+  public void beginArray() throws JSONException {
+    expect(Token.BEGIN_ARRAY);
+    push(EMPTY_ARRAY);
+    this.closers[this.depth] = ((Character) this.value).charValue();
+  }
+
+  /**
+   * Enter the object that comes next.
+   *
+   * @throws JSONException If the next token is not the start of an object.
+   */
+  public void beginObject() throws JSONException {
+    expect(Token.BEGIN_OBJECT);
+    push(EMPTY_OBJECT);
+  }
+
+  /**
+   * Close the reader and the underlying reader.
+   *
+   * @throws IOException
+   */
+  public void close() throws IOException {
+    this.reader.close();
+  }
+
+  /**
+   * Leave the array that is being read, after its last value.
+   *
+   * @throws JSONException If the array has more values.
+   */
+  public void endArray() throws JSONException {
+    expect(Token.END_ARRAY);
+    this.depth -= 1;
+  }
+
+  /**
+   * Leave the object that is being read, after its last value.
+   *
+   * @throws JSONException If the object has more names.
+   */
+  public void endObject() throws JSONException {
+    expect(Token.END_OBJECT);
+    this.depth -= 1;
+  }
+
+  /**
+   * Determine if the array or the object that is being read has more
+   * elements.
+   *
+   * @return true if there is another value or name.
+   * @throws JSONException If syntax error.
+   */
+  public boolean hasNext() throws JSONException {
+    Token token = peek();
+    return token != Token.END_ARRAY && token != Token.END_OBJECT
+        && token != Token.END_DOCUMENT;
+  }
+
+  /**
+   * Read a boolean value, or a string that is "true" or "false" in any case.
+   *
+   * @return The truth.
+   * @throws JSONException If the next token is not such a value.
+   */
+  public boolean nextBoolean() throws JSONException {
+    Object o = nextScalar();
+    if (Boolean.FALSE.equals(o)
+        || (o instanceof String && ((String) o).equalsIgnoreCase("false"))) {
+      return false;
+    } else if (Boolean.TRUE.equals(o)
+        || (o instanceof String && ((String) o).equalsIgnoreCase("true"))) {
+      return true;
+    }
+    throw this.x.syntaxError("Expected a Boolean");
+  }
+
+  /**
+   * Read a number value, or a string that is a number.
+   *
+   * @return The numeric value.
+   * @throws JSONException If the next token is not such a value.
+   */
+  public double nextDouble() throws JSONException {
+    Object o = nextScalar();
+    try {
+      return o instanceof Number ? ((Number) o).doubleValue() : Double.valueOf(
+          (String) o).doubleValue();
+    } catch (Exception e) {
+      throw this.x.syntaxError("Expected a number");
+    }
+  }
+
+  /**
+   * Read a number value, or a string that is an int.
+   *
+   * @return The integer value.
+   * @throws JSONException If the next token is not such a value.
+   */
+  public int nextInt() throws JSONException {
+    Object o = nextScalar();
+    try {
+      return o instanceof Number ? ((Number) o).intValue() : Integer
+          .parseInt((String) o);
+    } catch (Exception e) {
+      throw this.x.syntaxError("Expected an int");
+    }
+  }
+
+  /**
+   * Read a number value, or a string that is a long.
+   *
+   * @return The long value.
+   * @throws JSONException If the next token is not such a value.
+   */
+  public long nextLong() throws JSONException {
+    Object o = nextScalar();
+    try {
+      return o instanceof Number ? ((Number) o).longValue() : Long
+          .parseLong((String) o);
+    } catch (Exception e) {
+      throw this.x.syntaxError("Expected a long");
+    }
+  }
+
+  /**
+   * Read the name of the next pair of the object that is being read.
+   *
+   * @return The name.
+   * @throws JSONException If the next token is not a name.
+   */
+  public String nextName() throws JSONException {
+    expect(Token.NAME);
+    return (String) this.value;
+  }
+
+  /**
+   * Read a null value, or a value left out of an array.
+   *
+   * @throws JSONException If the next token is not null.
+   */
+  public void nextNull() throws JSONException {
+    expect(Token.NULL);
+  }
+
+  /**
+   * Read a string value. Numbers and booleans are read as their texts.
+   *
+   * @return The string.
+   * @throws JSONException If the next token is not a string, a number or a
+   *           boolean.
+   */
+  public String nextString() throws JSONException {
+    Token token = peek();
+    if (token != Token.STRING && token != Token.NUMBER
+        && token != Token.BOOLEAN) {
+      throw this.x.syntaxError("Expected a string but was " + token);
+    }
+    this.peeked = null;
+    return this.value.toString();
+  }
+
+  /**
+   * Read the next value, making a JSONObject or a JSONArray of it if it is an
+   * object or an array.
+   *
+   * @return A Boolean, Double, Integer, JSONArray, JSONObject, Long, or
+   *         String, or the JSONObject.NULL object, or null for a value left
+   *         out of an array.
+   * @throws JSONException If the next token is not the start of a value.
+   */
+  public Object nextValue() throws JSONException {
+    switch (peek()) {
+      case BEGIN_ARRAY:
+        JSONArray a = new JSONArray();
+        beginArray();
+        while (hasNext()) {
+          a.put(nextValue());
+        }
+        endArray();
+        return a;
+      case BEGIN_OBJECT:
+        JSONObject o = new JSONObject();
+        beginObject();
+        while (hasNext()) {
+          o.putOnce(nextName(), nextValue());
+        }
+        endObject();
+        return o;
+      default:
+        return nextScalar();
+    }
+  }
+
+  /**
+   * Get the kind of the next token without consuming it.
+   *
+   * @return The kind of the next token.
+   * @throws JSONException If syntax error.
+   */
+  public Token peek() throws JSONException {
+    if (this.peeked != null) {
+      return this.peeked;
+    }
+    char c;
+    switch (this.scopes[this.depth]) {
+      case EMPTY_DOCUMENT:
+        this.scopes[this.depth] = NONEMPTY_DOCUMENT;
+        return readValue();
+      case NONEMPTY_DOCUMENT:
+        // the text after the first value is ignored, as JSONTokener does
+        return this.peeked = Token.END_DOCUMENT;
+      case EMPTY_ARRAY:
+        if (this.x.nextClean() == ']') {
+          return this.peeked = Token.END_ARRAY;
+        }
+        this.x.back();
+        this.scopes[this.depth] = NONEMPTY_ARRAY;
+        return readElement();
+      case NONEMPTY_ARRAY:
+        c = this.x.nextClean();
+        switch (c) {
+          case ';':
+          case ',':
+            if (this.x.nextClean() == ']') {
+              return this.peeked = Token.END_ARRAY;
+            }
+            this.x.back();
+            return readElement();
+          case ']':
+          case ')':
+            if (c != this.closers[this.depth]) {
+              throw this.x.syntaxError("Expected a '"
+                  + this.closers[this.depth] + "'");
+            }
+            return this.peeked = Token.END_ARRAY;
+          default:
+            throw this.x.syntaxError("Expected a ',' or ']'");
+        }
+      case EMPTY_OBJECT:
+        return readName();
+      case NONEMPTY_OBJECT:
+        switch (this.x.nextClean()) {
+          case ';':
+          case ',':
+            return readName();
+          case '}':
+            return this.peeked = Token.END_OBJECT;
+          default:
+            throw this.x.syntaxError("Expected a ',' or '}'");
+        }
+      default:
+        /*
+         * The key is followed by ':'. We will also tolerate '=' or '=>'.
+         */
+        c = this.x.nextClean();
+        if (c == '=') {
+          if (this.x.next() != '>') {
+            this.x.back();
+          }
+        } else if (c != ':') {
+          throw this.x.syntaxError("Expected a ':' after a key");
+        }
+        this.scopes[this.depth] = NONEMPTY_OBJECT;
+        return readValue();
+    }
+  }
+
+  /**
+   * Skip the next value, with all that is in it if it is an array or an
+   * object.
+   *
+   * @throws JSONException If the next token is not the start of a value.
+   */
+  public void skipValue() throws JSONException {
+    int level = 0;
+    do {
+      switch (peek()) {
+        case BEGIN_ARRAY:
+          beginArray();
+          level += 1;
+          break;
+        case BEGIN_OBJECT:
+          beginObject();
+          level += 1;
+          break;
+        case END_ARRAY:
+          endArray();
+          level -= 1;
+          break;
+        case END_OBJECT:
+          endObject();
+          level -= 1;
+          break;
+        case END_DOCUMENT:
+          throw this.x.syntaxError("Expected a value");
+        default:
+          this.peeked = null;
+      }
+    } while (level > 0);
+  }
+
+  /**
+   * Make a printable string of this JSONReader.
+   *
+   * @return " at {index} [character {character} line {line}]"
+   */
+  @Override
+  public String toString() {
+    return this.x.toString();
+  }
+
+  private void expect(Token token) throws JSONException {
+    Token next = peek();
+    if (next != token) {
+      throw this.x.syntaxError("Expected " + token + " but was " + next);
+    }
+    this.peeked = null;
+  }
+
+  private Object nextScalar() throws JSONException {
+    Token token = peek();
+    if (token == Token.BEGIN_ARRAY || token == Token.BEGIN_OBJECT
+        || token == Token.END_ARRAY || token == Token.END_OBJECT
+        || token == Token.NAME || token == Token.END_DOCUMENT) {
+      throw this.x.syntaxError("Expected a value but was " + token);
+    }
+    this.peeked = null;
+    return this.value;
+  }
+
+  private void push(int scope) {
+    this.depth += 1;
+    if (this.depth == this.scopes.length) {
+      this.scopes = Arrays.copyOf(this.scopes, this.depth * 2);
+      this.closers = Arrays.copyOf(this.closers, this.depth * 2);
+    }
+    this.scopes[this.depth] = scope;
+  }
+
+  /**
+   * Read a name like JSONObject does, or the end of the object.
+   */
+  private Token readName() throws JSONException {
+    char c = this.x.nextClean();
+    switch (c) {
+      case 0:
+        throw this.x.syntaxError("A JSONObject text must end with '}'");
+      case '}':
+        return this.peeked = Token.END_OBJECT;
+      case '"':
+      case '\'':
+        this.value = this.x.nextString(c);
+        break;
+      case '{':
+      case '[':
+      case '(':
+        throw this.x.syntaxError("Expected a name");
+      default:
+        this.x.back();
+        this.value = this.x.nextValue().toString();
+    }
+    this.scopes[this.depth] = NAME;
+    return this.peeked = Token.NAME;
+  }
+
+  /**
+   * Read a value of an array, which may be left out before a comma.
+   */
+  private Token readElement() throws JSONException {
+    if (this.x.nextClean() == ',') {
+      this.x.back();
+      this.value = null;
+      return this.peeked = Token.NULL;
+    }
+    this.x.back();
+    return readValue();
+  }
+
+  private Token readValue() throws JSONException {
+    char c = this.x.nextClean();
+    switch (c) {
+      case '{':
+        return this.peeked = Token.BEGIN_OBJECT;
+      case '[':
+        this.value = Character.valueOf(']');
+        return this.peeked = Token.BEGIN_ARRAY;
+      case '(':
+        this.value = Character.valueOf(')');
+        return this.peeked = Token.BEGIN_ARRAY;
+      case '"':
+      case '\'':
+        this.value = this.x.nextString(c);
+        return this.peeked = Token.STRING;
+    }
+    this.x.back();
+    this.value = this.x.nextValue();
+    if (this.value instanceof String) {
+      this.peeked = Token.STRING;
+    } else if (this.value instanceof Boolean) {
+      this.peeked = Token.BOOLEAN;
+    } else if (this.value == JSONObject.NULL) {
+      this.peeked = Token.NULL;
+    } else {
+      this.peeked = Token.NUMBER;
+    }
+    return this.peeked;
+  }
+}
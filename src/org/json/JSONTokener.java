@@ -1,9 +1,8 @@
 package org.json;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
+import java.util.Arrays;
 
 /*
  Copyright (c) 2002 JSON.org
@@ -33,26 +32,54 @@ import java.io.StringReader;
  * A JSONTokener takes a source string and extracts characters and tokens from
  * it. It is used by the JSONObject and JSONArray constructors to parse JSON
  * source strings.
+ * <p>
+ * The source is read into a window of characters that is refilled from the
+ * reader when it runs out, instead of one <code>read()</code> call for each
+ * character. Strings are cut from the window in runs between escapes, and
+ * integers are parsed straight from the window.
  * 
  * @author JSON.org
- * @version 2010-02-02
+ * @version 2012-06-14
  */
 @SuppressWarnings("nls")
 public class JSONTokener {
 
-  private int character;
+  /**
+   * The characters that end an unquoted value.
+   */
+  private static final boolean[] DELIMITERS;
+
+  static {
+    DELIMITERS = new boolean[128];
+    for (char c : ",:]}/\\\"[{;=#".toCharArray()) {
+      DELIMITERS[c] = true;
+    }
+  }
 
-  private boolean eof;
+  private char[]                 buffer;
 
-  private int index;
+  private int                    character;
 
-  private int line;
+  private boolean                eof;
+
+  private int                    index;
+
+  /**
+   * Start of the characters that a refill has to keep in the window, or -1.
+   */
+  private int                    keep;
 
-  private char previous;
+  private int                    limit;
 
-  private Reader reader;
+  private int                    line;
 
-  private boolean usePrevious;
+  private int                    position;
+
+  private char                   previous;
+
+  private final Reader           reader;
+
+  private boolean                usePrevious;
 
   /**
    * Construct a JSONTokener from a reader.
@@ -60,7 +87,14 @@ public class JSONTokener {
    * @param reader A reader.
    */
   public JSONTokener(Reader reader) {
-    this.reader = reader.markSupported() ? reader : new BufferedReader(reader);
+    this(reader, new char[8192], 0);
+  }
+
+  private JSONTokener(Reader reader, char[] buffer, int limit) {
+    this.reader = reader;
+    this.buffer = buffer;
+    this.limit = limit;
+    this.keep = -1;
     this.eof = false;
     this.usePrevious = false;
     this.previous = 0;
@@ -75,7 +109,7 @@ public class JSONTokener {
    * @param s A source string.
    */
   public JSONTokener(String s) {
-    this(new StringReader(s));
+    this(null, s.toCharArray(), s.length());
   }
 
   /**
@@ -116,12 +150,50 @@ public class JSONTokener {
   }
 
   /**
-   * @return TODO
+   * @return whether the end of the source was reached
    */
   public boolean end() {
     return this.eof && !this.usePrevious;
   }
 
+  /**
+   * Read more characters into the window, dropping the ones before the kept
+   * part but the last character read.
+   * 
+   * @return false at the end of the source.
+   */
+  private boolean fill() throws JSONException {
+    if (this.reader == null) {
+      return false;
+    }
+    int from = this.keep >= 0 ? this.keep : Math.max(this.position - 1, 0);
+    if (from > 0) {
+      System.arraycopy(this.buffer, from, this.buffer, 0, this.limit - from);
+      this.limit -= from;
+      this.position -= from;
+      if (this.keep >= 0) {
+        this.keep -= from;
+      }
+    }
+    if (this.limit == this.buffer.length) {
+      this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+    }
+    try {
+      int n;
+      do {
+        n = this.reader.read(this.buffer, this.limit, this.buffer.length
+            - this.limit);
+      } while (n == 0);
+      if (n < 0) {
+        return false;
+      }
+      this.limit += n;
+      return true;
+    } catch (IOException exception) {
+      throw new JSONException(exception);
+    }
+  }
+
   /**
    * Determine if the source string still contains characters that next() can
    * consume.
@@ -145,21 +217,19 @@ public class JSONTokener {
    * @throws JSONException
    */
   public char next() throws JSONException {
-    int c;
+    char c;
     if (this.usePrevious) {
       this.usePrevious = false;
       c = this.previous;
-    } else {
-      try {
-        c = this.reader.read();
-      } catch (IOException exception) {
-        throw new JSONException(exception);
-      }
-
-      if (c <= 0) { // End of stream
+    } else if (this.position < this.limit || fill()) {
+      c = this.buffer[this.position++];
+      if (c == 0) {
         this.eof = true;
-        c = 0;
       }
+    } else {
+      // End of stream
+      this.eof = true;
+      c = 0;
     }
     this.index += 1;
     if (this.previous == '\r') {
@@ -171,8 +241,8 @@ public class JSONTokener {
     } else {
       this.character += 1;
     }
-    this.previous = (char) c;
-    return this.previous;
+    this.previous = c;
+    return c;
   }
 
   /**
@@ -204,17 +274,17 @@ public class JSONTokener {
       return "";
     }
 
-    char[] buffer = new char[n];
+    char[] chars = new char[n];
     int pos = 0;
 
     while (pos < n) {
-      buffer[pos] = next();
+      chars[pos] = next();
       if (end()) {
         throw syntaxError("Substring bounds error");
       }
       pos += 1;
     }
-    return new String(buffer);
+    return new String(chars);
   }
 
   /**
@@ -243,10 +313,46 @@ public class JSONTokener {
    * @throws JSONException Unterminated string.
    */
   public String nextString(char quote) throws JSONException {
-    char c;
-    StringBuffer sb = new StringBuffer();
+    StringBuilder sb = null;
     for (;;) {
-      c = next();
+      if (!this.usePrevious) {
+        // copy the run of plain characters in one piece
+        int start = this.position;
+        this.keep = start;
+        for (;;) {
+          while (this.position < this.limit) {
+            char c = this.buffer[this.position];
+            if (c == quote || c == '\\' || c == '\n' || c == '\r' || c == 0) {
+              break;
+            }
+            this.position += 1;
+          }
+          if (this.position < this.limit || !fill()) {
+            break;
+          }
+        }
+        start = this.keep;
+        this.keep = -1;
+        int length = this.position - start;
+        if (length > 0) {
+          this.index += length;
+          this.character += length;
+          this.previous = this.buffer[this.position - 1];
+          if (sb == null && this.position < this.limit
+              && this.buffer[this.position] == quote) {
+            next();
+            return new String(this.buffer, start, length);
+          }
+          if (sb == null) {
+            sb = new StringBuilder(length + 16);
+          }
+          sb.append(this.buffer, start, length);
+        }
+      }
+      if (sb == null) {
+        sb = new StringBuilder();
+      }
+      char c = next();
       switch (c) {
         case 0:
         case '\n':
@@ -271,7 +377,18 @@ public class JSONTokener {
               sb.append('\r');
               break;
             case 'u':
-              sb.append((char) Integer.parseInt(next(4), 16));
+              int u = 0;
+              for (int i = 0; i < 4; i += 1) {
+                int h = dehexchar(next());
+                if (end()) {
+                  throw syntaxError("Substring bounds error");
+                }
+                if (h < 0) {
+                  throw syntaxError("Illegal escape.");
+                }
+                u = (u << 4) | h;
+              }
+              sb.append((char) u);
               break;
             case '"':
             case '\'':
@@ -301,7 +418,7 @@ public class JSONTokener {
    * @throws JSONException
    */
   public String nextTo(char d) throws JSONException {
-    StringBuffer sb = new StringBuffer();
+    StringBuilder sb = new StringBuilder();
     for (;;) {
       char c = next();
       if (c == d || c == 0 || c == '\n' || c == '\r') {
@@ -324,7 +441,7 @@ public class JSONTokener {
    */
   public String nextTo(String delimiters) throws JSONException {
     char c;
-    StringBuffer sb = new StringBuffer();
+    StringBuilder sb = new StringBuilder();
     for (;;) {
       c = next();
       if (delimiters.indexOf(c) >= 0 || c == 0 || c == '\n' || c == '\r') {
@@ -347,7 +464,6 @@ public class JSONTokener {
    */
   public Object nextValue() throws JSONException {
     char c = nextClean();
-    String s;
 
     switch (c) {
       case '"':
@@ -368,21 +484,78 @@ public class JSONTokener {
      * also accept non-standard forms.
      * 
      * Accumulate characters until we reach the end of the text or a formatting
-     * character.
+     * character. The first one is the last character read, still in the window.
      */
 
-    StringBuffer sb = new StringBuffer();
-    while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
-      sb.append(c);
-      c = next();
+    if (c < ' ' || (c < 128 && DELIMITERS[c])) {
+      back();
+      throw syntaxError("Missing value");
+    }
+    this.keep = this.position - 1;
+    for (;;) {
+      while (this.position < this.limit) {
+        char d = this.buffer[this.position];
+        if (d < ' ' || (d < 128 && DELIMITERS[d])) {
+          break;
+        }
+        this.position += 1;
+      }
+      if (this.position < this.limit || !fill()) {
+        break;
+      }
     }
+    int length = this.position - this.keep;
+    this.index += length - 1;
+    this.character += length - 1;
+    this.previous = this.buffer[this.position - 1];
+    // read the character after the text and step back, as the others do
+    next();
     back();
+    int start = this.keep;
+    int end = start + length;
+    this.keep = -1;
+    while (this.buffer[end - 1] <= ' ') {
+      end -= 1;
+    }
+    Object number = integer(this.buffer, start, end);
+    if (number != null) {
+      return number;
+    }
+    return JSONObject.stringToValue(new String(this.buffer, start, end
+        - start));
+  }
 
-    s = sb.toString().trim();
-    if (s.equals("")) {
-      throw syntaxError("Missing value");
+  /**
+   * Parse a decimal integer of up to 18 digits, in the same way as
+   * {@link JSONObject#stringToValue(String)}.
+   * 
+   * @return An Integer or a Long, or null if the text is not such an integer.
+   */
+  private static Object integer(char[] chars, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (chars[i] == '-' || chars[i] == '+') {
+      negative = chars[i] == '-';
+      i += 1;
+    }
+    if (i == end || end - i > 18) {
+      return null;
+    }
+    long value = 0;
+    for (; i < end; i += 1) {
+      char c = chars[i];
+      if (c < '0' || c > '9') {
+        return null;
+      }
+      value = value * 10 + (c - '0');
+    }
+    if (negative) {
+      value = -value;
+    }
+    if (value == (int) value) {
+      return Integer.valueOf((int) value);
     }
-    return JSONObject.stringToValue(s);
+    return Long.valueOf(value);
   }
 
   /**
@@ -396,23 +569,30 @@ public class JSONTokener {
    */
   public char skipTo(char to) throws JSONException {
     char c;
+    int startPosition = this.position;
+    int startIndex = this.index;
+    int startCharacter = this.character;
+    int startLine = this.line;
+    char startPrevious = this.previous;
+    boolean startUsePrevious = this.usePrevious;
+    boolean startEof = this.eof;
+    this.keep = startPosition;
     try {
-      int startIndex = this.index;
-      int startCharacter = this.character;
-      int startLine = this.line;
-      this.reader.mark(Integer.MAX_VALUE);
       do {
         c = next();
         if (c == 0) {
-          this.reader.reset();
+          this.position = this.keep;
           this.index = startIndex;
           this.character = startCharacter;
           this.line = startLine;
+          this.previous = startPrevious;
+          this.usePrevious = startUsePrevious;
+          this.eof = startEof;
           return c;
         }
       } while (c != to);
-    } catch (IOException exc) {
-      throw new JSONException(exc);
+    } finally {
+      this.keep = -1;
     }
 
     back();
@@ -439,4 +619,4 @@ public class JSONTokener {
     return " at " + this.index + " [character " + this.character + " line "
         + this.line + "]";
   }
-}
\ No newline at end of file
+}
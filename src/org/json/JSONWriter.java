@@ -0,0 +1,554 @@
+package org.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * JSONWriter provides a quick and convenient way of producing JSON text. The
+ * texts produced strictly conform to JSON syntax rules. No whitespace is added,
+ * so the results are ready for transmission or storage.
+ * <p>
+ * A JSONWriter instance can produce one JSON text. The <code>value</code>
+ * method appends values to the text, and the <code>key</code> method adds keys
+ * to objects. The <code>array</code> and <code>endArray</code> methods make
+ * and bound array values, and the <code>object</code> and
+ * <code>endObject</code> methods make and bound object values. For example:
+ *
+ * <pre>
+ * new JSONWriter(myWriter).object().key(&quot;JSON&quot;).value(
+ *     &quot;Hello, World!&quot;).endObject();
+ * </pre>
+ *
+ * which writes
+ *
+ * <pre>
+ * {"JSON":"Hello, World!"}
+ * </pre>
+ * <p>
+ * The text is written straight to the <code>Appendable</code>, which is
+ * usually a <code>Writer</code> or a <code>StringBuilder</code>: strings are
+ * escaped in place with a lookup table, the characters that need no escaping
+ * are copied in runs, and integers are formatted into a reused buffer, so
+ * writing does not build temporary strings for the values.
+ * <code>JSONObject</code> and <code>JSONArray</code> values are written
+ * member by member, without making their <code>toString</code> first.
+ *
+ * @author JSON.org
+ * @version 2012-06-14
+ */
+@SuppressWarnings({ "rawtypes", "nls" })
+public class JSONWriter {
+
+  /**
+   * The escapes of the characters below 0x80, or null for the characters that
+   * are written as they are.
+   */
+  private static final String[] ESCAPES;
+
+  private static final char[]   HEX   = "0123456789abcdef".toCharArray();
+
+  private static final String   SLASH = "\\/";
+
+  static {
+    ESCAPES = new String[128];
+    for (int c = 0; c < ' '; c++) {
+      ESCAPES[c] = "\\u00" + HEX[c >> 4] + HEX[c & 0xf];
+    }
+    ESCAPES['\b'] = "\\b";
+    ESCAPES['\t'] = "\\t";
+    ESCAPES['\n'] = "\\n";
+    ESCAPES['\f'] = "\\f";
+    ESCAPES['\r'] = "\\r";
+    ESCAPES['"'] = "\\\"";
+    ESCAPES['\\'] = "\\\\";
+  }
+
+  /**
+   * The comma flag determines if a comma should be output before the next
+   * value.
+   */
+  private boolean               comma;
+
+  /**
+   * Buffer that integers are formatted into.
+   */
+  private final char[]          digits;
+
+  /**
+   * The current mode. Values: 'a' (array), 'd' (done), 'i' (initial), 'k'
+   * (key written, value expected), 'o' (object, key expected).
+   */
+  private char                  mode;
+
+  /**
+   * The destination of the text.
+   */
+  private final Appendable      out;
+
+  /**
+   * The modes of the enclosing arrays and objects.
+   */
+  private char[]                stack;
+
+  private int                   top;
+
+  /**
+   * Make a fresh JSONWriter. It can be used to build one JSON text.
+   *
+   * @param out The destination, usually a <code>Writer</code> or a
+   *          <code>StringBuilder</code>.
+   */
+  public JSONWriter(Appendable out) {
+    this.out = out;
+    this.mode = 'i';
+    this.digits = new char[20];
+    this.stack = new char[8];
+  }
+
+  private static void indent(Appendable out, int indent) throws IOException {
+    for (int i = 0; i < indent; i += 1) {
+      out.append(' ');
+    }
+  }
+
+  /**
+   * Write a string in double quotes with backslash sequences in all the right
+   * places, like {@link JSONObject#quote(String)}.
+   *
+   * @param string A String, null is written as an empty string.
+   * @param out The destination.
+   * @throws IOException If the destination cannot be written.
+   */
+  public static void quote(String string, Appendable out) throws IOException {
+    out.append('"');
+    int len = (string == null) ? 0 : string.length();
+    int start = 0;
+    for (int i = 0; i < len; i += 1) {
+      char c = string.charAt(i);
+      String escape;
+      if (c < 0x80) {
+        escape = ESCAPES[c];
+        if ((c == '/') && (i > 0) && (string.charAt(i - 1) == '<')) {
+          // allows JSON text to be delivered in HTML
+          escape = SLASH;
+        }
+        if (escape == null) {
+          continue;
+        }
+      } else if (((c >= '\u0080') && (c < '\u00a0'))
+          || ((c >= '\u2000') && (c < '\u2100'))) {
+        escape = null;
+      } else {
+        continue;
+      }
+      write(out, string, start, i);
+      if (escape != null) {
+        write(out, escape, 0, escape.length());
+      } else {
+        out.append('\\').append('u').append(HEX[c >> 12])
+            .append(HEX[(c >> 8) & 0xf]).append(HEX[(c >> 4) & 0xf])
+            .append(HEX[c & 0xf]);
+      }
+      start = i + 1;
+    }
+    write(out, string, start, len);
+    out.append('"');
+  }
+
+  /**
+   * Copies a part of a string without making a substring.
+   */
+  private static void write(Appendable out, String string, int start, int end)
+      throws IOException {
+    if (end <= start) {
+      return;
+    }
+    if (out instanceof Writer) {
+      ((Writer) out).write(string, start, end - start);
+    } else {
+      out.append(string, start, end);
+    }
+  }
+
+  /**
+   * Append a value after checking that one is allowed here.
+   */
+  private JSONWriter append(Object value) throws JSONException {
+    beforeValue();
+    try {
+      write(value);
+    } catch (IOException e) {
+      throw new JSONException(e);
+    }
+    afterValue();
+    return this;
+  }
+
+  /**
+   * Begin appending a new array. All values until the balancing
+   * <code>endArray</code> will be appended to this array. The
+   * <code>endArray</code> method must be called to mark the array's end.
+   *
+   * @return this
+   * @throws JSONException If a key was expected, or the text is complete.
+   */
+  public JSONWriter array() throws JSONException {
+    return open('a', '[');
+  }
+
+  private void afterValue() {
+    if (this.mode == 'k') {
+      this.mode = 'o';
+    } else if (this.mode == 'i') {
+      this.mode = 'd';
+    }
+    this.comma = true;
+  }
+
+  private void beforeValue() throws JSONException {
+    if ((this.mode == 'o') || (this.mode == 'd')) {
+      throw new JSONException("Misplaced value.");
+    }
+    if ((this.mode == 'a') && this.comma) {
+      try {
+        this.out.append(',');
+      } catch (IOException e) {
+        throw new JSONException(e);
+      }
+    }
+  }
+
+  private JSONWriter close(char m, char c) throws JSONException {
+    if (this.mode != m) {
+      throw new JSONException(m == 'o' ? "Misplaced endObject."
+          : "Misplaced endArray.");
+    }
+    try {
+      this.out.append(c);
+    } catch (IOException e) {
+      throw new JSONException(e);
+    }
+    this.mode = this.stack[--this.top];
+    afterValue();
+    return this;
+  }
+
+  /**
+   * End an array. This method must be called to balance calls to
+   * <code>array</code>.
+   *
+   * @return this
+   * @throws JSONException If incorrectly nested.
+   */
+  public JSONWriter endArray() throws JSONException {
+    return close('a', ']');
+  }
+
+  /**
+   * End an object. This method must be called to balance calls to
+   * <code>object</code>.
+   *
+   * @return this
+   * @throws JSONException If incorrectly nested.
+   */
+  public JSONWriter endObject() throws JSONException {
+    return close('o', '}');
+  }
+
+  /**
+   * Append a key. The key will be associated with the next value. In an
+   * object, every value must be preceded by a key.
+   *
+   * @param string A key string.
+   * @return this
+   * @throws JSONException If the key is out of place. For example, keys do not
+   *           belong in arrays or if the key is null.
+   */
+  public JSONWriter key(String string) throws JSONException {
+    if (string == null) {
+      throw new JSONException("Null key.");
+    }
+    if (this.mode != 'o') {
+      throw new JSONException("Misplaced key.");
+    }
+    try {
+      if (this.comma) {
+        this.out.append(',');
+      }
+      quote(string, this.out);
+      this.out.append(':');
+    } catch (IOException e) {
+      throw new JSONException(e);
+    }
+    this.mode = 'k';
+    return this;
+  }
+
+  /**
+   * Begin appending a new object. All keys and values until the balancing
+   * <code>endObject</code> will be appended to this object. The
+   * <code>endObject</code> method must be called to mark the object's end.
+   *
+   * @return this
+   * @throws JSONException If a key was expected, or the text is complete.
+   */
+  public JSONWriter object() throws JSONException {
+    return open('o', '{');
+  }
+
+  private JSONWriter open(char m, char c) throws JSONException {
+    beforeValue();
+    try {
+      this.out.append(c);
+    } catch (IOException e) {
+      throw new JSONException(e);
+    }
+    if (this.top == this.stack.length) {
+      char[] s = new char[this.top * 2];
+      System.arraycopy(this.stack, 0, s, 0, this.top);
+      this.stack = s;
+    }
+    this.stack[this.top++] = this.mode;
+    this.mode = m;
+    this.comma = false;
+    return this;
+  }
+
+  /**
+   * Append either the value <code>true</code> or the value
+   * <code>false</code>.
+   *
+   * @param b A boolean.
+   * @return this
+   * @throws JSONException
+   */
+  public JSONWriter value(boolean b) throws JSONException {
+    return append(b ? Boolean.TRUE : Boolean.FALSE);
+  }
+
+  /**
+   * Append a double value.
+   *
+   * @param d A double.
+   * @return this
+   * @throws JSONException If the number is not finite.
+   */
+  public JSONWriter value(double d) throws JSONException {
+    return append(Double.valueOf(d));
+  }
+
+  /**
+   * Append a long value.
+   *
+   * @param l A long.
+   * @return this
+   * @throws JSONException
+   */
+  public JSONWriter value(long l) throws JSONException {
+    beforeValue();
+    try {
+      writeLong(l);
+    } catch (IOException e) {
+      throw new JSONException(e);
+    }
+    afterValue();
+    return this;
+  }
+
+  /**
+   * Append an object value.
+   *
+   * @param o The object to append. It can be null, or a Boolean, Number,
+   *          String, JSONObject, or JSONArray, or an object with a
+   *          toJSONString() method.
+   * @return this
+   * @throws JSONException If the value is out of sequence.
+   */
+  public JSONWriter value(Object o) throws JSONException {
+    return append(o);
+  }
+
+  /**
+   * Write the JSON text of a value, in the same form as
+   * {@link JSONObject#valueToString(Object)}.
+   */
+  void write(Object value) throws JSONException, IOException {
+    if ((value == null) || value.equals(null)) {
+      this.out.append("null");
+    } else if (value instanceof String) {
+      quote((String) value, this.out);
+    } else if (value instanceof JSONString) {
+      Object o;
+      try {
+        o = ((JSONString) value).toJSONString();
+      } catch (Exception e) {
+        throw new JSONException(e);
+      }
+      if (!(o instanceof String)) {
+        throw new JSONException("Bad value from toJSONString: " + o);
+      }
+      this.out.append((String) o);
+    } else if (value instanceof JSONObject) {
+      JSONObject o = (JSONObject) value;
+      this.out.append('{');
+      boolean b = false;
+      for (Iterator keys = o.keys(); keys.hasNext();) {
+        if (b) {
+          this.out.append(',');
+        }
+        String k = keys.next().toString();
+        quote(k, this.out);
+        this.out.append(':');
+        write(o.opt(k));
+        b = true;
+      }
+      this.out.append('}');
+    } else if (value instanceof JSONArray) {
+      JSONArray a = (JSONArray) value;
+      this.out.append('[');
+      int len = a.length();
+      for (int i = 0; i < len; i += 1) {
+        if (i > 0) {
+          this.out.append(',');
+        }
+        write(a.opt(i));
+      }
+      this.out.append(']');
+    } else if ((value instanceof Integer) || (value instanceof Long)
+        || (value instanceof Short) || (value instanceof Byte)) {
+      writeLong(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      this.out.append(JSONObject.numberToString((Number) value));
+    } else if (value instanceof Boolean) {
+      this.out.append(((Boolean) value).booleanValue() ? "true" : "false");
+    } else if (value instanceof Map) {
+      write(new JSONObject((Map) value));
+    } else if (value instanceof Collection) {
+      write(new JSONArray((Collection) value));
+    } else if (value.getClass().isArray()) {
+      write(new JSONArray(value));
+    } else {
+      quote(value.toString(), this.out);
+    }
+  }
+
+  /**
+   * Write the prettyprinted JSON text of a value, in the same form as
+   * {@link JSONObject#toString(int)}: keys are sorted, and objects with one
+   * key and arrays with one value stay on one line.
+   */
+  void write(Object value, int indentFactor, int indent)
+      throws JSONException, IOException {
+    if ((value == null) || value.equals(null)) {
+      this.out.append("null");
+      return;
+    }
+    if (value instanceof JSONString) {
+      Object o = null;
+      try {
+        o = ((JSONString) value).toJSONString();
+      } catch (Exception ignore) {
+        // written below like any other object
+      }
+      if (o instanceof String) {
+        this.out.append((String) o);
+        return;
+      }
+    }
+    if (value instanceof JSONObject) {
+      JSONObject o = (JSONObject) value;
+      int n = o.length();
+      if (n == 0) {
+        this.out.append("{}");
+        return;
+      }
+      Iterator keys = o.sortedKeys();
+      this.out.append('{');
+      if (n == 1) {
+        String k = keys.next().toString();
+        quote(k, this.out);
+        this.out.append(": ");
+        write(o.opt(k), indentFactor, indent);
+      } else {
+        int newindent = indent + indentFactor;
+        boolean b = false;
+        while (keys.hasNext()) {
+          String k = keys.next().toString();
+          this.out.append(b ? ",\n" : "\n");
+          indent(this.out, newindent);
+          quote(k, this.out);
+          this.out.append(": ");
+          write(o.opt(k), indentFactor, newindent);
+          b = true;
+        }
+        this.out.append('\n');
+        indent(this.out, indent);
+      }
+      this.out.append('}');
+    } else if (value instanceof JSONArray) {
+      JSONArray a = (JSONArray) value;
+      int len = a.length();
+      if (len == 0) {
+        this.out.append("[]");
+        return;
+      }
+      this.out.append('[');
+      if (len == 1) {
+        write(a.opt(0), indentFactor, indent);
+      } else {
+        int newindent = indent + indentFactor;
+        this.out.append('\n');
+        for (int i = 0; i < len; i += 1) {
+          if (i > 0) {
+            this.out.append(",\n");
+          }
+          indent(this.out, newindent);
+          write(a.opt(i), indentFactor, newindent);
+        }
+        this.out.append('\n');
+        indent(this.out, indent);
+      }
+      this.out.append(']');
+    } else if (value instanceof Map) {
+      write(new JSONObject((Map) value), indentFactor, indent);
+    } else if (value instanceof Collection) {
+      write(new JSONArray((Collection) value), indentFactor, indent);
+    } else if (value.getClass().isArray()) {
+      write(new JSONArray(value), indentFactor, indent);
+    } else if ((value instanceof Number) || (value instanceof Boolean)
+        || (value instanceof String)) {
+      write(value);
+    } else {
+      quote(value.toString(), this.out);
+    }
+  }
+
+  /**
+   * Write the digits of a long into the buffer and then to the destination.
+   */
+  private void writeLong(long l) throws IOException {
+    if (l == Long.MIN_VALUE) {
+      this.out.append("-9223372036854775808");
+      return;
+    }
+    long v = Math.abs(l);
+    int pos = this.digits.length;
+    do {
+      this.digits[--pos] = (char) ('0' + (v % 10));
+      v /= 10;
+    } while (v != 0);
+    if (l < 0) {
+      this.digits[--pos] = '-';
+    }
+    if (this.out instanceof Writer) {
+      ((Writer) this.out).write(this.digits, pos, this.digits.length - pos);
+    } else {
+      for (int i = pos; i < this.digits.length; i += 1) {
+        this.out.append(this.digits[i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,1142 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+/**
+ * 
+ * In-memory blog behind a <code>WordpressSimulator</code>. It implements the
+ * xmlrpc methods the bridge interfaces use, answers with structs shaped like
+ * those of WordPress 3.4, and keeps posts, pages, comments and categories for
+ * as long as it lives.
+ * 
+ * Calls are synchronized; the store is fast next to the latencies the
+ * simulator adds around it.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@SuppressWarnings({ "unchecked", "boxing" })
+final class SimulatedBlog {
+
+  /**
+   * Fault code for calls with bad credentials
+   */
+  static final int                         FORBIDDEN      = 403;
+
+  /**
+   * Fault code for calls with wrong parameters
+   */
+  static final int                         INVALID_PARAMS = -32602;
+
+  /**
+   * Methods the blog implements, <code>system.multicall</code> is up to the
+   * simulator
+   */
+  static final List<String>                METHODS;
+
+  /**
+   * Fault code for unknown methods
+   */
+  static final int                         NO_SUCH_METHOD = -32601;
+
+  /**
+   * Fault code for objects that don't exist
+   */
+  static final int                         NOT_FOUND      = 404;
+
+  private static final Map<String, String> COMMENT_STATUSES;
+
+  private static final String[]            CONTENT_FIELDS;
+
+  private static final int                 USER_ID        = 1;
+
+  private static final Map<String, String> PAGE_STATUSES;
+
+  private static final Map<String, String> POST_STATUSES;
+
+  static {
+    METHODS = Collections.unmodifiableList(Arrays.asList("blogger.deletePost",
+        "blogger.getTemplate", "blogger.getUserInfo", "blogger.getUsersBlogs",
+        "blogger.setTemplate", "demo.addTwoNumbers", "demo.sayHello",
+        "metaWeblog.editPost", "metaWeblog.getPost",
+        "metaWeblog.getRecentPosts", "metaWeblog.newMediaObject",
+        "metaWeblog.newPost", "mt.getTrackbackPings", "mt.supportedMethods",
+        "mt.supportedTextFilters", "pingback.extensions.getPingbacks",
+        "pingback.ping", "system.listMethods", "wp.deleteCategory",
+        "wp.deleteComment", "wp.deletePage", "wp.editComment", "wp.editPage",
+        "wp.getAuthors", "wp.getCategories", "wp.getComment",
+        "wp.getCommentCount", "wp.getComments", "wp.getCommentStatusList",
+        "wp.getPage", "wp.getPageList", "wp.getPages", "wp.getPageStatusList",
+        "wp.getPosts", "wp.getPostStatusList", "wp.newCategory",
+        "wp.newComment", "wp.newPage", "wp.suggestCategories"));
+    CONTENT_FIELDS = new String[] { "categories", "dateCreated",
+        "description", "mt_allow_comments", "mt_allow_pings", "mt_excerpt",
+        "mt_keywords", "mt_text_more", "title", "wp_page_order",
+        "wp_page_parent_id", "wp_password", "wp_slug" };
+    COMMENT_STATUSES = statuses("approve", "Approved", "hold", "Unapproved",
+        "spam", "Spam");
+    PAGE_STATUSES = statuses("draft", "Draft", "private", "Private",
+        "publish", "Published");
+    POST_STATUSES = statuses("draft", "Draft", "pending", "Pending Review",
+        "private", "Private", "publish", "Published");
+  }
+
+  private static Map<String, String> statuses(String... keyValues) {
+    Map<String, String> result = new TreeMap<String, String>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      result.put(keyValues[i], keyValues[i + 1]);
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  private static XmlRpcFault invalidParams() {
+    return new XmlRpcFault(INVALID_PARAMS,
+        "server error. wrong number of method parameters"); //$NON-NLS-1$
+  }
+
+  private static Object arg(List<Object> params, int i) throws XmlRpcFault {
+    if (i >= params.size())
+      throw invalidParams();
+    return params.get(i);
+  }
+
+  private static int intArg(List<Object> params, int i) throws XmlRpcFault {
+    Object v = arg(params, i);
+    if (v instanceof Number)
+      return ((Number) v).intValue();
+    try {
+      return Integer.parseInt(String.valueOf(v).trim());
+    } catch (NumberFormatException e) {
+      throw invalidParams();
+    }
+  }
+
+  private static XmlRpcStruct structArg(List<Object> params, int i)
+      throws XmlRpcFault {
+    Object v = arg(params, i);
+    if (v instanceof XmlRpcStruct)
+      return (XmlRpcStruct) v;
+    if (v == null)
+      return new XmlRpcStruct();
+    throw invalidParams();
+  }
+
+  private static int intValue(Object v, int defaultValue) {
+    if (v instanceof Number)
+      return ((Number) v).intValue();
+    if (v != null) {
+      try {
+        return Integer.parseInt(String.valueOf(v).trim());
+      } catch (NumberFormatException e) {
+        // use the default
+      }
+    }
+    return defaultValue;
+  }
+
+  @SuppressWarnings("nls")
+  private static boolean isPublish(Object v) {
+    if (v instanceof Boolean)
+      return ((Boolean) v).booleanValue();
+    return "true".equals(v) || "1".equals(v) || "publish".equals(v);
+  }
+
+  private static XmlRpcArray array(Object source) {
+    XmlRpcArray result = new XmlRpcArray();
+    result.addAll((List<Object>) source);
+    return result;
+  }
+
+  private static XmlRpcStruct copy(Map<String, Object> source) {
+    XmlRpcStruct result = new XmlRpcStruct();
+    result.putAll(source);
+    return result;
+  }
+
+  private final Map<String, Integer>                attachments;
+
+  private final String                              blogName;
+
+  private final NavigableMap<Integer, XmlRpcStruct> categories;
+
+  private final WordpressSimulator.Clock            clock;
+
+  private final NavigableMap<Integer, XmlRpcStruct> comments;
+
+  private int                                       nextCategoryId    = 1;
+
+  private int                                       nextCommentId     = 1;
+
+  private int                                       nextCustomFieldId = 1;
+
+  private int                                       nextPostId        = 1;
+
+  private final String                              password;
+
+  private final Map<Integer, List<String>>          pingbacks;
+
+  private boolean                                   postModified      = true;
+
+  private final NavigableMap<Integer, XmlRpcStruct> posts;
+
+  private String                                    template;
+
+  private final String                              url;
+
+  private final String                              username;
+
+  /**
+   * Creates a blog like a fresh WordPress installation has it, with a
+   * category, a post with a comment and a page.
+   * 
+   * @param username login of the only user
+   * @param password password of the only user
+   * @param url address of the blog, ending with a slash
+   * @param clock clock the posts and comments are dated with
+   */
+  @SuppressWarnings("nls")
+  SimulatedBlog(String username, String password, String url,
+      WordpressSimulator.Clock clock) {
+    this.clock = clock;
+    this.username = username;
+    this.password = password;
+    this.url = url;
+    this.blogName = "Simulated blog";
+    this.template = "<html><head><title><$BlogTitle$></title></head>"
+        + "<body><Blogger><$BlogItemBody$></Blogger></body></html>";
+    this.attachments = new TreeMap<String, Integer>();
+    this.categories = new TreeMap<Integer, XmlRpcStruct>();
+    this.comments = new TreeMap<Integer, XmlRpcStruct>();
+    this.pingbacks = new TreeMap<Integer, List<String>>();
+    this.posts = new TreeMap<Integer, XmlRpcStruct>();
+    XmlRpcStruct category = new XmlRpcStruct();
+    category.put("name", "Uncategorized");
+    addCategory(category);
+    XmlRpcStruct post = new XmlRpcStruct();
+    post.put("title", "Hello world!");
+    post.put("description", "Welcome to WordPress. This is your first post. "
+        + "Edit or delete it, then start blogging!");
+    int postId = create("post", post, Boolean.TRUE);
+    XmlRpcStruct comment = new XmlRpcStruct();
+    comment.put("author", "Mr WordPress");
+    comment.put("author_url", "http://wordpress.org/");
+    comment.put("content", "Hi, this is a comment.");
+    addComment(postId, comment);
+    XmlRpcStruct page = new XmlRpcStruct();
+    page.put("title", "Sample Page");
+    page.put("description", "This is an example page.");
+    create("page", page, Boolean.TRUE);
+  }
+
+  /**
+   * Adds posts with comments directly to the store, to give load tests
+   * something to read.
+   * 
+   * @param count number of posts to add
+   * @param commentsPerPost number of comments to add to each post
+   * @param body body of the posts
+   */
+  @SuppressWarnings("nls")
+  synchronized void populate(int count, int commentsPerPost, String body) {
+    for (int i = 0; i < count; i++) {
+      XmlRpcStruct post = new XmlRpcStruct();
+      post.put("title", "Post number " + this.nextPostId);
+      post.put("description", body);
+      post.put("mt_keywords", "simulated, wordpress");
+      int id = create("post", post, Boolean.TRUE);
+      for (int j = 0; j < commentsPerPost; j++) {
+        XmlRpcStruct comment = new XmlRpcStruct();
+        comment.put("author", "Commenter " + j);
+        comment.put("author_email", "commenter" + j + "@example.com");
+        comment.put("content", "Comment " + j + " on post " + id);
+        addComment(id, comment);
+      }
+    }
+  }
+
+  /**
+   * @param method name of the method
+   * @return whether the blog implements the method
+   */
+  static boolean hasMethod(String method) {
+    return METHODS.contains(method);
+  }
+
+  /**
+   * Calls a method on the blog.
+   * 
+   * @param method name of the method
+   * @param p parameters of the call
+   * @return the result of the method
+   * @throws XmlRpcFault the fault WordPress would answer with
+   */
+  @SuppressWarnings("nls")
+  synchronized Object call(String method, List<Object> p) throws XmlRpcFault {
+    switch (method) {
+    case "blogger.deletePost":
+      auth(p, 2);
+      delete(intArg(p, 1), "post");
+      return Boolean.TRUE;
+    case "blogger.getTemplate":
+      auth(p, 2);
+      return this.template;
+    case "blogger.getUserInfo":
+      auth(p, 1);
+      return userInfo();
+    case "blogger.getUsersBlogs":
+      auth(p, 1);
+      return usersBlogs();
+    case "blogger.setTemplate":
+      auth(p, 2);
+      this.template = String.valueOf(arg(p, 4));
+      return Boolean.TRUE;
+    case "demo.addTwoNumbers":
+      return Double.valueOf(doubleArg(p, 0) + doubleArg(p, 1));
+    case "demo.sayHello":
+      return "Hello!";
+    case "metaWeblog.editPost":
+      auth(p, 1);
+      edit(intArg(p, 0), "post", structArg(p, 3), arg(p, 4));
+      return Boolean.TRUE;
+    case "metaWeblog.getPost":
+      auth(p, 1);
+      return postStruct(find(intArg(p, 0), "post"));
+    case "metaWeblog.getRecentPosts":
+      auth(p, 1);
+      return recent("post", (p.size() > 3) ? intArg(p, 3) : 10);
+    case "metaWeblog.newMediaObject":
+      auth(p, 1);
+      return newMediaObject(structArg(p, 3));
+    case "metaWeblog.newPost":
+      auth(p, 1);
+      return String.valueOf(create("post", structArg(p, 3), arg(p, 4)));
+    case "mt.getTrackbackPings":
+      find(intArg(p, 0), null);
+      return new XmlRpcArray();
+    case "mt.supportedMethods":
+    case "system.listMethods":
+      XmlRpcArray methods = new XmlRpcArray();
+      methods.addAll(METHODS);
+      return methods;
+    case "mt.supportedTextFilters":
+      return new XmlRpcArray();
+    case "pingback.extensions.getPingbacks":
+      return getPingbacks(String.valueOf(arg(p, 0)));
+    case "pingback.ping":
+      return ping(String.valueOf(arg(p, 0)), String.valueOf(arg(p, 1)));
+    case "wp.deleteCategory":
+      auth(p, 1);
+      return deleteCategory(intArg(p, 3));
+    case "wp.deleteComment":
+      auth(p, 1);
+      findComment(intArg(p, 3));
+      this.comments.remove(Integer.valueOf(intArg(p, 3)));
+      return Boolean.TRUE;
+    case "wp.deletePage":
+      auth(p, 1);
+      delete(intArg(p, 3), "page");
+      return Boolean.TRUE;
+    case "wp.editComment":
+      auth(p, 1);
+      editComment(intArg(p, 3), structArg(p, 4));
+      return Boolean.TRUE;
+    case "wp.editPage":
+      auth(p, 2);
+      edit(intArg(p, 1), "page", structArg(p, 4), arg(p, 5));
+      return Boolean.TRUE;
+    case "wp.getAuthors":
+      auth(p, 1);
+      return authors();
+    case "wp.getCategories":
+      auth(p, 1);
+      return getCategories();
+    case "wp.getComment":
+      auth(p, 1);
+      return commentStruct(findComment(intArg(p, 3)));
+    case "wp.getCommentCount":
+      auth(p, 1);
+      return commentCount((p.size() > 3) ? intArg(p, 3) : -1);
+    case "wp.getComments":
+      auth(p, 1);
+      return getComments((p.size() > 3) ? structArg(p, 3)
+          : new XmlRpcStruct());
+    case "wp.getCommentStatusList":
+      auth(p, 1);
+      return statusStruct(COMMENT_STATUSES);
+    case "wp.getPage":
+      auth(p, 2);
+      return pageStruct(find(intArg(p, 1), "page"));
+    case "wp.getPageList":
+      auth(p, 1);
+      return pageList();
+    case "wp.getPages":
+      auth(p, 1);
+      return recent("page", (p.size() > 3) ? intArg(p, 3) : 10);
+    case "wp.getPageStatusList":
+      auth(p, 1);
+      return statusStruct(PAGE_STATUSES);
+    case "wp.getPosts":
+      auth(p, 1);
+      return getPosts((p.size() > 3) ? structArg(p, 3) : new XmlRpcStruct(),
+          (p.size() > 4) ? (List<Object>) arg(p, 4) : null);
+    case "wp.getPostStatusList":
+      auth(p, 1);
+      return statusStruct(POST_STATUSES);
+    case "wp.newCategory":
+      auth(p, 1);
+      return Integer.valueOf(newCategory(structArg(p, 3)));
+    case "wp.newComment":
+      auth(p, 1);
+      return Integer.valueOf(newComment(intArg(p, 3), structArg(p, 4)));
+    case "wp.newPage":
+      auth(p, 1);
+      return String.valueOf(create("page", structArg(p, 3), arg(p, 4)));
+    case "wp.suggestCategories":
+      auth(p, 1);
+      return suggestCategories(String.valueOf(arg(p, 3)),
+          (p.size() > 4) ? intArg(p, 4) : Integer.MAX_VALUE);
+    default:
+      throw new XmlRpcFault(NO_SUCH_METHOD, "server error. requested method "
+          + method + " does not exist.");
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private void auth(List<Object> p, int i) throws XmlRpcFault {
+    if (!this.username.equals(arg(p, i))
+        || !this.password.equals(arg(p, i + 1)))
+      throw new XmlRpcFault(FORBIDDEN, "Incorrect username or password.");
+  }
+
+  private static double doubleArg(List<Object> params, int i)
+      throws XmlRpcFault {
+    Object v = arg(params, i);
+    if (v instanceof Number)
+      return ((Number) v).doubleValue();
+    try {
+      return Double.parseDouble(String.valueOf(v).trim());
+    } catch (NumberFormatException e) {
+      throw invalidParams();
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private String link(XmlRpcStruct post) {
+    return this.url + ("page".equals(post.get("post_type")) ? "?page_id="
+        : "?p=") + post.get("postid");
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcStruct find(int id, String type) throws XmlRpcFault {
+    XmlRpcStruct post = this.posts.get(Integer.valueOf(id));
+    if ((post == null)
+        || ((type != null) && !type.equals(post.get("post_type"))))
+      throw new XmlRpcFault(NOT_FOUND, "Invalid post ID.");
+    return post;
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcStruct findByLink(String link) {
+    for (XmlRpcStruct post : this.posts.values()) {
+      if (link(post).equals(link))
+        return post;
+    }
+    return null;
+  }
+
+  @SuppressWarnings("nls")
+  private int create(String type, XmlRpcStruct content, Object publish) {
+    Integer id = Integer.valueOf(this.nextPostId++);
+    XmlRpcStruct post = new XmlRpcStruct();
+    post.put("postid", id);
+    post.put("post_type", type);
+    post.put("post_status", "draft");
+    post.put("title", "");
+    post.put("description", "");
+    post.put("mt_excerpt", "");
+    post.put("mt_text_more", "");
+    post.put("mt_keywords", "");
+    post.put("mt_allow_comments", Integer.valueOf(1));
+    post.put("mt_allow_pings", Integer.valueOf(1));
+    post.put("wp_slug", "");
+    post.put("wp_password", "");
+    post.put("wp_page_parent_id", Integer.valueOf(0));
+    post.put("wp_page_order", Integer.valueOf(0));
+    XmlRpcArray categories = new XmlRpcArray();
+    if ("post".equals(type))
+      categories.add("Uncategorized");
+    post.put("categories", categories);
+    post.put("custom_fields", new XmlRpcArray());
+    post.put("dateCreated", now());
+    update(post, content, publish);
+    this.posts.put(id, post);
+    return id.intValue();
+  }
+
+  private void edit(int id, String type, XmlRpcStruct content, Object publish)
+      throws XmlRpcFault {
+    update(find(id, type), content, publish);
+  }
+
+  @SuppressWarnings("nls")
+  private void update(XmlRpcStruct post, XmlRpcStruct content,
+      Object publish) {
+    for (String field : CONTENT_FIELDS) {
+      Object v = content.get(field);
+      if (v == null)
+        continue;
+      if (field.startsWith("mt_allow_") || field.startsWith("wp_page_"))
+        v = Integer.valueOf(intValue(v, 0));
+      else if ("categories".equals(field) && !(v instanceof List))
+        continue;
+      else if ("categories".equals(field))
+        v = array(v);
+      else if ("dateCreated".equals(field) && !(v instanceof Date))
+        continue;
+      post.put(field, v);
+    }
+    Object customFields = content.get("custom_fields");
+    if (customFields instanceof List)
+      updateCustomFields(post, (List<Object>) customFields);
+    Object status = content.get("page".equals(post.get("post_type"))
+        ? "page_status" : "post_status");
+    if (status == null)
+      status = content.get("post_status");
+    if (status != null)
+      post.put("post_status", status);
+    else if (isPublish(publish))
+      post.put("post_status", "publish");
+    if ("".equals(post.get("wp_slug")))
+      post.put("wp_slug", slug(String.valueOf(post.get("title")),
+          post.get("postid")));
+    post.put("modified", now());
+  }
+
+  /**
+   * Applies changes to custom fields the way WordPress does: fields with an
+   * id are changed or, without a key, deleted; fields without an id are
+   * added.
+   */
+  @SuppressWarnings("nls")
+  private void updateCustomFields(XmlRpcStruct post, List<Object> changes) {
+    XmlRpcArray fields = (XmlRpcArray) post.get("custom_fields");
+    for (Object o : changes) {
+      if (!(o instanceof Map))
+        continue;
+      Map<String, Object> change = (Map<String, Object>) o;
+      Object id = change.get("id");
+      if (id == null) {
+        XmlRpcStruct field = new XmlRpcStruct();
+        field.put("id", String.valueOf(this.nextCustomFieldId++));
+        field.put("key", String.valueOf(change.get("key")));
+        field.put("value", String.valueOf(change.get("value")));
+        fields.add(field);
+        continue;
+      }
+      for (int i = 0; i < fields.size(); i++) {
+        XmlRpcStruct field = (XmlRpcStruct) fields.get(i);
+        if (!field.get("id").equals(String.valueOf(id)))
+          continue;
+        if (change.get("key") == null) {
+          fields.remove(i);
+        } else {
+          field.put("key", String.valueOf(change.get("key")));
+          field.put("value", String.valueOf(change.get("value")));
+        }
+        break;
+      }
+    }
+  }
+
+  @SuppressWarnings("nls")
+  private static String slug(String title, Object id) {
+    StringBuilder result = new StringBuilder();
+    for (char c : title.toLowerCase().toCharArray()) {
+      if (Character.isLetterOrDigit(c))
+        result.append(c);
+      else if ((result.length() > 0)
+          && (result.charAt(result.length() - 1) != '-'))
+        result.append('-');
+    }
+    while ((result.length() > 0)
+        && (result.charAt(result.length() - 1) == '-'))
+      result.setLength(result.length() - 1);
+    return (result.length() == 0) ? String.valueOf(id) : result.toString();
+  }
+
+  private void delete(int id, String type) throws XmlRpcFault {
+    find(id, type);
+    Integer key = Integer.valueOf(id);
+    this.posts.remove(key);
+    this.pingbacks.remove(key);
+    for (XmlRpcStruct comment : new ArrayList<XmlRpcStruct>(
+        this.comments.values())) {
+      if (key.equals(comment.get("post_id"))) //$NON-NLS-1$
+        this.comments.remove(comment.get("comment_id")); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * @return a post the way <code>metaWeblog.getPost</code> returns it
+   */
+  @SuppressWarnings("nls")
+  private XmlRpcStruct postStruct(XmlRpcStruct post) {
+    XmlRpcStruct r = new XmlRpcStruct();
+    r.put("dateCreated", post.get("dateCreated"));
+    r.put("userid", String.valueOf(USER_ID));
+    r.put("postid", String.valueOf(post.get("postid")));
+    r.put("description", post.get("description"));
+    r.put("title", post.get("title"));
+    r.put("link", link(post));
+    r.put("permaLink", link(post));
+    r.put("categories", array(post.get("categories")));
+    r.put("mt_excerpt", post.get("mt_excerpt"));
+    r.put("mt_text_more", post.get("mt_text_more"));
+    r.put("mt_allow_comments", post.get("mt_allow_comments"));
+    r.put("mt_allow_pings", post.get("mt_allow_pings"));
+    r.put("mt_keywords", post.get("mt_keywords"));
+    r.put("wp_slug", post.get("wp_slug"));
+    r.put("wp_password", post.get("wp_password"));
+    r.put("wp_author_id", String.valueOf(USER_ID));
+    r.put("wp_author_display_name", this.username);
+    r.put("date_created_gmt", post.get("dateCreated"));
+    r.put("post_status", post.get("post_status"));
+    r.put("custom_fields", customFields(post));
+    r.put("wp_post_format", "standard");
+    r.put("sticky", Boolean.FALSE);
+    return r;
+  }
+
+  /**
+   * @return a page the way <code>wp.getPage</code> returns it
+   */
+  @SuppressWarnings("nls")
+  private XmlRpcStruct pageStruct(XmlRpcStruct page) {
+    XmlRpcStruct r = new XmlRpcStruct();
+    r.put("dateCreated", page.get("dateCreated"));
+    r.put("userid", String.valueOf(USER_ID));
+    r.put("page_id", page.get("postid"));
+    r.put("page_status", page.get("post_status"));
+    r.put("description", page.get("description"));
+    r.put("title", page.get("title"));
+    r.put("link", link(page));
+    r.put("permaLink", link(page));
+    r.put("categories", array(page.get("categories")));
+    r.put("excerpt", page.get("mt_excerpt"));
+    r.put("text_more", page.get("mt_text_more"));
+    r.put("mt_allow_comments", page.get("mt_allow_comments"));
+    r.put("mt_allow_pings", page.get("mt_allow_pings"));
+    r.put("wp_slug", page.get("wp_slug"));
+    r.put("wp_password", page.get("wp_password"));
+    r.put("wp_author", this.username);
+    Object parentId = page.get("wp_page_parent_id");
+    XmlRpcStruct parent = this.posts.get(parentId);
+    r.put("wp_page_parent_id", parentId);
+    r.put("wp_page_parent_title", (parent == null) ? "" : parent.get("title"));
+    r.put("wp_page_order", page.get("wp_page_order"));
+    r.put("wp_author_id", String.valueOf(USER_ID));
+    r.put("wp_author_display_name", this.username);
+    r.put("date_created_gmt", page.get("dateCreated"));
+    r.put("custom_fields", customFields(page));
+    r.put("wp_page_template", "default");
+    return r;
+  }
+
+  @SuppressWarnings("nls")
+  private static XmlRpcArray customFields(XmlRpcStruct post) {
+    XmlRpcArray result = new XmlRpcArray();
+    for (Object field : (List<Object>) post.get("custom_fields")) {
+      result.add(copy((XmlRpcStruct) field));
+    }
+    return result;
+  }
+
+  /**
+   * @return the categories and tags of a post the way
+   *         <code>wp.getPosts</code> returns them
+   */
+  @SuppressWarnings("nls")
+  private static XmlRpcArray terms(XmlRpcStruct post) {
+    XmlRpcArray result = new XmlRpcArray();
+    for (Object category : (List<Object>) post.get("categories")) {
+      result.add(term("category", String.valueOf(category)));
+    }
+    for (String tag : String.valueOf(post.get("mt_keywords")).split(",")) {
+      if (!tag.trim().isEmpty())
+        result.add(term("post_tag", tag.trim()));
+    }
+    return result;
+  }
+
+  @SuppressWarnings("nls")
+  private static XmlRpcStruct term(String taxonomy, String name) {
+    XmlRpcStruct term = new XmlRpcStruct();
+    term.put("taxonomy", taxonomy);
+    term.put("name", name);
+    term.put("slug", slug(name, name));
+    return term;
+  }
+
+  /**
+   * @return the newest posts of the type, newest first
+   */
+  @SuppressWarnings("nls")
+  private XmlRpcArray recent(String type, int count) {
+    XmlRpcArray result = new XmlRpcArray();
+    for (XmlRpcStruct post : this.posts.descendingMap().values()) {
+      if (result.size() >= count)
+        break;
+      if (type.equals(post.get("post_type")))
+        result.add("page".equals(type) ? pageStruct(post) : postStruct(post));
+    }
+    return result;
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcArray pageList() {
+    XmlRpcArray result = new XmlRpcArray();
+    for (XmlRpcStruct page : this.posts.values()) {
+      if (!"page".equals(page.get("post_type")))
+        continue;
+      XmlRpcStruct r = new XmlRpcStruct();
+      r.put("page_id", String.valueOf(page.get("postid")));
+      r.put("page_title", page.get("title"));
+      r.put("page_parent_id", String.valueOf(page.get("wp_page_parent_id")));
+      r.put("dateCreated", page.get("dateCreated"));
+      r.put("date_created_gmt", page.get("dateCreated"));
+      result.add(r);
+    }
+    return result;
+  }
+
+  /**
+   * Lists posts like <code>wp.getPosts</code>. The fields are taken as names
+   * of the returned members, or "post" for all of them. The posts are
+   * ordered by date, or by modification date with an orderby of "modified",
+   * newest first unless the order is "ASC".
+   */
+  @SuppressWarnings("nls")
+  private XmlRpcArray getPosts(XmlRpcStruct filter, List<Object> fields) {
+    String type = (filter.get("post_type") == null) ? "post" : String
+        .valueOf(filter.get("post_type"));
+    Object status = filter.get("post_status");
+    int number = intValue(filter.get("number"), 10);
+    int offset = intValue(filter.get("offset"), 0);
+    List<XmlRpcStruct> posts = new ArrayList<XmlRpcStruct>(this.posts
+        .descendingMap().values());
+    if ("modified".equals(filter.get("orderby"))) {
+      Collections.sort(posts, new Comparator<XmlRpcStruct>() {
+        @Override
+        public int compare(XmlRpcStruct a, XmlRpcStruct b) {
+          // stable, so posts modified at the same time stay newest first
+          return ((Date) b.get("modified")).compareTo((Date) a
+              .get("modified"));
+        }
+      });
+    }
+    if ("ASC".equalsIgnoreCase(String.valueOf(filter.get("order"))))
+      Collections.reverse(posts);
+    XmlRpcArray result = new XmlRpcArray();
+    for (XmlRpcStruct post : posts) {
+      if (result.size() >= number)
+        break;
+      if (!type.equals(post.get("post_type"))
+          || ((status != null) && !status.equals(post.get("post_status"))))
+        continue;
+      if (offset > 0) {
+        offset--;
+        continue;
+      }
+      XmlRpcStruct r = new XmlRpcStruct();
+      r.put("post_id", String.valueOf(post.get("postid")));
+      r.put("post_title", post.get("title"));
+      r.put("post_date", post.get("dateCreated"));
+      r.put("post_date_gmt", post.get("dateCreated"));
+      if (this.postModified) {
+        r.put("post_modified", post.get("modified"));
+        r.put("post_modified_gmt", post.get("modified"));
+      }
+      r.put("post_status", post.get("post_status"));
+      r.put("post_type", post.get("post_type"));
+      r.put("post_name", post.get("wp_slug"));
+      r.put("post_author", String.valueOf(USER_ID));
+      r.put("post_password", post.get("wp_password"));
+      r.put("post_excerpt", post.get("mt_excerpt"));
+      Object more = post.get("mt_text_more");
+      r.put("post_content", "".equals(more) ? post.get("description")
+          : post.get("description") + "<!--more-->" + more);
+      r.put("post_parent", String.valueOf(post.get("wp_page_parent_id")));
+      r.put("link", link(post));
+      r.put("menu_order", post.get("wp_page_order"));
+      r.put("comment_status",
+          (intValue(post.get("mt_allow_comments"), 0) == 1) ? "open"
+              : "closed");
+      r.put("ping_status", (intValue(post.get("mt_allow_pings"), 0) == 1)
+          ? "open" : "closed");
+      r.put("terms", terms(post));
+      r.put("custom_fields", customFields(post));
+      if ((fields != null) && !fields.isEmpty() && !fields.contains("post"))
+        r.keySet().retainAll(withPostId(fields));
+      result.add(r);
+    }
+    return result;
+  }
+
+  /**
+   * @param supported whether <code>wp.getPosts</code> returns modification
+   *          dates
+   */
+  synchronized void setPostModified(boolean supported) {
+    this.postModified = supported;
+  }
+
+  @SuppressWarnings("nls")
+  private static List<Object> withPostId(List<Object> fields) {
+    List<Object> result = new ArrayList<Object>(fields);
+    result.add("post_id");
+    return result;
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcStruct findComment(int id) throws XmlRpcFault {
+    XmlRpcStruct comment = this.comments.get(Integer.valueOf(id));
+    if (comment == null)
+      throw new XmlRpcFault(NOT_FOUND, "Invalid comment ID.");
+    return comment;
+  }
+
+  @SuppressWarnings("nls")
+  private int newComment(int postId, XmlRpcStruct content)
+      throws XmlRpcFault {
+    XmlRpcStruct post = find(postId, null);
+    if (intValue(post.get("mt_allow_comments"), 1) == 0)
+      throw new XmlRpcFault(FORBIDDEN,
+          "Sorry, comments are closed for this item.");
+    if ((content.get("content") == null)
+        || "".equals(String.valueOf(content.get("content")).trim()))
+      throw new XmlRpcFault(FORBIDDEN, "Comment is required.");
+    return addComment(postId, content);
+  }
+
+  @SuppressWarnings("nls")
+  private int addComment(int postId, XmlRpcStruct content) {
+    Integer id = Integer.valueOf(this.nextCommentId++);
+    XmlRpcStruct comment = new XmlRpcStruct();
+    comment.put("comment_id", id);
+    comment.put("post_id", Integer.valueOf(postId));
+    comment.put("parent",
+        Integer.valueOf(intValue(content.get("comment_parent"), 0)));
+    comment.put("user_id", Integer.valueOf(USER_ID));
+    comment.put("status", "approve");
+    comment.put("content", String.valueOf(content.get("content")));
+    comment.put("author", (content.get("author") == null) ? this.username
+        : content.get("author"));
+    comment.put("author_url", (content.get("author_url") == null) ? ""
+        : content.get("author_url"));
+    comment.put("author_email", (content.get("author_email") == null) ? ""
+        : content.get("author_email"));
+    comment.put("author_ip", "127.0.0.1");
+    comment.put("date_created_gmt", now());
+    this.comments.put(id, comment);
+    return id.intValue();
+  }
+
+  @SuppressWarnings("nls")
+  private void editComment(int id, XmlRpcStruct content) throws XmlRpcFault {
+    XmlRpcStruct comment = findComment(id);
+    Object status = content.get("status");
+    if (status != null) {
+      if (!COMMENT_STATUSES.containsKey(status))
+        throw new XmlRpcFault(401, "Invalid comment status.");
+      comment.put("status", status);
+    }
+    for (String field : new String[] { "content", "author", "author_url",
+        "author_email" }) {
+      if (content.get(field) != null)
+        comment.put(field, String.valueOf(content.get(field)));
+    }
+    if (content.get("date_created_gmt") instanceof Date)
+      comment.put("date_created_gmt", content.get("date_created_gmt"));
+  }
+
+  /**
+   * @return a comment the way <code>wp.getComment</code> returns it
+   */
+  @SuppressWarnings("nls")
+  private XmlRpcStruct commentStruct(XmlRpcStruct comment) {
+    XmlRpcStruct post = this.posts.get(comment.get("post_id"));
+    XmlRpcStruct r = new XmlRpcStruct();
+    r.put("date_created_gmt", comment.get("date_created_gmt"));
+    r.put("user_id", String.valueOf(comment.get("user_id")));
+    r.put("comment_id", String.valueOf(comment.get("comment_id")));
+    r.put("parent", String.valueOf(comment.get("parent")));
+    r.put("status", comment.get("status"));
+    r.put("content", comment.get("content"));
+    r.put("link", link(post) + "#comment-" + comment.get("comment_id"));
+    r.put("post_id", String.valueOf(comment.get("post_id")));
+    r.put("post_title", post.get("title"));
+    r.put("author", comment.get("author"));
+    r.put("author_url", comment.get("author_url"));
+    r.put("author_email", comment.get("author_email"));
+    r.put("author_ip", comment.get("author_ip"));
+    r.put("type", "");
+    return r;
+  }
+
+  /**
+   * Lists comments like <code>wp.getComments</code>, newest first. Without a
+   * status, approved and unapproved comments are listed.
+   */
+  @SuppressWarnings("nls")
+  private XmlRpcArray getComments(XmlRpcStruct filter) {
+    Object postId = filter.get("post_id");
+    int post = (postId == null) ? -1 : intValue(postId, -1);
+    Object status = filter.get("status");
+    if ("".equals(status))
+      status = null;
+    int number = intValue(filter.get("number"), 10);
+    int offset = intValue(filter.get("offset"), 0);
+    XmlRpcArray result = new XmlRpcArray();
+    for (XmlRpcStruct comment : this.comments.descendingMap().values()) {
+      if (result.size() >= number)
+        break;
+      if ((post != -1)
+          && (((Integer) comment.get("post_id")).intValue() != post))
+        continue;
+      Object s = comment.get("status");
+      if ((status == null) ? "spam".equals(s) : !status.equals(s))
+        continue;
+      if (offset > 0) {
+        offset--;
+        continue;
+      }
+      result.add(commentStruct(comment));
+    }
+    return result;
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcStruct commentCount(int postId) {
+    int approved = 0;
+    int awaiting = 0;
+    int spam = 0;
+    for (XmlRpcStruct comment : this.comments.values()) {
+      if ((postId != -1)
+          && (((Integer) comment.get("post_id")).intValue() != postId))
+        continue;
+      Object status = comment.get("status");
+      if ("approve".equals(status))
+        approved++;
+      else if ("hold".equals(status))
+        awaiting++;
+      else
+        spam++;
+    }
+    XmlRpcStruct r = new XmlRpcStruct();
+    r.put("approved", Integer.valueOf(approved));
+    r.put("awaiting_moderation", Integer.valueOf(awaiting));
+    r.put("spam", Integer.valueOf(spam));
+    r.put("total_comments", Integer.valueOf(approved + awaiting));
+    return r;
+  }
+
+  private static XmlRpcStruct statusStruct(Map<String, String> statuses) {
+    XmlRpcStruct r = new XmlRpcStruct();
+    r.putAll(statuses);
+    return r;
+  }
+
+  @SuppressWarnings("nls")
+  private int newCategory(XmlRpcStruct content) throws XmlRpcFault {
+    Object name = content.get("name");
+    if ((name == null) || "".equals(name))
+      throw new XmlRpcFault(500, "Sorry, the new category failed.");
+    for (XmlRpcStruct category : this.categories.values()) {
+      if (name.equals(category.get("name")))
+        throw new XmlRpcFault(500, "Sorry, the new category failed.");
+    }
+    return addCategory(content);
+  }
+
+  @SuppressWarnings("nls")
+  private int addCategory(XmlRpcStruct content) {
+    Object name = content.get("name");
+    Integer id = Integer.valueOf(this.nextCategoryId++);
+    XmlRpcStruct category = new XmlRpcStruct();
+    category.put("categoryId", id);
+    category.put("parentId",
+        Integer.valueOf(intValue(content.get("parent_id"), 0)));
+    category.put("name", name);
+    category.put("slug", (content.get("slug") == null) ? slug(
+        String.valueOf(name), id) : content.get("slug"));
+    category.put("description", (content.get("description") == null) ? ""
+        : content.get("description"));
+    this.categories.put(id, category);
+    return id.intValue();
+  }
+
+  private Boolean deleteCategory(int id) {
+    // the default category cannot be deleted
+    if ((id == 1) || (this.categories.remove(Integer.valueOf(id)) == null))
+      return Boolean.FALSE;
+    return Boolean.TRUE;
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcArray getCategories() {
+    XmlRpcArray result = new XmlRpcArray();
+    for (XmlRpcStruct category : this.categories.values()) {
+      Object id = category.get("categoryId");
+      XmlRpcStruct r = new XmlRpcStruct();
+      r.put("categoryId", String.valueOf(id));
+      r.put("parentId", String.valueOf(category.get("parentId")));
+      r.put("description", category.get("name"));
+      r.put("categoryDescription", category.get("description"));
+      r.put("categoryName", category.get("name"));
+      r.put("htmlUrl", this.url + "?cat=" + id);
+      r.put("rssUrl", this.url + "?feed=rss2&cat=" + id);
+      result.add(r);
+    }
+    return result;
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcArray suggestCategories(String prefix, int max) {
+    XmlRpcArray result = new XmlRpcArray();
+    String p = prefix.toLowerCase();
+    for (XmlRpcStruct category : this.categories.values()) {
+      if (result.size() >= max)
+        break;
+      String name = String.valueOf(category.get("name"));
+      if (!name.toLowerCase().startsWith(p))
+        continue;
+      XmlRpcStruct r = new XmlRpcStruct();
+      r.put("category_id", String.valueOf(category.get("categoryId")));
+      r.put("category_name", name);
+      result.add(r);
+    }
+    return result;
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcArray authors() {
+    XmlRpcStruct author = new XmlRpcStruct();
+    author.put("user_id", String.valueOf(USER_ID));
+    author.put("user_login", this.username);
+    author.put("display_name", this.username);
+    XmlRpcArray result = new XmlRpcArray();
+    result.add(author);
+    return result;
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcStruct userInfo() {
+    XmlRpcStruct r = new XmlRpcStruct();
+    r.put("nickname", this.username);
+    r.put("userid", String.valueOf(USER_ID));
+    r.put("url", this.url);
+    r.put("lastname", "");
+    r.put("firstname", "");
+    return r;
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcArray usersBlogs() {
+    XmlRpcStruct blog = new XmlRpcStruct();
+    blog.put("isAdmin", Boolean.TRUE);
+    blog.put("url", this.url);
+    blog.put("blogid", "1");
+    blog.put("blogName", this.blogName);
+    blog.put("xmlrpc", this.url + "xmlrpc.php");
+    XmlRpcArray result = new XmlRpcArray();
+    result.add(blog);
+    return result;
+  }
+
+  /**
+   * Keeps only the name of an uploaded file; the contents are counted by the
+   * simulator as they arrive, and are not needed after that.
+   */
+  @SuppressWarnings("nls")
+  private XmlRpcStruct newMediaObject(XmlRpcStruct data) throws XmlRpcFault {
+    Object name = data.get("name");
+    if ((name == null) || "".equals(name))
+      throw new XmlRpcFault(500, "Could not write file (Empty filename)");
+    String file = String.valueOf(name);
+    if (!isPublish(data.get("overwrite"))) {
+      int dot = file.lastIndexOf('.');
+      String base = (dot < 0) ? file : file.substring(0, dot);
+      String extension = (dot < 0) ? "" : file.substring(dot);
+      for (int i = 1; this.attachments.containsKey(file); i++) {
+        file = base + i + extension;
+      }
+    }
+    Integer id = this.attachments.get(file);
+    if (id == null) {
+      id = Integer.valueOf(this.nextPostId++);
+      this.attachments.put(file, id);
+    }
+    XmlRpcStruct r = new XmlRpcStruct();
+    r.put("id", String.valueOf(id));
+    r.put("file", file);
+    r.put("url", this.url + "wp-content/uploads/" + file);
+    r.put("type", (data.get("type") == null) ? "" : data.get("type"));
+    return r;
+  }
+
+  @SuppressWarnings("nls")
+  private String ping(String from, String to) throws XmlRpcFault {
+    XmlRpcStruct post = findByLink(to);
+    if (post == null)
+      throw new XmlRpcFault(33,
+          "The specified target URL cannot be used as a target.");
+    Integer id = (Integer) post.get("postid");
+    List<String> sources = this.pingbacks.get(id);
+    if (sources == null) {
+      sources = new ArrayList<String>();
+      this.pingbacks.put(id, sources);
+    }
+    if (sources.contains(from))
+      throw new XmlRpcFault(48, "The pingback has already been registered.");
+    sources.add(from);
+    return "Pingback from " + from + " to " + to
+        + " registered. Keep the web talking! :-)";
+  }
+
+  @SuppressWarnings("nls")
+  private XmlRpcArray getPingbacks(String link) throws XmlRpcFault {
+    XmlRpcStruct post = findByLink(link);
+    if (post == null)
+      throw new XmlRpcFault(32, "The specified target URL does not exist.");
+    XmlRpcArray result = new XmlRpcArray();
+    List<String> sources = this.pingbacks.get(post.get("postid"));
+    if (sources != null)
+      result.addAll(sources);
+    return result;
+  }
+
+  private Date now() {
+    return new Date(this.clock.currentTimeMillis());
+  }
+}
@@ -0,0 +1,804 @@
+/*
+ * 
+ * Wordpress-java
+ * http://code.google.com/p/wordpress-java/
+ * 
+ * Copyright 2012 Can Bican <can@bican.net>
+ * See the file 'COPYING' in the distribution for licensing terms.
+ * 
+ */
+package net.bican.wordpress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 
+ * A WordPress xmlrpc server that runs in the same JVM, backed by an in-memory
+ * blog. It answers the <code>wp.*</code>, <code>metaWeblog.*</code>,
+ * <code>blogger.*</code>, <code>mt.*</code> and <code>pingback.*</code>
+ * methods the library uses, and <code>system.multicall</code>, so that the
+ * client can be measured and tested without a real WordPress or a network.
+ * 
+ * Clients can reach it in-process through {@link #getTransport()}, or over
+ * loopback HTTP after {@link #start()}. Either way, every request can be
+ * slowed down by a {@link Latency} drawn per method, and by a bandwidth cap
+ * on both directions. Faults and dropped connections can be injected with a
+ * given probability to exercise error handling.
+ * 
+ * It lives with the tests, and reaches the benchmarks through the test jar,
+ * so it is not part of the library.
+ * 
+ * @author Can Bican &lt;can@bican.net&gt;
+ * 
+ */
+@SuppressWarnings("restriction")
+public class WordpressSimulator {
+
+  /**
+   * 
+   * The time the blog dates its posts and comments with.
+   * 
+   */
+  public abstract static class Clock {
+
+    /**
+     * The time of the system
+     */
+    public static final Clock SYSTEM = new Clock() {
+      @Override
+      public long currentTimeMillis() {
+        return System.currentTimeMillis();
+      }
+    };
+
+    /**
+     * @return the current time in milliseconds since the epoch
+     */
+    public abstract long currentTimeMillis();
+  }
+
+  /**
+   * 
+   * A distribution of server side latencies, in milliseconds.
+   * 
+   */
+  public abstract static class Latency {
+
+    /**
+     * No latency at all
+     */
+    public static final Latency NONE = fixed(0);
+
+    /**
+     * Latency that follows an exponential distribution, like waits in a
+     * queue do.
+     * 
+     * @param mean mean latency in milliseconds
+     * @return the distribution
+     */
+    public static Latency exponential(final double mean) {
+      return new Latency() {
+        @Override
+        public double next(Random random) {
+          return -mean * Math.log(1 - random.nextDouble());
+        }
+      };
+    }
+
+    /**
+     * @param millis the latency in milliseconds
+     * @return a distribution that is always the given value
+     */
+    public static Latency fixed(final double millis) {
+      return new Latency() {
+        @Override
+        public double next(Random random) {
+          return millis;
+        }
+      };
+    }
+
+    /**
+     * Latency that follows a log-normal distribution, which has the long
+     * tail real servers have.
+     * 
+     * @param median median latency in milliseconds
+     * @param p99 99th percentile latency in milliseconds, at least the median
+     * @return the distribution
+     */
+    public static Latency logNormal(double median, double p99) {
+      final double mu = Math.log(median);
+      // 2.326 is the 99th percentile of the standard normal distribution
+      final double sigma = (Math.log(p99) - mu) / 2.326;
+      return new Latency() {
+        @Override
+        public double next(Random random) {
+          return Math.exp(mu + sigma * random.nextGaussian());
+        }
+      };
+    }
+
+    /**
+     * @param min lowest latency in milliseconds
+     * @param max highest latency in milliseconds
+     * @return a distribution with every value in between equally likely
+     */
+    public static Latency uniform(final double min, final double max) {
+      return new Latency() {
+        @Override
+        public double next(Random random) {
+          return min + (max - min) * random.nextDouble();
+        }
+      };
+    }
+
+    /**
+     * @param random source of randomness
+     * @return the next latency in milliseconds
+     */
+    public abstract double next(Random random);
+  }
+
+  /**
+   * A fault or connection drop to inject.
+   */
+  private static final class Injection {
+    final int    code;
+
+    final String message;
+
+    final String method;
+
+    final double probability;
+
+    /**
+     * @param code fault code, or 0 to drop the connection
+     */
+    Injection(String method, double probability, int code, String message) {
+      this.method = method;
+      this.probability = probability;
+      this.code = code;
+      this.message = message;
+    }
+
+    boolean matches(String m) {
+      return (this.method == null) || this.method.equals(m);
+    }
+  }
+
+  /**
+   * Thrown to drop a connection without an answer.
+   */
+  private static final class DroppedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings("nls")
+    DroppedException(String method) {
+      super("Connection dropped by the simulator during " + method);
+    }
+  }
+
+  /**
+   * Holds the transfer of a stream to a number of bytes per second.
+   */
+  private static final class Throttle {
+    private long       bytes;
+
+    private final long bytesPerSecond;
+
+    private final long start = System.nanoTime();
+
+    Throttle(long bytesPerSecond) {
+      this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @return most bytes to pass at once, about 20ms worth
+     */
+    int chunk() {
+      return (int) Math.max(1, Math.min(65536, this.bytesPerSecond / 50));
+    }
+
+    void pass(int n) throws InterruptedIOException {
+      this.bytes += n;
+      long due = this.start + this.bytes * 1000000000L / this.bytesPerSecond;
+      long wait = due - System.nanoTime();
+      if (wait > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+    }
+  }
+
+  private static final class ThrottledInputStream extends FilterInputStream {
+    private final AtomicLong counter;
+
+    private final Throttle   throttle;
+
+    ThrottledInputStream(InputStream in, long bytesPerSecond,
+        AtomicLong counter) {
+      super(in);
+      this.throttle = (bytesPerSecond > 0) ? new Throttle(bytesPerSecond)
+          : null;
+      this.counter = counter;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0)
+        passed(1);
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, (this.throttle == null) ? len : Math.min(
+          len, this.throttle.chunk()));
+      if (n > 0)
+        passed(n);
+      return n;
+    }
+
+    private void passed(int n) throws InterruptedIOException {
+      this.counter.addAndGet(n);
+      if (this.throttle != null)
+        this.throttle.pass(n);
+    }
+  }
+
+  private static final class ThrottledOutputStream extends FilterOutputStream {
+    private final AtomicLong counter;
+
+    private final Throttle   throttle;
+
+    ThrottledOutputStream(OutputStream out, long bytesPerSecond,
+        AtomicLong counter) {
+      super(out);
+      this.throttle = (bytesPerSecond > 0) ? new Throttle(bytesPerSecond)
+          : null;
+      this.counter = counter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      this.out.write(b);
+      passed(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      int chunk = (this.throttle == null) ? len : this.throttle.chunk();
+      for (int pos = off; pos < off + len; pos += chunk) {
+        int n = Math.min(chunk, off + len - pos);
+        this.out.write(b, pos, n);
+        passed(n);
+      }
+    }
+
+    private void passed(int n) throws InterruptedIOException {
+      this.counter.addAndGet(n);
+      if (this.throttle != null)
+        this.throttle.pass(n);
+    }
+  }
+
+  /**
+   * Path the simulator answers on when it serves HTTP
+   */
+  @SuppressWarnings("nls")
+  public static final String                         PATH = "/xmlrpc.php";
+
+  private volatile long                              bandwidth;
+
+  private final SimulatedBlog                        blog;
+
+  private final AtomicLong                           bytesReceived;
+
+  private final AtomicLong                           bytesSent;
+
+  private final ConcurrentMap<String, AtomicInteger> calls;
+
+  private volatile Latency                           defaultLatency;
+
+  private ExecutorService                            executor;
+
+  private final List<Injection>                      injections;
+
+  private final Map<String, Latency>                 latencies;
+
+  private volatile boolean                           multicall;
+
+  private final String                               password;
+
+  private final Random                               random;
+
+  private HttpServer                                 server;
+
+  private final String                               username;
+
+  /**
+   * Creates a simulator with random latencies and faults that differ from run
+   * to run.
+   * 
+   * @param username login of the simulated user
+   * @param password password of the simulated user
+   */
+  public WordpressSimulator(String username, String password) {
+    this(username, password, System.nanoTime());
+  }
+
+  /**
+   * Creates a simulator whose random latencies and faults follow a seed, so
+   * that runs can be repeated.
+   * 
+   * @param username login of the simulated user
+   * @param password password of the simulated user
+   * @param seed seed of the random latencies and faults
+   */
+  public WordpressSimulator(String username, String password, long seed) {
+    this(username, password, seed, Clock.SYSTEM);
+  }
+
+  /**
+   * Creates a simulator whose blog takes the time from a clock, so that
+   * tests can tell when posts are modified.
+   * 
+   * @param username login of the simulated user
+   * @param password password of the simulated user
+   * @param seed seed of the random latencies and faults
+   * @param clock clock of the blog
+   */
+  @SuppressWarnings("nls")
+  public WordpressSimulator(String username, String password, long seed,
+      Clock clock) {
+    this.username = username;
+    this.password = password;
+    this.blog = new SimulatedBlog(username, password, "http://localhost/wp/",
+        clock);
+    this.random = new Random(seed);
+    this.bytesReceived = new AtomicLong();
+    this.bytesSent = new AtomicLong();
+    this.calls = new ConcurrentHashMap<String, AtomicInteger>();
+    this.latencies = new ConcurrentHashMap<String, Latency>();
+    this.injections = new CopyOnWriteArrayList<Injection>();
+    this.defaultLatency = Latency.NONE;
+    this.multicall = true;
+  }
+
+  /**
+   * Adds posts with comments to the blog, to give load tests something to
+   * read.
+   * 
+   * @param posts number of posts to add
+   * @param commentsPerPost number of comments on each post
+   * @param bodySize length of each post body in characters
+   */
+  @SuppressWarnings("nls")
+  public void populate(int posts, int commentsPerPost, int bodySize) {
+    StringBuilder body = new StringBuilder(bodySize);
+    while (body.length() < bodySize) {
+      body.append("Lorem <b>ipsum</b> dolor sit amet &amp; consectetur. ");
+    }
+    body.setLength(bodySize);
+    this.blog.populate(posts, commentsPerPost, body.toString());
+  }
+
+  /**
+   * @param latency latency of the methods that don't have their own
+   */
+  public void setLatency(Latency latency) {
+    this.defaultLatency = latency;
+  }
+
+  /**
+   * The latency is added once for each request, after the request is read
+   * and before the response is written. For <code>system.multicall</code>,
+   * only the latency of the multicall itself counts.
+   * 
+   * @param method name of the method
+   * @param latency latency of the method, <code>null</code> for the default
+   */
+  public void setLatency(String method, Latency latency) {
+    if (latency == null)
+      this.latencies.remove(method);
+    else
+      this.latencies.put(method, latency);
+  }
+
+  /**
+   * @param bytesPerSecond most bytes per second each request and response is
+   *          transferred with, 0 for no limit
+   */
+  public void setBandwidth(long bytesPerSecond) {
+    this.bandwidth = bytesPerSecond;
+  }
+
+  /**
+   * Makes a method answer with a fault, instead of being carried out.
+   * 
+   * @param method name of the method, <code>null</code> for all methods
+   * @param probability chance of a call getting the fault, between 0 and 1
+   * @param code fault code, not 0
+   * @param message fault message
+   */
+  public void injectFault(String method, double probability, int code,
+      String message) {
+    if (code == 0)
+      throw new IllegalArgumentException();
+    this.injections.add(new Injection(method, probability, code, message));
+  }
+
+  /**
+   * Makes a method close the connection without an answer, after the
+   * request has been read.
+   * 
+   * @param method name of the method, <code>null</code> for all methods
+   * @param probability chance of a call getting dropped, between 0 and 1
+   */
+  public void injectDrop(String method, double probability) {
+    this.injections.add(new Injection(method, probability, 0, null));
+  }
+
+  /**
+   * Removes all injected faults and drops.
+   */
+  public void clearInjections() {
+    this.injections.clear();
+  }
+
+  /**
+   * @param supported whether the simulator lists and answers
+   *          <code>system.multicall</code>, like a default WordPress does
+   */
+  public void setMulticallSupported(boolean supported) {
+    this.multicall = supported;
+  }
+
+  /**
+   * @param supported whether <code>wp.getPosts</code> returns
+   *          <code>post_modified</code> dates, like WordPress does; other
+   *          servers may leave them out
+   */
+  public void setPostModifiedSupported(boolean supported) {
+    this.blog.setPostModified(supported);
+  }
+
+  /**
+   * @param method name of the method
+   * @return number of calls made to the method, including those inside
+   *         multicalls
+   */
+  public int getCallCount(String method) {
+    AtomicInteger count = this.calls.get(method);
+    return (count == null) ? 0 : count.get();
+  }
+
+  /**
+   * @return number of calls made to each method, by method name
+   */
+  public Map<String, Integer> getCallCounts() {
+    Map<String, Integer> result = new TreeMap<String, Integer>();
+    for (Map.Entry<String, AtomicInteger> e : this.calls.entrySet()) {
+      result.put(e.getKey(), Integer.valueOf(e.getValue().get()));
+    }
+    return result;
+  }
+
+  /**
+   * @return bytes of requests read so far
+   */
+  public long getBytesReceived() {
+    return this.bytesReceived.get();
+  }
+
+  /**
+   * @return bytes of responses written so far
+   */
+  public long getBytesSent() {
+    return this.bytesSent.get();
+  }
+
+  /**
+   * Clears the call and byte counts.
+   */
+  public void resetStatistics() {
+    this.calls.clear();
+    this.bytesReceived.set(0);
+    this.bytesSent.set(0);
+  }
+
+  /**
+   * Returns a transport that hands the requests to the simulator directly,
+   * without a socket. The URL the calls are made to does not matter.
+   * 
+   * @return transport to the simulator
+   */
+  public XmlRpcTransport getTransport() {
+    return new XmlRpcTransport() {
+      @Override
+      public InputStream send(URL url, XmlRpcRequest request)
+          throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        OutputStream out = new ThrottledOutputStream(buffer,
+            WordpressSimulator.this.bandwidth,
+            WordpressSimulator.this.bytesReceived);
+        request.writeTo(out);
+        byte[] response = handle(new ByteArrayInputStream(buffer
+            .toByteArray()));
+        return new ThrottledInputStream(new ByteArrayInputStream(response),
+            WordpressSimulator.this.bandwidth,
+            WordpressSimulator.this.bytesSent);
+      }
+
+      @Override
+      public void close() {
+        // nothing to release
+      }
+    };
+  }
+
+  /**
+   * @return a client for the simulated user, connected through
+   *         {@link #getTransport()}
+   */
+  @SuppressWarnings("nls")
+  public Wordpress newClient() {
+    try {
+      return new Wordpress(this.username, this.password,
+          "http://localhost/wp" + PATH, getTransport());
+    } catch (MalformedURLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Starts serving HTTP on a free loopback port. The server writes the
+   * headers and the body of a response separately, so unless the JVM runs
+   * with <code>-Dsun.net.httpserver.nodelay=true</code>, each response may
+   * wait for the delayed ack of the client; pass it when latencies are
+   * measured.
+   * 
+   * @return the xmlrpc URL to connect to
+   * @throws IOException when the server cannot be started
+   */
+  @SuppressWarnings("nls")
+  public synchronized String start() throws IOException {
+    if (this.server != null)
+      return getUrl();
+    HttpServer s = HttpServer.create(new InetSocketAddress("127.0.0.1", 0),
+        64);
+    s.createContext(PATH, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        serve(exchange);
+      }
+    });
+    this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory(
+        "wordpress-simulator"));
+    s.setExecutor(this.executor);
+    s.start();
+    this.server = s;
+    return getUrl();
+  }
+
+  /**
+   * @return the xmlrpc URL of the HTTP server
+   * @throws IllegalStateException when the server is not started
+   */
+  @SuppressWarnings("nls")
+  public synchronized String getUrl() {
+    if (this.server == null)
+      throw new IllegalStateException("The simulator is not started");
+    return "http://127.0.0.1:" + this.server.getAddress().getPort() + PATH;
+  }
+
+  /**
+   * Stops serving HTTP. The in-process transport keeps working.
+   */
+  public synchronized void stop() {
+    if (this.server == null)
+      return;
+    this.server.stop(0);
+    this.executor.shutdownNow();
+    this.server = null;
+    this.executor = null;
+  }
+
+  @SuppressWarnings("nls")
+  private void serve(HttpExchange exchange) throws IOException {
+    try {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] response;
+      try {
+        response = handle(new ThrottledInputStream(exchange.getRequestBody(),
+            this.bandwidth, this.bytesReceived));
+      } catch (DroppedException e) {
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type",
+          "text/xml; charset=UTF-8");
+      exchange.sendResponseHeaders(200, response.length);
+      OutputStream out = new ThrottledOutputStream(exchange.getResponseBody(),
+          this.bandwidth, this.bytesSent);
+      out.write(response);
+      out.flush();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Reads a request, carries it out and waits for its latency.
+   * 
+   * @return the response to send
+   * @throws DroppedException when the connection is to be dropped
+   */
+  @SuppressWarnings("nls")
+  byte[] handle(InputStream in) throws IOException {
+    List<Object> params = new ArrayList<Object>();
+    String method;
+    XmlRpcResponseReader reader = new XmlRpcResponseReader(in);
+    try {
+      method = reader.readMethodCall(params);
+    } catch (XmlRpcException e) {
+      return response(new XmlRpcFault(-32700,
+          "parse error. not well formed"));
+    } finally {
+      reader.close();
+    }
+    Object result;
+    try {
+      result = call(method, params);
+    } catch (XmlRpcFault e) {
+      result = e;
+    }
+    sleep(method);
+    return response(result);
+  }
+
+  /**
+   * Carries out a call, with the faults and drops injected for it.
+   */
+  @SuppressWarnings({ "nls", "unchecked" })
+  private Object call(String method, List<Object> params) throws XmlRpcFault,
+      DroppedException {
+    count(method);
+    for (Injection injection : this.injections) {
+      if (!injection.matches(method) || (nextDouble() >= injection.probability))
+        continue;
+      if (injection.code == 0)
+        throw new DroppedException(method);
+      throw new XmlRpcFault(injection.code, injection.message);
+    }
+    if (XmlRpcBatch.MULTICALL.equals(method) && this.multicall)
+      return multicall(params);
+    Object result = this.blog.call(method, params);
+    if (this.multicall
+        && ("mt.supportedMethods".equals(method) || "system.listMethods"
+            .equals(method)))
+      ((XmlRpcArray) result).add(XmlRpcBatch.MULTICALL);
+    return result;
+  }
+
+  @SuppressWarnings({ "nls", "unchecked" })
+  private XmlRpcArray multicall(List<Object> params) throws XmlRpcFault,
+      DroppedException {
+    if (params.isEmpty() || !(params.get(0) instanceof List))
+      throw new XmlRpcFault(SimulatedBlog.INVALID_PARAMS,
+          "server error. wrong number of method parameters");
+    XmlRpcArray result = new XmlRpcArray();
+    for (Object o : (List<Object>) params.get(0)) {
+      Map<String, Object> call = (o instanceof Map) ? (Map<String, Object>) o
+          : new XmlRpcStruct();
+      Object name = call.get("methodName");
+      Object args = call.get("params");
+      try {
+        if (XmlRpcBatch.MULTICALL.equals(name))
+          throw new XmlRpcFault(-32600,
+              "Recursive calls to system.multicall are forbidden");
+        XmlRpcArray r = new XmlRpcArray();
+        r.add(call(String.valueOf(name), (args instanceof List)
+            ? (List<Object>) args : new ArrayList<Object>()));
+        result.add(r);
+      } catch (XmlRpcFault e) {
+        result.add(faultStruct(e));
+      }
+    }
+    return result;
+  }
+
+  private void count(String method) {
+    AtomicInteger count = this.calls.get(method);
+    if (count == null) {
+      AtomicInteger c = new AtomicInteger();
+      count = this.calls.putIfAbsent(method, c);
+      if (count == null)
+        count = c;
+    }
+    count.incrementAndGet();
+  }
+
+  private double nextDouble() {
+    return this.random.nextDouble();
+  }
+
+  private void sleep(String method) throws InterruptedIOException {
+    Latency latency = this.latencies.get(method);
+    if (latency == null)
+      latency = this.defaultLatency;
+    double millis = latency.next(this.random);
+    if (millis <= 0)
+      return;
+    try {
+      TimeUnit.NANOSECONDS.sleep((long) (millis * 1000000));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  @SuppressWarnings({ "nls", "unchecked" })
+  private static XmlRpcStruct faultStruct(XmlRpcFault fault) {
+    XmlRpcStruct f = new XmlRpcStruct();
+    f.put("faultCode", Integer.valueOf(fault.getErrorCode()));
+    f.put("faultString", fault.getMessage());
+    return f;
+  }
+
+  @SuppressWarnings("nls")
+  private static byte[] response(Object result) throws IOException {
+    boolean fault = result instanceof XmlRpcFault;
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    Writer w = new OutputStreamWriter(buffer, "UTF-8");
+    w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?><methodResponse>");
+    w.write(fault ? "<fault>" : "<params><param>");
+    new XmlRpcRequestWriter(w).writeValue(fault
+        ? faultStruct((XmlRpcFault) result) : result);
+    w.write(fault ? "</fault>" : "</param></params>");
+    w.write("</methodResponse>");
+    w.flush();
+    return buffer.toByteArray();
+  }
+}
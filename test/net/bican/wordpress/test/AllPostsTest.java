@@ -0,0 +1,104 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import net.bican.wordpress.Page;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.XmlRpcIterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "javadoc", "nls", "unchecked" })
+public class AllPostsTest {
+
+  private static final int POSTS = 250;
+
+  private StandInServer    server;
+
+  private Wordpress        wp;
+
+  @Before
+  public void setUp() throws Exception {
+    this.server = new StandInServer();
+    this.server.put("mt.supportedMethods", new XmlRpcArray());
+    this.server.put("wp.getPosts", new StandInServer.Responder() {
+      @Override
+      public Object respond(String request) {
+        int offset = StandInServer.member(request, "offset");
+        int number = StandInServer.member(request, "number");
+        XmlRpcArray posts = new XmlRpcArray();
+        // newest first
+        for (int id = POSTS - offset; (id > 0)
+            && (id > POSTS - offset - number); id--) {
+          XmlRpcStruct post = new XmlRpcStruct();
+          post.put("post_id", String.valueOf(id));
+          post.put("post_title", "Post " + id);
+          post.put("post_content", "Body<!--more-->More");
+          post.put("comment_status", "open");
+          XmlRpcArray terms = new XmlRpcArray();
+          XmlRpcStruct term = new XmlRpcStruct();
+          term.put("taxonomy", "category");
+          term.put("name", "News");
+          terms.add(term);
+          post.put("terms", terms);
+          posts.add(post);
+        }
+        return posts;
+      }
+    });
+    this.wp = new Wordpress("user", "pass", this.server.getUrl());
+  }
+
+  @After
+  public void tearDown() {
+    this.wp.getTransport().close();
+    this.server.stop();
+  }
+
+  @Test
+  public void testAllPosts() throws Exception {
+    int expected = POSTS;
+    for (Page post : this.wp.allPosts(100)) {
+      assertEquals(expected, post.getPostid().intValue());
+      assertEquals("Post " + expected, post.getTitle());
+      assertEquals("Body", post.getDescription());
+      assertEquals("More", post.getMt_text_more());
+      assertEquals(1, post.getMt_allow_comments().intValue());
+      assertEquals("News", post.getCategories().get(0));
+      expected--;
+    }
+    assertEquals(0, expected);
+    // the posts come with the list
+    assertEquals(3, this.server.count("wp.getPosts"));
+    assertEquals(0, this.server.count("metaWeblog.getPost"));
+  }
+
+  @Test
+  public void testExactPages() throws Exception {
+    int n = 0;
+    for (Page post : this.wp.allPosts(50)) {
+      assertNotNull(post.getPostid());
+      n++;
+    }
+    assertEquals(POSTS, n);
+    // the last, empty page tells that there are no more
+    assertEquals(6, this.server.count("wp.getPosts"));
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    XmlRpcIterator<Page> posts = this.wp.iterateAllPosts(10);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(POSTS - i, posts.next().getPostid().intValue());
+    }
+    posts.close();
+    assertFalse(posts.hasNext());
+    // at most the current page and the one read ahead
+    assertTrue(this.server.count("wp.getPosts") <= 2);
+  }
+}
@@ -0,0 +1,132 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.bican.wordpress.AsyncCallback;
+import net.bican.wordpress.AsyncWordpress;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.WordpressFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "javadoc", "nls", "unchecked" })
+public class AsyncWordpressTest {
+
+  private static final Pattern POST_ID   = Pattern.compile("<param><value>"
+                                             + "<i4>(\\d+)<");
+
+  private final AtomicInteger  active    = new AtomicInteger();
+
+  private AsyncWordpress       async;
+
+  private final AtomicInteger  maxActive = new AtomicInteger();
+
+  private StandInServer        server;
+
+  @Before
+  public void setUp() throws Exception {
+    this.server = new StandInServer();
+    this.server.put("metaWeblog.getPost", new StandInServer.Responder() {
+      @Override
+      public Object respond(String request) {
+        int now = AsyncWordpressTest.this.active.incrementAndGet();
+        int max;
+        while ((max = AsyncWordpressTest.this.maxActive.get()) < now) {
+          AsyncWordpressTest.this.maxActive.compareAndSet(max, now);
+        }
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          AsyncWordpressTest.this.active.decrementAndGet();
+        }
+        Matcher m = POST_ID.matcher(request);
+        assertTrue(m.find());
+        XmlRpcStruct p = new XmlRpcStruct();
+        p.put("postid", m.group(1));
+        p.put("title", "Post " + m.group(1));
+        return p;
+      }
+    });
+    this.server.put("wp.deleteComment", new XmlRpcFault(404,
+        "Invalid comment ID."));
+    this.async = new AsyncWordpress("user", "pass", this.server.getUrl(), 4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.async.shutdown();
+    this.server.stop();
+  }
+
+  @Test
+  public void testManyPendingCalls() throws Exception {
+    final int n = 100;
+    final CountDownLatch latch = new CountDownLatch(n);
+    final AtomicInteger failures = new AtomicInteger();
+    List<WordpressFuture<Page>> futures;
+    futures = new ArrayList<WordpressFuture<Page>>();
+    for (int i = 0; i < n; i++) {
+      final int id = i;
+      futures.add(this.async.getPost(i).addCallback(new AsyncCallback<Page>() {
+        @Override
+        public void completed(Page result) {
+          if (result.getPostid().intValue() != id)
+            failures.incrementAndGet();
+          latch.countDown();
+        }
+
+        @Override
+        public void failed(Throwable error) {
+          failures.incrementAndGet();
+          latch.countDown();
+        }
+      }));
+    }
+    assertTrue(latch.await(30, TimeUnit.SECONDS));
+    assertEquals(0, failures.get());
+    for (int i = 0; i < n; i++) {
+      assertEquals("Post " + i, futures.get(i).getResult().getTitle());
+    }
+    assertTrue(this.maxActive.get() <= 4);
+  }
+
+  @Test
+  public void testFault() throws Exception {
+    WordpressFuture<Boolean> f = this.async.deleteComment(1);
+    try {
+      f.getResult();
+      fail("fault expected");
+    } catch (XmlRpcFault e) {
+      assertEquals(404, e.getErrorCode());
+    }
+    // callbacks added after completion run immediately
+    final Throwable[] error = new Throwable[1];
+    f.addCallback(new AsyncCallback<Object>() {
+      @Override
+      public void completed(Object result) {
+        fail("failure expected");
+      }
+
+      @Override
+      public void failed(Throwable e) {
+        error[0] = e;
+      }
+    });
+    assertTrue(error[0] instanceof XmlRpcFault);
+  }
+}
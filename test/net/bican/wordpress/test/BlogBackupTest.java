@@ -0,0 +1,217 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.bican.wordpress.BlogBackup;
+import net.bican.wordpress.BlogBackup.Summary;
+import net.bican.wordpress.Comment;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.WordpressSimulator;
+import net.bican.wordpress.XmlRpcRequest;
+import net.bican.wordpress.XmlRpcTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcFault;
+
+@SuppressWarnings({ "javadoc", "nls", "boxing" })
+public class BlogBackupTest {
+
+  private WordpressSimulator source;
+
+  private WordpressSimulator target;
+
+  @Before
+  public void setUp() throws Exception {
+    this.source = new WordpressSimulator("admin", "secret", 1);
+    this.source.populate(30, 4, 500);
+    this.target = new WordpressSimulator("admin", "secret", 2);
+  }
+
+  @After
+  public void tearDown() {
+    this.source.stop();
+    this.target.stop();
+  }
+
+  private static String decompress(byte[] backup) throws IOException {
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(backup));
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try {
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        content.write(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    return content.toString("UTF-8");
+  }
+
+  @Test
+  public void testExportAndRestore() throws Exception {
+    Wordpress wp = this.source.newClient();
+    int parent = wp.newCategory("Parent", "", 0);
+    wp.newCategory("Child", "", parent);
+    Page page = new Page();
+    page.setTitle("Child page");
+    page.setDescription("Below the sample page");
+    page.setWp_page_parent_id(wp.getPages().get(0).getPage_id());
+    wp.newPage(page, "true");
+    Integer question = wp.newComment(5, null, "A question", "Asker", "",
+        "asker@example.com");
+    wp.newComment(5, question, "The answer", "Answerer", "", "");
+    Comment held = wp.getComment(question);
+    held.setStatus("hold");
+    wp.editComment(held);
+
+    BlogBackup backup = new BlogBackup(wp);
+    backup.setPageSize(7);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Summary exported = backup.export(out);
+    assertEquals(3, exported.getCount(BlogBackup.CATEGORY));
+    assertEquals(1, exported.getCount(BlogBackup.AUTHOR));
+    assertEquals(31, exported.getCount(BlogBackup.POST));
+    assertEquals(2, exported.getCount(BlogBackup.PAGE));
+    assertEquals(123, exported.getCount(BlogBackup.COMMENT));
+    String[] lines = decompress(out.toByteArray()).split("\n");
+    assertEquals(160, lines.length);
+    assertTrue(lines[0].contains("\"type\":\"category\""));
+    assertFalse(lines[0].contains("secret"));
+    assertTrue(lines[40].matches(".*\"\\d{8}T\\d\\d:\\d\\d:\\d\\dZ\".*"));
+
+    Wordpress restored = this.target.newClient();
+    Integer samplePage = restored.getPages().get(0).getPage_id();
+    Summary summary = new BlogBackup(restored).restore(new ByteArrayInputStream(
+        out.toByteArray()));
+    assertEquals(summary.toString(), 3, summary.getCount(BlogBackup.CATEGORY));
+    assertEquals(31, summary.getCount(BlogBackup.POST));
+    assertEquals(2, summary.getCount(BlogBackup.PAGE));
+    assertEquals(123, summary.getCount(BlogBackup.COMMENT));
+    assertEquals(0, summary.getFailed(BlogBackup.POST)
+        + summary.getFailed(BlogBackup.PAGE)
+        + summary.getFailed(BlogBackup.COMMENT));
+
+    // the new blog had a post, a page and a comment of its own, its default
+    // category is used instead of a copy
+    assertEquals(32, restored.getRecentPosts(100).size());
+    Page childPage = null;
+    for (Page p : restored.getPages()) {
+      if ("Child page".equals(p.getTitle()))
+        childPage = p;
+    }
+    assertNotNull(childPage);
+    Integer parentPage = childPage.getWp_page_parent_id();
+    assertFalse(samplePage.equals(parentPage));
+    assertEquals("Sample Page", restored.getPage(parentPage).getTitle());
+    assertEquals(3, restored.getCategories().size());
+    Map<String, Page> posts = new HashMap<String, Page>();
+    for (Page p : restored.getRecentPosts(100)) {
+      posts.put(p.getTitle(), p);
+    }
+    Page post = posts.get("Post number 5");
+    assertNotNull(post);
+    Page original = null;
+    for (Page p : wp.getRecentPosts(100)) {
+      if ("Post number 5".equals(p.getTitle()))
+        original = p;
+    }
+    assertEquals(original.getDateCreated(), post.getDateCreated());
+    List<Comment> comments = restored.getComments(null, post.getPostid(), 10,
+        0);
+    assertEquals(6, comments.size());
+    Comment answer = comments.get(0);
+    assertEquals("The answer", answer.getContent());
+    Comment restoredQuestion = restored.getComment(answer.getParent());
+    assertEquals("A question", restoredQuestion.getContent());
+    assertEquals("hold", restoredQuestion.getStatus());
+    assertEquals("asker@example.com", restoredQuestion.getAuthor_email());
+  }
+
+  @Test
+  public void testCommentsAddedDuringExport() throws Exception {
+    final Wordpress wp = this.source.newClient();
+    final XmlRpcTransport transport = this.source.getTransport();
+    // a comment arrives before each page after the first, shifting it
+    XmlRpcTransport adding = new XmlRpcTransport() {
+      private int pages = 0;
+
+      @Override
+      public InputStream send(URL url, XmlRpcRequest request)
+          throws IOException {
+        if ("wp.getComments".equals(request.getMethodName())
+            && (this.pages++ > 0)) {
+          try {
+            wp.newComment(5, null, "Late", "Late", "", "");
+          } catch (XmlRpcFault e) {
+            throw new IOException(e);
+          }
+        }
+        return transport.send(url, request);
+      }
+
+      @Override
+      public void close() {
+        transport.close();
+      }
+    };
+    int before = wp.getComments(null, null, 1000, 0).size();
+    BlogBackup backup = new BlogBackup(new Wordpress("admin", "secret",
+        "http://localhost/wp" + WordpressSimulator.PATH, adding));
+    backup.setPageSize(7);
+    Summary exported = backup.export(new ByteArrayOutputStream());
+    assertEquals(before, exported.getCount(BlogBackup.COMMENT));
+  }
+
+  @Test(timeout = 30000)
+  public void testFailingStream() throws Exception {
+    this.source.populate(300, 0, 5000);
+    // the export fills the queue of chunks while the stream is stuck
+    OutputStream out = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        try {
+          Thread.sleep(1000);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        throw new IOException("Disk full");
+      }
+    };
+    try {
+      new BlogBackup(this.source.newClient()).export(out);
+      fail();
+    } catch (IOException e) {
+      assertEquals("Disk full", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testInvalidRecords() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GZIPOutputStream gzip = new GZIPOutputStream(out);
+    gzip.write(("{\"type\":\"comment\",\"data\":{\"post_id\":\"999\","
+        + "\"content\":\"Lost\"}}\nnot json\n\n").getBytes("UTF-8"));
+    gzip.close();
+    Summary summary = new BlogBackup(this.target.newClient())
+        .restore(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(1, summary.getFailed(BlogBackup.COMMENT));
+    assertEquals(1, summary.getFailed(BlogBackup.INVALID));
+  }
+}
@@ -0,0 +1,165 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.bican.wordpress.BulkImporter;
+import net.bican.wordpress.BulkImporter.Result;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.WordpressSimulator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings({ "javadoc", "nls" })
+public class BulkImporterTest {
+
+  private File               directory;
+
+  private File               manifest;
+
+  private WordpressSimulator simulator;
+
+  private Wordpress          wp;
+
+  @Before
+  public void setUp() throws Exception {
+    this.simulator = new WordpressSimulator("admin", "secret", 1);
+    this.wp = this.simulator.newClient();
+    this.directory = File.createTempFile("import", "");
+    this.directory.delete();
+    this.directory.mkdir();
+    this.manifest = new File(this.directory.getPath() + ".manifest");
+    for (int i = 0; i < 25; i++) {
+      write("year" + (i % 3) + "/post" + i + ".txt", "title: Imported " + i
+          + "\npost_status: publish\n\ndescription: Body of\n post " + i
+          + "\n");
+    }
+    write("broken.txt", "no key on the first line\n");
+    write(".hidden/post.txt", "title: Hidden\n");
+  }
+
+  @After
+  public void tearDown() {
+    this.simulator.stop();
+    delete(this.directory);
+    this.manifest.delete();
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+  private void write(String path, String content) throws IOException {
+    File file = new File(this.directory, path);
+    file.getParentFile().mkdirs();
+    Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      out.write(content);
+    } finally {
+      out.close();
+    }
+  }
+
+  private Map<String, String> readManifest() throws IOException {
+    Map<String, String> result = new HashMap<String, String>();
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        new FileInputStream(this.manifest), "UTF-8"));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split("\t");
+        result.put(fields[0], fields[1]);
+      }
+    } finally {
+      in.close();
+    }
+    return result;
+  }
+
+  @Test
+  public void testImport() throws Exception {
+    BulkImporter importer = new BulkImporter(this.wp);
+    importer.setUploaders(2);
+    importer.setParsers(3);
+    importer.setBatchSize(5);
+    importer.setQueueSize(2);
+    Result result = importer.run(this.directory, this.manifest);
+    assertEquals(25, result.getImported());
+    assertEquals(1, result.getFailed());
+    assertEquals(0, result.getSkipped());
+    assertTrue(this.simulator.getCallCount("system.multicall") > 0);
+    assertTrue(this.simulator.getCallCount("system.multicall") < 25);
+
+    Map<String, String> ids = readManifest();
+    assertEquals(26, ids.size());
+    assertEquals("-", ids.get("broken.txt"));
+    for (int i = 0; i < 25; i++) {
+      String id = ids.get("year" + (i % 3) + "/post" + i + ".txt");
+      assertEquals("Imported " + i, this.wp.getPost(Integer.parseInt(id))
+          .getTitle());
+    }
+
+    // a second run only retries what failed
+    result = new BulkImporter(this.wp).run(this.directory, this.manifest);
+    assertEquals(0, result.getImported());
+    assertEquals(1, result.getFailed());
+    assertEquals(25, result.getSkipped());
+    assertEquals(26, this.wp.getRecentPosts(100).size());
+  }
+
+  @Test
+  public void testWithoutMulticall() throws Exception {
+    this.simulator.setMulticallSupported(false);
+    this.simulator.injectFault("metaWeblog.newPost", 0.2, 500, "busy");
+    BulkImporter importer = new BulkImporter(this.simulator.newClient());
+    importer.setBatchSize(4);
+    Result result = importer.run(this.directory, this.manifest);
+    assertEquals(26, result.getImported() + result.getFailed());
+    assertTrue(result.getFailed() > 1);
+    assertEquals(25, this.simulator.getCallCount("metaWeblog.newPost"));
+    // the posts that failed are imported on the next run
+    this.simulator.clearInjections();
+    result = new BulkImporter(this.wp).run(this.directory, this.manifest);
+    assertEquals(25, result.getImported() + result.getSkipped());
+    assertEquals(26, this.wp.getRecentPosts(100).size());
+  }
+
+  @Test
+  public void testDroppedConnections() throws Exception {
+    this.simulator.setMulticallSupported(false);
+    this.simulator.injectDrop("metaWeblog.newPost", 0.2);
+    BulkImporter importer = new BulkImporter(this.simulator.newClient());
+    importer.setUploaders(1);
+    importer.setBatchSize(4);
+    importer.setQueueSize(25);
+    Result result = importer.run(this.directory, this.manifest);
+    assertTrue(result.getFailed() > 1);
+    assertEquals(26, result.getImported() + result.getFailed());
+    // posts created before a drop in the same batch are not lost
+    assertEquals(result.getImported() + 1, this.wp.getRecentPosts(100).size());
+    int listed = 0;
+    for (String id : readManifest().values()) {
+      if (!"-".equals(id))
+        listed++;
+    }
+    assertEquals(result.getImported(), listed);
+  }
+}
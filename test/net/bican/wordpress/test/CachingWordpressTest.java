@@ -0,0 +1,121 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.bican.wordpress.CachingWordpress;
+import net.bican.wordpress.Category;
+import net.bican.wordpress.XmlRpcBatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "javadoc", "nls", "unchecked" })
+public class CachingWordpressTest {
+
+  private StandInServer    server;
+
+  private CachingWordpress wp;
+
+  @Before
+  public void setUp() throws Exception {
+    this.server = new StandInServer();
+    XmlRpcArray categories = new XmlRpcArray();
+    XmlRpcStruct c = new XmlRpcStruct();
+    c.put("categoryId", "1");
+    c.put("categoryName", "News");
+    categories.add(c);
+    this.server.put("wp.getCategories", categories);
+    this.server.put("wp.newCategory", Integer.valueOf(2));
+    XmlRpcStruct count = new XmlRpcStruct();
+    count.put("approved", Integer.valueOf(3));
+    this.server.put("wp.getCommentCount", count);
+    this.server.put("wp.deletePage", Boolean.TRUE);
+    this.wp = new CachingWordpress("user", "pass", this.server.getUrl());
+  }
+
+  @After
+  public void tearDown() {
+    this.wp.getTransport().close();
+    this.server.stop();
+  }
+
+  @Test
+  public void testHitsAndInvalidation() throws Exception {
+    List<Category> first = this.wp.getCategories();
+    first.clear();
+    List<Category> second = this.wp.getCategories();
+    assertEquals(1, second.size());
+    assertEquals("News", second.get(0).getCategoryName());
+    assertEquals(1, this.server.count("wp.getCategories"));
+    assertEquals(1, this.wp.getStatistics().getHits());
+    assertEquals(1, this.wp.getStatistics().getMisses());
+    assertEquals(2, this.wp.newCategory("Sports", "sports", 0));
+    this.wp.getCategories();
+    assertEquals(2, this.server.count("wp.getCategories"));
+    this.wp.invalidate("getCategories");
+    this.wp.getCategories();
+    assertEquals(3, this.server.count("wp.getCategories"));
+  }
+
+  @Test
+  public void testBatchInvalidation() throws Exception {
+    this.wp.getCategories();
+    this.wp.getCommentsCount(Integer.valueOf(-1));
+    XmlRpcBatch batch = this.wp.newBatch();
+    batch.newCategory("Sports", "sports", 0);
+    batch.execute();
+    this.wp.getCategories();
+    this.wp.getCommentsCount(Integer.valueOf(-1));
+    assertEquals(2, this.server.count("wp.getCategories"));
+    assertEquals(1, this.server.count("wp.getCommentCount"));
+    batch.deletePage(5, "true");
+    batch.execute();
+    this.wp.getCommentsCount(Integer.valueOf(-1));
+    assertEquals(2, this.server.count("wp.getCommentCount"));
+    this.wp.deletePage(6, "true");
+    this.wp.getCommentsCount(Integer.valueOf(-1));
+    assertEquals(3, this.server.count("wp.getCommentCount"));
+  }
+
+  @Test
+  public void testTimeToLive() throws Exception {
+    this.wp.setTimeToLive("getCategories", 50, TimeUnit.MILLISECONDS);
+    this.wp.getCategories();
+    this.wp.getCategories();
+    assertEquals(1, this.server.count("wp.getCategories"));
+    Thread.sleep(100);
+    this.wp.getCategories();
+    assertEquals(2, this.server.count("wp.getCategories"));
+    this.wp.setTimeToLive("getCategories", 0, TimeUnit.MILLISECONDS);
+    this.wp.getCategories();
+    this.wp.getCategories();
+    assertEquals(4, this.server.count("wp.getCategories"));
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    this.wp.setMaxEntries(2);
+    for (int i = 1; i <= 3; i++) {
+      assertEquals(3, this.wp.getCommentsCount(Integer.valueOf(i))
+          .getApproved().intValue());
+    }
+    assertEquals(1, this.wp.getStatistics().getEvictions());
+    assertEquals(2, this.wp.getStatistics().getSize());
+    // 1 was the least recently used one
+    this.wp.getCommentsCount(Integer.valueOf(3));
+    this.wp.getCommentsCount(Integer.valueOf(1));
+    assertEquals(4, this.server.count("wp.getCommentCount"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownMethod() {
+    this.wp.invalidate("getPost");
+  }
+}
@@ -0,0 +1,81 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import net.bican.wordpress.Comment;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.XmlRpcIterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "javadoc", "nls", "unchecked" })
+public class CommentStreamTest {
+
+  private static final int COMMENTS = 95;
+
+  private StandInServer    server;
+
+  private Wordpress        wp;
+
+  @Before
+  public void setUp() throws Exception {
+    this.server = new StandInServer();
+    this.server.put("wp.getComments", new StandInServer.Responder() {
+      @Override
+      public Object respond(String request) {
+        assertTrue(request.contains("<name>status</name><value><string>"
+            + "hold</string>"));
+        int offset = StandInServer.member(request, "offset");
+        int number = StandInServer.member(request, "number");
+        XmlRpcArray comments = new XmlRpcArray();
+        for (int i = offset; i < Math.min(COMMENTS, offset + number); i++) {
+          XmlRpcStruct c = new XmlRpcStruct();
+          c.put("comment_id", String.valueOf(i));
+          c.put("status", "hold");
+          comments.add(c);
+        }
+        return comments;
+      }
+    });
+    this.wp = new Wordpress("user", "pass", this.server.getUrl());
+  }
+
+  @After
+  public void tearDown() {
+    this.wp.getTransport().close();
+    this.server.stop();
+  }
+
+  @Test
+  public void testAllComments() throws Exception {
+    int expected = 0;
+    for (Comment c : this.wp.allComments("hold", null, 20)) {
+      assertEquals(expected++, c.getComment_id().intValue());
+    }
+    assertEquals(COMMENTS, expected);
+    assertEquals(5, this.server.count("wp.getComments"));
+  }
+
+  @Test
+  public void testReadAheadAndEarlyStop() throws Exception {
+    XmlRpcIterator<Comment> comments = this.wp.iterateComments("hold", null,
+        20);
+    assertEquals(0, comments.next().getComment_id().intValue());
+    // the second page is requested while the first one is consumed
+    for (int i = 0; i < 100; i++) {
+      if (this.server.count("wp.getComments") == 2)
+        break;
+      Thread.sleep(10);
+    }
+    assertEquals(2, this.server.count("wp.getComments"));
+    comments.close();
+    assertFalse(comments.hasNext());
+    Thread.sleep(50);
+    assertEquals(2, this.server.count("wp.getComments"));
+  }
+}
@@ -0,0 +1,157 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import net.bican.wordpress.DeltaSync;
+import net.bican.wordpress.DeltaSync.Changes;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.WordpressSimulator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings({ "javadoc", "nls", "boxing" })
+public class DeltaSyncTest {
+
+  private static final class ManualClock extends WordpressSimulator.Clock {
+    private long now;
+
+    ManualClock(long now) {
+      this.now = now;
+    }
+
+    synchronized void advance(long millis) {
+      this.now += millis;
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+      return this.now;
+    }
+  }
+
+  private ManualClock        clock;
+
+  private WordpressSimulator simulator;
+
+  private File               state;
+
+  private Wordpress          wp;
+
+  @Before
+  public void setUp() throws Exception {
+    // the blog was filled a while before the first sync
+    this.clock = new ManualClock(System.currentTimeMillis() - 10000);
+    this.simulator = new WordpressSimulator("admin", "secret", 1, this.clock);
+    this.simulator.populate(120, 2, 200);
+    this.wp = this.simulator.newClient();
+    this.state = File.createTempFile("sync", ".state");
+  }
+
+  @After
+  public void tearDown() {
+    this.simulator.stop();
+    this.state.delete();
+  }
+
+  private void change() throws Exception {
+    // the change is in a later second than the posts of the blog
+    this.clock.advance(2000);
+    Page post = this.wp.getPost(10);
+    post.setTitle("Changed title");
+    this.wp.editPost(10, post, "true");
+    Page added = new Page();
+    added.setTitle("Added post");
+    added.setDescription("New");
+    this.wp.newPost(added, true);
+    this.wp.deletePost(20, "true");
+    this.wp.newComment(30, null, "New comment", "Reader", "", "");
+  }
+
+  @Test
+  public void testSync() throws Exception {
+    DeltaSync sync = new DeltaSync(this.wp);
+    sync.setPageSize(25);
+    Changes changes = sync.sync();
+    assertEquals(121, changes.getAdded().size());
+    assertEquals(0, changes.getChanged().size());
+    assertEquals(241, changes.getComments().size());
+    assertEquals(121, sync.size());
+
+    change();
+    changes = sync.sync();
+    assertEquals(changes.toString(), 1, changes.getAdded().size());
+    assertEquals("Added post", changes.getAdded().get(0).getTitle());
+    assertEquals(1, changes.getChanged().size());
+    assertEquals("Changed title", changes.getChanged().get(0).getTitle());
+    assertTrue(changes.isDeletionsChecked());
+    assertEquals(Arrays.asList(20), changes.getDeleted());
+    assertEquals(1, changes.getComments().size());
+    assertEquals("New comment", changes.getComments().get(0).getContent());
+    assertEquals(121, sync.size());
+
+    changes = sync.sync();
+    assertEquals(changes.toString(), 0, changes.getAdded().size()
+        + changes.getChanged().size() + changes.getDeleted().size()
+        + changes.getComments().size());
+    // only the posts modified in the second of the last change are checked
+    assertTrue(changes.toString(), changes.getDownloaded() <= 2);
+  }
+
+  @Test
+  public void testWithoutDeletions() throws Exception {
+    DeltaSync sync = new DeltaSync(this.wp);
+    sync.setPageSize(25);
+    sync.setClockSkew(0);
+    sync.sync();
+    change();
+    this.simulator.resetStatistics();
+    sync.setDetectDeletions(false);
+    Changes changes = sync.sync();
+    assertFalse(changes.isDeletionsChecked());
+    assertEquals(1, changes.getAdded().size());
+    assertEquals(1, changes.getChanged().size());
+    assertEquals(0, changes.getDeleted().size());
+    // the first page of the listing reaches the unchanged posts
+    assertEquals(1, this.simulator.getCallCount("wp.getPosts"));
+    assertEquals(2, this.simulator.getCallCount("metaWeblog.getPost"));
+    assertEquals(25, changes.getListed());
+  }
+
+  @Test
+  public void testWithoutModifiedDates() throws Exception {
+    this.simulator.setPostModifiedSupported(false);
+    DeltaSync sync = new DeltaSync(this.wp);
+    sync.setDetectDeletions(false);
+    assertEquals(121, sync.sync().getAdded().size());
+    change();
+    this.simulator.resetStatistics();
+    Changes changes = sync.sync();
+    assertTrue(changes.isDeletionsChecked());
+    assertEquals(1, changes.getAdded().size());
+    assertEquals(1, changes.getChanged().size());
+    assertEquals(Arrays.asList(20), changes.getDeleted());
+    assertEquals(3, this.simulator.getCallCount("metaWeblog.getPost"));
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    DeltaSync sync = new DeltaSync(this.wp);
+    sync.sync();
+    sync.save(this.state);
+    change();
+    DeltaSync loaded = new DeltaSync(this.wp);
+    loaded.load(this.state);
+    assertEquals(121, loaded.size());
+    Changes changes = loaded.sync();
+    assertEquals(1, changes.getAdded().size());
+    assertEquals(1, changes.getChanged().size());
+    assertEquals(Arrays.asList(20), changes.getDeleted());
+    assertEquals(1, changes.getComments().size());
+  }
+}
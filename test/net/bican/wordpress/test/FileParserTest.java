@@ -0,0 +1,77 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+import net.bican.wordpress.FileParser;
+import net.bican.wordpress.InvalidPostFormatException;
+import net.bican.wordpress.Page;
+
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "javadoc", "nls" })
+public class FileParserTest {
+
+  private static XmlRpcStruct parse(String s) throws Exception {
+    return FileParser.parseFile(new BufferedReader(new StringReader(s)));
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    XmlRpcStruct s = parse("# a post\r\ntitle: A title \r\n\r\n"
+        + "categories: [\"News\",\n\"Blog\"]\nwp_password: null\n"
+        + "description: first line\n# not a comment of the body\n"
+        + "second line, not: a key\r  third line\n");
+    assertEquals("A title", s.get("title"));
+    assertEquals("[News, Blog]", ((XmlRpcArray) s.get("categories"))
+        .toString());
+    assertFalse(s.containsKey("wp_password"));
+    // the lines are joined without the line breaks
+    assertEquals("first linesecond line, not: a key  third line", s
+        .get("description"));
+    assertEquals(3, s.size());
+    assertEquals("", parse("mt_excerpt:").get("mt_excerpt"));
+    assertTrue(parse("\n# nothing\n").isEmpty());
+    try {
+      parse("# no key\nbody first\ntitle: x");
+      fail("a value without a key is parsed");
+    } catch (InvalidPostFormatException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testLargeFile() throws Exception {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 200000; i++) {
+      body.append("line ").append(i).append(" of the body\n");
+    }
+    File file = File.createTempFile("post", ".txt");
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        out.write(("title: çöş\ndescription: " + body)
+            .getBytes("UTF-8"));
+      } finally {
+        out.close();
+      }
+      Page page = Page.fromFile(file);
+      assertEquals("çöş", page.getTitle());
+      assertEquals(body.toString().replace("\n", "").trim(), page
+          .getDescription());
+      XmlRpcStruct s = FileParser.parseFile(file, Charset
+          .forName("ISO-8859-1"));
+      assertEquals(6, ((String) s.get("title")).length());
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import net.bican.wordpress.CustomField;
+import net.bican.wordpress.FileParser;
+import net.bican.wordpress.JSONConvertable;
+import net.bican.wordpress.JSONConvertableRegistry;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "javadoc", "nls" })
+public class JSONConvertableRegistryTest {
+
+  public static class Note implements JSONConvertable {
+    String text;
+
+    @Override
+    public void fromJSONObject(JSONObject jsonObject) {
+      this.text = jsonObject.optString("text");
+    }
+  }
+
+  @Test
+  public void testResolve() throws Exception {
+    JSONConvertableRegistry registry = JSONConvertableRegistry.getDefault();
+    assertTrue(registry.forField("custom_fields").newInstance()
+        instanceof CustomField);
+    // fields that are not registered are resolved from their names
+    JSONConvertableRegistry.Factory factory = registry.forField("custom_field");
+    assertTrue(factory.newInstance() instanceof CustomField);
+    assertSame(factory, registry.forField("custom_field"));
+    for (String field : new String[] { "recipes", "recipes", "pages" }) {
+      try {
+        registry.forField(field);
+        fail(field + " is resolved");
+      } catch (ClassNotFoundException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    JSONConvertableRegistry.getDefault().register("notes",
+        new JSONConvertableRegistry.Factory() {
+          @Override
+          public JSONConvertable newInstance() {
+            return new Note();
+          }
+        });
+    XmlRpcStruct s = FileParser.parseFile(new BufferedReader(
+        new StringReader("title: t\nnotes: [{\"text\": \"first\"},\n"
+            + "{\"text\": \"second\"}]\n")));
+    XmlRpcArray notes = (XmlRpcArray) s.get("notes");
+    assertEquals(2, notes.size());
+    assertEquals("second", ((Note) notes.get(1)).text);
+  }
+}
@@ -0,0 +1,62 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+@SuppressWarnings({ "javadoc", "nls", "rawtypes" })
+public class JSONObjectTest {
+
+  private static List<Object> keys(JSONObject o) {
+    List<Object> result = new ArrayList<Object>();
+    for (Iterator i = o.keys(); i.hasNext();) {
+      result.add(i.next());
+    }
+    return result;
+  }
+
+  @Test
+  public void testOrder() throws Exception {
+    JSONObject o = new JSONObject("{\"value\":\"v\",\"key\":\"k\",\"id\":1}");
+    assertEquals("{\"value\":\"v\",\"key\":\"k\",\"id\":1}", o.toString());
+    o.put("key", "changed");
+    o.remove("value");
+    o.put("value", "again");
+    assertEquals("[key, id, value]", keys(o).toString());
+    assertEquals("changed", o.get("key"));
+    // the indented form keeps its sorted keys
+    assertEquals("{\"id\": 1,\"key\": \"changed\",\"value\": \"again\"}",
+        o.toString(0).replace("\n", ""));
+  }
+
+  @Test
+  public void testManyKeys() throws Exception {
+    JSONObject o = new JSONObject();
+    for (int i = 0; i < 1000; i++) {
+      o.put("k" + i, i);
+    }
+    assertEquals(1000, o.length());
+    for (int i = 0; i < 1000; i += 2) {
+      assertEquals(Integer.valueOf(i), o.remove("k" + i));
+    }
+    assertNull(o.remove("k0"));
+    assertEquals(500, o.length());
+    List<Object> keys = keys(o);
+    for (int i = 0; i < 500; i++) {
+      assertEquals("k" + (2 * i + 1), keys.get(i));
+      assertEquals(2 * i + 1, o.getInt("k" + (2 * i + 1)));
+      assertFalse(o.has("k" + 2 * i));
+    }
+    for (Iterator i = o.keys(); i.hasNext();) {
+      if (!"k999".equals(i.next())) {
+        i.remove();
+      }
+    }
+    assertEquals("{\"k999\":999}", o.toString());
+  }
+}
@@ -0,0 +1,113 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+
+import net.bican.wordpress.CustomField;
+import net.bican.wordpress.FileParser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONReader;
+import org.json.JSONReader.Token;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "javadoc", "nls" })
+public class JSONReaderTest {
+
+  @Test
+  public void testTokens() throws Exception {
+    JSONReader r = new JSONReader(new StringReader("{\"a\": [1, 2.5, true, "
+        + "null, \"s\", 2012-09-05], b = {}; 'c' => ('x')}"));
+    assertEquals(Token.BEGIN_OBJECT, r.peek());
+    r.beginObject();
+    assertEquals("a", r.nextName());
+    r.beginArray();
+    assertEquals(Token.NUMBER, r.peek());
+    assertEquals(1, r.nextInt());
+    assertEquals(2.5, r.nextDouble(), 0);
+    assertTrue(r.nextBoolean());
+    assertEquals(Token.NULL, r.peek());
+    r.nextNull();
+    assertEquals("s", r.nextString());
+    assertEquals(Token.STRING, r.peek());
+    assertEquals("2012-09-05", r.nextString());
+    assertFalse(r.hasNext());
+    r.endArray();
+    assertEquals("b", r.nextName());
+    r.skipValue();
+    assertEquals(Token.NAME, r.peek());
+    assertEquals("c", r.nextName());
+    r.beginArray();
+    assertEquals("x", r.nextString());
+    r.endArray();
+    r.endObject();
+    assertEquals(Token.END_DOCUMENT, r.peek());
+    r.close();
+  }
+
+  @Test
+  public void testValues() throws Exception {
+    String text = "[{\"id\": 1, \"tags\": [\"a\", {\"b\": [1,,3]}]}, 7,]";
+    JSONReader r = new JSONReader(text);
+    assertEquals(new JSONArray(text).toString(), r.nextValue().toString());
+
+    r = new JSONReader("[{\"a\": {\"b\": [1, 2]}, \"c\": 3}, 4]");
+    r.beginArray();
+    r.skipValue();
+    assertEquals(4, r.nextInt());
+    r.endArray();
+
+    r = new JSONReader("{\"a\": 1, \"a\": 2}");
+    try {
+      r.nextValue();
+      fail("a duplicate key is read into a JSONObject");
+    } catch (JSONException e) {
+      // expected
+    }
+    r = new JSONReader("[1 \"2\"]");
+    r.beginArray();
+    r.nextInt();
+    try {
+      r.hasNext();
+      fail("a missing comma is read");
+    } catch (JSONException e) {
+      // expected
+    }
+    r = new JSONReader("{\"a\": 1}");
+    try {
+      r.beginArray();
+      fail("an object is read as an array");
+    } catch (JSONException e) {
+      // expected
+    }
+    assertEquals(new JSONObject("{\"a\": 1}").toString(), r.nextValue()
+        .toString());
+  }
+
+  @Test
+  public void testFileParser() throws Exception {
+    XmlRpcStruct s = new XmlRpcStruct();
+    FileParser.putVal(s, "custom_fields", "[{\"id\": 12, \"key\": \"mood\", "
+        + "\"value\": \"happy\", \"other\": {\"x\": [1]}}, {key: null}]");
+    FileParser.putVal(s, "categories", "[\"News\", 2012-09-05, 3]");
+    FileParser.putVal(s, "empty", "[]");
+    XmlRpcArray fields = (XmlRpcArray) s.get("custom_fields");
+    assertEquals(2, fields.size());
+    CustomField field = (CustomField) fields.get(0);
+    assertEquals("12", field.getId());
+    assertEquals("mood", field.getKey());
+    assertEquals("happy", field.getValue());
+    field = (CustomField) fields.get(1);
+    assertNull(field.getId());
+    assertEquals("null", field.getKey());
+    XmlRpcArray categories = (XmlRpcArray) s.get("categories");
+    assertEquals("[News, 2012-09-05, 3]", categories.toString());
+    assertNull(s.get("empty"));
+  }
+}
@@ -0,0 +1,99 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Test;
+
+@SuppressWarnings({ "javadoc", "nls" })
+public class JSONTokenerTest {
+
+  /**
+   * Gives the text a few characters at a time, so the values cross the ends
+   * of the reads.
+   */
+  private static Reader trickle(final String s) {
+    return new Reader() {
+      private int position;
+
+      @Override
+      public void close() {
+        // nothing to close
+      }
+
+      @Override
+      public int read(char[] cbuf, int off, int len) {
+        if (this.position == s.length())
+          return -1;
+        int n = Math.min(Math.min(len, 1 + this.position % 5), s.length()
+            - this.position);
+        s.getChars(this.position, this.position + n, cbuf, off);
+        this.position += n;
+        return n;
+      }
+    };
+  }
+
+  @Test
+  public void testValues() throws Exception {
+    String text = "{\"a\":\"plain text\",\"b\":\"tab\\there \\u00e9\\/\","
+        + "'c':12, d : -9223372036854775808, e:1.5e3, f:2012-09-05,"
+        + " g:[true,null,FALSE , 0x1F,007], h:\"\"}";
+    JSONObject[] parsed = { new JSONObject(text),
+        new JSONObject(new JSONTokener(trickle(text))) };
+    for (JSONObject o : parsed) {
+      assertEquals("plain text", o.get("a"));
+      assertEquals("tab\there \u00e9/", o.get("b"));
+      assertEquals(Integer.valueOf(12), o.get("c"));
+      assertEquals(Long.valueOf(Long.MIN_VALUE), o.get("d"));
+      assertEquals(Double.valueOf(1500), o.get("e"));
+      assertEquals("2012-09-05", o.get("f"));
+      JSONArray g = o.getJSONArray("g");
+      assertEquals(Boolean.TRUE, g.get(0));
+      assertEquals(JSONObject.NULL, g.get(1));
+      assertEquals(Boolean.FALSE, g.get(2));
+      assertEquals(Integer.valueOf(31), g.get(3));
+      assertEquals(Integer.valueOf(7), g.get(4));
+      assertEquals("", o.get("h"));
+    }
+    assertEquals(parsed[0].toString(), parsed[1].toString());
+  }
+
+  @Test
+  public void testLongText() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+    String s = sb.toString();
+    JSONArray a = new JSONArray(new JSONTokener(trickle("[\"" + s + "\","
+        + s + "]")));
+    assertEquals(s, a.get(0));
+    assertEquals(s, a.get(1));
+  }
+
+  @Test
+  public void testErrors() throws Exception {
+    String[] bad = { "{\"a\":\"unterminated}", "[\"\\u12\"]", "[\"\\q\"]",
+        "{\"a\":}", "[1,2" };
+    for (String text : bad) {
+      try {
+        new JSONTokener(trickle(text)).nextValue();
+        fail(text + " is parsed");
+      } catch (JSONException e) {
+        // expected
+      }
+    }
+    JSONTokener t = new JSONTokener(trickle("abc\ndef"));
+    assertEquals('e', t.skipTo('e'));
+    assertEquals(0, t.skipTo('x'));
+    assertEquals('e', t.next());
+    assertEquals("f", t.nextTo('\n'));
+    assertFalse(t.more());
+  }
+}
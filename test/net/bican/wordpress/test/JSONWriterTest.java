@@ -0,0 +1,78 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import net.bican.wordpress.CustomField;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+import org.junit.Test;
+
+@SuppressWarnings({ "javadoc", "nls" })
+public class JSONWriterTest {
+
+  @Test
+  public void testBuild() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    new JSONWriter(sb).object().key("a").value(1).key("b").array().value(
+        true).value(2.50).value(null).value(Long.MIN_VALUE).endArray().key(
+        "c").object().endObject().endObject();
+    assertEquals("{\"a\":1,\"b\":[true,2.5,null,-9223372036854775808],"
+        + "\"c\":{}}", sb.toString());
+  }
+
+  @Test
+  public void testMisplaced() throws Exception {
+    JSONWriter w = new JSONWriter(new StringBuilder()).object();
+    try {
+      w.value("no key");
+      fail("a value without a key is written");
+    } catch (JSONException e) {
+      // expected
+    }
+    try {
+      w.endArray();
+      fail("an object is closed as an array");
+    } catch (JSONException e) {
+      // expected
+    }
+    w.endObject();
+    try {
+      w.value(1);
+      fail("two texts are written");
+    } catch (JSONException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testQuote() throws Exception {
+    String s = "a\"b\\c</d>\n\u0001\u0085\u2028\u00e9";
+    StringWriter w = new StringWriter();
+    JSONWriter.quote(s, w);
+    assertEquals("\"a\\\"b\\\\c<\\/d>\\n\\u0001\\u0085\\u2028\u00e9\"",
+        w.toString());
+    assertEquals(w.toString(), JSONObject.quote(s));
+    assertEquals("\"\"", JSONObject.quote(null));
+  }
+
+  @Test
+  public void testObjects() throws Exception {
+    JSONObject o = new JSONObject("{\"x\":[1,\"two\",{\"y\":null}]}");
+    StringWriter w = new StringWriter();
+    o.write(w);
+    assertEquals("{\"x\":[1,\"two\",{\"y\":null}]}", w.toString());
+    assertEquals(w.toString(), o.toString());
+    assertEquals("{\"x\": [\n  1,\n  \"two\",\n  {\"y\": null}\n]}",
+        o.toString(2));
+    JSONArray a = o.getJSONArray("x");
+    assertEquals("1 \"two\" {\"y\":null}", a.join(" "));
+    CustomField field = new CustomField();
+    field.setKey("mood");
+    assertEquals(new JSONObject(field.toString()).getString("key"), "mood");
+  }
+}
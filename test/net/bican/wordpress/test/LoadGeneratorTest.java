@@ -0,0 +1,126 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import net.bican.wordpress.LatencyHistogram;
+import net.bican.wordpress.LoadGenerator;
+import net.bican.wordpress.LoadGenerator.Report;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.WordpressSimulator;
+import net.bican.wordpress.WordpressSimulator.Latency;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings({ "javadoc", "nls" })
+public class LoadGeneratorTest {
+
+  private WordpressSimulator simulator;
+
+  private Wordpress          wp;
+
+  @Before
+  public void setUp() {
+    this.simulator = new WordpressSimulator("admin", "secret", 1);
+    this.simulator.populate(20, 2, 500);
+    this.wp = this.simulator.newClient();
+  }
+
+  @After
+  public void tearDown() {
+    this.simulator.stop();
+  }
+
+  @Test
+  public void testHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getValueAtPercentile(99));
+    for (int i = 1; i <= 100000; i++) {
+      histogram.record(i * 1000L);
+    }
+    assertEquals(100000, histogram.getCount());
+    assertEquals(1000, histogram.getMin());
+    assertEquals(100000000L, histogram.getMax());
+    assertEquals(50000000L, histogram.getValueAtPercentile(50), 50000000L / 60);
+    assertEquals(99000000L, histogram.getValueAtPercentile(99), 99000000L / 60);
+    assertEquals(99900000L, histogram.getValueAtPercentile(99.9),
+        99900000L / 60);
+    assertEquals(100000000L, histogram.getValueAtPercentile(100));
+    LatencyHistogram other = new LatencyHistogram();
+    other.record(5);
+    histogram.add(other);
+    assertEquals(100001, histogram.getCount());
+    assertEquals(5, histogram.getMin());
+    assertEquals(5, histogram.getValueAtPercentile(0));
+  }
+
+  @Test
+  public void testClosedLoop() throws Exception {
+    LoadGenerator generator = new LoadGenerator(this.wp);
+    generator.setThreads(4);
+    generator.setWarmup(100);
+    generator.setDuration(500);
+    generator.setMediaSize(1000);
+    generator.setSeed(1);
+    Report report = generator.run();
+    for (String operation : LoadGenerator.OPERATIONS) {
+      assertTrue(operation, report.getCount(operation) > 0);
+      assertEquals(operation, 0, report.getErrors(operation));
+      LatencyHistogram histogram = report.getHistogram(operation);
+      assertTrue(histogram.getValueAtPercentile(50) <= histogram
+          .getValueAtPercentile(99));
+      assertTrue(histogram.getValueAtPercentile(99) <= histogram.getMax());
+    }
+    assertEquals(500, report.getElapsed());
+    assertTrue(report.getThroughput() > 0);
+    assertTrue(report.getCount("getPost") > report.getCount("newMediaObject"));
+    // the posts that were created are deleted afterwards
+    assertEquals(21, this.wp.getRecentPosts(100).size());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    report.print(new PrintStream(out, true));
+    assertTrue(out.toString().contains("getRecentPosts"));
+    assertTrue(out.toString().contains("total"));
+  }
+
+  @Test
+  public void testFixedRate() throws Exception {
+    this.simulator.setLatency(Latency.fixed(5));
+    LoadGenerator generator = new LoadGenerator(this.wp);
+    generator.setMix("getPost=3,getComments=1");
+    generator.setThreads(2);
+    generator.setRate(100);
+    generator.setWarmup(0);
+    generator.setDuration(1000);
+    Report report = generator.run();
+    assertEquals(0, report.getCount("newPost"));
+    long calls = report.getCount("getPost") + report.getCount("getComments");
+    assertTrue(String.valueOf(calls), (calls >= 95) && (calls <= 101));
+    assertTrue(report.getHistogram("getPost").getMin() >= 5000000L);
+  }
+
+  @Test
+  public void testFaultsAreCounted() throws Exception {
+    this.simulator.injectFault("metaWeblog.getPost", 1, 500, "overloaded");
+    LoadGenerator generator = new LoadGenerator(this.wp);
+    generator.setMix("getPost=1,getRecentPosts=1");
+    generator.setThreads(1);
+    generator.setWarmup(0);
+    generator.setDuration(200);
+    Report report = generator.run();
+    assertEquals(0, report.getCount("getPost"));
+    assertTrue(report.getErrors("getPost") > 0);
+    assertTrue(report.getCount("getRecentPosts") > 0);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    report.print(new PrintStream(out, true));
+    assertTrue(out.toString().contains("getPost failed with: 500 overloaded"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMix() {
+    new LoadGenerator(this.wp).setMix("getPost=1,deleteEverything=2");
+  }
+}
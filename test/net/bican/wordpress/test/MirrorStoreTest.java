@@ -0,0 +1,236 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import net.bican.wordpress.Comment;
+import net.bican.wordpress.MirrorStore;
+import net.bican.wordpress.Page;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "javadoc", "nls", "boxing", "unchecked" })
+public class MirrorStoreTest {
+
+  private File directory;
+
+  private static Page page(int id, String title) {
+    Page page = new Page();
+    page.setPostid(id);
+    page.setTitle(title);
+    page.setDescription("Body of " + title + " çöş");
+    page.setMt_allow_comments(1);
+    page.setDateCreated(new Date(1300000000000L + id));
+    XmlRpcStruct field = new XmlRpcStruct();
+    field.put("key", "mood");
+    field.put("value", "happy");
+    XmlRpcArray fields = new XmlRpcArray();
+    fields.add(field);
+    page.setCustom_fields(fields);
+    return page;
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null)
+      for (File f : files)
+        delete(f);
+    file.delete();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    this.directory = File.createTempFile("mirror", ".store");
+    this.directory.delete();
+  }
+
+  @After
+  public void tearDown() {
+    delete(this.directory);
+  }
+
+  @Test
+  public void testPutAndGet() throws Exception {
+    MirrorStore store = new MirrorStore(this.directory);
+    try {
+      store.put(1, page(1, "First"));
+      Comment comment = new Comment();
+      comment.setComment_id(1);
+      comment.setContent("A comment");
+      comment.setDate_created_gmt(new Date(1300000000000L));
+      store.put(1, comment);
+      assertEquals(2, store.size());
+
+      Page page = store.get(Page.class, 1);
+      assertEquals("First", page.getTitle());
+      assertEquals(page(1, "First").getDescription(), page.getDescription());
+      assertEquals(Integer.valueOf(1), page.getMt_allow_comments());
+      assertEquals(new Date(1300000000001L), page.getDateCreated());
+      XmlRpcStruct field = (XmlRpcStruct) page.getCustom_fields().get(0);
+      assertEquals("happy", field.get("value"));
+      assertEquals("A comment", store.get(Comment.class, 1).getContent());
+      assertNull(store.get(Page.class, 2));
+
+      store.put(1, page(1, "Changed"));
+      assertEquals("Changed", store.get(Page.class, 1).getTitle());
+      assertTrue(store.delete(Page.class, 1));
+      assertFalse(store.delete(Page.class, 1));
+      assertNull(store.get(Page.class, 1));
+      assertEquals(1, store.size());
+      assertTrue(store.ids(Page.class).isEmpty());
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testReopen() throws Exception {
+    MirrorStore store = new MirrorStore(this.directory);
+    store.setSegmentSize(4096);
+    for (int i = 1; i <= 100; i++) {
+      store.put(i, page(i, "Page " + i));
+    }
+    store.delete(Page.class, 50);
+    store.close();
+
+    store = new MirrorStore(this.directory);
+    assertEquals(99, store.size());
+    assertEquals("Page 99", store.get(Page.class, 99).getTitle());
+    assertNull(store.get(Page.class, 50));
+    store.put(101, page(101, "Page 101"));
+    store.close();
+
+    // the index is rebuilt from the segments when it is missing
+    assertTrue(new File(this.directory, "index").delete());
+    store = new MirrorStore(this.directory);
+    try {
+      assertEquals(100, store.size());
+      assertNull(store.get(Page.class, 50));
+      assertEquals("Page 101", store.get(Page.class, 101).getTitle());
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    MirrorStore store = new MirrorStore(this.directory);
+    try {
+      store.setSegmentSize(4096);
+      store.setCompactionThreshold(0);
+      for (int round = 0; round < 5; round++) {
+        for (int i = 1; i <= 20; i++) {
+          store.put(i, page(i, "Page " + i + " round " + round));
+        }
+      }
+      for (int i = 11; i <= 20; i++) {
+        store.delete(Page.class, i);
+      }
+      int before = segments();
+      store.setCompactionThreshold(0.5);
+      assertTrue(store.compact() > 0);
+      assertTrue(segments() < before);
+      assertEquals(10, store.size());
+      for (int i = 1; i <= 10; i++) {
+        assertEquals("Page " + i + " round 4",
+            store.get(Page.class, i).getTitle());
+      }
+      assertNull(store.get(Page.class, 15));
+    } finally {
+      store.close();
+    }
+    store = new MirrorStore(this.directory);
+    try {
+      assertEquals(10, store.size());
+      assertNull(store.get(Page.class, 15));
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testReadOnly() throws Exception {
+    MirrorStore writer = new MirrorStore(this.directory);
+    try {
+      writer.setSegmentSize(4096);
+      writer.put(1, page(1, "First"));
+      MirrorStore reader = new MirrorStore(this.directory, true);
+      assertEquals("First", reader.get(Page.class, 1).getTitle());
+      // the index of the writer grows and is replaced under the reader
+      for (int i = 2; i <= 2000; i++) {
+        writer.put(i, page(i, "Page " + i));
+      }
+      writer.put(1, page(1, "Changed"));
+      assertEquals(2000, reader.size());
+      assertEquals("Changed", reader.get(Page.class, 1).getTitle());
+      assertEquals("Page 1999", reader.get(Page.class, 1999).getTitle());
+      List<Integer> ids = reader.ids(Page.class);
+      assertEquals(2000, new HashSet<Integer>(ids).size());
+      try {
+        reader.put(1, page(1, "Denied"));
+        fail("a read-only store is written");
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      reader.close();
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testReaderAfterRecovery() throws Exception {
+    MirrorStore writer = new MirrorStore(this.directory);
+    writer.put(1, page(1, "First"));
+    writer.close();
+    // as if the writer had stopped without closing the store
+    RandomAccessFile index = new RandomAccessFile(new File(this.directory,
+        "index"), "rw");
+    try {
+      index.seek(24);
+      index.writeInt(0);
+    } finally {
+      index.close();
+    }
+    MirrorStore reader = new MirrorStore(this.directory, true);
+    assertEquals("First", reader.get(Page.class, 1).getTitle());
+    writer = new MirrorStore(this.directory);
+    try {
+      writer.put(2, page(2, "Second"));
+      assertEquals(2, reader.size());
+      assertEquals("Second", reader.get(Page.class, 2).getTitle());
+    } finally {
+      writer.close();
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSingleWriter() throws Exception {
+    MirrorStore store = new MirrorStore(this.directory);
+    try {
+      new MirrorStore(this.directory);
+      fail("the store is opened by two writers");
+    } catch (IOException e) {
+      // expected
+    } finally {
+      store.close();
+    }
+    new MirrorStore(this.directory).close();
+  }
+
+  private int segments() {
+    return this.directory.list().length - 2;
+  }
+}
@@ -0,0 +1,289 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import net.bican.wordpress.Page;
+import net.bican.wordpress.PooledHttpTransport;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.XmlRpcRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+@SuppressWarnings({ "static-method", "javadoc", "nls", "restriction" })
+public class PooledHttpTransportTest {
+
+  private static final String RESPONSE = "<?xml version=\"1.0\"?>"
+                                           + "<methodResponse><params><param>"
+                                           + "<value><string>7</string></value>"
+                                           + "</param></params></methodResponse>";
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[8192];
+    int n;
+    while ((n = in.read(buf)) >= 0) {
+      out.write(buf, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  private ExecutorService executor;
+
+  private volatile String lastRequest;
+
+  private HttpServer      server;
+
+  private volatile int    status = 200;
+
+  private URL             url;
+
+  @Before
+  public void setUp() throws Exception {
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    this.server.createContext("/xmlrpc.php", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        PooledHttpTransportTest.this.lastRequest = new String(
+            readAll(exchange.getRequestBody()), "UTF-8");
+        byte[] body = RESPONSE.getBytes("UTF-8");
+        String accept = exchange.getRequestHeaders().getFirst(
+            "Accept-Encoding");
+        if ((accept != null) && accept.contains("gzip")) {
+          ByteArrayOutputStream b = new ByteArrayOutputStream();
+          GZIPOutputStream gz = new GZIPOutputStream(b);
+          gz.write(body);
+          gz.close();
+          body = b.toByteArray();
+          exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/xml");
+        exchange.sendResponseHeaders(PooledHttpTransportTest.this.status,
+            body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      }
+    });
+    this.executor = Executors.newCachedThreadPool();
+    this.server.setExecutor(this.executor);
+    this.server.start();
+    this.url = new URL("http://127.0.0.1:"
+        + this.server.getAddress().getPort() + "/xmlrpc.php");
+  }
+
+  @After
+  public void tearDown() {
+    this.server.stop(0);
+    this.executor.shutdown();
+  }
+
+  @Test
+  public void testBridgeCallsReuseConnection() throws Exception {
+    PooledHttpTransport transport = new PooledHttpTransport();
+    Wordpress wp = new Wordpress("user", "pass", this.url.toString(),
+        transport);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(7, wp.newCategory("News", "news", 0));
+    }
+    assertTrue(this.lastRequest.contains("<methodName>wp.newCategory"));
+    assertEquals("7", wp.newPage(new Page(), "publish"));
+    assertTrue(this.lastRequest.contains("<methodName>wp.newPage"));
+    PooledHttpTransport.Statistics stats = transport.getStatistics();
+    assertEquals(1, stats.getOpened());
+    assertEquals(6, stats.getRequests());
+    assertEquals(5, stats.getReused());
+    assertEquals(1, stats.getIdle());
+    assertEquals(Long.valueOf(6), stats.getConnections().values().iterator()
+        .next());
+    transport.close();
+    assertEquals(1, transport.getStatistics().getClosed());
+  }
+
+  @Test
+  public void testUncompressed() throws Exception {
+    PooledHttpTransport transport = new PooledHttpTransport();
+    transport.setCompression(false);
+    InputStream in = transport.send(this.url, new XmlRpcRequest("demo.test",
+        new Object[] { "a" }, false));
+    assertEquals(RESPONSE, new String(readAll(in), "UTF-8"));
+    in.close();
+    transport.close();
+  }
+
+  @Test
+  public void testStreamedRequest() throws Exception {
+    File file = File.createTempFile("upload", ".bin");
+    file.deleteOnExit();
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(new byte[3 * 65536]);
+    out.close();
+    PooledHttpTransport transport = new PooledHttpTransport();
+    Wordpress wp = new Wordpress("user", "pass", this.url.toString(),
+        transport);
+    try {
+      wp.newMediaObject("application/octet-stream", file, Boolean.FALSE);
+    } catch (XmlRpcException e) {
+      // the stand-in answers with a string instead of a struct
+    }
+    assertTrue(this.lastRequest.contains("<name>bits</name>"));
+    assertTrue(this.lastRequest.contains("AAAAAAAA</base64>"));
+    transport.close();
+    file.delete();
+  }
+
+  @Test
+  public void testHttpError() throws Exception {
+    this.status = 500;
+    PooledHttpTransport transport = new PooledHttpTransport(1);
+    Wordpress wp = new Wordpress("user", "pass", this.url.toString(),
+        transport);
+    for (int i = 0; i < 3; i++) {
+      try {
+        wp.newCategory("News", "news", 0);
+        fail("HTTP error expected");
+      } catch (XmlRpcException e) {
+        assertTrue(e.getMessage().contains("500"));
+      }
+    }
+    // the error bodies were read, so the connection stayed usable
+    assertEquals(1, transport.getStatistics().getOpened());
+    transport.close();
+  }
+
+  @Test
+  public void testStaleConnectionIsNotReused() throws Exception {
+    // answers one request per connection, then closes without telling
+    final ServerSocket socket = new ServerSocket(0);
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < 2; i++) {
+            Socket s = socket.accept();
+            InputStream in = s.getInputStream();
+            byte[] buf = new byte[65536];
+            String request = "";
+            while (!request.contains("</methodCall>")) {
+              int n = in.read(buf);
+              if (n < 0)
+                break;
+              request += new String(buf, 0, n, "UTF-8");
+            }
+            byte[] body = RESPONSE.getBytes("UTF-8");
+            OutputStream out = s.getOutputStream();
+            String head = "HTTP/1.1 200 OK\r\nContent-Length: "
+                + body.length + "\r\n\r\n";
+            out.write(head.getBytes("UTF-8"));
+            out.write(body);
+            out.flush();
+            s.close();
+          }
+        } catch (IOException e) {
+          // test is over
+        }
+      }
+    };
+    t.start();
+    URL u = new URL("http://127.0.0.1:" + socket.getLocalPort() + "/");
+    PooledHttpTransport transport = new PooledHttpTransport();
+    for (int i = 0; i < 2; i++) {
+      InputStream in = transport.send(u, new XmlRpcRequest("demo.test",
+          new Object[0], false));
+      assertEquals(RESPONSE, new String(readAll(in), "UTF-8"));
+      in.close();
+      Thread.sleep(100);
+    }
+    assertEquals(2, transport.getStatistics().getOpened());
+    assertEquals(2, transport.getStatistics().getRequests());
+    assertEquals(0, transport.getStatistics().getReused());
+    t.join(5000);
+    socket.close();
+    transport.close();
+  }
+
+  @Test
+  public void testNoResendAfterRequestSent() throws Exception {
+    // keeps the first connection open, then closes it after reading the
+    // second request without answering
+    final ServerSocket socket = new ServerSocket(0);
+    final AtomicInteger received = new AtomicInteger();
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Socket s = socket.accept();
+          InputStream in = s.getInputStream();
+          byte[] buf = new byte[65536];
+          for (int i = 0; i < 2; i++) {
+            String request = "";
+            while (!request.contains("</methodCall>")) {
+              int n = in.read(buf);
+              if (n < 0)
+                return;
+              request += new String(buf, 0, n, "UTF-8");
+            }
+            received.incrementAndGet();
+            if (i == 1)
+              break;
+            byte[] body = RESPONSE.getBytes("UTF-8");
+            OutputStream out = s.getOutputStream();
+            String head = "HTTP/1.1 200 OK\r\nContent-Length: "
+                + body.length + "\r\n\r\n";
+            out.write(head.getBytes("UTF-8"));
+            out.write(body);
+            out.flush();
+          }
+          s.close();
+          socket.setSoTimeout(500);
+          Socket again = socket.accept();
+          received.incrementAndGet();
+          again.close();
+        } catch (IOException e) {
+          // test is over
+        }
+      }
+    };
+    t.start();
+    URL u = new URL("http://127.0.0.1:" + socket.getLocalPort() + "/");
+    PooledHttpTransport transport = new PooledHttpTransport();
+    InputStream in = transport.send(u, new XmlRpcRequest("demo.test",
+        new Object[0], false));
+    assertEquals(RESPONSE, new String(readAll(in), "UTF-8"));
+    in.close();
+    try {
+      transport.send(u, new XmlRpcRequest("demo.test", new Object[0], false));
+      fail("Expected the call to fail");
+    } catch (IOException e) {
+      // expected
+    }
+    t.join(5000);
+    assertEquals(2, received.get());
+    assertEquals(1, transport.getStatistics().getOpened());
+    assertEquals(2, transport.getStatistics().getRequests());
+    socket.close();
+    transport.close();
+  }
+}
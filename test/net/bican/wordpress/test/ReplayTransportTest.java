@@ -0,0 +1,139 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import net.bican.wordpress.Comment;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.RecordingTransport;
+import net.bican.wordpress.ReplayTransport;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.WordpressSimulator;
+import net.bican.wordpress.WordpressSimulator.Latency;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+
+@SuppressWarnings({ "javadoc", "nls" })
+public class ReplayTransportTest {
+
+  private static final String URL = "http://localhost/wp/xmlrpc.php";
+
+  private File                capture;
+
+  private WordpressSimulator  simulator;
+
+  @Before
+  public void setUp() throws Exception {
+    this.simulator = new WordpressSimulator("admin", "secret", 1);
+    this.simulator.populate(10, 3, 1000);
+    this.capture = File.createTempFile("capture", ".wpx");
+  }
+
+  @After
+  public void tearDown() {
+    this.simulator.stop();
+    this.capture.delete();
+  }
+
+  private void record() throws Exception {
+    RecordingTransport recording = new RecordingTransport(
+        this.simulator.getTransport(), this.capture);
+    Wordpress wp = new Wordpress("admin", "secret", URL, recording);
+    try {
+      assertEquals(5, wp.getRecentPosts(5).size());
+      assertEquals("Hello world!", wp.getPost(1).getTitle());
+      assertEquals(3, wp.getComments(null, 3, 10, 0).size());
+      try {
+        wp.getPost(999);
+        fail("post does not exist");
+      } catch (XmlRpcFault e) {
+        assertEquals(404, e.getErrorCode());
+      }
+      assertEquals(4, recording.getSize());
+    } finally {
+      recording.close();
+    }
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    record();
+    ReplayTransport replay = new ReplayTransport(this.capture);
+    assertEquals(4, replay.getSize());
+    Wordpress wp = new Wordpress("someone", "else", URL, replay);
+    for (int i = 0; i < 3; i++) {
+      List<Page> posts = wp.getRecentPosts(5);
+      assertEquals(5, posts.size());
+      assertEquals("Hello world!", wp.getPost(1).getTitle());
+      List<Comment> comments = wp.getComments(null, 3, 10, 0);
+      assertEquals(3, comments.size());
+      assertEquals(3, comments.get(0).getPost_id().intValue());
+      try {
+        wp.getPost(999);
+        fail("the fault is replayed");
+      } catch (XmlRpcFault e) {
+        assertEquals(404, e.getErrorCode());
+      }
+    }
+    // not recorded with these parameters, answered with a recorded post
+    assertNotNull(wp.getRecentPosts(20));
+    try {
+      wp.getCategories();
+      fail("nothing is recorded for the method");
+    } catch (XmlRpcException e) {
+      // expected
+    }
+    assertEquals(0, this.simulator.getCallCount("wp.getCategories"));
+  }
+
+  @Test
+  public void testCredentialsAreNotRecorded() throws Exception {
+    record();
+    InputStream in = new GZIPInputStream(new FileInputStream(this.capture));
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try {
+      byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) >= 0) {
+        content.write(buffer, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    String text = content.toString("UTF-8");
+    assertTrue(text.contains("metaWeblog.getPost(1)"));
+    assertFalse(text.contains("secret"));
+  }
+
+  @Test
+  public void testRecordedTiming() throws Exception {
+    this.simulator.setLatency("metaWeblog.getPost", Latency.fixed(100));
+    record();
+    ReplayTransport replay = new ReplayTransport(this.capture);
+    Wordpress wp = new Wordpress("admin", "secret", URL, replay);
+    long start = System.nanoTime();
+    wp.getPost(1);
+    assertTrue((System.nanoTime() - start) < 100000000L);
+    replay.setRecordedTiming(true);
+    start = System.nanoTime();
+    wp.getPost(1);
+    assertTrue((System.nanoTime() - start) >= 100000000L);
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotACapture() throws Exception {
+    new ReplayTransport(new File("pom.xml"));
+  }
+}
@@ -0,0 +1,166 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.bican.wordpress.Comment;
+import net.bican.wordpress.DeltaSync;
+import net.bican.wordpress.MirrorStore;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.SearchIndex;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.WordpressSimulator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings({ "javadoc", "nls", "boxing" })
+public class SearchIndexTest {
+
+  private SearchIndex index;
+
+  private static Comment comment(int id, int postId, String content) {
+    Comment comment = new Comment();
+    comment.setComment_id(id);
+    comment.setPost_id(postId);
+    comment.setContent(content);
+    return comment;
+  }
+
+  private static Page post(int id, String title, String body) {
+    Page post = new Page();
+    post.setPostid(id);
+    post.setTitle(title);
+    post.setDescription(body);
+    return post;
+  }
+
+  @Before
+  public void setUp() {
+    this.index = new SearchIndex();
+    this.index.add(post(1, "Making bread", "<p>Flour, water &amp; salt. "
+        + "Knead the dough and let the bread rise.</p>"));
+    this.index.add(post(2, "Sourdough", "A starter makes <b>bread</b> "
+        + "sour. The dough rises slowly."));
+    this.index.add(post(3, "Pasta", "Flour and eggs make fresh pasta."));
+    this.index.add(comment(10, 3, "Great with bread on the side"));
+  }
+
+  @Test
+  public void testWords() {
+    assertEquals(Arrays.asList(1, 2, 3), this.index.search("bread", 10));
+    // the shorter post first, comments do not make a post longer
+    assertEquals(Arrays.asList(3, 1), this.index.search("FLOUR", 10));
+    // the comment of the pasta mentions bread
+    assertEquals(Arrays.asList(1, 3), this.index.search("flour bread", 10));
+    assertEquals(Arrays.asList(1), this.index.search("flour dough", 10));
+    assertEquals(Arrays.asList(1, 2), this.index.search("bread -pasta", 10));
+    assertEquals(Arrays.asList(1), this.index.search("bread", 1));
+    assertEquals(Collections.emptyList(), this.index.search("pizza", 10));
+    // tags and entities are not words
+    assertEquals(Collections.emptyList(), this.index.search("amp", 10));
+    assertEquals(Collections.emptyList(), this.index.search("b", 10));
+  }
+
+  @Test
+  public void testPhrasesAndOr() {
+    assertEquals(Arrays.asList(1), this.index.search("\"the bread rise\"",
+        10));
+    assertEquals(Collections.emptyList(), this.index.search(
+        "\"bread the\"", 10));
+    // phrases do not cross the fields
+    assertEquals(Collections.emptyList(), this.index.search(
+        "\"bread flour\"", 10));
+    List<Integer> result = this.index.search("sourdough OR pasta", 10);
+    assertEquals(2, result.size());
+    assertTrue(result.containsAll(Arrays.asList(2, 3)));
+    assertEquals(Arrays.asList(3), this.index.search("\"great with\"", 10));
+  }
+
+  @Test
+  public void testRanking() {
+    // a title counts more than a body, which counts more than a comment
+    this.index.add(post(4, "Notes", "Nothing about pasta here"));
+    assertEquals(Arrays.asList(3, 4), this.index.search("pasta", 10));
+    assertEquals(Arrays.asList(1, 2, 3), this.index.search("bread", 10));
+  }
+
+  @Test
+  public void testUpdates() {
+    this.index.add(post(1, "Making cake", "Sugar and butter."));
+    assertEquals(Arrays.asList(2, 3), this.index.search("bread", 10));
+    assertEquals(Arrays.asList(1), this.index.search("cake", 10));
+    this.index.add(comment(10, 3, "Too much cheese"));
+    assertEquals(Arrays.asList(2), this.index.search("bread", 10));
+    assertTrue(this.index.removeComment(10));
+    assertEquals(Collections.emptyList(), this.index.search("cheese", 10));
+    assertTrue(this.index.remove(2));
+    assertFalse(this.index.remove(2));
+    assertEquals(Collections.emptyList(), this.index.search("bread", 10));
+    assertEquals(2, this.index.size());
+    // enough changes build the index again
+    for (int i = 0; i < 3000; i++) {
+      this.index.add(post(3, "Pasta " + i, "Flour and eggs."));
+    }
+    assertEquals(Arrays.asList(3), this.index.search("pasta 2999", 10));
+    assertEquals(Collections.emptyList(), this.index.search("1234", 10));
+    assertEquals(Arrays.asList(1, 3), this.index.search("cake OR eggs", 10));
+  }
+
+  @Test
+  public void testManyComments() {
+    for (int i = 0; i < 3000; i++) {
+      this.index.add(comment(100 + i, 2, "Comment number " + i));
+    }
+    assertEquals(Arrays.asList(2), this.index.search("number 2999", 10));
+    assertEquals(Arrays.asList(2), this.index.search("sourdough 17", 10));
+    assertTrue(this.index.removeComment(2099));
+    assertEquals(Collections.emptyList(), this.index.search("1999", 10));
+    assertEquals(3, this.index.size());
+    assertTrue(this.index.remove(2));
+    assertEquals(Collections.emptyList(), this.index.search("comment", 10));
+    assertEquals(Arrays.asList(3), this.index.search("great", 10));
+  }
+
+  @Test
+  public void testMirrorAndSync() throws Exception {
+    WordpressSimulator simulator = new WordpressSimulator("admin", "secret",
+        1);
+    File directory = File.createTempFile("search", ".store");
+    directory.delete();
+    try {
+      Wordpress wp = simulator.newClient();
+      MirrorStore store = new MirrorStore(directory);
+      try {
+        store.put(1, wp.getPost(1));
+        store.put(1, wp.getComment(1));
+        SearchIndex mirrored = new SearchIndex();
+        mirrored.addAll(store);
+        assertEquals(1, mirrored.size());
+        assertEquals(Arrays.asList(1), mirrored.search("hello world", 10));
+        assertEquals(Arrays.asList(1), mirrored.search(
+            wp.getComment(1).getContent().split(" ")[0], 10));
+      } finally {
+        store.close();
+      }
+
+      SearchIndex synced = new SearchIndex();
+      DeltaSync sync = new DeltaSync(wp);
+      synced.update(sync.sync());
+      Page post = post(0, "A new recipe", "Lemon tart");
+      int id = Integer.parseInt(wp.newPost(post, true));
+      synced.update(sync.sync());
+      assertEquals(Arrays.asList(id), synced.search("lemon", 10));
+    } finally {
+      simulator.stop();
+      for (File file : directory.listFiles()) {
+        file.delete();
+      }
+      directory.delete();
+    }
+  }
+}
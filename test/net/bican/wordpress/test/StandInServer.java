@@ -0,0 +1,173 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.bican.wordpress.XmlRpcRequestWriter;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local xmlrpc server that answers each method with a canned value or fault,
+ * and records the requests and the methods it was called with.
+ */
+@SuppressWarnings({ "javadoc", "nls", "restriction" })
+public class StandInServer {
+
+  /**
+   * Computes the answer of a method from the request.
+   */
+  public interface Responder {
+    Object respond(String request);
+  }
+
+  private static final Pattern     METHOD = Pattern
+                                             .compile("<methodName>([^<]*)<");
+
+  private final List<String>        calls;
+
+  private final ExecutorService     executor;
+
+  private final List<String>        requests;
+
+  private final Map<String, Object> responses;
+
+  private final HttpServer          server;
+
+  public StandInServer() throws IOException {
+    this.calls = Collections.synchronizedList(new ArrayList<String>());
+    this.requests = Collections.synchronizedList(new ArrayList<String>());
+    this.responses = new ConcurrentHashMap<String, Object>();
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    this.server.createContext("/xmlrpc.php", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+          byte[] buf = new byte[8192];
+          int n;
+          while ((n = in.read(buf)) >= 0) {
+            b.write(buf, 0, n);
+          }
+        }
+        String request = b.toString("UTF-8");
+        Matcher m = METHOD.matcher(request);
+        String method = m.find() ? m.group(1) : "";
+        synchronized (StandInServer.this.calls) {
+          StandInServer.this.calls.add(method);
+          StandInServer.this.requests.add(request);
+        }
+        byte[] body = respond(method, request).getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(body);
+        }
+      }
+    });
+    this.executor = Executors.newCachedThreadPool();
+    this.server.setExecutor(this.executor);
+    this.server.start();
+  }
+
+  /**
+   * @return the integer member of a struct in the request
+   */
+  public static int member(String request, String name) {
+    Matcher m = Pattern.compile(
+        "<name>" + name + "</name><value><i4>(\\d+)<").matcher(request);
+    assertTrue(m.find());
+    return Integer.parseInt(m.group(1));
+  }
+
+  private static String response(Object value, boolean fault)
+      throws IOException {
+    StringWriter w = new StringWriter();
+    w.write("<?xml version=\"1.0\"?><methodResponse>");
+    w.write(fault ? "<fault>" : "<params><param>");
+    new XmlRpcRequestWriter(w).writeValue(value);
+    w.write(fault ? "</fault>" : "</param></params>");
+    w.write("</methodResponse>");
+    return w.toString();
+  }
+
+  /**
+   * @return number of calls made to the method
+   */
+  public int count(String method) {
+    int result = 0;
+    synchronized (this.calls) {
+      for (String c : this.calls) {
+        if (c.equals(method))
+          result++;
+      }
+    }
+    return result;
+  }
+
+  public List<String> getCalls() {
+    return this.calls;
+  }
+
+  /**
+   * @return bodies of the requests, in the order they came in
+   */
+  public List<String> getRequests() {
+    return this.requests;
+  }
+
+  public String getUrl() {
+    return "http://127.0.0.1:" + this.server.getAddress().getPort()
+        + "/xmlrpc.php";
+  }
+
+  /**
+   * @param value value to answer the method with, an
+   *          <code>XmlRpcFault</code> to answer with, or a
+   *          <code>Responder</code> that computes either
+   */
+  public void put(String method, Object value) {
+    this.responses.put(method, value);
+  }
+
+  @SuppressWarnings("unchecked")
+  private String respond(String method, String request) throws IOException {
+    Object value = this.responses.get(method);
+    if (value instanceof Responder)
+      value = ((Responder) value).respond(request);
+    boolean fault = (value == null) || (value instanceof XmlRpcFault);
+    if (fault) {
+      XmlRpcStruct f = new XmlRpcStruct();
+      f.put("faultCode",
+          Integer.valueOf((value == null) ? -32601 : ((XmlRpcFault) value)
+              .getErrorCode()));
+      f.put("faultString", (value == null) ? "server error. requested method "
+          + method + " does not exist." : ((XmlRpcFault) value).getMessage());
+      value = f;
+    }
+    return response(value, fault);
+  }
+
+  public void stop() {
+    this.server.stop(0);
+    this.executor.shutdown();
+  }
+}
@@ -0,0 +1,237 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.bican.wordpress.BatchResult;
+import net.bican.wordpress.Comment;
+import net.bican.wordpress.CommentCount;
+import net.bican.wordpress.CustomField;
+import net.bican.wordpress.MediaObject;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.WordpressSimulator;
+import net.bican.wordpress.WordpressSimulator.Latency;
+import net.bican.wordpress.XmlRpcBatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+
+@SuppressWarnings({ "javadoc", "nls", "unchecked", "boxing" })
+public class WordpressSimulatorTest {
+
+  private WordpressSimulator simulator;
+
+  private Wordpress          wp;
+
+  @Before
+  public void setUp() {
+    this.simulator = new WordpressSimulator("admin", "secret", 1);
+    this.wp = this.simulator.newClient();
+  }
+
+  @After
+  public void tearDown() {
+    this.simulator.stop();
+  }
+
+  @Test
+  public void testFreshInstallation() throws Exception {
+    assertEquals("Hello world!", this.wp.getPost(1).getTitle());
+    assertEquals("Sample Page", this.wp.getPage(2).getTitle());
+    assertEquals(1, this.wp.getCategories().size());
+    assertEquals(1, this.wp.getComments(null, 1, 10, 0).size());
+    assertEquals(1, this.wp.getUsersBlogs().size());
+    assertEquals("admin", this.wp.getUserInfo().getNickname());
+    assertTrue(this.wp.supportedMethods().contains("system.multicall"));
+  }
+
+  @Test
+  public void testPostsAndComments() throws Exception {
+    Page post = new Page();
+    post.setTitle("Simulated");
+    post.setDescription("Some <b>body</b>");
+    XmlRpcArray fields = new XmlRpcArray();
+    CustomField field = new CustomField();
+    field.setKey("mood");
+    field.setValue("happy");
+    fields.add(field.toXmlRpcStruct());
+    post.setCustom_fields(fields);
+    int id = Integer.parseInt(this.wp.newPost(post, true));
+    Page read = this.wp.getPost(id);
+    assertEquals("Simulated", read.getTitle());
+    assertEquals("Some <b>body</b>", read.getDescription());
+    assertEquals("publish", read.getPost_status());
+    assertEquals("simulated", read.getWp_slug());
+    assertEquals(1, read.getCustom_fields().size());
+    read.setTitle("Edited");
+    assertTrue(this.wp.editPost(id, read, "publish"));
+    assertEquals("Edited", this.wp.getRecentPosts(1).get(0).getTitle());
+
+    int comment = this.wp.newComment(id, null, "First!", "reader", null,
+        null);
+    List<Comment> comments = this.wp.getComments(null, id, 10, 0);
+    assertEquals(1, comments.size());
+    assertEquals("First!", comments.get(0).getContent());
+    assertEquals(comment, comments.get(0).getComment_id().intValue());
+    Comment c = this.wp.getComment(comment);
+    c.setStatus("hold");
+    assertTrue(this.wp.editComment(c));
+    CommentCount count = this.wp.getCommentsCount(id);
+    assertEquals(0, count.getApproved().intValue());
+    assertEquals(1, count.getAwaiting_moderation().intValue());
+
+    assertTrue(this.wp.deletePost(id, "true"));
+    try {
+      this.wp.getPost(id);
+      fail("post is deleted");
+    } catch (XmlRpcFault e) {
+      assertEquals(404, e.getErrorCode());
+    }
+    try {
+      this.wp.getComment(comment);
+      fail("comments go with the post");
+    } catch (XmlRpcFault e) {
+      assertEquals(404, e.getErrorCode());
+    }
+  }
+
+  @Test
+  public void testAllPosts() throws Exception {
+    this.simulator.populate(25, 0, 100);
+    int posts = 0;
+    for (Page p : this.wp.allPosts(10)) {
+      assertNotNull(p.getTitle());
+      posts++;
+    }
+    assertEquals(26, posts);
+  }
+
+  @Test
+  public void testWrongPassword() throws Exception {
+    Wordpress other = new Wordpress("admin", "wrong",
+        "http://localhost/xmlrpc.php", this.simulator.getTransport());
+    try {
+      other.getPost(1);
+      fail("credentials are checked");
+    } catch (XmlRpcFault e) {
+      assertEquals(403, e.getErrorCode());
+    }
+  }
+
+  @Test
+  public void testMulticall() throws Exception {
+    XmlRpcBatch batch = this.wp.newBatch();
+    List<BatchResult<Page>> results = new ArrayList<BatchResult<Page>>();
+    for (int i = 1; i <= 3; i++) {
+      results.add(batch.getPost(i));
+    }
+    batch.execute();
+    assertEquals(1, this.simulator.getCallCount("system.multicall"));
+    assertEquals(3, this.simulator.getCallCount("metaWeblog.getPost"));
+    assertEquals("Hello world!", results.get(0).get().getTitle());
+    // 2 is a page and 3 does not exist
+    assertEquals(404, results.get(1).getFault().getErrorCode());
+    assertEquals(404, results.get(2).getFault().getErrorCode());
+
+    this.simulator.setMulticallSupported(false);
+    this.simulator.resetStatistics();
+    Wordpress other = this.simulator.newClient();
+    batch = other.newBatch();
+    batch.getPost(1);
+    batch.getPost(1);
+    batch.execute();
+    assertEquals(0, this.simulator.getCallCount("system.multicall"));
+    assertEquals(2, this.simulator.getCallCount("metaWeblog.getPost"));
+  }
+
+  @Test
+  public void testInjectedFaults() throws Exception {
+    this.simulator.injectFault("metaWeblog.getPost", 1, 500, "overloaded");
+    try {
+      this.wp.getPost(1);
+      fail("fault is injected");
+    } catch (XmlRpcFault e) {
+      assertEquals(500, e.getErrorCode());
+      assertEquals("overloaded", e.getMessage());
+    }
+    assertEquals("Sample Page", this.wp.getPage(2).getTitle());
+    this.simulator.clearInjections();
+    this.simulator.injectDrop(null, 1);
+    try {
+      this.wp.getPage(2);
+      fail("connection is dropped");
+    } catch (XmlRpcException e) {
+      // expected
+    }
+    this.simulator.clearInjections();
+    this.simulator.injectFault(null, 0.5, 503, "busy");
+    int faults = 0;
+    for (int i = 0; i < 200; i++) {
+      try {
+        this.wp.sayHello();
+      } catch (XmlRpcFault e) {
+        faults++;
+      }
+    }
+    assertTrue(String.valueOf(faults), (faults > 60) && (faults < 140));
+  }
+
+  @Test
+  public void testLatency() throws Exception {
+    this.simulator.setLatency("demo.sayHello", Latency.fixed(100));
+    long start = System.nanoTime();
+    assertEquals("Hello!", this.wp.sayHello());
+    assertTrue((System.nanoTime() - start) >= 100000000L);
+    start = System.nanoTime();
+    this.wp.addTwoNumbers(1, 2);
+    assertTrue((System.nanoTime() - start) < 100000000L);
+    Random random = new Random(1);
+    Latency tail = Latency.logNormal(10, 100);
+    int over = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (tail.next(random) > 100)
+        over++;
+    }
+    assertTrue(String.valueOf(over), (over > 50) && (over < 150));
+  }
+
+  @Test
+  public void testHttpWithBandwidthCap() throws Exception {
+    String url = this.simulator.start();
+    Wordpress client = new Wordpress("admin", "secret", url);
+    assertEquals(3, client.addTwoNumbers(1, 2), 0);
+    File file = File.createTempFile("simulator", ".bin");
+    try {
+      OutputStream out = new FileOutputStream(file);
+      try {
+        out.write(new byte[60000]);
+      } finally {
+        out.close();
+      }
+      this.simulator.setBandwidth(200000);
+      long start = System.nanoTime();
+      MediaObject media = client.newMediaObject("application/octet-stream",
+          file, Boolean.FALSE);
+      long elapsed = System.nanoTime() - start;
+      assertEquals(file.getName(), media.getFile());
+      // 60000 bytes are 80000 in base64, which take 400ms at 200000/s
+      assertTrue(String.valueOf(elapsed), elapsed >= 350000000L);
+      assertTrue(this.simulator.getBytesReceived() > 80000);
+    } finally {
+      client.getTransport().close();
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,260 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.bican.wordpress.BatchResult;
+import net.bican.wordpress.HttpURLConnectionTransport;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.Wordpress;
+import net.bican.wordpress.WordpressSimulator;
+import net.bican.wordpress.XmlRpcBatch;
+import net.bican.wordpress.XmlRpcRequest;
+import net.bican.wordpress.XmlRpcTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "static-method", "javadoc", "nls", "unchecked",
+    "boxing" })
+public class XmlRpcBatchTest {
+
+  /**
+   * Loses the response of one request, after the server has answered it.
+   */
+  private static final class FailingTransport implements XmlRpcTransport {
+    private int                   calls;
+
+    private final int             failAt;
+
+    private final XmlRpcTransport transport = new HttpURLConnectionTransport();
+
+    FailingTransport(int failAt) {
+      this.failAt = failAt;
+    }
+
+    @Override
+    public void close() {
+      this.transport.close();
+    }
+
+    @Override
+    public InputStream send(URL url, XmlRpcRequest request)
+        throws IOException {
+      InputStream in = this.transport.send(url, request);
+      if (++this.calls == this.failAt) {
+        in.close();
+        throw new IOException("Connection reset");
+      }
+      return in;
+    }
+  }
+
+  private static XmlRpcStruct fault(int code, String message) {
+    XmlRpcStruct fault = new XmlRpcStruct();
+    fault.put("faultCode", code);
+    fault.put("faultString", message);
+    return fault;
+  }
+
+  private static XmlRpcStruct post() {
+    XmlRpcStruct p = new XmlRpcStruct();
+    p.put("postid", "12");
+    p.put("title", "Batched");
+    return p;
+  }
+
+  private volatile boolean multicall;
+
+  private StandInServer    server;
+
+  private String           url;
+
+  private Wordpress        wp;
+
+  private List<BatchResult<?>> queue(XmlRpcBatch batch, int n) {
+    List<BatchResult<?>> results = new ArrayList<BatchResult<?>>();
+    for (int i = 0; i < n; i++) {
+      results.add(batch.deletePost(i, "true"));
+      results.add(batch.deleteComment(i));
+      results.add(batch.getPost(12));
+    }
+    return results;
+  }
+
+  private void check(List<BatchResult<?>> results) throws Exception {
+    for (int i = 0; i < results.size(); i += 3) {
+      assertEquals(Boolean.TRUE, results.get(i).get());
+      try {
+        results.get(i + 1).get();
+        fail("fault expected");
+      } catch (XmlRpcFault e) {
+        assertEquals(404, e.getErrorCode());
+      }
+      assertEquals("Batched", ((Page) results.get(i + 2).get()).getTitle());
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    this.server = new StandInServer();
+    this.server.put("mt.supportedMethods", new StandInServer.Responder() {
+      @Override
+      public Object respond(String request) {
+        XmlRpcArray methods = new XmlRpcArray();
+        methods.add("metaWeblog.getPost");
+        if (XmlRpcBatchTest.this.multicall)
+          methods.add("system.multicall");
+        return methods;
+      }
+    });
+    this.server.put("system.multicall", new StandInServer.Responder() {
+      @Override
+      public Object respond(String request) {
+        XmlRpcArray results = new XmlRpcArray();
+        int calls = request.split("<name>methodName</name>").length - 1;
+        for (int i = 0; i < calls; i += 3) {
+          XmlRpcArray ok = new XmlRpcArray();
+          ok.add(Boolean.TRUE);
+          results.add(ok);
+          if (i + 1 < calls)
+            results.add(fault(404, "Invalid comment ID."));
+          if (i + 2 < calls) {
+            XmlRpcArray p = new XmlRpcArray();
+            p.add(post());
+            results.add(p);
+          }
+        }
+        return results;
+      }
+    });
+    this.server.put("blogger.deletePost", Boolean.TRUE);
+    this.server.put("wp.deleteComment", new XmlRpcFault(404,
+        "Invalid comment ID."));
+    this.server.put("metaWeblog.getPost", post());
+    this.url = this.server.getUrl();
+    this.wp = new Wordpress("user", "pass", this.url);
+  }
+
+  @After
+  public void tearDown() {
+    this.wp.getTransport().close();
+    this.server.stop();
+  }
+
+  @Test
+  public void testMulticall() throws Exception {
+    this.multicall = true;
+    XmlRpcBatch batch = this.wp.newBatch();
+    batch.setBatchSize(6);
+    List<BatchResult<?>> results = queue(batch, 4);
+    assertFalse(results.get(0).isDone());
+    batch.execute();
+    assertEquals(0, batch.size());
+    check(results);
+    // supportedMethods, then 12 operations in batches of 6
+    assertEquals(3, this.server.getRequests().size());
+    assertTrue(this.server.getRequests().get(1).contains("<name>params</name>"));
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+    this.multicall = false;
+    XmlRpcBatch batch = this.wp.newBatch();
+    List<BatchResult<?>> results = queue(batch, 2);
+    batch.execute();
+    check(results);
+    // supportedMethods, then one request per operation
+    assertEquals(7, this.server.getRequests().size());
+    for (String request : this.server.getRequests()) {
+      assertFalse(request.contains("system.multicall"));
+    }
+  }
+
+  @Test
+  public void testFailedRequestNotSentAgain() throws Exception {
+    this.multicall = false;
+    this.wp = new Wordpress("user", "pass", this.url, new FailingTransport(3));
+    XmlRpcBatch batch = this.wp.newBatch();
+    List<BatchResult<?>> results = queue(batch, 2);
+    try {
+      batch.execute();
+      fail();
+    } catch (XmlRpcException e) {
+      // the response of the second operation is lost
+    }
+    assertEquals(4, batch.size());
+    assertEquals(Boolean.TRUE, results.get(0).get());
+    assertTrue(results.get(1).isDone());
+    try {
+      results.get(1).get();
+      fail();
+    } catch (XmlRpcException e) {
+      // expected
+    }
+    batch.execute();
+    check(results.subList(3, 6));
+    // supportedMethods, then each operation once
+    assertEquals(7, this.server.getRequests().size());
+  }
+
+  @Test
+  public void testFailedMulticallNotSentAgain() throws Exception {
+    this.multicall = true;
+    this.wp = new Wordpress("user", "pass", this.url, new FailingTransport(2));
+    XmlRpcBatch batch = this.wp.newBatch();
+    batch.setBatchSize(6);
+    List<BatchResult<?>> results = queue(batch, 4);
+    try {
+      batch.execute();
+      fail();
+    } catch (XmlRpcException e) {
+      // the response of the first multicall is lost
+    }
+    assertEquals(6, batch.size());
+    for (BatchResult<?> r : results.subList(0, 6)) {
+      assertTrue(r.isDone());
+      assertNull(r.getFault());
+    }
+    batch.execute();
+    assertEquals(0, batch.size());
+    check(results.subList(6, 12));
+    assertEquals(3, this.server.getRequests().size());
+  }
+
+  @Test
+  public void testDeleteAllPosts() throws Exception {
+    WordpressSimulator simulator = new WordpressSimulator("admin", "secret", 1);
+    try {
+      simulator.populate(30, 0, 100);
+      Wordpress client = simulator.newClient();
+      XmlRpcBatch batch = client.newBatch();
+      for (Page post : client.allPosts(100)) {
+        batch.deletePost(post.getPostid().intValue(), "true");
+      }
+      assertEquals(31, batch.size());
+      batch.execute();
+      assertEquals(0, client.getRecentPosts(100000).size());
+      assertEquals(31, simulator.getCallCount("blogger.deletePost"));
+      assertEquals(1, simulator.getCallCount("system.multicall"));
+    } finally {
+      simulator.stop();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNotExecuted() throws Exception {
+    this.wp.newBatch().getPost(1).get();
+  }
+}
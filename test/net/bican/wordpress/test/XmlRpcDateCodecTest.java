@@ -0,0 +1,84 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import net.bican.wordpress.XmlRpcDateCodec;
+
+import org.junit.Test;
+
+@SuppressWarnings({ "static-method", "javadoc", "nls" })
+public class XmlRpcDateCodecTest {
+
+  private static final String[] ZONES = { "UTC", "America/New_York",
+      "Europe/Istanbul", "Australia/Lord_Howe", "Asia/Kolkata" };
+
+  @Test
+  public void testAgainstSimpleDateFormat() throws Exception {
+    Random random = new Random(42);
+    for (String zone : ZONES) {
+      TimeZone tz = TimeZone.getTimeZone(zone);
+      SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd'T'HH:mm:ss");
+      sdf.setTimeZone(tz);
+      XmlRpcDateCodec codec = new XmlRpcDateCodec(tz);
+      for (int i = 0; i < 20000; i++) {
+        // 1970 .. 2100, whole seconds
+        long millis = (Math.abs(random.nextLong()) % 4102444800L) * 1000L;
+        Date date = new Date(millis);
+        String expected = sdf.format(date);
+        assertEquals(zone, expected, codec.format(date));
+        assertEquals(zone + " " + expected, sdf.parse(expected),
+            codec.parse(expected));
+      }
+    }
+  }
+
+  @Test
+  public void testTrailingCharactersIgnored() throws Exception {
+    XmlRpcDateCodec codec = new XmlRpcDateCodec(TimeZone.getTimeZone("UTC"));
+    assertEquals(1346839872000L, codec.parseMillis("20120905T10:11:12Z"));
+  }
+
+  @Test
+  public void testInvalid() {
+    XmlRpcDateCodec codec = new XmlRpcDateCodec(TimeZone.getTimeZone("UTC"));
+    String[] invalid = { "", "2012", "20120905 10:11:12", "2012O905T10:11:12",
+        "20120905T10-11-12" };
+    for (String s : invalid) {
+      try {
+        codec.parse(s);
+        fail(s);
+      } catch (ParseException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testLenient() throws Exception {
+    TimeZone tz = TimeZone.getTimeZone("Europe/Istanbul");
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd'T'HH:mm:ss");
+    sdf.setTimeZone(tz);
+    XmlRpcDateCodec codec = new XmlRpcDateCodec(tz);
+    for (String s : new String[] { "20121305T10:11:12", "20120230T10:11:12",
+        "20120905T24:11:12", "20120900T10:11:12", "20120005T10:61:99" }) {
+      assertEquals(s, sdf.parse(s), codec.parse(s));
+    }
+  }
+
+  @Test
+  public void testZeroDate() throws Exception {
+    // WordPress sends it for the dates of drafts
+    XmlRpcDateCodec codec = new XmlRpcDateCodec(TimeZone.getTimeZone("UTC"));
+    Date zero = codec.parse("00000000T00:00:00");
+    assertEquals(zero, codec.parse("00000000T00:00:00Z"));
+    // day 0 of month 0 is the 30th of November of the year before
+    assertEquals(codec.parseMillis("00000101T00:00:00") - 32 * 86400000L,
+        zero.getTime());
+  }
+}
@@ -0,0 +1,187 @@
+package net.bican.wordpress.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import net.bican.wordpress.Comment;
+import net.bican.wordpress.Page;
+import net.bican.wordpress.ResultHandler;
+import net.bican.wordpress.XmlRpcIterator;
+import net.bican.wordpress.XmlRpcRequestWriter;
+import net.bican.wordpress.XmlRpcResponseReader;
+
+import org.junit.Test;
+
+import redstone.xmlrpc.XmlRpcArray;
+import redstone.xmlrpc.XmlRpcException;
+import redstone.xmlrpc.XmlRpcFault;
+import redstone.xmlrpc.XmlRpcStruct;
+
+@SuppressWarnings({ "static-method", "javadoc", "nls", "unchecked", "boxing" })
+public class XmlRpcResponseReaderTest {
+
+  private static XmlRpcStruct post(int id) {
+    XmlRpcStruct p = new XmlRpcStruct();
+    p.put("postid", String.valueOf(id));
+    p.put("title", "Title <" + id + "> & more");
+    p.put("description", "body\nwith lines");
+    p.put("dateCreated", new Date(1346839872000L));
+    p.put("mt_allow_comments", 1);
+    p.put("unknown_key", new XmlRpcArray());
+    XmlRpcArray categories = new XmlRpcArray();
+    categories.add("News");
+    p.put("categories", categories);
+    return p;
+  }
+
+  private static XmlRpcResponseReader response(Object value) throws Exception {
+    StringWriter w = new StringWriter();
+    w.write("<?xml version=\"1.0\"?>\n<methodResponse>\n  <params>\n"
+        + "    <param>\n      ");
+    new XmlRpcRequestWriter(w).writeValue(value);
+    w.write("\n    </param>\n  </params>\n</methodResponse>\n");
+    return new XmlRpcResponseReader(new ByteArrayInputStream(w.toString()
+        .getBytes("UTF-8")));
+  }
+
+  private static XmlRpcArray posts(int n) {
+    XmlRpcArray a = new XmlRpcArray();
+    for (int i = 1; i <= n; i++) {
+      a.add(post(i));
+    }
+    return a;
+  }
+
+  @Test
+  public void testReadMapped() throws Exception {
+    Page page = response(post(7)).readResponse(Page.class);
+    assertEquals(Integer.valueOf(7), page.getPostid());
+    assertEquals("Title <7> & more", page.getTitle());
+    assertEquals("body\nwith lines", page.getDescription());
+    assertEquals(new Date(1346839872000L), page.getDateCreated());
+    assertEquals(Integer.valueOf(1), page.getMt_allow_comments());
+    assertEquals(1, page.getCategories().size());
+  }
+
+  @Test
+  public void testReadGeneric() throws Exception {
+    Object r = response(posts(2)).readResponse();
+    assertTrue(r instanceof XmlRpcArray);
+    XmlRpcStruct first = (XmlRpcStruct) ((XmlRpcArray) r).get(0);
+    assertEquals("1", first.get("postid"));
+    assertEquals(new Date(1346839872000L), first.get("dateCreated"));
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, (byte[]) response(
+        new byte[] { 1, 2, 3, 4, 5 }).readResponse());
+    assertEquals(Boolean.TRUE, response(Boolean.TRUE).readResponse());
+  }
+
+  @Test
+  public void testInvalidDate() throws Exception {
+    String doc = "<methodResponse><params><param><value><array><data>"
+        + "<value><struct><member><name>postid</name><value><string>1"
+        + "</string></value></member><member><name>dateCreated</name>"
+        + "<value><dateTime.iso8601>not a date</dateTime.iso8601></value>"
+        + "</member></struct></value></data></array></value></param>"
+        + "</params></methodResponse>";
+    List<Page> pages = new XmlRpcResponseReader(new ByteArrayInputStream(
+        doc.getBytes("UTF-8"))).readResponseList(Page.class);
+    assertEquals(1, pages.size());
+    assertEquals(Integer.valueOf(1), pages.get(0).getPostid());
+    assertNull(pages.get(0).getDateCreated());
+  }
+
+  @Test
+  public void testImplicitString() throws Exception {
+    String doc = "<methodResponse><params><param><value>plain &amp; simple"
+        + "</value></param></params></methodResponse>";
+    assertEquals("plain & simple", new XmlRpcResponseReader(
+        new ByteArrayInputStream(doc.getBytes("UTF-8"))).readResponse());
+  }
+
+  @Test
+  public void testList() throws Exception {
+    List<Comment> comments = response(new XmlRpcArray()).readResponseList(
+        Comment.class);
+    assertEquals(0, comments.size());
+    List<Page> pages = response(posts(5)).readResponseList(Page.class);
+    assertEquals(5, pages.size());
+    assertEquals(Integer.valueOf(5), pages.get(4).getPostid());
+  }
+
+  @Test
+  public void testHandlerStops() throws Exception {
+    final List<Page> seen = new ArrayList<Page>();
+    boolean complete = response(posts(10)).readResponseArray(Page.class,
+        new ResultHandler<Page>() {
+          @Override
+          public boolean handle(Page item) {
+            seen.add(item);
+            return seen.size() < 3;
+          }
+        });
+    assertFalse(complete);
+    assertEquals(3, seen.size());
+  }
+
+  @Test
+  public void testIterator() throws Exception {
+    XmlRpcIterator<Page> it = response(posts(4)).iterateResponse(Page.class);
+    int n = 0;
+    while (it.hasNext()) {
+      n++;
+      assertEquals(Integer.valueOf(n), it.next().getPostid());
+    }
+    assertEquals(4, n);
+    it.close();
+  }
+
+  @Test
+  public void testLong() throws Exception {
+    assertEquals(7, response(7L).readResponse());
+    assertEquals(1L << 53 | 1, response(1L << 53 | 1).readResponse());
+    assertEquals(Long.MIN_VALUE, response(Long.MIN_VALUE).readResponse());
+  }
+
+  @Test
+  public void testIteratorClosedOnError() throws Exception {
+    final boolean[] closed = new boolean[1];
+    String doc = "<?xml version=\"1.0\"?><methodResponse><params><param>"
+        + "<value><array><data><value><struct></struct></value>"
+        + "<value><struct><member>";
+    XmlRpcIterator<Page> it = new XmlRpcResponseReader(
+        new ByteArrayInputStream(doc.getBytes("UTF-8")) {
+          @Override
+          public void close() {
+            closed[0] = true;
+          }
+        }).iterateResponse(Page.class);
+    assertNotNull(it.next());
+    try {
+      it.hasNext();
+      fail();
+    } catch (XmlRpcException e) {
+      assertTrue(closed[0]);
+    }
+  }
+
+  @Test
+  public void testFault() throws Exception {
+    String doc = "<?xml version=\"1.0\"?><methodResponse><fault><value><struct>"
+        + "<member><name>faultCode</name><value><int>403</int></value></member>"
+        + "<member><name>faultString</name><value><string>Bad login"
+        + "</string></value></member></struct></value></fault></methodResponse>";
+    try {
+      new XmlRpcResponseReader(new ByteArrayInputStream(doc.getBytes("UTF-8")))
+          .readResponseList(Page.class);
+      fail();
+    } catch (XmlRpcFault e) {
+      assertEquals(403, e.getErrorCode());
+      assertEquals("Bad login", e.getMessage());
+    }
+  }
+}